@@ -0,0 +1,37 @@
+package com.univocity.examples;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so allocation rate per operation is reported next to throughput and latency.
+ * Accepts the usual JMH command line options, i.e. 'DetailExtraction' to run only the detail page benchmarks.
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * Entry point to application.
+	 *
+	 * @param args - JMH command line options
+	 *
+	 * @throws RunnerException -
+	 * @throws CommandLineOptionException -
+	 */
+	public static void main(String... args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(commandLineOptions);
+		options.addProfiler(GCProfiler.class);
+
+		if (commandLineOptions.getIncludes().isEmpty()) {
+			options.include(BenchmarkRunner.class.getPackage().getName() + ".*Benchmark");
+		}
+
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,64 @@
+package com.univocity.examples;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing one listing record through the {@link RecordSink} used by {@link CsvResultHelper}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvWriteBenchmark {
+
+	private Map<String, String> record;
+
+	private File resultFile;
+
+	private RecordSink sink;
+
+	@Setup
+	public void setup() throws IOException {
+		File detailPageFile = Fixtures.copyToTempFile("detail-page.html");
+
+		record = ListingDetailExtractor.HARCOURTS.extract(Fixtures.DETAIL_PAGE_LINK, Jsoup.parse(detailPageFile, "UTF-8", Fixtures.BASE_URL));
+	}
+
+	@Setup(Level.Iteration)
+	public void openSink() throws IOException {
+		resultFile = File.createTempFile("benchmark-", ".csv");
+
+		sink = new CsvResultSink("benchmark", resultFile);
+		sink.open(ListingDetailExtractor.HARCOURTS.getFieldNames());
+	}
+
+	@TearDown(Level.Iteration)
+	public void closeSink() {
+		sink.close();
+		resultFile.delete();
+	}
+
+	@Benchmark
+	public void writeRecord() {
+		sink.write(record);
+	}
+}
@@ -0,0 +1,144 @@
+package com.univocity.examples;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.univocity.api.entity.html.HtmlEntityList;
+import com.univocity.api.entity.html.HtmlEntitySettings;
+import com.univocity.api.entity.html.HtmlParser;
+import com.univocity.api.entity.html.HtmlParserResult;
+import com.univocity.api.entity.html.builders.PartialPath;
+import com.univocity.api.io.FileProvider;
+
+/**
+ * Extraction of the listing fields from a detail page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DetailExtractionBenchmark {
+
+	private File detailPageFile;
+
+	private Document detailPage;
+
+	private HtmlParser univocityParser;
+
+	@Setup
+	public void setup() throws IOException {
+		detailPageFile = Fixtures.copyToTempFile("detail-page.html");
+		detailPage = Jsoup.parse(detailPageFile, "UTF-8", Fixtures.BASE_URL + Fixtures.DETAIL_PAGE_LINK);
+
+		// Same fields the link follower of RealEstateUnivocityParserExample.step3FollowTheLinks() captures.
+		HtmlEntityList entityList = new HtmlEntityList();
+		HtmlEntitySettings houseDetails = entityList.configureEntity("houseDetails");
+
+		houseDetails.addField("id").match("strong").withExactText("Listing Number:").getFollowingText();
+		houseDetails.addField("address").match("h2").classes("detailAddress").getText();
+		houseDetails.addField("price").match("h3").id("listingViewDisplayPrice").getText();
+
+		PartialPath info = houseDetails.newPath().match("ul").id("detailFeatures");
+		info.addField("bedrooms").match("li").classes("bdrm").matchNext("span").getText();
+		info.addField("bathrooms").match("li").classes("bthrm").matchNext("span").getText();
+
+		info = houseDetails.newPath().match("div").classes("property-information").match("li").matchNext("span").classes("heading");
+		info.addField("landSize").matchCurrent().withText("Land size").getFollowingText();
+		info.addField("propertyType").matchCurrent().withText("Property type").getFollowingText();
+
+		univocityParser = new HtmlParser(entityList);
+	}
+
+	/**
+	 * One select() call per field, as the Jsoup example did before {@link ListingDetailExtractor}. Regression baseline.
+	 */
+	@Benchmark
+	public Map<String, String> jsoupSelectPerField() {
+		Map<String, String> record = new LinkedHashMap<>();
+
+		record.put("propertyDetailsLink", Fixtures.DETAIL_PAGE_LINK);
+		record.put("id", followingText(detailPage.select("div.listingInfo > span > strong:contains(Listing Number:)").first()));
+		record.put("address", text(detailPage.select("div#listingDetail > div#detailTitle > h2.detailAddress").first()));
+		record.put("price", text(detailPage.select("div#listingDetail > div#detailTitle > div.propFeatures h3#listingViewDisplayPrice").first()));
+		record.put("bedrooms", text(detailPage.select("div#listingDetail > div#detailTitle > div.propFeatures > ul#detailFeatures > li.bdrm > span").first()));
+		record.put("bathrooms", text(detailPage.select("div#listingDetail > div#detailTitle > div.propFeatures > ul#detailFeatures > li.bthrm > span").first()));
+		record.put("landSize", followingText(detailPage.select("div.property-information > ul > li > span:contains(Land Size:)").first()));
+		record.put("propertyType", followingText(detailPage.select("div.property-information > ul > li > span:contains(Property Type:)").first()));
+
+		return record;
+	}
+
+	/**
+	 * Single precompiled walk on an already parsed page.
+	 */
+	@Benchmark
+	public Map<String, String> jsoupSinglePass() {
+		return ListingDetailExtractor.HARCOURTS.extract(Fixtures.DETAIL_PAGE_LINK, detailPage);
+	}
+
+	/**
+	 * Single precompiled walk into a typed record, with price, rooms and land size parsed.
+	 */
+	@Benchmark
+	public ListingRecord jsoupSinglePassRecord() {
+		return ListingDetailExtractor.HARCOURTS.extractRecord(Fixtures.DETAIL_PAGE_LINK, detailPage);
+	}
+
+	/**
+	 * Parsing the page and running the single precompiled walk.
+	 */
+	@Benchmark
+	public Map<String, String> jsoupParseAndSinglePass() throws IOException {
+		Document document = Jsoup.parse(detailPageFile, "UTF-8", Fixtures.BASE_URL + Fixtures.DETAIL_PAGE_LINK);
+
+		return ListingDetailExtractor.HARCOURTS.extract(Fixtures.DETAIL_PAGE_LINK, document);
+	}
+
+	/**
+	 * Streaming extraction from the page file, building only the regions holding fields. Compare with {@link #jsoupParseAndSinglePass()},
+	 * allocation per operation included.
+	 */
+	@Benchmark
+	public ListingRecord streamingRegionExtraction() throws IOException {
+		try (InputStream in = new FileInputStream(detailPageFile)) {
+			return ListingDetailExtractor.HARCOURTS.extractRecord(Fixtures.DETAIL_PAGE_LINK, in, "UTF-8");
+		}
+	}
+
+	/**
+	 * Univocity parser with the detail page fields of the examples.
+	 */
+	@Benchmark
+	public HtmlParserResult univocityParse() {
+		return univocityParser.parse(new FileProvider(detailPageFile, "UTF-8")).get("houseDetails");
+	}
+
+	private static String text(Element element) {
+		return element == null ? null : element.text();
+	}
+
+	private static String followingText(Element labelElement) {
+		return labelElement == null ? null : labelElement.parent().textNodes().get(1).text();
+	}
+}
@@ -0,0 +1,47 @@
+package com.univocity.examples;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Gives access to the HTML pages under 'fixtures/' in the benchmark resources.
+ */
+class Fixtures {
+
+	/**
+	 * URL the fixture pages are parsed against.
+	 */
+	static final String BASE_URL = "https://harcourts.co.za";
+
+	/**
+	 * Link of the listing saved in 'detail-page.html'.
+	 */
+	static final String DETAIL_PAGE_LINK = "/Property/307634/EST6886/Springfield";
+
+	/**
+	 * Copy fixture to a temporary file deleted on exit, so both parsers can read it from disk.
+	 *
+	 * @param name - fixture file name
+	 *
+	 * @throws IOException -
+	 *
+	 * @return File
+	 */
+	static File copyToTempFile(String name) throws IOException {
+		File file = File.createTempFile("fixture-", "-" + name);
+		file.deleteOnExit();
+
+		try (InputStream in = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+			if (in == null) {
+				throw new IOException("Fixture not found: " + name);
+			}
+
+			Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		return file;
+	}
+}
@@ -0,0 +1,73 @@
+package com.univocity.examples;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.univocity.api.entity.html.HtmlParser;
+import com.univocity.api.entity.html.HtmlParserResult;
+import com.univocity.api.io.FileProvider;
+
+/**
+ * Extraction of the listing links from a page of results (step 1 of both examples).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkExtractionBenchmark {
+
+	private File resultsPageFile;
+
+	private Document resultsPage;
+
+	private HtmlParser univocityParser;
+
+	@Setup
+	public void setup() throws IOException {
+		resultsPageFile = Fixtures.copyToTempFile("results-page.html");
+		resultsPage = Jsoup.parse(resultsPageFile, "UTF-8", Fixtures.BASE_URL);
+
+		univocityParser = new HtmlParser(RealEstateUnivocityParserExample.step1GetSearchResultLinks());
+	}
+
+	/**
+	 * Selector evaluation only, on an already parsed page.
+	 */
+	@Benchmark
+	public List<String> jsoupSelect() {
+		return RealEstateJSoupParserExample.step1GetSearchResultLinks(resultsPage);
+	}
+
+	/**
+	 * Parsing the page and evaluating the selector.
+	 */
+	@Benchmark
+	public List<String> jsoupParseAndSelect() throws IOException {
+		return RealEstateJSoupParserExample.step1GetSearchResultLinks(Jsoup.parse(resultsPageFile, "UTF-8", Fixtures.BASE_URL));
+	}
+
+	/**
+	 * Univocity parser, which matches while reading the page.
+	 */
+	@Benchmark
+	public HtmlParserResult univocityParse() {
+		return univocityParser.parse(new FileProvider(resultsPageFile, "UTF-8")).get("houses");
+	}
+}
@@ -0,0 +1,566 @@
+package com.univocity.examples;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+/**
+ * Extracts the listings of stored crawls again, without network access, i.e. after a field definition changed.
+ *
+ * Reads the pages saved by either example: a {@link PageArchive} directory, or a directory of day directories of page files like
+ * the univocity parser leaves in 'Downloads/realEstate'. Pages of results are found by their key, '{date}/{locationCode}_{pageNumber}.html',
+ * and the detail page of each listing they link to under '{date}/{locationCode}_{pageNumber}/{listingNumber}', with or without
+ * '.html'. Listings whose detail page wasn't saved, like the ones the crawl skipped, are left out, and a listing found again on the
+ * same day, in another location or on a later page, is only kept where its detail page was first found, so the records of each day
+ * and location are the ones the crawl captured, in the same order, whichever order the crawl visited locations in.
+ *
+ * All days are processed in parallel on a fork-join pool with one worker per core: pages of results are parsed as parallel tasks,
+ * and detail pages are extracted by tasks splitting the listings of a day in halves, so the idle workers steal work from busy days. Detail pages are extracted as a stream, see {@link ListingDetailExtractor#extractRecord(String, InputStream, String)}.
+ */
+public class ArchiveReextractor {
+
+	/**
+	 * Key of a saved page of results: day, location code and page number.
+	 */
+	private static final Pattern RESULTS_PAGE_KEY = Pattern.compile("(\\d{4}-\\d{1,2}-\\d{1,2})/([^/]+)_(\\d+)\\.html");
+
+	/**
+	 * Maximum number of detail pages extracted by a task without splitting it.
+	 */
+	private static final int DETAIL_PAGES_PER_TASK = 16;
+
+	/**
+	 * Reads saved pages.
+	 */
+	interface PageSource extends Closeable {
+
+		/**
+		 * Returns the keys of all pages.
+		 *
+		 * @throws IOException -
+		 *
+		 * @return List<String>
+		 */
+		List<String> keys() throws IOException;
+
+		/**
+		 * Opens page.
+		 *
+		 * @param key - page key
+		 *
+		 * @throws IOException -
+		 *
+		 * @return InputStream - page content, null if there is no page with this key
+		 */
+		InputStream open(String key) throws IOException;
+
+		/**
+		 * Reads page.
+		 *
+		 * @param key		- page key
+		 * @param baseUri	- URL the page was downloaded from
+		 *
+		 * @throws IOException -
+		 *
+		 * @return FetchedPage - page as saved, without charset so it is detected from BOM or meta tags, null if there is no page with this key
+		 */
+		default FetchedPage read(String key, String baseUri) throws IOException {
+			InputStream in = open(key);
+
+			if (Objects.isNull(in)) {
+				return null;
+			}
+
+			try (InputStream content = in) {
+				ByteArrayOutputStream body = new ByteArrayOutputStream(32 * 1024);
+
+				byte[] buffer = new byte[8192];
+
+				for (int length = content.read(buffer); length != -1; length = content.read(buffer)) {
+					body.write(buffer, 0, length);
+				}
+
+				return new FetchedPage(baseUri, body.toByteArray(), null);
+			}
+		}
+	}
+
+	/**
+	 * Saved pages.
+	 */
+	private final PageSource pageSource;
+
+	/**
+	 * Base URL of the saved pages.
+	 */
+	private final String siteUrl;
+
+	/**
+	 * Workers.
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Number of listings skipped because their detail page was not saved or could not be read.
+	 */
+	private final AtomicInteger skippedListings = new AtomicInteger();
+
+	/**
+	 * Creates re-extractor.
+	 *
+	 * @param pageSource	- saved pages
+	 * @param siteUrl		- base URL of the saved pages
+	 * @param parallelism	- number of workers
+	 */
+	ArchiveReextractor(PageSource pageSource, String siteUrl, int parallelism) {
+		this.pageSource = pageSource;
+		this.siteUrl = siteUrl;
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Entry point to application. Arguments are the directory of the saved pages, an archive or a directory of day directories,
+	 * and optionally the first and last day to extract as 'yyyy-MM-dd'. The directory defaults to the archive of
+	 * {@link RealEstateJSoupParserExample}, 'Downloads/realEstate_Jsoup/archive'.
+	 *
+	 * Records of each day and location are saved to '{user.home}/Downloads/reextracted-houses-{date}-{locationCode}.csv', or in the
+	 * format set with '-Dresults.format', see {@link CsvResultHelper#openResults(String, String...)}. The number of workers
+	 * can be changed with '-Dreextract.parallelism=N', default one per core.
+	 *
+	 * @param args - console arguments: directory, first day, last day
+	 *
+	 * @throws IOException -
+	 */
+	public static void main(String... args) throws IOException {
+		File directory = args.length > 0 ? new File(args[0]) : new File(System.getProperty("user.home"), "Downloads/realEstate_Jsoup/archive");
+		LocalDate firstDay = args.length > 1 ? LocalDate.parse(args[1]) : LocalDate.MIN;
+		LocalDate lastDay = args.length > 2 ? LocalDate.parse(args[2]) : LocalDate.MAX;
+
+		int parallelism = Integer.getInteger("reextract.parallelism", Runtime.getRuntime().availableProcessors());
+
+		long startTime = System.currentTimeMillis();
+
+		try (PageSource pageSource = openPageSource(directory)) {
+			ArchiveReextractor reextractor = new ArchiveReextractor(pageSource, System.getProperty("site.baseUrl", "https://harcourts.co.za"), parallelism);
+
+			int recordCount = reextractor.run(firstDay, lastDay);
+
+			System.out.println("Re-extracted " + recordCount + " records from " + directory.getAbsolutePath() + " in " + (System.currentTimeMillis() - startTime)
+					+ " ms on " + parallelism + " workers, " + reextractor.skippedListings.get() + " listings without detail page");
+		} finally {
+			CrawlMetrics.export("reextracted-houses");
+		}
+	}
+
+	/**
+	 * Opens the saved pages of directory: a page archive if it has an index, otherwise day directories of page files.
+	 *
+	 * @param directory - directory of the saved pages
+	 *
+	 * @throws IOException -
+	 *
+	 * @return PageSource
+	 */
+	static PageSource openPageSource(File directory) throws IOException {
+		if (!directory.isDirectory()) {
+			throw new IOException("Not a directory: " + directory.getAbsolutePath());
+		}
+
+		if (new File(directory, "index.tsv").exists()) {
+			PageArchive pageArchive = new PageArchive(directory);
+
+			return new PageSource() {
+				@Override
+				public List<String> keys() {
+					return pageArchive.keys();
+				}
+
+				@Override
+				public InputStream open(String key) throws IOException {
+					return pageArchive.open(key);
+				}
+
+				@Override
+				public FetchedPage read(String key, String baseUri) throws IOException {
+					return pageArchive.read(key, baseUri);
+				}
+
+				@Override
+				public void close() throws IOException {
+					pageArchive.close();
+				}
+			};
+		}
+
+		Path root = directory.toPath();
+
+		return new PageSource() {
+			@Override
+			public List<String> keys() throws IOException {
+				try (Stream<Path> files = Files.walk(root)) {
+					return files.filter(Files::isRegularFile).map(file -> root.relativize(file).toString().replace(File.separatorChar, '/')).collect(Collectors.toList());
+				}
+			}
+
+			@Override
+			public InputStream open(String key) throws IOException {
+				File file = root.resolve(Paths.get(key)).toFile();
+
+				return file.isFile() ? new FileInputStream(file) : null;
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+	}
+
+	/**
+	 * Extracts the listings of all saved days in range and saves the records of each day and location. Can only be run once, the
+	 * workers are stopped at the end.
+	 *
+	 * @param firstDay	- first day to extract
+	 * @param lastDay	- last day to extract
+	 *
+	 * @throws IOException - if any day and location failed, after all were extracted
+	 *
+	 * @return int - number of records saved
+	 */
+	int run(LocalDate firstDay, LocalDate lastDay) throws IOException {
+		// Keys of the pages of results by day, location code and page number.
+		Map<LocalDate, Map<String, Map<Integer, String>>> resultsPages = new TreeMap<>();
+
+		for (String key : pageSource.keys()) {
+			Matcher matcher = RESULTS_PAGE_KEY.matcher(key);
+
+			if (matcher.matches()) {
+				LocalDate day = parseDay(matcher.group(1));
+
+				if (Objects.nonNull(day) && !day.isBefore(firstDay) && !day.isAfter(lastDay)) {
+					resultsPages.computeIfAbsent(day, locations -> new TreeMap<>()).computeIfAbsent(matcher.group(2), pages -> new TreeMap<>()).put(Integer.parseInt(matcher.group(3)), key);
+				}
+			}
+		}
+
+		List<DayTask> tasks = new ArrayList<>(resultsPages.size());
+
+		for (Map.Entry<LocalDate, Map<String, Map<Integer, String>>> day : resultsPages.entrySet()) {
+			DayTask task = new DayTask(day.getKey(), day.getValue());
+
+			tasks.add(task);
+			pool.execute(task);
+		}
+
+		int recordCount = 0;
+
+		IOException failure = null;
+
+		try {
+			for (DayTask task : tasks) {
+				try {
+					recordCount += task.join();
+				} catch (RuntimeException e) {
+					Throwable cause = e instanceof UncheckedIOException ? e.getCause() : e;
+
+					System.err.println("Re-extraction of " + task.day + " failed: " + cause);
+
+					if (failure == null) {
+						failure = new IOException("Re-extraction failed", cause);
+					} else {
+						failure.addSuppressed(cause);
+					}
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+
+		return recordCount;
+	}
+
+	/**
+	 * Returns the detail page links of a saved page of results.
+	 *
+	 * @param key - page key
+	 *
+	 * @throws IOException -
+	 *
+	 * @return List<String> - links, in page order
+	 */
+	private List<String> listingLinksOf(String key) throws IOException {
+		FetchedPage page = pageSource.read(key, siteUrl);
+
+		if (Objects.isNull(page)) {
+			return Collections.emptyList();
+		}
+
+		Document document = page.parse();
+
+		List<String> links = new ArrayList<>();
+
+		for (Element linkElement : document.select(RealEstateJSoupParserExample.LISTING_LINKS_SELECTOR)) {
+			links.add(linkElement.attr("href"));
+		}
+
+		return links;
+	}
+
+	/**
+	 * Extracts the saved detail page of a listing.
+	 *
+	 * @param resultsPageKey	- key of the page of results linking to the listing
+	 * @param detailPageLink	- detail page link
+	 *
+	 * @return ListingRecord - record, null if the detail page was not saved or can't be read
+	 */
+	private ListingRecord extractListing(String resultsPageKey, String detailPageLink) {
+		String detailPageKey = resultsPageKey.substring(0, resultsPageKey.length() - ".html".length()) + '/' + ListingIndex.listingNumberOf(detailPageLink);
+
+		try {
+			FetchedPage detailPage = pageSource.read(detailPageKey, siteUrl);
+
+			// The univocity parser saves detail pages with an extension.
+			if (Objects.isNull(detailPage)) {
+				detailPage = pageSource.read(detailPageKey + ".html", siteUrl);
+			}
+
+			if (Objects.isNull(detailPage)) {
+				return null;
+			}
+
+			try (CrawlMetrics.Timer timer = CrawlMetrics.start(CrawlMetrics.Stage.EXTRACT, detailPageKey)) {
+				timer.addBytes(detailPage.getBody().length);
+
+				return ListingDetailExtractor.HARCOURTS.extractRecord(detailPageLink, new ByteArrayInputStream(detailPage.getBody()), null);
+			}
+		} catch (IOException e) {
+			System.out.println("Skipped listing " + detailPageKey + ": " + e);
+
+			return null;
+		}
+	}
+
+	/**
+	 * Parses day directory name, 'yyyy-MM-dd' or the unpadded 'yyyy-M-d' of older runs.
+	 *
+	 * @param name - directory name
+	 *
+	 * @return LocalDate - null if name is not a date
+	 */
+	private static LocalDate parseDay(String name) {
+		String[] parts = name.split("-");
+
+		try {
+			return LocalDate.of(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Extracts the listings of one day, and saves the records of each location to 'reextracted-houses-{date}-{locationCode}'.
+	 */
+	@SuppressWarnings("serial")
+	private final class DayTask extends RecursiveTask<Integer> {
+
+		/**
+		 * Day.
+		 */
+		private final LocalDate day;
+
+		/**
+		 * Keys of the pages of results, by location code and page number.
+		 */
+		private final Map<String, Map<Integer, String>> resultsPageKeys;
+
+		DayTask(LocalDate day, Map<String, Map<Integer, String>> resultsPageKeys) {
+			this.day = day;
+			this.resultsPageKeys = resultsPageKeys;
+		}
+
+		@Override
+		protected Integer compute() {
+			List<ResultsPageTask> pageTasks = new ArrayList<>();
+
+			for (Map<Integer, String> locationPageKeys : resultsPageKeys.values()) {
+				for (String key : locationPageKeys.values()) {
+					pageTasks.add(new ResultsPageTask(key));
+				}
+			}
+
+			invokeAll(pageTasks);
+
+			List<String> detailPageLinks = new ArrayList<>();
+			List<String> detailResultsPageKeys = new ArrayList<>();
+
+			// Index after the last listing of each location.
+			int[] locationEnds = new int[resultsPageKeys.size()];
+			int location = 0;
+
+			Iterator<ResultsPageTask> pageTaskIterator = pageTasks.iterator();
+
+			for (Map<Integer, String> locationPageKeys : resultsPageKeys.values()) {
+				for (int i = 0; i < locationPageKeys.size(); i++) {
+					ResultsPageTask pageTask = pageTaskIterator.next();
+
+					for (String link : pageTask.join()) {
+						detailPageLinks.add(link);
+						detailResultsPageKeys.add(pageTask.key);
+					}
+				}
+
+				locationEnds[location++] = detailPageLinks.size();
+			}
+
+			ListingRecord[] records = new ListingRecord[detailPageLinks.size()];
+
+			invokeAll(new DetailPagesTask(detailResultsPageKeys, detailPageLinks, records, 0, records.length));
+
+			// Like the crawl, a listing is only kept once on the day: listings pushed to the next page of results while the crawl paged
+			// through them, or found in two locations, are kept where their detail page was saved, the first one in location code order.
+			CrawlFrontier frontier = new CrawlFrontier();
+
+			String[] row = new String[ListingRecord.FIELD_NAMES.length];
+
+			int recordCount = 0;
+			int start = 0;
+			location = 0;
+
+			for (String locationCode : resultsPageKeys.keySet()) {
+				try (RecordSink results = CsvResultHelper.openResults("reextracted-houses-" + day + "-" + locationCode, ListingRecord.FIELD_NAMES)) {
+					for (int i = start; i < locationEnds[location]; i++) {
+						if (Objects.nonNull(records[i]) && frontier.add(siteUrl, detailPageLinks.get(i))) {
+							results.writeRow(records[i].fillRow(row));
+
+							CrawlMetrics.increment(CrawlMetrics.Counter.RECORD);
+
+							recordCount++;
+						}
+					}
+				}
+
+				start = locationEnds[location++];
+			}
+
+			// Listings found without any detail page, counted once.
+			for (int i = 0; i < records.length; i++) {
+				if (Objects.isNull(records[i]) && frontier.add(siteUrl, detailPageLinks.get(i))) {
+					skippedListings.incrementAndGet();
+				}
+			}
+
+			return recordCount;
+		}
+	}
+
+	/**
+	 * Reads the detail page links of a saved page of results.
+	 */
+	@SuppressWarnings("serial")
+	private final class ResultsPageTask extends RecursiveTask<List<String>> {
+
+		/**
+		 * Page key.
+		 */
+		private final String key;
+
+		ResultsPageTask(String key) {
+			this.key = key;
+		}
+
+		@Override
+		protected List<String> compute() {
+			try {
+				return listingLinksOf(key);
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to read page of results " + key, e);
+			}
+		}
+	}
+
+	/**
+	 * Extracts a range of detail pages, splitting it in halves until it is small enough.
+	 */
+	@SuppressWarnings("serial")
+	private final class DetailPagesTask extends RecursiveAction {
+
+		/**
+		 * Key of the page of results linking to each listing.
+		 */
+		private final List<String> resultsPageKeys;
+
+		/**
+		 * Detail page links.
+		 */
+		private final List<String> detailPageLinks;
+
+		/**
+		 * Records, in link order. Null for listings without detail page.
+		 */
+		private final ListingRecord[] records;
+
+		/**
+		 * First listing of the range.
+		 */
+		private final int from;
+
+		/**
+		 * Listing after the range.
+		 */
+		private final int to;
+
+		DetailPagesTask(List<String> resultsPageKeys, List<String> detailPageLinks, ListingRecord[] records, int from, int to) {
+			this.resultsPageKeys = resultsPageKeys;
+			this.detailPageLinks = detailPageLinks;
+			this.records = records;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > DETAIL_PAGES_PER_TASK) {
+				int middle = (from + to) >>> 1;
+
+				invokeAll(new DetailPagesTask(resultsPageKeys, detailPageLinks, records, from, middle), new DetailPagesTask(resultsPageKeys, detailPageLinks, records, middle, to));
+
+				return;
+			}
+
+			for (int i = from; i < to; i++) {
+				records[i] = extractListing(resultsPageKeys.get(i), detailPageLinks.get(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package com.univocity.examples;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes pages to a {@link PageArchive} on a background thread, so disk latency stays off the fetch threads.
+ *
+ * Pages waiting in the queue are written together in one batch. When the queue is full {@link #write(String, byte[])}
+ * blocks until there's room, so a slow disk can't make pages pile up in memory. Once a write failed, or the writer thread
+ * stopped on an error, producers and {@link #close()} get the failure instead of waiting for room.
+ */
+class AsyncPageWriter implements Closeable {
+
+	/**
+	 * Page waiting to be written.
+	 */
+	private static final class PendingPage {
+
+		/**
+		 * Archive key.
+		 */
+		private final String key;
+
+		/**
+		 * Page content.
+		 */
+		private final byte[] content;
+
+		PendingPage(String key, byte[] content) {
+			this.key = key;
+			this.content = content;
+		}
+	}
+
+	/**
+	 * Marks the end of the queue.
+	 */
+	private static final PendingPage END = new PendingPage(null, null);
+
+	/**
+	 * Target archive.
+	 */
+	private final PageArchive pageArchive;
+
+	/**
+	 * Pages waiting to be written.
+	 */
+	private final BlockingQueue<PendingPage> queue;
+
+	/**
+	 * Maximum number of pages written in one batch.
+	 */
+	private final int maxBatchSize;
+
+	/**
+	 * Thread writing the pages.
+	 */
+	private final Thread writerThread;
+
+	/**
+	 * First failure of the writer thread, rethrown to the producers.
+	 */
+	private volatile Throwable failure;
+
+	/**
+	 * Creates writer and starts its thread.
+	 *
+	 * @param pageArchive	- target archive
+	 * @param queueCapacity	- maximum number of pages waiting to be written
+	 * @param maxBatchSize	- maximum number of pages written in one batch
+	 */
+	AsyncPageWriter(PageArchive pageArchive, int queueCapacity, int maxBatchSize) {
+		this.pageArchive = pageArchive;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.maxBatchSize = maxBatchSize;
+
+		this.writerThread = new Thread(this::writeBatches, "page-writer");
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+	}
+
+	/**
+	 * Queues page for writing.
+	 *
+	 * @param key		- archive key
+	 * @param content	- page content
+	 *
+	 * @throws IOException - if a previous write failed
+	 */
+	void write(String key, byte[] content) throws IOException {
+		checkFailure();
+
+		try {
+			enqueue(new PendingPage(key, content));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException("Interrupted while queueing page " + key);
+		}
+	}
+
+	/**
+	 * Writes all queued pages and stops the writer thread.
+	 *
+	 * @throws IOException - if a write failed
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			enqueue(END);
+			writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException("Interrupted while writing queued pages");
+		}
+
+		checkFailure();
+	}
+
+	/**
+	 * Queues page, waiting for room only while the writer thread is alive and no write failed.
+	 *
+	 * @param page - page, or {@link #END}
+	 *
+	 * @throws IOException - if a write failed or the writer thread stopped
+	 * @throws InterruptedException -
+	 */
+	private void enqueue(PendingPage page) throws IOException, InterruptedException {
+		while (!queue.offer(page, 100, TimeUnit.MILLISECONDS)) {
+			checkFailure();
+
+			if (!writerThread.isAlive()) {
+				throw new IOException("Page writer stopped");
+			}
+		}
+	}
+
+	/**
+	 * Writer thread loop.
+	 */
+	private void writeBatches() {
+		try {
+			drainBatches();
+		} catch (Throwable e) {
+			// Kept for the producers, which stop waiting for room once the thread is gone.
+			if (failure == null) {
+				failure = e;
+			}
+		}
+	}
+
+	/**
+	 * Writes the queued pages in batches until the end of the queue.
+	 */
+	private void drainBatches() {
+		List<PendingPage> batch = new ArrayList<>(maxBatchSize);
+		List<String> keys = new ArrayList<>(maxBatchSize);
+		List<byte[]> contents = new ArrayList<>(maxBatchSize);
+
+		boolean end = false;
+
+		while (!end) {
+			try {
+				batch.add(queue.take());
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			queue.drainTo(batch, maxBatchSize - 1);
+
+			for (PendingPage page : batch) {
+				if (page == END) {
+					end = true;
+				} else {
+					keys.add(page.key);
+					contents.add(page.content);
+				}
+			}
+
+			// After a failure pages are only drained, so producers blocked on a full queue are released.
+			if (failure == null && !keys.isEmpty()) {
+				try (CrawlMetrics.Timer timer = CrawlMetrics.start(CrawlMetrics.Stage.SAVE_PAGE, null)) {
+					for (byte[] content : contents) {
+						timer.addBytes(content.length);
+					}
+
+					pageArchive.putAll(keys, contents);
+				} catch (Throwable e) {
+					failure = e;
+				}
+			}
+
+			batch.clear();
+			keys.clear();
+			contents.clear();
+		}
+	}
+
+	/**
+	 * Throws the first write failure, if any.
+	 *
+	 * @throws IOException -
+	 */
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw new IOException("Failed to write pages to archive", failure);
+		}
+	}
+}
@@ -0,0 +1,643 @@
+package com.univocity.examples;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Reads files written by {@link ColumnarResultSink}.
+ *
+ * Only the footer is read when the file is opened. Column chunks are read on demand, so a scan decodes only the
+ * columns it needs, and row groups whose statistics can't match a filter are not read at all.
+ */
+class ColumnarResultReader implements Closeable {
+
+	/**
+	 * Statistics of one column in one row group.
+	 */
+	static final class ColumnStatistics {
+
+		/**
+		 * Offset of the column chunk in the file.
+		 */
+		private final long offset;
+
+		/**
+		 * Length of the column chunk.
+		 */
+		private final int length;
+
+		/**
+		 * Column chunk encoding.
+		 */
+		private final byte encoding;
+
+		/**
+		 * Number of null values.
+		 */
+		private final int nullCount;
+
+		/**
+		 * Minimum of a number column.
+		 */
+		private final long minLong;
+
+		/**
+		 * Maximum of a number column.
+		 */
+		private final long maxLong;
+
+		/**
+		 * Minimum value as text, null if all values are null.
+		 */
+		private final String min;
+
+		/**
+		 * Maximum value as text, null if all values are null.
+		 */
+		private final String max;
+
+		ColumnStatistics(long offset, int length, byte encoding, int nullCount, long minLong, long maxLong, String min, String max) {
+			this.offset = offset;
+			this.length = length;
+			this.encoding = encoding;
+			this.nullCount = nullCount;
+			this.minLong = minLong;
+			this.maxLong = maxLong;
+			this.min = min;
+			this.max = max;
+		}
+
+		/**
+		 * @return boolean - true if all values of the column chunk are whole numbers, see {@link #getMinLong()}
+		 */
+		boolean isNumeric() {
+			return encoding == ColumnarResultSink.ENCODING_PACKED_LONG;
+		}
+
+		/**
+		 * @return int - number of null values
+		 */
+		int getNullCount() {
+			return nullCount;
+		}
+
+		/**
+		 * @return long - minimum of a numeric column
+		 */
+		long getMinLong() {
+			return minLong;
+		}
+
+		/**
+		 * @return long - maximum of a numeric column
+		 */
+		long getMaxLong() {
+			return maxLong;
+		}
+
+		/**
+		 * @return String - minimum value, compared as text for non numeric columns, null if all values are null
+		 */
+		String getMin() {
+			return min;
+		}
+
+		/**
+		 * @return String - maximum value, compared as text for non numeric columns, null if all values are null
+		 */
+		String getMax() {
+			return max;
+		}
+	}
+
+	/**
+	 * Source file.
+	 */
+	private final File file;
+
+	/**
+	 * File channel.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * Column names.
+	 */
+	private final String[] headers;
+
+	/**
+	 * Number of rows by row group.
+	 */
+	private final int[] rowCounts;
+
+	/**
+	 * Statistics by row group and column.
+	 */
+	private final ColumnStatistics[][] statistics;
+
+	/**
+	 * Opens file and reads its footer.
+	 *
+	 * @param file - file written by {@link ColumnarResultSink}
+	 *
+	 * @throws IOException -
+	 */
+	ColumnarResultReader(File file) throws IOException {
+		this.file = file;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+		try {
+			long size = channel.size();
+			int trailerLength = Long.BYTES + ColumnarResultSink.MAGIC.length;
+
+			if (size < ColumnarResultSink.MAGIC.length + trailerLength) {
+				throw new IOException("Not a columnar result file: " + file);
+			}
+
+			ByteBuffer trailer = read(size - trailerLength, trailerLength);
+			long footerOffset = trailer.getLong();
+
+			checkMagic(trailer);
+			checkMagic(read(0, ColumnarResultSink.MAGIC.length));
+
+			ByteBuffer footer = read(footerOffset, (int) (size - trailerLength - footerOffset));
+
+			headers = new String[footer.getInt()];
+
+			for (int i = 0; i < headers.length; i++) {
+				headers[i] = readString(footer);
+			}
+
+			rowCounts = new int[footer.getInt()];
+			statistics = new ColumnStatistics[rowCounts.length][headers.length];
+
+			for (int rowGroup = 0; rowGroup < rowCounts.length; rowGroup++) {
+				rowCounts[rowGroup] = footer.getInt();
+
+				for (int column = 0; column < headers.length; column++) {
+					long offset = footer.getLong();
+					int length = footer.getInt();
+					byte encoding = footer.get();
+					int nullCount = footer.getInt();
+
+					if (encoding == ColumnarResultSink.ENCODING_PACKED_LONG) {
+						long min = footer.getLong();
+						long max = footer.getLong();
+
+						statistics[rowGroup][column] = new ColumnStatistics(offset, length, encoding, nullCount, min, max, Long.toString(min), Long.toString(max));
+					} else {
+						boolean hasMinMax = footer.get() != 0;
+
+						String min = hasMinMax ? readString(footer) : null;
+						String max = hasMinMax ? readString(footer) : null;
+
+						statistics[rowGroup][column] = new ColumnStatistics(offset, length, encoding, nullCount, 0, 0, min, max);
+					}
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+
+			throw e;
+		}
+	}
+
+	/**
+	 * @return String[] - column names
+	 */
+	String[] getHeaders() {
+		return headers.clone();
+	}
+
+	/**
+	 * @return int - number of row groups
+	 */
+	int getRowGroupCount() {
+		return rowCounts.length;
+	}
+
+	/**
+	 * @return long - number of rows of all row groups
+	 */
+	long getRowCount() {
+		long rowCount = 0;
+
+		for (int count : rowCounts) {
+			rowCount += count;
+		}
+
+		return rowCount;
+	}
+
+	/**
+	 * Returns statistics of a column in a row group.
+	 *
+	 * @param rowGroup	- row group index
+	 * @param column	- column name
+	 *
+	 * @return ColumnStatistics
+	 */
+	ColumnStatistics getStatistics(int rowGroup, String column) {
+		return statistics[rowGroup][columnIndexOf(column)];
+	}
+
+	/**
+	 * Reads the values of a column in a row group.
+	 *
+	 * @param rowGroup	- row group index
+	 * @param column	- column name
+	 *
+	 * @throws IOException -
+	 *
+	 * @return String[] - values, null for null values
+	 */
+	String[] readColumn(int rowGroup, String column) throws IOException {
+		return readColumn(rowGroup, columnIndexOf(column));
+	}
+
+	/**
+	 * Reads the values of a numeric column in a row group without converting them to text.
+	 *
+	 * @param rowGroup	- row group index
+	 * @param column	- column name
+	 * @param nullValue	- value of null rows
+	 *
+	 * @throws IOException -
+	 *
+	 * @return long[]
+	 */
+	long[] readLongColumn(int rowGroup, String column, long nullValue) throws IOException {
+		ColumnStatistics columnStatistics = getStatistics(rowGroup, column);
+
+		int rowCount = rowCounts[rowGroup];
+
+		long[] values = new long[rowCount];
+
+		if (!columnStatistics.isNumeric()) {
+			if (columnStatistics.nullCount == rowCount) {
+				Arrays.fill(values, nullValue);
+
+				return values;
+			}
+
+			throw new IllegalArgumentException("Column " + column + " is not numeric in row group " + rowGroup + " of " + file);
+		}
+
+		ByteBuffer chunk = read(columnStatistics.offset, columnStatistics.length);
+		long[] nullBitmap = readNullBitmap(chunk, columnStatistics, rowCount);
+
+		long min = chunk.getLong();
+		int bitWidth = chunk.get();
+
+		BitUnpacker unpacker = new BitUnpacker(chunk, bitWidth);
+
+		for (int row = 0; row < rowCount; row++) {
+			values[row] = isNull(nullBitmap, row) ? nullValue : min + unpacker.next();
+		}
+
+		return values;
+	}
+
+	/**
+	 * Reads all rows whose value of column is a whole number between min and max, skipping row groups whose statistics
+	 * show that no value can match. Rows are passed as the same reused map, with their values in {@link #getHeaders()}
+	 * order.
+	 *
+	 * @param column	- filtered column name
+	 * @param min		- minimum value, inclusive
+	 * @param max		- maximum value, inclusive
+	 * @param consumer	- receives matching rows
+	 *
+	 * @throws IOException -
+	 */
+	void scan(String column, long min, long max, Consumer<Map<String, String>> consumer) throws IOException {
+		scan(columnIndexOf(column), columnStatistics -> !columnStatistics.isNumeric() || (columnStatistics.minLong <= max && columnStatistics.maxLong >= min), value -> {
+			if (!ColumnarResultSink.isCanonicalLong(value)) {
+				return false;
+			}
+
+			long number = Long.parseLong(value);
+
+			return number >= min && number <= max;
+		}, consumer);
+	}
+
+	/**
+	 * Reads all rows whose value of column is between min and max, compared as text, skipping row groups whose
+	 * statistics show that no value can match. Rows are passed as the same reused map, with their values in
+	 * {@link #getHeaders()} order.
+	 *
+	 * @param column	- filtered column name
+	 * @param min		- minimum value, inclusive, null for no minimum
+	 * @param max		- maximum value, inclusive, null for no maximum
+	 * @param consumer	- receives matching rows
+	 *
+	 * @throws IOException -
+	 */
+	void scan(String column, String min, String max, Consumer<Map<String, String>> consumer) throws IOException {
+		// Text order of numbers is not their numeric order, so only text statistics can skip a row group.
+		scan(columnIndexOf(column), columnStatistics -> columnStatistics.isNumeric() || ((max == null || columnStatistics.min.compareTo(max) <= 0) && (min == null || columnStatistics.max.compareTo(min) >= 0)), value -> (min == null || value.compareTo(min) >= 0) && (max == null || value.compareTo(max) <= 0), consumer);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Reads the values of a column in a row group.
+	 *
+	 * @param rowGroup	- row group index
+	 * @param column	- column index
+	 *
+	 * @throws IOException -
+	 *
+	 * @return String[] - values, null for null values
+	 */
+	private String[] readColumn(int rowGroup, int column) throws IOException {
+		ColumnStatistics columnStatistics = statistics[rowGroup][column];
+
+		int rowCount = rowCounts[rowGroup];
+
+		String[] values = new String[rowCount];
+
+		if (columnStatistics.nullCount == rowCount) {
+			return values;
+		}
+
+		ByteBuffer chunk = read(columnStatistics.offset, columnStatistics.length);
+		long[] nullBitmap = readNullBitmap(chunk, columnStatistics, rowCount);
+
+		if (columnStatistics.encoding == ColumnarResultSink.ENCODING_PACKED_LONG) {
+			long min = chunk.getLong();
+			BitUnpacker unpacker = new BitUnpacker(chunk, chunk.get());
+
+			for (int row = 0; row < rowCount; row++) {
+				if (!isNull(nullBitmap, row)) {
+					values[row] = Long.toString(min + unpacker.next());
+				}
+			}
+		} else if (columnStatistics.encoding == ColumnarResultSink.ENCODING_DICTIONARY) {
+			String[] dictionary = new String[chunk.getInt()];
+
+			for (int i = 0; i < dictionary.length; i++) {
+				dictionary[i] = readString(chunk);
+			}
+
+			BitUnpacker unpacker = new BitUnpacker(chunk, chunk.get());
+
+			for (int row = 0; row < rowCount; row++) {
+				if (!isNull(nullBitmap, row)) {
+					values[row] = dictionary[(int) unpacker.next()];
+				}
+			}
+		} else {
+			for (int row = 0; row < rowCount; row++) {
+				if (!isNull(nullBitmap, row)) {
+					values[row] = readString(chunk);
+				}
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * Reads all rows whose value of filter column matches, skipping row groups that can't match.
+	 *
+	 * @param filterColumn	- filtered column index
+	 * @param mayMatch		- returns false for column chunk statistics of row groups without matches
+	 * @param matches		- returns true for matching non null values
+	 * @param consumer		- receives matching rows
+	 *
+	 * @throws IOException -
+	 */
+	private void scan(int filterColumn, Predicate<ColumnStatistics> mayMatch, Predicate<String> matches, Consumer<Map<String, String>> consumer) throws IOException {
+		Map<String, String> row = new LinkedHashMap<>();
+		String[][] values = new String[headers.length][];
+
+		for (int rowGroup = 0; rowGroup < rowCounts.length; rowGroup++) {
+			ColumnStatistics columnStatistics = statistics[rowGroup][filterColumn];
+
+			if (columnStatistics.min == null || !mayMatch.test(columnStatistics)) {
+				continue;
+			}
+
+			// The filtered column is decoded first, other columns only if some row matches.
+			String[] filterValues = readColumn(rowGroup, filterColumn);
+
+			boolean[] matchingRows = new boolean[filterValues.length];
+			boolean anyMatch = false;
+
+			for (int i = 0; i < filterValues.length; i++) {
+				matchingRows[i] = filterValues[i] != null && matches.test(filterValues[i]);
+				anyMatch |= matchingRows[i];
+			}
+
+			if (!anyMatch) {
+				continue;
+			}
+
+			for (int c = 0; c < headers.length; c++) {
+				values[c] = c == filterColumn ? filterValues : readColumn(rowGroup, c);
+			}
+
+			for (int i = 0; i < filterValues.length; i++) {
+				if (matchingRows[i]) {
+					row.clear();
+
+					for (int c = 0; c < headers.length; c++) {
+						row.put(headers[c], values[c][i]);
+					}
+
+					consumer.accept(row);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the null bitmap at the start of a column chunk.
+	 *
+	 * @param chunk				- column chunk, positioned at its start
+	 * @param columnStatistics	- column chunk statistics
+	 * @param rowCount			- number of rows
+	 *
+	 * @return long[] - null bitmap, null if the chunk has no null values
+	 */
+	private static long[] readNullBitmap(ByteBuffer chunk, ColumnStatistics columnStatistics, int rowCount) {
+		if (columnStatistics.nullCount == 0) {
+			return null;
+		}
+
+		long[] nullBitmap = new long[(rowCount + 63) / 64];
+
+		for (int i = 0; i < nullBitmap.length; i++) {
+			nullBitmap[i] = chunk.getLong();
+		}
+
+		return nullBitmap;
+	}
+
+	/**
+	 * @param nullBitmap	- null bitmap, null if there are no nulls
+	 * @param row			- row index
+	 *
+	 * @return boolean - true if the value of row is null
+	 */
+	private static boolean isNull(long[] nullBitmap, int row) {
+		return nullBitmap != null && (nullBitmap[row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * Returns the index of column.
+	 *
+	 * @param column - column name
+	 *
+	 * @return int
+	 */
+	private int columnIndexOf(String column) {
+		for (int i = 0; i < headers.length; i++) {
+			if (headers[i].equals(column)) {
+				return i;
+			}
+		}
+
+		throw new IllegalArgumentException("Unknown column " + column + " in " + file);
+	}
+
+	/**
+	 * Reads bytes of the file.
+	 *
+	 * @param offset - file offset
+	 * @param length - number of bytes
+	 *
+	 * @throws IOException -
+	 *
+	 * @return ByteBuffer - buffer positioned at the first byte
+	 */
+	private ByteBuffer read(long offset, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) {
+				throw new EOFException("Unexpected end of " + file);
+			}
+		}
+
+		buffer.flip();
+
+		return buffer;
+	}
+
+	/**
+	 * Checks the magic bytes at the position of buffer.
+	 *
+	 * @param buffer - buffer
+	 *
+	 * @throws IOException - if the magic bytes don't match
+	 */
+	private void checkMagic(ByteBuffer buffer) throws IOException {
+		byte[] magic = new byte[ColumnarResultSink.MAGIC.length];
+		buffer.get(magic);
+
+		if (!Arrays.equals(magic, ColumnarResultSink.MAGIC)) {
+			throw new IOException("Not a columnar result file: " + file);
+		}
+	}
+
+	/**
+	 * Reads string written by {@link ColumnarResultSink#writeString(java.io.DataOutputStream, String)}.
+	 *
+	 * @param buffer - buffer
+	 *
+	 * @return String
+	 */
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+
+		String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+
+		buffer.position(buffer.position() + length);
+
+		return value;
+	}
+
+	/**
+	 * Reads values packed with a fixed number of bits each.
+	 */
+	private static final class BitUnpacker {
+
+		/**
+		 * Packed words.
+		 */
+		private final ByteBuffer buffer;
+
+		/**
+		 * Bits per value.
+		 */
+		private final int bitWidth;
+
+		/**
+		 * Mask of the bits of a value.
+		 */
+		private final long mask;
+
+		/**
+		 * Current word.
+		 */
+		private long word;
+
+		/**
+		 * Number of bits of the current word not read yet.
+		 */
+		private int bitsLeft;
+
+		BitUnpacker(ByteBuffer buffer, int bitWidth) {
+			this.buffer = buffer;
+			this.bitWidth = bitWidth;
+			this.mask = bitWidth == 64 ? -1L : (1L << bitWidth) - 1;
+		}
+
+		/**
+		 * @return long - next value
+		 */
+		long next() {
+			if (bitWidth == 0) {
+				return 0;
+			}
+
+			if (bitsLeft == 0) {
+				word = buffer.getLong();
+				bitsLeft = 64;
+			}
+
+			if (bitWidth <= bitsLeft) {
+				long value = (word >>> (64 - bitsLeft)) & mask;
+				bitsLeft -= bitWidth;
+
+				return value;
+			}
+
+			// Value continues in the next word.
+			long low = word >>> (64 - bitsLeft);
+			int lowBits = bitsLeft;
+
+			word = buffer.getLong();
+			bitsLeft = 64 - (bitWidth - lowBits);
+
+			return (low | (word << lowBits)) & mask;
+		}
+	}
+}
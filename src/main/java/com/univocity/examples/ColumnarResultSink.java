@@ -0,0 +1,557 @@
+package com.univocity.examples;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes records to a compact columnar binary file, to be read back with {@link ColumnarResultReader}.
+ *
+ * Records are buffered into row groups. When a row group is full every column is encoded on its own:
+ * <ul>
+ *     <li>columns whose values are all whole numbers are bit-packed as offsets from the column minimum;</li>
+ *     <li>columns with few distinct values, like property type or suburb, are dictionary encoded with bit-packed codes;</li>
+ *     <li>other columns are written as plain UTF-8 strings.</li>
+ * </ul>
+ * Each column of each row group records its null count and min/max values, so readers can skip row groups that can't
+ * match a filter. The footer at the end of the file holds the column names and the location and statistics of every
+ * column chunk.
+ *
+ * File layout: 'RECOLS01', column chunks of each row group, footer, footer offset (8 bytes), 'RECOLS01'.
+ */
+class ColumnarResultSink implements RecordSink {
+
+	/**
+	 * Magic bytes at the start and the end of the file.
+	 */
+	static final byte[] MAGIC = "RECOLS01".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Column of whole numbers, bit-packed as offsets from the minimum.
+	 */
+	static final byte ENCODING_PACKED_LONG = 1;
+
+	/**
+	 * Column of strings, dictionary encoded with bit-packed codes.
+	 */
+	static final byte ENCODING_DICTIONARY = 2;
+
+	/**
+	 * Column of plain strings.
+	 */
+	static final byte ENCODING_PLAIN = 3;
+
+	/**
+	 * Default number of rows per row group.
+	 */
+	static final int DEFAULT_ROW_GROUP_SIZE = 65_536;
+
+	/**
+	 * Maximum dictionary size. Columns with more distinct values in a row group are written as plain strings.
+	 */
+	private static final int MAX_DICTIONARY_SIZE = 4_096;
+
+	/**
+	 * Name of parser that produced the results, used in log output.
+	 */
+	private final String parserName;
+
+	/**
+	 * Result file.
+	 */
+	private final File resultFile;
+
+	/**
+	 * Maximum number of rows per row group.
+	 */
+	private final int rowGroupSize;
+
+	/**
+	 * Declared field names.
+	 */
+	private String[] headers;
+
+	/**
+	 * Buffered values of the current row group, by column.
+	 */
+	private String[][] columns;
+
+	/**
+	 * Number of rows in the current row group.
+	 */
+	private int bufferedRows;
+
+	/**
+	 * Output file.
+	 */
+	private DataOutputStream out;
+
+	/**
+	 * Number of bytes written to the output file.
+	 */
+	private long position;
+
+	/**
+	 * Footer content, one entry per row group.
+	 */
+	private ByteArrayOutputStream footerRowGroups;
+
+	/**
+	 * Number of row groups written.
+	 */
+	private int rowGroupCount;
+
+	/**
+	 * Number of records written.
+	 */
+	private int recordCount;
+
+	/**
+	 * Creates sink with row groups of {@link #DEFAULT_ROW_GROUP_SIZE} rows.
+	 *
+	 * @param parserName	- parser name
+	 * @param resultFile	- result file
+	 */
+	ColumnarResultSink(String parserName, File resultFile) {
+		this(parserName, resultFile, DEFAULT_ROW_GROUP_SIZE);
+	}
+
+	/**
+	 * Creates sink.
+	 *
+	 * @param parserName	- parser name
+	 * @param resultFile	- result file
+	 * @param rowGroupSize	- maximum number of rows per row group
+	 */
+	ColumnarResultSink(String parserName, File resultFile, int rowGroupSize) {
+		if (rowGroupSize < 1) {
+			throw new IllegalArgumentException("Row group size must be positive: " + rowGroupSize);
+		}
+
+		this.parserName = parserName;
+		this.resultFile = resultFile;
+		this.rowGroupSize = rowGroupSize;
+	}
+
+	@Override
+	public void open(String... headers) {
+		if (out != null) {
+			throw new IllegalStateException("Sink is already open: " + resultFile);
+		}
+
+		this.headers = headers.clone();
+		this.columns = new String[headers.length][rowGroupSize];
+		this.footerRowGroups = new ByteArrayOutputStream();
+
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(resultFile), 1 << 16));
+			out.write(MAGIC);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to open " + resultFile, e);
+		}
+
+		position = MAGIC.length;
+	}
+
+	@Override
+	public void write(Map<String, String> record) {
+		if (out == null) {
+			throw new IllegalStateException("Sink is not open: " + resultFile);
+		}
+
+		try {
+			for (int i = 0; i < headers.length; i++) {
+				columns[i][bufferedRows] = record.get(headers[i]);
+			}
+
+			bufferedRows++;
+			recordCount++;
+
+			if (bufferedRows == rowGroupSize) {
+				writeRowGroup();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to write " + resultFile, e);
+		}
+	}
+
+	@Override
+	public void writeRow(String[] values) {
+		if (out == null) {
+			throw new IllegalStateException("Sink is not open: " + resultFile);
+		}
+
+		try {
+			for (int i = 0; i < headers.length; i++) {
+				columns[i][bufferedRows] = i < values.length ? values[i] : null;
+			}
+
+			bufferedRows++;
+			recordCount++;
+
+			if (bufferedRows == rowGroupSize) {
+				writeRowGroup();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to write " + resultFile, e);
+		}
+	}
+
+	@Override
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	@Override
+	public void close() {
+		if (out == null) {
+			return;
+		}
+
+		try {
+			if (bufferedRows > 0) {
+				writeRowGroup();
+			}
+
+			long footerOffset = position;
+
+			out.writeInt(headers.length);
+
+			for (String header : headers) {
+				writeString(out, header);
+			}
+
+			out.writeInt(rowGroupCount);
+			footerRowGroups.writeTo(out);
+
+			out.writeLong(footerOffset);
+			out.write(MAGIC);
+			out.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to write " + resultFile, e);
+		} finally {
+			out = null;
+			columns = null;
+		}
+
+		System.out.println(parserName + " captured " + recordCount + " records. Columnar results saved to " + resultFile.getAbsolutePath());
+	}
+
+	/**
+	 * Encodes and writes the buffered rows, and adds their chunk locations and statistics to the footer.
+	 *
+	 * @throws IOException -
+	 */
+	private void writeRowGroup() throws IOException {
+		DataOutputStream footer = new DataOutputStream(footerRowGroups);
+		footer.writeInt(bufferedRows);
+
+		ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+
+		for (String[] column : columns) {
+			chunk.reset();
+
+			ColumnChunk columnChunk = encode(column, bufferedRows, new DataOutputStream(chunk));
+
+			footer.writeLong(position);
+			footer.writeInt(chunk.size());
+			footer.writeByte(columnChunk.encoding);
+			footer.writeInt(columnChunk.nullCount);
+
+			if (columnChunk.encoding == ENCODING_PACKED_LONG) {
+				footer.writeLong(columnChunk.minLong);
+				footer.writeLong(columnChunk.maxLong);
+			} else {
+				footer.writeBoolean(columnChunk.minString != null);
+
+				if (columnChunk.minString != null) {
+					writeString(footer, columnChunk.minString);
+					writeString(footer, columnChunk.maxString);
+				}
+			}
+
+			chunk.writeTo(out);
+			position += chunk.size();
+
+			Arrays.fill(column, 0, bufferedRows, null);
+		}
+
+		footer.flush();
+
+		rowGroupCount++;
+		bufferedRows = 0;
+	}
+
+	/**
+	 * Encodes the values of one column of a row group: null bitmap if there are nulls, then the non null values.
+	 *
+	 * @param values	- column values
+	 * @param rowCount	- number of rows
+	 * @param chunk		- target
+	 *
+	 * @throws IOException -
+	 *
+	 * @return ColumnChunk - encoding and statistics
+	 */
+	private static ColumnChunk encode(String[] values, int rowCount, DataOutputStream chunk) throws IOException {
+		ColumnChunk columnChunk = new ColumnChunk();
+
+		long[] nullBitmap = new long[(rowCount + 63) / 64];
+		long[] numbers = new long[rowCount];
+
+		boolean allNumbers = true;
+		int nonNullCount = 0;
+
+		Map<String, Integer> dictionary = new HashMap<>();
+
+		for (int row = 0; row < rowCount; row++) {
+			String value = values[row];
+
+			if (value == null) {
+				nullBitmap[row >>> 6] |= 1L << row;
+				columnChunk.nullCount++;
+
+				continue;
+			}
+
+			if (allNumbers) {
+				allNumbers = isCanonicalLong(value);
+
+				if (allNumbers) {
+					numbers[nonNullCount] = Long.parseLong(value);
+				}
+			}
+
+			if (dictionary.size() <= MAX_DICTIONARY_SIZE) {
+				dictionary.putIfAbsent(value, dictionary.size());
+			}
+
+			if (columnChunk.minString == null || value.compareTo(columnChunk.minString) < 0) {
+				columnChunk.minString = value;
+			}
+
+			if (columnChunk.maxString == null || value.compareTo(columnChunk.maxString) > 0) {
+				columnChunk.maxString = value;
+			}
+
+			nonNullCount++;
+		}
+
+		if (columnChunk.nullCount > 0) {
+			for (long word : nullBitmap) {
+				chunk.writeLong(word);
+			}
+		}
+
+		if (allNumbers && nonNullCount > 0) {
+			columnChunk.encoding = ENCODING_PACKED_LONG;
+			columnChunk.minLong = Long.MAX_VALUE;
+			columnChunk.maxLong = Long.MIN_VALUE;
+
+			for (int i = 0; i < nonNullCount; i++) {
+				columnChunk.minLong = Math.min(columnChunk.minLong, numbers[i]);
+				columnChunk.maxLong = Math.max(columnChunk.maxLong, numbers[i]);
+			}
+
+			for (int i = 0; i < nonNullCount; i++) {
+				numbers[i] -= columnChunk.minLong;
+			}
+
+			int bitWidth = bitWidth(columnChunk.maxLong - columnChunk.minLong);
+
+			chunk.writeLong(columnChunk.minLong);
+			chunk.writeByte(bitWidth);
+
+			pack(numbers, nonNullCount, bitWidth, chunk);
+		} else if (nonNullCount > 0 && dictionary.size() <= MAX_DICTIONARY_SIZE && dictionary.size() * 2 <= nonNullCount) {
+			columnChunk.encoding = ENCODING_DICTIONARY;
+
+			String[] entries = new String[dictionary.size()];
+
+			for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+				entries[entry.getValue()] = entry.getKey();
+			}
+
+			chunk.writeInt(entries.length);
+
+			for (String entry : entries) {
+				writeString(chunk, entry);
+			}
+
+			int codeCount = 0;
+
+			for (int row = 0; row < rowCount; row++) {
+				if (values[row] != null) {
+					numbers[codeCount++] = dictionary.get(values[row]);
+				}
+			}
+
+			int bitWidth = bitWidth(entries.length - 1);
+
+			chunk.writeByte(bitWidth);
+
+			pack(numbers, codeCount, bitWidth, chunk);
+		} else {
+			columnChunk.encoding = ENCODING_PLAIN;
+
+			for (int row = 0; row < rowCount; row++) {
+				if (values[row] != null) {
+					writeString(chunk, values[row]);
+				}
+			}
+		}
+
+		chunk.flush();
+
+		return columnChunk;
+	}
+
+	/**
+	 * Writes values with bitWidth bits each, packed in big endian longs.
+	 *
+	 * @param values	- values, all between 0 and 2^bitWidth - 1
+	 * @param count		- number of values
+	 * @param bitWidth	- bits per value, 0 to 64
+	 * @param out		- target
+	 *
+	 * @throws IOException -
+	 */
+	private static void pack(long[] values, int count, int bitWidth, DataOutputStream out) throws IOException {
+		if (bitWidth == 0) {
+			return;
+		}
+
+		long word = 0;
+		int bitsInWord = 0;
+
+		for (int i = 0; i < count; i++) {
+			long value = values[i];
+
+			int free = 64 - bitsInWord;
+
+			if (bitWidth <= free) {
+				word |= value << bitsInWord;
+				bitsInWord += bitWidth;
+			} else {
+				word |= value << bitsInWord;
+				out.writeLong(word);
+
+				word = value >>> free;
+				bitsInWord = bitWidth - free;
+			}
+
+			if (bitsInWord == 64) {
+				out.writeLong(word);
+
+				word = 0;
+				bitsInWord = 0;
+			}
+		}
+
+		if (bitsInWord > 0) {
+			out.writeLong(word);
+		}
+	}
+
+	/**
+	 * Returns the number of bits needed to store value.
+	 *
+	 * @param value - non negative value, or a difference that overflowed to negative
+	 *
+	 * @return int - 0 to 64
+	 */
+	static int bitWidth(long value) {
+		return 64 - Long.numberOfLeadingZeros(value);
+	}
+
+	/**
+	 * Returns true if value is a whole number that {@link Long#toString(long)} writes exactly the same way, so it can be
+	 * stored as a number without changing the text read back.
+	 *
+	 * @param value - value
+	 *
+	 * @return boolean
+	 */
+	static boolean isCanonicalLong(String value) {
+		int length = value.length();
+		int start = value.startsWith("-") ? 1 : 0;
+
+		// 18 digits always fit in a long.
+		if (length == start || length - start > 18) {
+			return false;
+		}
+
+		if (value.charAt(start) == '0' && (length - start > 1 || start == 1)) {
+			return false;
+		}
+
+		for (int i = start; i < length; i++) {
+			char ch = value.charAt(i);
+
+			if (ch < '0' || ch > '9') {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Writes string as its UTF-8 byte count and bytes.
+	 *
+	 * @param out	- target
+	 * @param value	- string
+	 *
+	 * @throws IOException -
+	 */
+	static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Encoding and statistics of a column chunk.
+	 */
+	private static final class ColumnChunk {
+
+		/**
+		 * Encoding.
+		 */
+		private byte encoding;
+
+		/**
+		 * Number of null values.
+		 */
+		private int nullCount;
+
+		/**
+		 * Minimum of a number column.
+		 */
+		private long minLong;
+
+		/**
+		 * Maximum of a number column.
+		 */
+		private long maxLong;
+
+		/**
+		 * Minimum of a string column, null if all values are null.
+		 */
+		private String minString;
+
+		/**
+		 * Maximum of a string column, null if all values are null.
+		 */
+		private String maxString;
+	}
+}
@@ -0,0 +1,152 @@
+package com.univocity.examples;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * Fetches pages on a fixed pool of workers. Requests are sent when the {@link FetchPolicy} of their host allows it, which limits the
+ * number of simultaneous connections and, optionally, the rate of requests sent to each host, and retries failures.
+ * Tasks are submitted with {@link #execute(Runnable)}, usually by the fetch stage of a {@link CrawlPipeline}, which keeps their results
+ * in submission order.
+ *
+ * If a {@link PageCache} is given pages are fetched through it, and only requests actually sent count against the
+ * connection limit.
+ */
+class ConcurrentPageFetcher implements Closeable {
+
+	/**
+	 * Worker count running each task on its own virtual thread, see {@link #ConcurrentPageFetcher(int, FetchPolicy, PageCache)}.
+	 */
+	static final int VIRTUAL_THREAD_PER_TASK = 0;
+
+	/**
+	 * Workers running the submitted tasks.
+	 */
+	private final ExecutorService executorService;
+
+	/**
+	 * Decides when requests are sent and retries them.
+	 */
+	private final FetchPolicy fetchPolicy;
+
+	/**
+	 * Page cache, null to always download pages.
+	 */
+	private final PageCache pageCache;
+
+	/**
+	 * Creates fetcher. With {@link #VIRTUAL_THREAD_PER_TASK} each task, usually one listing, runs on its own virtual thread, so thousands
+	 * of fetches can wait on the network at the same time and only the fetch policy limits how many requests are sent. Virtual threads
+	 * need Java 21, on older JVMs a pool of 8 worker threads per processor is used instead.
+	 *
+	 * @param workerCount	- number of worker threads, 1 fetches pages one after another, {@link #VIRTUAL_THREAD_PER_TASK} for virtual threads
+	 * @param fetchPolicy	- decides when requests are sent and retries them, closed with this fetcher
+	 * @param pageCache		- page cache, null to always download pages
+	 */
+	ConcurrentPageFetcher(int workerCount, FetchPolicy fetchPolicy, PageCache pageCache) {
+		if (workerCount < 0) {
+			throw new IllegalArgumentException("Worker count can't be negative: " + workerCount);
+		}
+
+		this.fetchPolicy = fetchPolicy;
+		this.pageCache = pageCache;
+
+		ExecutorService virtualThreadExecutor = workerCount == VIRTUAL_THREAD_PER_TASK ? newVirtualThreadPerTaskExecutor() : null;
+
+		if (virtualThreadExecutor != null) {
+			this.executorService = virtualThreadExecutor;
+		} else {
+			AtomicInteger threadIndex = new AtomicInteger();
+
+			this.executorService = Executors.newFixedThreadPool(workerCount == VIRTUAL_THREAD_PER_TASK ? Runtime.getRuntime().availableProcessors() * 8 : workerCount, runnable -> {
+				Thread thread = new Thread(runnable, "page-fetcher-" + threadIndex.incrementAndGet());
+				thread.setDaemon(true);
+
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Creates executor starting a virtual thread per task. The project compiles for Java 8, so the Java 21 factory is looked up by name.
+	 *
+	 * @return ExecutorService - executor, null if the running JVM has no virtual threads
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			System.out.println("Virtual threads are not available on Java " + System.getProperty("java.specification.version") + ", using worker threads");
+
+			return null;
+		}
+	}
+
+	/**
+	 * Returns parsed page from the cache, or downloads it.
+	 *
+	 * @param url - absolute page URL
+	 *
+	 * @throws IOException -
+	 *
+	 * @return Document
+	 */
+	Document fetch(String url) throws IOException {
+		return fetchPage(url).parse();
+	}
+
+	/**
+	 * Returns page bytes from the cache, or downloads them.
+	 *
+	 * @param url - absolute page URL
+	 *
+	 * @throws IOException -
+	 *
+	 * @return FetchedPage
+	 */
+	FetchedPage fetchPage(String url) throws IOException {
+		if (pageCache != null) {
+			return pageCache.get(url, fetchPolicy::execute);
+		}
+
+		Connection.Response response = fetchPolicy.execute(Jsoup.connect(url));
+
+		return new FetchedPage(url, response.bodyAsBytes(), response.charset());
+	}
+
+	/**
+	 * Sends request when the fetch policy of its host allows it, bypassing the page cache, i.e. for resources of pages.
+	 *
+	 * @param connection	- request, sent with the transport of the fetch policy
+	 * @param bodyFilter	- decides from the status and headers whether the body is read, null to always read it
+	 *
+	 * @throws IOException -
+	 *
+	 * @return Connection.Response
+	 */
+	Connection.Response send(Connection connection, HttpTransport.BodyFilter bodyFilter) throws IOException {
+		return fetchPolicy.execute(connection, bodyFilter);
+	}
+
+	/**
+	 * Runs task on the workers without waiting for it.
+	 *
+	 * @param task - task, usually calling {@link #fetchPage(String)}
+	 */
+	void execute(Runnable task) {
+		executorService.execute(task);
+	}
+
+	@Override
+	public void close() {
+		executorService.shutdownNow();
+		fetchPolicy.close();
+	}
+}
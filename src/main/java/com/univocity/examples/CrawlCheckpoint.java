@@ -0,0 +1,426 @@
+package com.univocity.examples;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Progress of the crawl of one location, saved while it runs so a crawl that died, after an exception, an out of memory error
+ * or a kill, continues where it stopped instead of starting again from the first page.
+ *
+ * The location is crawled in a fixed order, the links of each page of results one after the other, and its records are written
+ * in that order, so its progress is a cursor: the page of results and the number of its links done. A checkpoint is saved every
+ * '-Dcrawl.checkpointInterval=N' links done (default 25, 0 disables checkpoints), after the results are flushed, with the flushed
+ * length of the results file and the record counts. A resumed crawl truncates the results file to that length, so rows written
+ * after the checkpoint are not duplicated, and continues from the cursor with the archive date of the checkpoint, so pages archived
+ * before it died are read back instead of fetched again. Listings after the cursor, fetched or queued when the crawl died, are
+ * visited again.
+ *
+ * The checkpoint is '{resultsName}.checkpoint', one 'name\tvalue' line per field, replaced atomically. The links captured by the
+ * location are appended to '{resultsName}.listings', whose first lines up to the count in the checkpoint are restored to the
+ * {@link CrawlFrontier} of the resumed crawl, so listings captured before it died are not captured again by another location.
+ * Both files are deleted once the location is complete.
+ *
+ * Only CSV results can be resumed, and not in incremental mode, whose listing index is only saved at the end of a crawl.
+ */
+class CrawlCheckpoint implements Closeable {
+
+	/**
+	 * Resumed page of results, the cursor of a new crawl.
+	 */
+	private final int resumedPageNumber;
+
+	/**
+	 * Links done on the resumed page of results.
+	 */
+	private final int resumedLinkIndex;
+
+	/**
+	 * Checkpoint file.
+	 */
+	private final File checkpointFile;
+
+	/**
+	 * File of the links captured.
+	 */
+	private final File listingsFile;
+
+	/**
+	 * Links done between checkpoints.
+	 */
+	private final int interval;
+
+	/**
+	 * Archive date of the pages of the crawl, i.e. '2018-05-03'.
+	 */
+	private final String date;
+
+	/**
+	 * URL of the current page of results, null before the first one.
+	 */
+	private String pageUrl;
+
+	/**
+	 * Number of the current page of results, starting from 1.
+	 */
+	private int pageNumber;
+
+	/**
+	 * Links done on the current page of results.
+	 */
+	private int linkIndex;
+
+	/**
+	 * Number of links in the listings file, saved and not.
+	 */
+	private int listingCount;
+
+	/**
+	 * Number of links in the listings file at the last checkpoint.
+	 */
+	private int savedListingCount;
+
+	/**
+	 * Records written at the last checkpoint.
+	 */
+	private int recordCount;
+
+	/**
+	 * Listings skipped after failed requests at the last checkpoint.
+	 */
+	private int skippedCount;
+
+	/**
+	 * Flushed length of the results file at the last checkpoint.
+	 */
+	private long outputLength;
+
+	/**
+	 * Links done since the last checkpoint.
+	 */
+	private int pendingLinkCount;
+
+	/**
+	 * Appends to the listings file, null until the first link captured.
+	 */
+	private BufferedWriter listingsWriter;
+
+	/**
+	 * Loads the checkpoint of results, if its results file is still there, or creates a new one.
+	 *
+	 * @param directory		- checkpoint directory
+	 * @param resultsName	- name of the results of the location
+	 * @param resultsFile	- results file, checkpoints are discarded if it is shorter than their flushed length
+	 * @param currentDate	- archive date of a new crawl
+	 * @param interval		- links done between checkpoints
+	 *
+	 * @throws IOException -
+	 */
+	private CrawlCheckpoint(File directory, String resultsName, File resultsFile, String currentDate, int interval) throws IOException {
+		this.checkpointFile = new File(directory, resultsName + ".checkpoint");
+		this.listingsFile = new File(directory, resultsName + ".listings");
+		this.interval = interval;
+
+		Map<String, String> fields = new HashMap<>();
+
+		if (checkpointFile.isFile()) {
+			try (BufferedReader reader = Files.newBufferedReader(checkpointFile.toPath(), StandardCharsets.UTF_8)) {
+				for (String line = reader.readLine(); Objects.nonNull(line); line = reader.readLine()) {
+					int tabIndex = line.indexOf('\t');
+
+					if (tabIndex > 0) {
+						fields.put(line.substring(0, tabIndex), line.substring(tabIndex + 1));
+					}
+				}
+			}
+		}
+
+		long savedOutputLength = fields.containsKey("outputLength") ? Long.parseLong(fields.get("outputLength")) : -1;
+
+		if (savedOutputLength >= 0 && resultsFile.length() >= savedOutputLength && fields.containsKey("pageUrl")) {
+			this.date = fields.get("date");
+			this.pageUrl = fields.get("pageUrl");
+			this.pageNumber = Integer.parseInt(fields.get("pageNumber"));
+			this.linkIndex = Integer.parseInt(fields.get("linkIndex"));
+			this.savedListingCount = Integer.parseInt(fields.get("listingCount"));
+			this.recordCount = Integer.parseInt(fields.get("recordCount"));
+			this.skippedCount = Integer.parseInt(fields.get("skippedCount"));
+			this.outputLength = savedOutputLength;
+		} else {
+			if (checkpointFile.isFile()) {
+				System.out.println("Discarded checkpoint " + checkpointFile.getAbsolutePath() + ", its results are missing or shorter than saved");
+			}
+
+			this.date = currentDate;
+			this.pageNumber = 0;
+			this.outputLength = -1;
+
+			Files.deleteIfExists(checkpointFile.toPath());
+			Files.deleteIfExists(listingsFile.toPath());
+		}
+
+		this.resumedPageNumber = pageNumber;
+		this.resumedLinkIndex = linkIndex;
+		this.listingCount = savedListingCount;
+	}
+
+	/**
+	 * Opens the checkpoint of results under directory, as '{directory}/{resultsName}.checkpoint', unless checkpoints are disabled with
+	 * '-Dcrawl.checkpointInterval=0', results are not written to CSV only or incremental mode is enabled.
+	 *
+	 * @param directory		- checkpoint directory, created if needed
+	 * @param resultsName	- name of the results of the location
+	 * @param resultsFile	- results file
+	 * @param currentDate	- archive date of a new crawl, i.e. '2018-05-03'
+	 *
+	 * @throws IOException -
+	 *
+	 * @return CrawlCheckpoint - checkpoint, resumed if one was saved, null if checkpoints are disabled
+	 */
+	static CrawlCheckpoint openIfEnabled(File directory, String resultsName, File resultsFile, String currentDate) throws IOException {
+		int interval = Integer.getInteger("crawl.checkpointInterval", 25);
+
+		if (interval <= 0 || !"csv".equals(System.getProperty("results.format", "csv")) || Boolean.getBoolean("crawl.incremental")) {
+			return null;
+		}
+
+		Files.createDirectories(directory.toPath());
+
+		return new CrawlCheckpoint(directory, resultsName, resultsFile, currentDate, interval);
+	}
+
+	/**
+	 * Adds the links captured before the checkpoint of results, if there is one, to frontier. Must be called for all locations sharing
+	 * the frontier before any of them is crawled.
+	 *
+	 * @param directory		- checkpoint directory
+	 * @param resultsName	- name of the results of the location
+	 * @param resultsFile	- results file
+	 * @param baseUrl		- URL the links are relative to
+	 * @param frontier		- listings visited by the crawl
+	 *
+	 * @throws IOException -
+	 */
+	static void restoreFrontier(File directory, String resultsName, File resultsFile, String baseUrl, CrawlFrontier frontier) throws IOException {
+		try (CrawlCheckpoint checkpoint = openIfEnabled(directory, resultsName, resultsFile, null)) {
+			if (Objects.isNull(checkpoint) || !checkpoint.isResumed() || checkpoint.savedListingCount == 0) {
+				return;
+			}
+
+			try (BufferedReader reader = Files.newBufferedReader(checkpoint.listingsFile.toPath(), StandardCharsets.UTF_8)) {
+				for (int i = 0; i < checkpoint.savedListingCount; i++) {
+					String link = reader.readLine();
+
+					if (Objects.isNull(link)) {
+						throw new IOException("Listings of checkpoint " + checkpoint.checkpointFile + " are shorter than saved");
+					}
+
+					frontier.add(baseUrl, link);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return boolean - true if the crawl continues from a saved checkpoint
+	 */
+	boolean isResumed() {
+		return resumedPageNumber > 0;
+	}
+
+	/**
+	 * @return String - archive date of the pages of the crawl, the date of the first crawl if resumed
+	 */
+	String getDate() {
+		return date;
+	}
+
+	/**
+	 * @return String - URL of the resumed page of results
+	 */
+	String getPageUrl() {
+		return pageUrl;
+	}
+
+	/**
+	 * @return int - number of the resumed page of results
+	 */
+	int getPageNumber() {
+		return resumedPageNumber;
+	}
+
+	/**
+	 * @return int - records written before the checkpoint
+	 */
+	int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * @return int - listings skipped before the checkpoint
+	 */
+	int getSkippedCount() {
+		return skippedCount;
+	}
+
+	/**
+	 * @return long - length of the results file at the checkpoint
+	 */
+	long getOutputLength() {
+		return outputLength;
+	}
+
+	/**
+	 * Returns the index of the first link of page of results not done yet.
+	 *
+	 * @param pageNumber - page number, starting from 1
+	 *
+	 * @return int - links done before the checkpoint on the resumed page, 0 on other pages
+	 */
+	int firstLinkIndex(int pageNumber) {
+		return pageNumber == resumedPageNumber ? resumedLinkIndex : 0;
+	}
+
+	/**
+	 * Moves the cursor past a link, once its record is written. Links must be done in crawl order.
+	 *
+	 * @param pageNumber	- page number of the link
+	 * @param pageUrl		- URL of the page of the link
+	 * @param linkIndex		- index of the link on its page
+	 * @param capturedLink	- the link, if it was added to the frontier by this location, null if it was already visited
+	 *
+	 * @throws IOException -
+	 *
+	 * @return boolean - true if a checkpoint is due, see {@link #save(long, int, int)}
+	 */
+	boolean advance(int pageNumber, String pageUrl, int linkIndex, String capturedLink) throws IOException {
+		this.pageNumber = pageNumber;
+		this.pageUrl = pageUrl;
+		this.linkIndex = linkIndex + 1;
+
+		if (Objects.nonNull(capturedLink)) {
+			if (Objects.isNull(listingsWriter)) {
+				truncateListings();
+
+				listingsWriter = Files.newBufferedWriter(listingsFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			}
+
+			listingsWriter.write(capturedLink);
+			listingsWriter.newLine();
+
+			listingCount++;
+		}
+
+		return ++pendingLinkCount >= interval;
+	}
+
+	/**
+	 * Saves checkpoint at the cursor.
+	 *
+	 * @param outputLength	- length of the results file, flushed up to the last record written
+	 * @param recordCount	- records written
+	 * @param skippedCount	- listings skipped after failed requests
+	 *
+	 * @throws IOException -
+	 */
+	void save(long outputLength, int recordCount, int skippedCount) throws IOException {
+		if (Objects.nonNull(listingsWriter)) {
+			listingsWriter.flush();
+		}
+
+		File temporaryFile = new File(checkpointFile.getPath() + ".tmp");
+
+		try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile.toPath(), StandardCharsets.UTF_8)) {
+			writer.write("date\t" + date);
+			writer.newLine();
+			writer.write("pageUrl\t" + pageUrl);
+			writer.newLine();
+			writer.write("pageNumber\t" + pageNumber);
+			writer.newLine();
+			writer.write("linkIndex\t" + linkIndex);
+			writer.newLine();
+			writer.write("listingCount\t" + listingCount);
+			writer.newLine();
+			writer.write("recordCount\t" + recordCount);
+			writer.newLine();
+			writer.write("skippedCount\t" + skippedCount);
+			writer.newLine();
+			writer.write("outputLength\t" + outputLength);
+			writer.newLine();
+		}
+
+		Files.move(temporaryFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		this.savedListingCount = listingCount;
+		this.recordCount = recordCount;
+		this.skippedCount = skippedCount;
+		this.outputLength = outputLength;
+		this.pendingLinkCount = 0;
+
+		CrawlMetrics.increment(CrawlMetrics.Counter.CHECKPOINT);
+	}
+
+	/**
+	 * Deletes checkpoint once the location is complete.
+	 *
+	 * @throws IOException -
+	 */
+	void delete() throws IOException {
+		close();
+
+		Files.deleteIfExists(checkpointFile.toPath());
+		Files.deleteIfExists(listingsFile.toPath());
+	}
+
+	/**
+	 * Drops the links appended after the last checkpoint by the crawl that died, before appending new ones.
+	 *
+	 * @throws IOException -
+	 */
+	private void truncateListings() throws IOException {
+		if (!listingsFile.isFile()) {
+			return;
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(listingsFile.toPath(), StandardCharsets.UTF_8)) {
+			long length = 0;
+
+			for (int i = 0; i < savedListingCount; i++) {
+				String link = reader.readLine();
+
+				if (Objects.isNull(link)) {
+					throw new IOException("Listings of checkpoint " + checkpointFile + " are shorter than saved");
+				}
+
+				length += link.getBytes(StandardCharsets.UTF_8).length + System.lineSeparator().length();
+			}
+
+			try (RandomAccessFile file = new RandomAccessFile(listingsFile, "rw")) {
+				file.setLength(length);
+			}
+		}
+	}
+
+	/**
+	 * Closes the listings file, without saving a checkpoint.
+	 *
+	 * @throws IOException -
+	 */
+	@Override
+	public void close() throws IOException {
+		if (Objects.nonNull(listingsWriter)) {
+			listingsWriter.close();
+			listingsWriter = null;
+		}
+	}
+}
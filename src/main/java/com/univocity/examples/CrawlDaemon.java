@@ -0,0 +1,519 @@
+package com.univocity.examples;
+
+import com.univocity.api.entity.html.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.jsoup.Jsoup;
+
+/**
+ * Runs crawl jobs in a long-running process, so short jobs don't pay JVM startup, the license manager, entity list building and
+ * cold extraction code each time.
+ *
+ * At startup the daemon runs the license manager once, builds one univocity entity list per worker with
+ * {@link RealEstateUnivocityParserExample#step4SavePagesLocally()}, opens the fetcher, pipeline and page archive of
+ * {@link RealEstateJSoupParserExample#openCrawler()}, and runs the Jsoup extraction of '-Ddaemon.warmupPages=N' (default 2000) generated
+ * detail pages, see {@link SyntheticSiteServer}, so the JIT has compiled it before the first job. All of it is kept between jobs.
+ *
+ * A job is one line: '{engine} {locationCode} [{resultsName}]', where the engine is 'jsoup' or 'univocity' and the results name defaults
+ * to 'jsoup-houses-{locationCode}' or 'univocity-houses-{locationCode}'. Jobs are accepted:
+ * <ul>
+ * <li>on a local socket, '127.0.0.1:{daemon.port}' (default 7878): each line sent is answered with one line when its job is done,
+ * 'OK {records} records in {ms} ms' or 'FAILED {reason}'. The line 'shutdown' stops the daemon after the running jobs.</li>
+ * <li>in a watched directory, '-Ddaemon.jobDirectory=DIR': each '{name}.job' file holds one job line and is replaced by '{name}.done'
+ * or '{name}.failed' holding the answer. Job files should be written under another name and renamed, so they are never read half written.</li>
+ * </ul>
+ * Location codes and results names can only hold letters, digits, '_' and '-', as they end up in file names. Up to '-Ddaemon.workers=N'
+ * (default 4) jobs run at the same time, sharing the fetcher and pipeline. Jobs writing to the same results name, or crawling the same
+ * location, whose listing index and archived pages are shared, are refused while one is running. Each job has its own {@link CrawlFrontier}.
+ */
+public class CrawlDaemon {
+
+	/**
+	 * Job line stopping the daemon.
+	 */
+	private static final String SHUTDOWN = "shutdown";
+
+	/**
+	 * Directory of the univocity listing indexes, as in {@link RealEstateUnivocityParserExample}.
+	 */
+	private static final File REAL_ESTATE_DIRECTORY = new File(System.getProperty("user.home"), "Downloads/realEstate");
+
+	/**
+	 * Runs the jobs.
+	 */
+	private final ExecutorService jobExecutor;
+
+	/**
+	 * Entity lists built at startup, taken by univocity jobs while they run. Null if univocity jobs are disabled.
+	 */
+	private final BlockingQueue<HtmlEntityList> entityLists;
+
+	/**
+	 * Valid location codes and results names.
+	 */
+	private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
+
+	/**
+	 * Results names of the running jobs.
+	 */
+	private final Set<String> runningResults = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Location codes of the running jobs.
+	 */
+	private final Set<String> runningLocations = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Released by the shutdown job.
+	 */
+	private final CountDownLatch shutdownLatch = new CountDownLatch(1);
+
+	/**
+	 * Socket accepting jobs, null if not listening.
+	 */
+	private ServerSocket serverSocket;
+
+	/**
+	 * Watches the job directory, null if not watching.
+	 */
+	private WatchService watchService;
+
+	/**
+	 * Entry point to application.
+	 *
+	 * @param args - console arguments: none
+	 *
+	 * @throws IOException -
+	 */
+	public static void main(String... args) throws IOException {
+		List<String> engines = Arrays.asList(System.getProperty("daemon.engines", "jsoup,univocity").split(","));
+
+		CrawlDaemon daemon = new CrawlDaemon(Integer.getInteger("daemon.workers", 4), engines.contains("univocity"));
+
+		try {
+			daemon.warmUp(Integer.getInteger("daemon.warmupPages", 2000));
+
+			daemon.listen(Integer.getInteger("daemon.port", 7878));
+
+			if (Objects.nonNull(System.getProperty("daemon.jobDirectory"))) {
+				daemon.watch(new File(System.getProperty("daemon.jobDirectory")));
+			}
+
+			daemon.awaitShutdown();
+		} finally {
+			try {
+				daemon.close();
+			} finally {
+				// Timings of all jobs are saved to 'crawl-daemon-metrics.json' and 'crawl-daemon-metrics.prom'.
+				CrawlMetrics.export("crawl-daemon");
+			}
+		}
+	}
+
+	/**
+	 * Creates daemon, builds its entity lists and opens the Jsoup crawler.
+	 *
+	 * @param workerCount	- maximum number of jobs running at the same time
+	 * @param univocity		- true to accept univocity jobs, which runs the license manager
+	 *
+	 * @throws IOException -
+	 */
+	CrawlDaemon(int workerCount, boolean univocity) throws IOException {
+		if (workerCount < 1) {
+			throw new IllegalArgumentException("Worker count must be positive: " + workerCount);
+		}
+
+		long startTime = System.currentTimeMillis();
+
+		if (univocity) {
+			com.univocity.parsers.html.Main.runLicenseManager();
+
+			entityLists = new ArrayBlockingQueue<>(workerCount);
+
+			for (int i = 0; i < workerCount; i++) {
+				entityLists.add(RealEstateUnivocityParserExample.step4SavePagesLocally());
+			}
+
+			try (PageArchive pageArchive = new PageArchive(new File(REAL_ESTATE_DIRECTORY, "archive"))) {
+				pageArchive.importDayDirectories(REAL_ESTATE_DIRECTORY, LocalDate.now());
+			}
+		} else {
+			entityLists = null;
+		}
+
+		RealEstateJSoupParserExample.openCrawler();
+
+		AtomicInteger threadIndex = new AtomicInteger();
+
+		jobExecutor = Executors.newFixedThreadPool(workerCount, runnable -> {
+			Thread thread = new Thread(runnable, "crawl-job-" + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		System.out.println("Crawl daemon started in " + (System.currentTimeMillis() - startTime) + " ms with " + workerCount + " workers");
+	}
+
+	/**
+	 * Extracts generated detail pages, parsed and streamed, so the extraction code is compiled before the first job. Nothing is
+	 * recorded in the crawl metrics.
+	 *
+	 * @param pageCount - number of pages
+	 *
+	 * @throws IOException -
+	 */
+	void warmUp(int pageCount) throws IOException {
+		if (pageCount <= 0) {
+			return;
+		}
+
+		long startTime = System.currentTimeMillis();
+
+		SyntheticSiteServer site = new SyntheticSiteServer(Math.min(pageCount, 200), 1);
+
+		for (int i = 0; i < pageCount; i++) {
+			byte[] page = site.detailPage(i % 200);
+
+			String link = "/Property/" + i;
+
+			ListingDetailExtractor.HARCOURTS.extractRecord(link, Jsoup.parse(new ByteArrayInputStream(page), "UTF-8", "http://localhost" + link));
+			ListingDetailExtractor.HARCOURTS.extractRecord(link, new ByteArrayInputStream(page), "UTF-8");
+		}
+
+		System.out.println("Extraction warmed up on " + pageCount + " pages in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	/**
+	 * Accepts jobs on a local socket, each connection on its own thread.
+	 *
+	 * @param port - port on the loopback address
+	 *
+	 * @throws IOException -
+	 */
+	void listen(int port) throws IOException {
+		serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+
+		startListener("crawl-daemon-socket", () -> {
+			AtomicInteger connectionIndex = new AtomicInteger();
+
+			while (!serverSocket.isClosed()) {
+				Socket socket;
+
+				try {
+					socket = serverSocket.accept();
+				} catch (IOException e) {
+					// Closed.
+					return;
+				}
+
+				Thread connectionThread = new Thread(() -> answer(socket), "crawl-daemon-connection-" + connectionIndex.incrementAndGet());
+				connectionThread.setDaemon(true);
+				connectionThread.start();
+			}
+		});
+
+		System.out.println("Accepting crawl jobs on " + serverSocket.getLocalSocketAddress());
+	}
+
+	/**
+	 * Accepts jobs in '*.job' files of directory, those already there first.
+	 *
+	 * @param jobDirectory - job directory, created if needed
+	 *
+	 * @throws IOException -
+	 */
+	void watch(File jobDirectory) throws IOException {
+		Path directory = Files.createDirectories(jobDirectory.toPath());
+
+		watchService = directory.getFileSystem().newWatchService();
+		directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+
+		startListener("crawl-daemon-watcher", () -> {
+			try (DirectoryStream<Path> jobFiles = Files.newDirectoryStream(directory, "*.job")) {
+				for (Path jobFile : jobFiles) {
+					runJobFile(jobFile);
+				}
+			} catch (IOException e) {
+				System.err.println("Unable to list jobs of " + directory + ": " + e);
+			}
+
+			try {
+				while (true) {
+					WatchKey key = watchService.take();
+
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.context() instanceof Path && event.context().toString().endsWith(".job")) {
+							runJobFile(directory.resolve((Path) event.context()));
+						}
+					}
+
+					key.reset();
+				}
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				// Closed.
+			}
+		});
+
+		System.out.println("Accepting crawl jobs in " + directory.toAbsolutePath());
+	}
+
+	/**
+	 * Waits for the shutdown job.
+	 *
+	 * @throws InterruptedIOException - if interrupted
+	 */
+	void awaitShutdown() throws InterruptedIOException {
+		try {
+			shutdownLatch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException("Interrupted while waiting for shutdown");
+		}
+	}
+
+	/**
+	 * Stops accepting jobs, waits for the running ones and closes the Jsoup crawler.
+	 *
+	 * @throws IOException -
+	 */
+	void close() throws IOException {
+		if (Objects.nonNull(serverSocket)) {
+			serverSocket.close();
+		}
+
+		if (Objects.nonNull(watchService)) {
+			watchService.close();
+		}
+
+		jobExecutor.shutdown();
+
+		try {
+			jobExecutor.awaitTermination(1, TimeUnit.HOURS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			RealEstateJSoupParserExample.closeCrawler();
+		}
+	}
+
+	/**
+	 * Runs job on the job workers and waits for it.
+	 *
+	 * @param jobLine - job line, see {@link CrawlDaemon}
+	 *
+	 * @return String - answer: 'OK {records} records in {ms} ms' or 'FAILED {reason}'
+	 */
+	String submit(String jobLine) {
+		String job = jobLine.trim();
+
+		if (SHUTDOWN.equalsIgnoreCase(job)) {
+			shutdownLatch.countDown();
+
+			return "OK shutting down";
+		}
+
+		Future<String> answer;
+
+		try {
+			answer = jobExecutor.submit(() -> run(job));
+		} catch (RejectedExecutionException e) {
+			return "FAILED shutting down";
+		}
+
+		try {
+			return answer.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			answer.cancel(true);
+
+			return "FAILED interrupted";
+		} catch (ExecutionException e) {
+			return "FAILED " + e.getCause();
+		}
+	}
+
+	/**
+	 * Runs job.
+	 *
+	 * @param job - job line, see {@link CrawlDaemon}
+	 *
+	 * @return String - answer
+	 */
+	private String run(String job) {
+		String[] parts = job.split("\\s+");
+
+		if (parts.length < 2 || parts.length > 3) {
+			return "FAILED expected '{engine} {locationCode} [{resultsName}]': " + job;
+		}
+
+		String engine = parts[0].toLowerCase(Locale.ROOT);
+		String locationCode = parts[1];
+
+		if (!"jsoup".equals(engine) && !("univocity".equals(engine) && Objects.nonNull(entityLists))) {
+			return "FAILED unknown or disabled engine " + parts[0];
+		}
+
+		String resultsName = parts.length == 3 ? parts[2] : engine + "-houses-" + locationCode;
+
+		// Both end up in file names and archive keys, i.e. '../' would write outside the crawl directories.
+		if (!NAME_PATTERN.matcher(locationCode).matches() || !NAME_PATTERN.matcher(resultsName).matches()) {
+			return "FAILED location codes and results names can only hold letters, digits, '_' and '-': " + job;
+		}
+
+		if (!runningResults.add(resultsName)) {
+			return "FAILED " + resultsName + " is already being crawled";
+		}
+
+		if (!runningLocations.add(locationCode)) {
+			runningResults.remove(resultsName);
+
+			return "FAILED location " + locationCode + " is already being crawled";
+		}
+
+		long startTime = System.currentTimeMillis();
+
+		try {
+			int recordCount;
+
+			if ("jsoup".equals(engine)) {
+				CrawlFrontier frontier = new CrawlFrontier();
+
+				// A job that died continues from its last checkpoint.
+				RealEstateJSoupParserExample.restoreCheckpointedListings(resultsName, frontier);
+
+				recordCount = RealEstateJSoupParserExample.step4SavePagesLocally(RealEstateJSoupParserExample.searchUrl(locationCode), locationCode, resultsName, frontier);
+			} else {
+				HtmlEntityList entityList = entityLists.take();
+
+				try {
+					recordCount = RealEstateUnivocityParserExample.parseLocation(entityList, locationCode, resultsName, REAL_ESTATE_DIRECTORY, new CrawlFrontier());
+				} finally {
+					entityLists.add(entityList);
+				}
+			}
+
+			return "OK " + recordCount + " records in " + (System.currentTimeMillis() - startTime) + " ms";
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			return "FAILED interrupted";
+		} catch (Exception e) {
+			return "FAILED " + e;
+		} finally {
+			runningLocations.remove(locationCode);
+			runningResults.remove(resultsName);
+		}
+	}
+
+	/**
+	 * Answers the job lines of a connection, one at a time, until it is closed.
+	 *
+	 * @param socket - connection
+	 */
+	private void answer(Socket socket) {
+		try (Socket connection = socket;
+			 BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+			 PrintWriter writer = new PrintWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8), true)) {
+			for (String line = reader.readLine(); Objects.nonNull(line); line = reader.readLine()) {
+				if (!line.trim().isEmpty()) {
+					writer.println(submit(line));
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Crawl job connection failed: " + e);
+		}
+	}
+
+	/**
+	 * Runs job of a job file, on its own thread, and replaces the file by its answer.
+	 *
+	 * @param jobFile - '{name}.job' file
+	 */
+	private void runJobFile(Path jobFile) {
+		String name = jobFile.getFileName().toString();
+		Path runningFile = jobFile.resolveSibling(name.substring(0, name.length() - ".job".length()) + ".running");
+
+		try {
+			// Renamed first, so a job is never run twice.
+			Files.move(jobFile, runningFile, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			return;
+		}
+
+		Thread jobThread = new Thread(() -> {
+			String answer;
+
+			try {
+				answer = submit(new String(Files.readAllBytes(runningFile), StandardCharsets.UTF_8));
+			} catch (IOException e) {
+				answer = "FAILED " + e;
+			}
+
+			Path answerFile = runningFile.resolveSibling(name.substring(0, name.length() - ".job".length()) + (answer.startsWith("OK") ? ".done" : ".failed"));
+
+			try {
+				Files.write(answerFile, (answer + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+				Files.delete(runningFile);
+			} catch (IOException e) {
+				System.err.println("Unable to save answer of " + name + ": " + e);
+			}
+		}, "crawl-daemon-" + name);
+
+		jobThread.setDaemon(true);
+		jobThread.start();
+	}
+
+	/**
+	 * Starts daemon thread accepting jobs.
+	 *
+	 * @param name		- thread name
+	 * @param listener	- accepts jobs until the daemon is closed
+	 */
+	private void startListener(String name, Runnable listener) {
+		Thread thread = new Thread(listener, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+}
@@ -0,0 +1,405 @@
+package com.univocity.examples;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Listings already visited by a crawl, shared by all pages and locations, so a listing is fetched and captured only once.
+ *
+ * New listings push others to later pages of results while a location is paged through, so the same listing is often found
+ * on two consecutive pages, and listings near a location border are found in both locations. Links are normalized and
+ * reduced to their listing number, i.e. 'EST6886' for '/Property/307634/EST6886/Springfield', so the same listing linked
+ * with a different host case, suburb or fragment is still recognized.
+ *
+ * Listing numbers made of up to 3 letters and up to 12 digits, as all Harcourts listing numbers are, are packed in a long and
+ * kept in an open addressing table of 16 bytes or less per listing, others are kept as strings. For very large crawls
+ * '-Dcrawl.frontier.expectedListings=N' adds a Bloom filter sized for N listings in front of the exact sets: most links of a
+ * crawl are new, and the filter answers those with a few bit reads instead of a table lookup.
+ */
+class CrawlFrontier {
+
+	/**
+	 * Returned by {@link #pack(String)} for listing numbers that can't be packed.
+	 */
+	private static final long NOT_PACKED = -1L;
+
+	/**
+	 * False positive rate of the Bloom filter at the expected number of listings.
+	 */
+	private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+
+	/**
+	 * Bloom filter bits, null without expected number of listings.
+	 */
+	private final long[] bloomBits;
+
+	/**
+	 * Number of bits of the Bloom filter minus one, the number of bits is a power of 2.
+	 */
+	private final long bloomMask;
+
+	/**
+	 * Number of bits set in the Bloom filter per listing.
+	 */
+	private final int bloomHashCount;
+
+	/**
+	 * Packed listing numbers, 0 marks empty slots.
+	 */
+	private long[] packedKeys = new long[1024];
+
+	/**
+	 * Number of packed listing numbers.
+	 */
+	private int packedCount;
+
+	/**
+	 * Listing numbers, or URLs, that can't be packed.
+	 */
+	private final Set<String> otherKeys = new HashSet<>();
+
+	/**
+	 * Number of links dropped because their listing was already visited.
+	 */
+	private int duplicateCount;
+
+	/**
+	 * Creates frontier, with a Bloom filter if '-Dcrawl.frontier.expectedListings=N' is set.
+	 */
+	CrawlFrontier() {
+		this(Integer.getInteger("crawl.frontier.expectedListings", 0));
+	}
+
+	/**
+	 * Creates frontier.
+	 *
+	 * @param expectedListings - expected number of listings of the crawl, sizes the Bloom filter. 0 for no Bloom filter
+	 */
+	CrawlFrontier(int expectedListings) {
+		if (expectedListings < 0) {
+			throw new IllegalArgumentException("Expected listings can't be negative: " + expectedListings);
+		}
+
+		if (expectedListings == 0) {
+			this.bloomBits = null;
+			this.bloomMask = 0;
+			this.bloomHashCount = 0;
+		} else {
+			// m = -n ln(p) / ln(2)^2 bits, rounded up to a power of 2, and k = m / n ln(2) hashes.
+			long bitCount = Long.highestOneBit((long) Math.ceil(-expectedListings * Math.log(BLOOM_FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2))) * 2 - 1);
+			bitCount = Math.max(bitCount, 64);
+
+			this.bloomBits = new long[(int) (bitCount >>> 6)];
+			this.bloomMask = bitCount - 1;
+			this.bloomHashCount = Math.max(1, (int) Math.round((double) bitCount / expectedListings * Math.log(2)));
+		}
+	}
+
+	/**
+	 * Returns absolute, normalized URL of link: scheme and host in lower case, without default port, fragment, dot segments
+	 * or trailing slash.
+	 *
+	 * @param baseUrl	- URL of the page holding the link
+	 * @param link		- link, absolute or relative
+	 *
+	 * @return String - normalized URL, the link resolved against the base URL if it can't be parsed
+	 */
+	static String normalizeUrl(String baseUrl, String link) {
+		try {
+			URI base = new URI(baseUrl);
+
+			// Relative links would be appended to the host of a base URL without path.
+			if (base.getRawPath() == null || base.getRawPath().isEmpty()) {
+				base = base.resolve("/");
+			}
+
+			URI uri = base.resolve(link.trim()).normalize();
+
+			String scheme = uri.getScheme() == null ? null : uri.getScheme().toLowerCase(Locale.ROOT);
+			String host = uri.getHost() == null ? null : uri.getHost().toLowerCase(Locale.ROOT);
+
+			int port = uri.getPort();
+
+			if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+				port = -1;
+			}
+
+			String path = uri.getRawPath();
+
+			if (path == null || path.isEmpty()) {
+				path = "/";
+			} else if (path.length() > 1 && path.endsWith("/")) {
+				path = path.substring(0, path.length() - 1);
+			}
+
+			StringBuilder url = new StringBuilder(link.length() + 32);
+
+			if (scheme != null) {
+				url.append(scheme).append("://");
+			}
+
+			if (host != null) {
+				url.append(host);
+
+				if (port != -1) {
+					url.append(':').append(port);
+				}
+			}
+
+			url.append(path);
+
+			if (uri.getRawQuery() != null) {
+				url.append('?').append(uri.getRawQuery());
+			}
+
+			return url.toString();
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return baseUrl + link.trim();
+		}
+	}
+
+	/**
+	 * Returns key of listing linked, its listing number in upper case, or the normalized URL if it has none.
+	 *
+	 * @param normalizedUrl - normalized detail page URL, see {@link #normalizeUrl(String, String)}
+	 *
+	 * @return String
+	 */
+	static String listingKeyOf(String normalizedUrl) {
+		int schemeIndex = normalizedUrl.indexOf("://");
+		int pathIndex = schemeIndex == -1 ? 0 : normalizedUrl.indexOf('/', schemeIndex + 3);
+		int queryIndex = normalizedUrl.indexOf('?');
+
+		String path = pathIndex == -1 ? "" : normalizedUrl.substring(pathIndex, queryIndex == -1 ? normalizedUrl.length() : queryIndex);
+
+		// Detail pages have at least two path segments, i.e. '/Property/307634/EST6886/Springfield'.
+		String listingNumber = path.indexOf('/') == path.lastIndexOf('/') ? "" : ListingIndex.listingNumberOf(path);
+
+		return listingNumber.isEmpty() ? normalizedUrl : listingNumber.toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * Adds listing linked to the frontier.
+	 *
+	 * @param baseUrl	- URL of the page holding the link
+	 * @param link		- detail page link
+	 *
+	 * @return boolean - true if the listing is new and should be visited, false if it was already added
+	 */
+	boolean add(String baseUrl, String link) {
+		return addKey(listingKeyOf(normalizeUrl(baseUrl, link)));
+	}
+
+	/**
+	 * Adds listing to the frontier.
+	 *
+	 * @param listingKey - listing number, see {@link #listingKeyOf(String)}
+	 *
+	 * @return boolean - true if the listing is new, false if it was already added
+	 */
+	synchronized boolean addKey(String listingKey) {
+		long packed = pack(listingKey);
+
+		long hash = packed == NOT_PACKED ? mix(ListingIndex.fingerprintHash(listingKey)) : mix(packed);
+
+		// A listing missing from the Bloom filter is new, so the exact set is only searched for the few that may not be.
+		boolean mayContain = bloomBits == null || bloomContains(hash);
+
+		boolean added;
+
+		if (packed == NOT_PACKED) {
+			added = otherKeys.add(listingKey);
+		} else {
+			added = mayContain ? addPacked(packed) : insertPacked(packed);
+		}
+
+		if (added) {
+			if (bloomBits != null) {
+				bloomAdd(hash);
+			}
+		} else {
+			duplicateCount++;
+
+			CrawlMetrics.increment(CrawlMetrics.Counter.DUPLICATE_LISTING);
+		}
+
+		return added;
+	}
+
+	/**
+	 * Returns number of listings added.
+	 *
+	 * @return int
+	 */
+	synchronized int size() {
+		return packedCount + otherKeys.size();
+	}
+
+	/**
+	 * Returns number of links dropped because their listing was already added.
+	 *
+	 * @return int
+	 */
+	synchronized int getDuplicateCount() {
+		return duplicateCount;
+	}
+
+	/**
+	 * Packs listing number of up to 3 letters followed by 1 to 12 digits in the lower 59 bits of a long: 5 bits per letter,
+	 * 4 bits for the number of digits, so leading zeros are kept, and 40 bits for the digits.
+	 *
+	 * @param listingKey - listing number, in upper case
+	 *
+	 * @return long - packed listing number, never 0, or {@link #NOT_PACKED}
+	 */
+	static long pack(String listingKey) {
+		int letterCount = 0;
+
+		while (letterCount < listingKey.length() && listingKey.charAt(letterCount) >= 'A' && listingKey.charAt(letterCount) <= 'Z') {
+			letterCount++;
+		}
+
+		int digitCount = listingKey.length() - letterCount;
+
+		if (letterCount > 3 || digitCount < 1 || digitCount > 12) {
+			return NOT_PACKED;
+		}
+
+		long packed = 0;
+
+		for (int i = 0; i < letterCount; i++) {
+			packed = (packed << 5) | (listingKey.charAt(i) - 'A' + 1);
+		}
+
+		// Fewer than 3 letters are padded with leading zeros, which no letter is packed to.
+		packed = (packed << 4) | digitCount;
+
+		long digits = 0;
+
+		for (int i = letterCount; i < listingKey.length(); i++) {
+			char c = listingKey.charAt(i);
+
+			if (c < '0' || c > '9') {
+				return NOT_PACKED;
+			}
+
+			digits = digits * 10 + (c - '0');
+		}
+
+		return (packed << 40) | digits;
+	}
+
+	/**
+	 * Adds packed listing number to the table unless it is already there.
+	 *
+	 * @param packed - packed listing number
+	 *
+	 * @return boolean - true if added
+	 */
+	private boolean addPacked(long packed) {
+		int mask = packedKeys.length - 1;
+
+		for (int slot = (int) mix(packed) & mask; packedKeys[slot] != 0; slot = (slot + 1) & mask) {
+			if (packedKeys[slot] == packed) {
+				return false;
+			}
+		}
+
+		return insertPacked(packed);
+	}
+
+	/**
+	 * Inserts packed listing number known to be missing from the table, growing it to keep it at most half full.
+	 *
+	 * @param packed - packed listing number
+	 *
+	 * @return boolean - always true
+	 */
+	private boolean insertPacked(long packed) {
+		if (packedCount * 2 >= packedKeys.length) {
+			long[] previousKeys = packedKeys;
+
+			packedKeys = new long[previousKeys.length * 2];
+
+			for (long key : previousKeys) {
+				if (key != 0) {
+					insertSlot(key);
+				}
+			}
+		}
+
+		insertSlot(packed);
+		packedCount++;
+
+		return true;
+	}
+
+	/**
+	 * Stores packed listing number in its first free slot.
+	 *
+	 * @param packed - packed listing number
+	 */
+	private void insertSlot(long packed) {
+		int mask = packedKeys.length - 1;
+
+		int slot = (int) mix(packed) & mask;
+
+		while (packedKeys[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+
+		packedKeys[slot] = packed;
+	}
+
+	/**
+	 * Returns whether all Bloom filter bits of hash are set.
+	 *
+	 * @param hash - mixed listing hash
+	 *
+	 * @return boolean
+	 */
+	private boolean bloomContains(long hash) {
+		long step = (hash >>> 32) | 1;
+
+		for (int i = 0; i < bloomHashCount; i++) {
+			long bit = (hash + i * step) & bloomMask;
+
+			if ((bloomBits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Sets the Bloom filter bits of hash.
+	 *
+	 * @param hash - mixed listing hash
+	 */
+	private void bloomAdd(long hash) {
+		long step = (hash >>> 32) | 1;
+
+		for (int i = 0; i < bloomHashCount; i++) {
+			long bit = (hash + i * step) & bloomMask;
+
+			bloomBits[(int) (bit >>> 6)] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * Spreads the bits of a key over the whole long, so consecutive listing numbers land far apart.
+	 *
+	 * @param key - key
+	 *
+	 * @return long
+	 */
+	private static long mix(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+
+		return hash ^ (hash >>> 29);
+	}
+}
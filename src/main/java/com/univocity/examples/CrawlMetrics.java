@@ -0,0 +1,504 @@
+package com.univocity.examples;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timing and volume metrics of a crawl, shared by all threads of the process.
+ *
+ * Each {@link Stage} keeps a latency histogram with fixed buckets and the bytes it read or wrote. Cache lookups and
+ * captured records are counted separately. {@link #export(String)} writes everything as JSON and as Prometheus text at
+ * the end of a run. When the JVM has JFR, every timed stage is also emitted as a JFR event by the recorder compiled from
+ * 'src/main/java11', see {@link StageEventRecorder}.
+ *
+ * Recording is a few atomic increments, so instrumented code stays instrumented.
+ */
+final class CrawlMetrics {
+
+	/**
+	 * Crawl stages.
+	 */
+	enum Stage {
+
+		/**
+		 * HTTP request and response body, bytes are the downloaded body.
+		 */
+		FETCH,
+
+		/**
+		 * HTML parsing into a DOM, bytes are the parsed page.
+		 */
+		PARSE,
+
+		/**
+		 * Field extraction from a parsed detail page.
+		 */
+		EXTRACT,
+
+		/**
+		 * Batch of pages written to the page archive, bytes are the uncompressed pages.
+		 */
+		SAVE_PAGE,
+
+		/**
+		 * Result row written, to CSV or columnar output.
+		 */
+		CSV_WRITE,
+
+		/**
+		 * Whole univocity HtmlParser.parse of a location, which fetches, parses and extracts internally.
+		 */
+		HTML_PARSER
+	}
+
+	/**
+	 * Counted events that are not timed.
+	 */
+	enum Counter {
+
+		/**
+		 * Page served by the page cache without request.
+		 */
+		CACHE_HIT,
+
+		/**
+		 * Page served by the page cache after a 304 Not Modified response.
+		 */
+		CACHE_REVALIDATED,
+
+		/**
+		 * Page downloaded because it was not cached or changed.
+		 */
+		CACHE_MISS,
+
+		/**
+		 * Record captured.
+		 */
+		RECORD,
+
+		/**
+		 * Listing link dropped because the listing was already visited, see {@link CrawlFrontier}.
+		 */
+		DUPLICATE_LISTING,
+
+		/**
+		 * Listing held back because the next stage of the {@link CrawlPipeline} was full.
+		 */
+		PIPELINE_STALL,
+
+		/**
+		 * Page resource not downloaded because of its URL, content type or size, see {@link ResourceFetchPolicy}.
+		 */
+		RESOURCE_SKIPPED,
+
+		/**
+		 * Page resource downloaded with the same content as a resource already saved from another URL.
+		 */
+		RESOURCE_DUPLICATE,
+
+		/**
+		 * Crawl progress saved, see {@link CrawlCheckpoint}.
+		 */
+		CHECKPOINT,
+
+		/**
+		 * Work unit lease of a dead worker taken over, see {@link ShardLeaseStore}.
+		 */
+		LEASE_RECLAIMED,
+
+		/**
+		 * Request retried after a timeout, a lost connection, a 429 or a 5xx response, see {@link FetchPolicy}.
+		 */
+		FETCH_RETRY,
+
+		/**
+		 * Request given up after its last retry.
+		 */
+		FETCH_FAILURE,
+
+		/**
+		 * Requests to a host paused after consecutive failures.
+		 */
+		CIRCUIT_OPEN
+	}
+
+	/**
+	 * Upper bounds of the latency buckets in microseconds, the last bucket is unbounded.
+	 */
+	private static final long[] BUCKET_BOUNDS_MICROS = {100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000};
+
+	/**
+	 * Class of the JFR recorder of stages, compiled from 'src/main/java11' by the 'java11' build profile.
+	 */
+	private static final String JFR_RECORDER_CLASS = "com.univocity.examples.JfrStageEventRecorder";
+
+	/**
+	 * Emits the timed stages as JFR events, null if the running JVM or the build has no JFR.
+	 */
+	private static final StageEventRecorder STAGE_EVENTS = loadStageEventRecorder();
+
+	/**
+	 * Metrics by stage.
+	 */
+	private static final Map<Stage, StageMetrics> STAGES = new EnumMap<>(Stage.class);
+
+	/**
+	 * Counters.
+	 */
+	private static final Map<Counter, LongAdder> COUNTERS = new EnumMap<>(Counter.class);
+
+	/**
+	 * Start of the run in milliseconds.
+	 */
+	private static final long START_TIME = System.currentTimeMillis();
+
+	static {
+		for (Stage stage : Stage.values()) {
+			STAGES.put(stage, new StageMetrics());
+		}
+
+		for (Counter counter : Counter.values()) {
+			COUNTERS.put(counter, new LongAdder());
+		}
+	}
+
+	private CrawlMetrics() {
+	}
+
+	/**
+	 * Starts timing stage. The returned timer must be closed when the stage ends, usually with try-with-resources.
+	 *
+	 * @param stage		- stage
+	 * @param target	- URL or archive key of the page, null if the stage is not about a single page
+	 *
+	 * @return Timer
+	 */
+	static Timer start(Stage stage, String target) {
+		return new Timer(stage, target);
+	}
+
+	/**
+	 * Counts event.
+	 *
+	 * @param counter - counter
+	 */
+	static void increment(Counter counter) {
+		COUNTERS.get(counter).increment();
+	}
+
+	/**
+	 * Writes metrics to '{user.home}/Downloads/{runName}-metrics.json' and '{user.home}/Downloads/{runName}-metrics.prom'.
+	 *
+	 * @param runName - run name, i.e. 'jsoup-houses'
+	 *
+	 * @throws IOException -
+	 */
+	static void export(String runName) throws IOException {
+		File downloadsDirectory = new File(System.getProperty("user.home"), "Downloads");
+
+		if (!downloadsDirectory.exists()) {
+			downloadsDirectory.mkdirs();
+		}
+
+		double elapsedSeconds = Math.max(1, System.currentTimeMillis() - START_TIME) / 1000.0;
+
+		long hits = COUNTERS.get(Counter.CACHE_HIT).sum() + COUNTERS.get(Counter.CACHE_REVALIDATED).sum();
+		long lookups = hits + COUNTERS.get(Counter.CACHE_MISS).sum();
+
+		double cacheHitRatio = lookups == 0 ? 0 : (double) hits / lookups;
+		double recordsPerSecond = COUNTERS.get(Counter.RECORD).sum() / elapsedSeconds;
+
+		File jsonFile = new File(downloadsDirectory, runName + "-metrics.json");
+		File prometheusFile = new File(downloadsDirectory, runName + "-metrics.prom");
+
+		try (PrintWriter json = new PrintWriter(Files.newBufferedWriter(jsonFile.toPath(), StandardCharsets.UTF_8))) {
+			writeJson(json, runName, elapsedSeconds, cacheHitRatio, recordsPerSecond);
+		}
+
+		try (PrintWriter prometheus = new PrintWriter(Files.newBufferedWriter(prometheusFile.toPath(), StandardCharsets.UTF_8))) {
+			writePrometheus(prometheus, runName, elapsedSeconds, cacheHitRatio, recordsPerSecond);
+		}
+
+		StringBuilder summary = new StringBuilder("Crawl metrics of ").append(runName).append(':');
+
+		for (Stage stage : Stage.values()) {
+			StageMetrics metrics = STAGES.get(stage);
+
+			if (metrics.count.sum() > 0) {
+				summary.append(String.format(Locale.ROOT, " %s %d x %.2f ms,", stage.name().toLowerCase(Locale.ROOT), metrics.count.sum(), metrics.totalNanos.sum() / 1e6 / metrics.count.sum()));
+			}
+		}
+
+		summary.append(String.format(Locale.ROOT, " cache hit ratio %.2f, %d retries, %d failed requests, %d duplicate listings, %.1f records/s. Saved to %s", cacheHitRatio,
+				COUNTERS.get(Counter.FETCH_RETRY).sum(), COUNTERS.get(Counter.FETCH_FAILURE).sum(), COUNTERS.get(Counter.DUPLICATE_LISTING).sum(), recordsPerSecond, jsonFile.getAbsolutePath()));
+
+		System.out.println(summary);
+	}
+
+	/**
+	 * Writes metrics as JSON.
+	 *
+	 * @param out				- target
+	 * @param runName			- run name
+	 * @param elapsedSeconds	- run duration
+	 * @param cacheHitRatio		- cache hit ratio
+	 * @param recordsPerSecond	- records per second
+	 */
+	private static void writeJson(PrintWriter out, String runName, double elapsedSeconds, double cacheHitRatio, double recordsPerSecond) {
+		out.println("{");
+		out.printf(Locale.ROOT, "  \"run\": \"%s\",%n", runName.replace("\\", "\\\\").replace("\"", "\\\""));
+		out.printf(Locale.ROOT, "  \"elapsedSeconds\": %.3f,%n", elapsedSeconds);
+		out.printf(Locale.ROOT, "  \"cacheHitRatio\": %.4f,%n", cacheHitRatio);
+		out.printf(Locale.ROOT, "  \"recordsPerSecond\": %.3f,%n", recordsPerSecond);
+
+		out.println("  \"counters\": {");
+
+		Counter[] counters = Counter.values();
+
+		for (int i = 0; i < counters.length; i++) {
+			out.printf(Locale.ROOT, "    \"%s\": %d%s%n", counters[i].name().toLowerCase(Locale.ROOT), COUNTERS.get(counters[i]).sum(), i < counters.length - 1 ? "," : "");
+		}
+
+		out.println("  },");
+		out.println("  \"stages\": {");
+
+		Stage[] stages = Stage.values();
+
+		for (int i = 0; i < stages.length; i++) {
+			StageMetrics metrics = STAGES.get(stages[i]);
+
+			out.printf(Locale.ROOT, "    \"%s\": {\"count\": %d, \"totalMillis\": %.3f, \"maxMillis\": %.3f, \"bytes\": %d, \"buckets\": [",
+					stages[i].name().toLowerCase(Locale.ROOT), metrics.count.sum(), metrics.totalNanos.sum() / 1e6, metrics.maxNanos.get() / 1e6, metrics.bytes.sum());
+
+			for (int b = 0; b < metrics.buckets.length; b++) {
+				String bound = b < BUCKET_BOUNDS_MICROS.length ? String.format(Locale.ROOT, "%.1f", BUCKET_BOUNDS_MICROS[b] / 1000.0) : "null";
+
+				out.printf(Locale.ROOT, "%s{\"leMillis\": %s, \"count\": %d}", b > 0 ? ", " : "", bound, metrics.buckets[b].sum());
+			}
+
+			out.printf(Locale.ROOT, "]}%s%n", i < stages.length - 1 ? "," : "");
+		}
+
+		out.println("  }");
+		out.println("}");
+	}
+
+	/**
+	 * Writes metrics in the Prometheus text exposition format, histograms with cumulative buckets in seconds.
+	 *
+	 * @param out				- target
+	 * @param runName			- run name, added as 'run' label
+	 * @param elapsedSeconds	- run duration
+	 * @param cacheHitRatio		- cache hit ratio
+	 * @param recordsPerSecond	- records per second
+	 */
+	private static void writePrometheus(PrintWriter out, String runName, double elapsedSeconds, double cacheHitRatio, double recordsPerSecond) {
+		String run = "run=\"" + runName.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+
+		out.println("# HELP crawl_stage_duration_seconds Duration of crawl stages.");
+		out.println("# TYPE crawl_stage_duration_seconds histogram");
+
+		for (Stage stage : Stage.values()) {
+			StageMetrics metrics = STAGES.get(stage);
+
+			String labels = run + ",stage=\"" + stage.name().toLowerCase(Locale.ROOT) + "\"";
+
+			long cumulativeCount = 0;
+
+			for (int b = 0; b < metrics.buckets.length; b++) {
+				cumulativeCount += metrics.buckets[b].sum();
+
+				String bound = b < BUCKET_BOUNDS_MICROS.length ? String.format(Locale.ROOT, "%s", BUCKET_BOUNDS_MICROS[b] / 1e6) : "+Inf";
+
+				out.printf(Locale.ROOT, "crawl_stage_duration_seconds_bucket{%s,le=\"%s\"} %d%n", labels, bound, cumulativeCount);
+			}
+
+			out.printf(Locale.ROOT, "crawl_stage_duration_seconds_sum{%s} %s%n", labels, metrics.totalNanos.sum() / 1e9);
+			out.printf(Locale.ROOT, "crawl_stage_duration_seconds_count{%s} %d%n", labels, metrics.count.sum());
+		}
+
+		out.println("# HELP crawl_stage_bytes_total Bytes read or written by crawl stages.");
+		out.println("# TYPE crawl_stage_bytes_total counter");
+
+		for (Stage stage : Stage.values()) {
+			out.printf(Locale.ROOT, "crawl_stage_bytes_total{%s,stage=\"%s\"} %d%n", run, stage.name().toLowerCase(Locale.ROOT), STAGES.get(stage).bytes.sum());
+		}
+
+		out.println("# HELP crawl_events_total Counted crawl events.");
+		out.println("# TYPE crawl_events_total counter");
+
+		for (Counter counter : Counter.values()) {
+			out.printf(Locale.ROOT, "crawl_events_total{%s,event=\"%s\"} %d%n", run, counter.name().toLowerCase(Locale.ROOT), COUNTERS.get(counter).sum());
+		}
+
+		out.println("# TYPE crawl_cache_hit_ratio gauge");
+		out.printf(Locale.ROOT, "crawl_cache_hit_ratio{%s} %s%n", run, cacheHitRatio);
+		out.println("# TYPE crawl_records_per_second gauge");
+		out.printf(Locale.ROOT, "crawl_records_per_second{%s} %s%n", run, recordsPerSecond);
+		out.println("# TYPE crawl_elapsed_seconds gauge");
+		out.printf(Locale.ROOT, "crawl_elapsed_seconds{%s} %s%n", run, elapsedSeconds);
+	}
+
+	/**
+	 * Loads the JFR recorder of stages by name, so this class compiles and runs without JFR.
+	 *
+	 * @return StageEventRecorder - recorder, null if the running JVM or the build has no JFR
+	 */
+	private static StageEventRecorder loadStageEventRecorder() {
+		try {
+			return (StageEventRecorder) Class.forName(JFR_RECORDER_CLASS).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Metrics of one stage.
+	 */
+	private static final class StageMetrics {
+
+		/**
+		 * Number of timed executions.
+		 */
+		private final LongAdder count = new LongAdder();
+
+		/**
+		 * Total duration in nanoseconds.
+		 */
+		private final LongAdder totalNanos = new LongAdder();
+
+		/**
+		 * Longest duration in nanoseconds.
+		 */
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+		/**
+		 * Bytes read or written.
+		 */
+		private final LongAdder bytes = new LongAdder();
+
+		/**
+		 * Number of executions by latency bucket, see {@link #BUCKET_BOUNDS_MICROS}.
+		 */
+		private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MICROS.length + 1];
+
+		StageMetrics() {
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		/**
+		 * Records one execution.
+		 *
+		 * @param durationNanos	- duration in nanoseconds
+		 * @param byteCount		- bytes read or written
+		 */
+		void record(long durationNanos, long byteCount) {
+			count.increment();
+			totalNanos.add(durationNanos);
+			maxNanos.accumulate(durationNanos);
+			bytes.add(byteCount);
+
+			long durationMicros = TimeUnit.NANOSECONDS.toMicros(durationNanos);
+
+			int bucket = 0;
+
+			while (bucket < BUCKET_BOUNDS_MICROS.length && durationMicros > BUCKET_BOUNDS_MICROS[bucket]) {
+				bucket++;
+			}
+
+			buckets[bucket].increment();
+		}
+	}
+
+	/**
+	 * Running timer of a stage.
+	 */
+	static final class Timer implements AutoCloseable {
+
+		/**
+		 * Timed stage.
+		 */
+		private final Stage stage;
+
+		/**
+		 * URL or archive key of the page, null if none.
+		 */
+		private final String target;
+
+		/**
+		 * Start time in nanoseconds.
+		 */
+		private final long startNanos = System.nanoTime();
+
+		/**
+		 * JFR event, null if JFR is not available.
+		 */
+		private final Object event;
+
+		/**
+		 * Bytes read or written.
+		 */
+		private long bytes;
+
+		Timer(Stage stage, String target) {
+			this.stage = stage;
+			this.target = target;
+			this.event = STAGE_EVENTS == null ? null : STAGE_EVENTS.begin();
+		}
+
+		/**
+		 * Adds bytes read or written by the stage.
+		 *
+		 * @param byteCount - byte count
+		 */
+		void addBytes(long byteCount) {
+			bytes += byteCount;
+		}
+
+		/**
+		 * Records the stage duration.
+		 */
+		@Override
+		public void close() {
+			STAGES.get(stage).record(System.nanoTime() - startNanos, bytes);
+
+			if (event != null) {
+				STAGE_EVENTS.commit(event, stage, target, bytes);
+			}
+		}
+	}
+
+	/**
+	 * Emits the timed stages as JFR events. Implemented in 'src/main/java11' on the JFR event API, and loaded by name.
+	 */
+	interface StageEventRecorder {
+
+		/**
+		 * Creates and begins event.
+		 *
+		 * @return Object - event, null if the event is disabled in the current recordings
+		 */
+		Object begin();
+
+		/**
+		 * Ends and commits event if it passes the recording thresholds.
+		 *
+		 * @param event		- begun event
+		 * @param stage		- stage
+		 * @param target	- URL or archive key of the page, null if none
+		 * @param bytes		- bytes read or written
+		 */
+		void commit(Object event, Stage stage, String target, long bytes);
+	}
+}
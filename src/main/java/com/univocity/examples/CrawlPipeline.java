@@ -0,0 +1,420 @@
+package com.univocity.examples;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs listings through the stages of the crawl, each on threads sized to its work: fetch on the workers of a {@link ConcurrentPageFetcher},
+ * which mostly wait on the network, parse and extract on a pool of one thread per processor, and persist on the thread of each location,
+ * which writes the records of its listings in the order they were submitted, see {@link Emitter}.
+ *
+ * Stages are connected by bounded queues. A fetched page keeps its fetch slot until there is room for it in the extract queue, so when
+ * parsing falls behind the fetch workers stop taking listings, and when writing falls behind the locations stop submitting them. The crawl
+ * slows down to its bottleneck instead of buffering pages, and the pages held in memory are bounded however many listings are crawled.
+ * Every wait for a full stage is counted as {@link CrawlMetrics.Counter#PIPELINE_STALL}.
+ */
+class CrawlPipeline implements Closeable {
+
+	/**
+	 * Fetch stage of a listing, runs on the fetch workers.
+	 *
+	 * @param <P> - fetched page
+	 */
+	interface FetchStep<P> {
+
+		/**
+		 * Fetches page.
+		 *
+		 * @throws IOException -
+		 *
+		 * @return P - fetched page, null to skip the extract stage and emit a null result
+		 */
+		P fetch() throws IOException;
+	}
+
+	/**
+	 * Parse and extract stage of a listing, runs on the extract threads.
+	 *
+	 * @param <P> - fetched page
+	 * @param <R> - result
+	 */
+	interface ExtractStep<P, R> {
+
+		/**
+		 * Extracts result from page.
+		 *
+		 * @param page - fetched page
+		 *
+		 * @throws IOException -
+		 *
+		 * @return R - result
+		 */
+		R extract(P page) throws IOException;
+	}
+
+	/**
+	 * Persist stage of a listing, runs on the thread of its location.
+	 *
+	 * @param <R> - result
+	 */
+	interface ResultConsumer<R> {
+
+		/**
+		 * Persists result.
+		 *
+		 * @param result - result, null if the fetch step returned null
+		 *
+		 * @throws IOException -
+		 */
+		void accept(R result) throws IOException;
+	}
+
+	/**
+	 * Runs the fetch stage.
+	 */
+	private final ConcurrentPageFetcher pageFetcher;
+
+	/**
+	 * Listings allowed in the fetch stage, queued, fetching or waiting for room in the extract queue.
+	 */
+	private final Semaphore fetchSlots;
+
+	/**
+	 * Fetched pages waiting for an extract thread.
+	 */
+	private final BlockingQueue<Runnable> extractQueue;
+
+	/**
+	 * Threads running the extract stage.
+	 */
+	private final List<Thread> extractThreads;
+
+	/**
+	 * Capacity of each stage, and maximum number of results waiting to be emitted by each {@link Emitter}.
+	 */
+	private final int capacity;
+
+	/**
+	 * Creates pipeline and starts its extract threads.
+	 *
+	 * @param pageFetcher			- runs the fetch stage on its workers, not closed with this pipeline
+	 * @param extractThreadCount	- number of extract threads, usually the number of processors
+	 * @param capacity				- maximum number of listings in each stage
+	 */
+	CrawlPipeline(ConcurrentPageFetcher pageFetcher, int extractThreadCount, int capacity) {
+		if (extractThreadCount < 1) {
+			throw new IllegalArgumentException("Extract thread count must be positive: " + extractThreadCount);
+		}
+
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+
+		this.pageFetcher = pageFetcher;
+		this.fetchSlots = new Semaphore(capacity);
+		this.extractQueue = new ArrayBlockingQueue<>(capacity);
+		this.capacity = capacity;
+		this.extractThreads = new ArrayList<>(extractThreadCount);
+
+		for (int i = 1; i <= extractThreadCount; i++) {
+			Thread thread = new Thread(this::runExtractStage, "pipeline-extract-" + i);
+			thread.setDaemon(true);
+			thread.start();
+
+			extractThreads.add(thread);
+		}
+	}
+
+	/**
+	 * Submits listing to the fetch stage, waiting for a free slot if the stage is full.
+	 *
+	 * @param fetchStep		- fetch stage of the listing
+	 * @param extractStep	- parse and extract stage of the listing
+	 *
+	 * @throws InterruptedIOException - if interrupted while waiting for a free slot
+	 *
+	 * @return CompletableFuture<R> - result of the extract stage
+	 */
+	<P, R> CompletableFuture<R> submit(FetchStep<P> fetchStep, ExtractStep<P, R> extractStep) throws InterruptedIOException {
+		CompletableFuture<R> result = new CompletableFuture<>();
+
+		try {
+			if (!fetchSlots.tryAcquire()) {
+				CrawlMetrics.increment(CrawlMetrics.Counter.PIPELINE_STALL);
+
+				fetchSlots.acquire();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException("Interrupted while waiting for the fetch stage");
+		}
+
+		try {
+			pageFetcher.execute(() -> fetch(fetchStep, extractStep, result));
+		} catch (RejectedExecutionException e) {
+			fetchSlots.release();
+
+			throw e;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Creates emitter of results in submission order, for one location.
+	 *
+	 * @return Emitter<R>
+	 */
+	<R> Emitter<R> newEmitter() {
+		return new Emitter<>();
+	}
+
+	/**
+	 * Runs fetch stage of a listing and hands the page to the extract stage.
+	 *
+	 * @param fetchStep		- fetch stage of the listing
+	 * @param extractStep	- parse and extract stage of the listing
+	 * @param result		- result of the listing
+	 */
+	private <P, R> void fetch(FetchStep<P> fetchStep, ExtractStep<P, R> extractStep, CompletableFuture<R> result) {
+		try {
+			// Cancelled after another listing of its location failed.
+			if (result.isDone()) {
+				return;
+			}
+
+			P page = fetchStep.fetch();
+
+			if (page == null) {
+				result.complete(null);
+
+				return;
+			}
+
+			Runnable extractTask = () -> extract(page, extractStep, result);
+
+			if (!extractQueue.offer(extractTask)) {
+				CrawlMetrics.increment(CrawlMetrics.Counter.PIPELINE_STALL);
+
+				extractQueue.put(extractTask);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			result.completeExceptionally(new InterruptedIOException("Interrupted while waiting for the extract stage"));
+		} catch (Throwable e) {
+			result.completeExceptionally(e);
+		} finally {
+			fetchSlots.release();
+		}
+	}
+
+	/**
+	 * Runs parse and extract stage of a listing.
+	 *
+	 * @param page			- fetched page
+	 * @param extractStep	- parse and extract stage of the listing
+	 * @param result		- result of the listing
+	 */
+	private <P, R> void extract(P page, ExtractStep<P, R> extractStep, CompletableFuture<R> result) {
+		if (result.isDone()) {
+			return;
+		}
+
+		try {
+			result.complete(extractStep.extract(page));
+		} catch (Throwable e) {
+			// Reported to the location waiting for the result, instead of stopping the extract thread.
+			result.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Runs extract tasks until the pipeline is closed.
+	 */
+	private void runExtractStage() {
+		try {
+			while (true) {
+				extractQueue.take().run();
+			}
+		} catch (InterruptedException e) {
+			// Closed.
+		}
+	}
+
+	@Override
+	public void close() {
+		for (Thread thread : extractThreads) {
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Persist stage of one location: emits the results of its listings in submission order, on the thread submitting them.
+	 * At most {@link CrawlPipeline#capacity} results wait to be emitted, so submitting waits for the oldest one when writing or an earlier
+	 * stage falls behind. Not thread safe.
+	 *
+	 * @param <R> - result
+	 */
+	final class Emitter<R> {
+
+		/**
+		 * Result waiting to be emitted.
+		 */
+		private final class PendingResult {
+
+			/**
+			 * Result, completed by the pipeline.
+			 */
+			private final CompletableFuture<R> result;
+
+			/**
+			 * Persists the result.
+			 */
+			private final ResultConsumer<R> consumer;
+
+			PendingResult(CompletableFuture<R> result, ResultConsumer<R> consumer) {
+				this.result = result;
+				this.consumer = consumer;
+			}
+		}
+
+		/**
+		 * Results waiting to be emitted, in submission order.
+		 */
+		private final ArrayDeque<PendingResult> pending = new ArrayDeque<>();
+
+		private Emitter() {
+		}
+
+		/**
+		 * Submits listing to the pipeline, after emitting the completed results, and the oldest ones while too many are waiting.
+		 *
+		 * @param fetchStep		- fetch stage of the listing
+		 * @param extractStep	- parse and extract stage of the listing
+		 * @param consumer		- persists the result of the listing
+		 *
+		 * @throws IOException - if a result can't be emitted, or the extract stage of an earlier listing failed
+		 */
+		<P> void submit(FetchStep<P> fetchStep, ExtractStep<P, R> extractStep, ResultConsumer<R> consumer) throws IOException {
+			emitCompleted();
+
+			while (pending.size() >= capacity) {
+				emitNext();
+			}
+
+			pending.add(new PendingResult(CrawlPipeline.this.submit(fetchStep, extractStep), consumer));
+		}
+
+		/**
+		 * Emits result known without visiting the listing, after the results submitted before it.
+		 *
+		 * @param result	- result
+		 * @param consumer	- persists the result
+		 *
+		 * @throws IOException - if a result can't be emitted
+		 */
+		void emit(R result, ResultConsumer<R> consumer) throws IOException {
+			emitCompleted();
+
+			if (pending.isEmpty()) {
+				consumer.accept(result);
+			} else {
+				pending.add(new PendingResult(CompletableFuture.completedFuture(result), consumer));
+			}
+		}
+
+		/**
+		 * Waits for and emits all pending results.
+		 *
+		 * @throws IOException - if a result can't be emitted, or the extract stage of a listing failed
+		 */
+		void finish() throws IOException {
+			while (!pending.isEmpty()) {
+				emitNext();
+			}
+		}
+
+		/**
+		 * Emits the oldest results, as long as they are completed.
+		 *
+		 * @throws IOException -
+		 */
+		private void emitCompleted() throws IOException {
+			while (!pending.isEmpty() && pending.peek().result.isDone()) {
+				emitNext();
+			}
+		}
+
+		/**
+		 * Waits for the oldest result and emits it. If it failed, all pending results are cancelled.
+		 *
+		 * @throws IOException -
+		 */
+		private void emitNext() throws IOException {
+			PendingResult next = pending.peek();
+
+			R result;
+
+			try {
+				result = next.result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+
+				cancel();
+
+				throw new InterruptedIOException("Interrupted while waiting for listings");
+			} catch (ExecutionException e) {
+				cancel();
+
+				Throwable cause = e.getCause();
+
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+
+				throw new IOException(cause);
+			}
+
+			pending.poll();
+
+			try {
+				next.consumer.accept(result);
+			} catch (IOException | RuntimeException e) {
+				cancel();
+
+				throw e;
+			}
+		}
+
+		/**
+		 * Cancels all pending results, so the listings not fetched yet are dropped by the pipeline.
+		 */
+		private void cancel() {
+			for (PendingResult pendingResult : pending) {
+				pendingResult.result.cancel(false);
+			}
+
+			pending.clear();
+		}
+	}
+}
@@ -1,59 +1,241 @@
 package com.univocity.examples;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 
 import com.univocity.api.entity.html.HtmlParserResult;
 import com.univocity.api.entity.html.HtmlRecord;
-import com.univocity.parsers.csv.Csv;
-import com.univocity.parsers.csv.CsvWriter;
-import com.univocity.parsers.csv.CsvWriterSettings;
 
 /**
- * Helper class to save results to CSV file.
+ * Helper class to save results to CSV or columnar file.
  */
 class CsvResultHelper {
 
 	/**
-	 * Save raw results map to '/{user.home}/Downloads/{parserName}.csv' file.
+	 * Open sink writing records to '/{user.home}/Downloads/{parserName}.csv' file. With '-Dresults.format=columnar'
+	 * records are written to '/{user.home}/Downloads/{parserName}.rcol' instead, see {@link ColumnarResultSink}, and
+	 * with '-Dresults.format=both' to both files. Each record is timed once as {@link CrawlMetrics.Stage#CSV_WRITE}, whatever the format.
 	 *
 	 * @param parserName - parser name
-	 * @param results	 - results map
+	 * @param headers	 - field names, in output order
+	 *
+	 * @return RecordSink
 	 */
-	static void saveResults(String parserName, List<Map<String, String>> results) {
-		File resultCsvFile = new File(System.getProperty("user.home") + "/Downloads/" + parserName + ".csv");
-
-		System.out.println(parserName + " captured " + results.size() + " records. Results saved to " + resultCsvFile.getAbsolutePath());
+	static RecordSink openResults(String parserName, String... headers) {
+		String format = System.getProperty("results.format", "csv");
 
-		CsvWriterSettings csvWriterSettings = Csv.writeExcel();
-		csvWriterSettings.setHeaders(results.get(0).keySet().toArray(new String[0]));
-		csvWriterSettings.setHeaderWritingEnabled(true);
-		csvWriterSettings.setNullValue("N/A");
+		File downloadsDirectory = new File(System.getProperty("user.home"), "Downloads");
 
-		CsvWriter csvWriter = new CsvWriter(resultCsvFile, "windows-1252", csvWriterSettings);
+		RecordSink sink;
 
-		for (Map<String, String> record : results) {
-			csvWriter.writeRow(record);
+		switch (format) {
+			case "csv":
+				sink = new CsvResultSink(parserName, csvFile(parserName));
+				break;
+			case "columnar":
+				sink = new ColumnarResultSink(parserName, new File(downloadsDirectory, parserName + ".rcol"));
+				break;
+			case "both":
+				sink = new TeeRecordSink(new CsvResultSink(parserName, csvFile(parserName)), new ColumnarResultSink(parserName, new File(downloadsDirectory, parserName + ".rcol")));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown results.format " + format + ", expected csv, columnar or both");
 		}
 
-		csvWriter.close();
+		sink.open(headers);
+
+		return new TimedRecordSink(sink);
+	}
+
+	/**
+	 * Reopen '/{user.home}/Downloads/{parserName}.csv' file to continue a crawl saved at a checkpoint, see {@link CrawlCheckpoint}.
+	 *
+	 * @param parserName	- parser name
+	 * @param length		- length of the file at the checkpoint, rows after it are dropped
+	 * @param recordCount	- records written before the checkpoint
+	 * @param headers		- field names, in output order
+	 *
+	 * @throws IOException -
+	 *
+	 * @return RecordSink
+	 */
+	static RecordSink resumeResults(String parserName, long length, int recordCount, String... headers) throws IOException {
+		CsvResultSink sink = new CsvResultSink(parserName, csvFile(parserName));
+
+		sink.resume(length, recordCount, headers);
+
+		return new TimedRecordSink(sink);
+	}
+
+	/**
+	 * Returns the '/{user.home}/Downloads/{parserName}.csv' file.
+	 *
+	 * @param parserName - parser name
+	 *
+	 * @return File
+	 */
+	static File csvFile(String parserName) {
+		return new File(new File(System.getProperty("user.home"), "Downloads"), parserName + ".csv");
 	}
 
 	/**
-	 * Convert Univocity results to raw results (map) and save to '/{user.home}/Downloads/univocity-{entityName}.csv' file.
+	 * Stream Univocity listing results to '/{user.home}/Downloads/{parserName}.csv' file as normalized {@link ListingRecord}s,
+	 * and update listing index with each record. Records are fingerprinted on all their captured values.
+	 * Records of listings already captured, on a previous page of results or in another location, are dropped.
+	 *
+	 * @param parserName	- parser name
+	 * @param result		- univocity HtmlParserResult results object, with the fields of {@link ListingRecord#FIELD_NAMES}
+	 * @param listingIndex	- listing index, null to only save results
+	 * @param frontier		- listings captured by the crawl, null to keep duplicates
 	 *
-	 * @param result - univocity HtmlParserResult results object
+	 * @return int - number of records saved
+	 */
+	static int saveListings(String parserName, HtmlParserResult result, ListingIndex listingIndex, CrawlFrontier frontier) {
+		String[] headers = result.getHeaders();
+		String[] row = new String[ListingRecord.FIELD_NAMES.length];
+
+		// Only the listing index needs records by field name.
+		Map<String, String> fieldMap = listingIndex == null ? null : new LinkedHashMap<>();
+
+		int recordCount = 0;
+
+		try (RecordSink sink = openResults(parserName, ListingRecord.FIELD_NAMES)) {
+			for (HtmlRecord record : result.iterateRecords()) {
+				String[] values = record.getValues();
+
+				ListingRecord listing = ListingRecord.fromValues(headers, values);
+
+				// Records without a detail page link can't be indexed.
+				String link = listing.getLink();
+				String listingNumber = link == null || link.indexOf('/') < 0 ? null : ListingIndex.listingNumberOf(link);
+
+				if (frontier != null && link != null && !frontier.add("/", link)) {
+					if (listingIndex != null && listingNumber != null) {
+						listingIndex.markSeen(listingNumber);
+					}
+
+					continue;
+				}
+
+				sink.writeRow(listing.fillRow(row));
+				recordCount++;
+
+				CrawlMetrics.increment(CrawlMetrics.Counter.RECORD);
+
+				if (listingIndex != null && listingNumber != null) {
+					fieldMap.clear();
+
+					listingIndex.update(listingNumber, ListingIndex.fingerprintOf(String.join("\t", values)), listing.fillFieldMap(fieldMap));
+				}
+			}
+		}
+
+		return recordCount;
+	}
+
+	/**
+	 * Sink writing each record to two sinks.
+	 */
+	private static final class TeeRecordSink implements RecordSink {
+
+		/**
+		 * First sink, its record count is reported.
+		 */
+		private final RecordSink first;
+
+		/**
+		 * Second sink.
+		 */
+		private final RecordSink second;
+
+		TeeRecordSink(RecordSink first, RecordSink second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public void open(String... headers) {
+			first.open(headers);
+			second.open(headers);
+		}
+
+		@Override
+		public void write(Map<String, String> record) {
+			first.write(record);
+			second.write(record);
+		}
+
+		@Override
+		public void writeRow(String[] values) {
+			first.writeRow(values);
+			second.writeRow(values);
+		}
+
+		@Override
+		public int getRecordCount() {
+			return first.getRecordCount();
+		}
+
+		@Override
+		public void close() {
+			try {
+				first.close();
+			} finally {
+				second.close();
+			}
+		}
+	}
+
+	/**
+	 * Sink timing the records written to another sink, so a record written to both files is still one
+	 * {@link CrawlMetrics.Stage#CSV_WRITE}.
 	 */
-	static void saveResults(HtmlParserResult result) {
-		List<Map<String, String>> tmp = new ArrayList<>();
+	@SuppressWarnings("try")
+	private static final class TimedRecordSink implements RecordSink {
+
+		/**
+		 * Sink writing the records.
+		 */
+		private final RecordSink sink;
+
+		TimedRecordSink(RecordSink sink) {
+			this.sink = sink;
+		}
+
+		@Override
+		public void open(String... headers) {
+			sink.open(headers);
+		}
+
+		@Override
+		public void write(Map<String, String> record) {
+			try (CrawlMetrics.Timer timer = CrawlMetrics.start(CrawlMetrics.Stage.CSV_WRITE, null)) {
+				sink.write(record);
+			}
+		}
+
+		@Override
+		public void writeRow(String[] values) {
+			try (CrawlMetrics.Timer timer = CrawlMetrics.start(CrawlMetrics.Stage.CSV_WRITE, null)) {
+				sink.writeRow(values);
+			}
+		}
+
+		@Override
+		public long checkpoint() {
+			return sink.checkpoint();
+		}
+
+		@Override
+		public int getRecordCount() {
+			return sink.getRecordCount();
+		}
 
-		for (HtmlRecord record : result.iterateRecords()) {
-			tmp.add(record.fillFieldMap(new LinkedHashMap<>()));
+		@Override
+		public void close() {
+			sink.close();
 		}
-		
-		saveResults("univocity-" + result.getEntityName(), tmp);
 	}
 }
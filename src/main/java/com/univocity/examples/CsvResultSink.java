@@ -0,0 +1,184 @@
+package com.univocity.examples;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.univocity.parsers.csv.Csv;
+import com.univocity.parsers.csv.CsvWriter;
+import com.univocity.parsers.csv.CsvWriterSettings;
+
+/**
+ * Writes records to Excel compatible CSV file as they arrive, reusing one row buffer for all records.
+ */
+class CsvResultSink implements RecordSink {
+
+	/**
+	 * Encoding of the result file.
+	 */
+	private static final String CHARSET = "windows-1252";
+
+	/**
+	 * Name of parser that produced the results, used in log output.
+	 */
+	private final String parserName;
+
+	/**
+	 * Result CSV file.
+	 */
+	private final File resultFile;
+
+	/**
+	 * Declared field names.
+	 */
+	private String[] headers;
+
+	/**
+	 * Row buffer reused for every record.
+	 */
+	private Object[] row;
+
+	/**
+	 * Underlying CSV writer.
+	 */
+	private CsvWriter csvWriter;
+
+	/**
+	 * Number of records written.
+	 */
+	private int recordCount;
+
+	/**
+	 * Creates sink.
+	 *
+	 * @param parserName	- parser name
+	 * @param resultFile	- result CSV file
+	 */
+	CsvResultSink(String parserName, File resultFile) {
+		this.parserName = parserName;
+		this.resultFile = resultFile;
+	}
+
+	@Override
+	public void open(String... headers) {
+		if (csvWriter != null) {
+			throw new IllegalStateException("Sink is already open: " + resultFile);
+		}
+
+		this.headers = headers.clone();
+		this.row = new Object[headers.length];
+
+		csvWriter = new CsvWriter(resultFile, CHARSET, writerSettings(true));
+	}
+
+	/**
+	 * Opens sink appending to the results of a crawl saved at a checkpoint, see {@link CrawlCheckpoint}. Rows written after
+	 * the checkpoint are dropped.
+	 *
+	 * @param length		- length of the result file at the checkpoint, see {@link #checkpoint()}
+	 * @param recordCount	- records written before the checkpoint
+	 * @param headers		- field names, in output order, as when the file was created
+	 *
+	 * @throws IOException -
+	 */
+	void resume(long length, int recordCount, String... headers) throws IOException {
+		if (csvWriter != null) {
+			throw new IllegalStateException("Sink is already open: " + resultFile);
+		}
+
+		if (resultFile.length() < length) {
+			throw new IOException("Results " + resultFile + " are shorter than at their checkpoint, " + length + " bytes");
+		}
+
+		try (RandomAccessFile file = new RandomAccessFile(resultFile, "rw")) {
+			file.setLength(length);
+		}
+
+		this.headers = headers.clone();
+		this.row = new Object[headers.length];
+		this.recordCount = recordCount;
+
+		// The headers are already in the file.
+		csvWriter = new CsvWriter(new OutputStreamWriter(new FileOutputStream(resultFile, true), CHARSET), writerSettings(false));
+	}
+
+	/**
+	 * Returns settings of the CSV writer.
+	 *
+	 * @param writeHeaders - true to write the headers first
+	 *
+	 * @return CsvWriterSettings
+	 */
+	private CsvWriterSettings writerSettings(boolean writeHeaders) {
+		CsvWriterSettings csvWriterSettings = Csv.writeExcel();
+		csvWriterSettings.setNullValue("N/A");
+
+		if (headers.length > 0) {
+			csvWriterSettings.setHeaders(this.headers);
+			csvWriterSettings.setHeaderWritingEnabled(writeHeaders);
+		}
+
+		return csvWriterSettings;
+	}
+
+	@Override
+	public void write(Map<String, String> record) {
+		if (csvWriter == null) {
+			throw new IllegalStateException("Sink is not open: " + resultFile);
+		}
+
+		for (int i = 0; i < headers.length; i++) {
+			row[i] = record.get(headers[i]);
+		}
+
+		csvWriter.writeRow(row);
+
+		recordCount++;
+	}
+
+	@Override
+	public void writeRow(String[] values) {
+		if (csvWriter == null) {
+			throw new IllegalStateException("Sink is not open: " + resultFile);
+		}
+
+		// Values are already in header order, so they go to the writer without copying.
+		csvWriter.writeRow((Object[]) values);
+
+		recordCount++;
+	}
+
+	@Override
+	public long checkpoint() {
+		if (csvWriter == null) {
+			throw new IllegalStateException("Sink is not open: " + resultFile);
+		}
+
+		csvWriter.flush();
+
+		return resultFile.length();
+	}
+
+	@Override
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	@Override
+	public void close() {
+		if (csvWriter == null) {
+			return;
+		}
+
+		csvWriter.close();
+		csvWriter = null;
+
+		Arrays.fill(row, null);
+
+		System.out.println(parserName + " captured " + recordCount + " records. Results saved to " + resultFile.getAbsolutePath());
+	}
+}
@@ -0,0 +1,580 @@
+package com.univocity.examples;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
+import org.jsoup.UnsupportedMimeTypeException;
+
+/**
+ * Decides when and how often requests are sent to each host, so a crawl goes as fast as the site allows without being throttled
+ * and survives the occasional failure.
+ *
+ * For each host it keeps:
+ * <ul>
+ * <li>an adaptive limit of simultaneous requests, raised by one per round trip while responses are fast and successful, and halved
+ * when latency rises well above the lowest seen or the site answers with 429 or 5xx (additive increase, multiplicative decrease)</li>
+ * <li>an optional token bucket of requests per second, for politeness</li>
+ * <li>a circuit breaker, opened after consecutive failures. While open no request is sent, then a single probe request decides
+ * whether it closes again or stays open for twice as long</li>
+ * </ul>
+ *
+ * Failed requests, including timeouts, 429 and 5xx responses, are retried with jittered exponential backoff, and never before the
+ * time asked in a 'Retry-After' header.
+ *
+ * Requests are sent by a {@link HttpTransport}, Jsoup connections unless another one is set.
+ */
+class FetchPolicy implements Closeable {
+
+	/**
+	 * Consecutive failures that open the circuit of a host.
+	 */
+	private static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+
+	/**
+	 * Time the circuit stays open the first time, doubled each time the probe request fails.
+	 */
+	private static final long CIRCUIT_OPEN_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+	/**
+	 * Longest time the circuit stays open.
+	 */
+	private static final long MAX_CIRCUIT_OPEN_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	/**
+	 * Latency over the lowest seen latency of a host at which its limit is lowered.
+	 */
+	private static final double LATENCY_TOLERANCE = 2.0;
+
+	/**
+	 * Maximum number of simultaneous requests to a single host.
+	 */
+	private final int maxConnectionsPerHost;
+
+	/**
+	 * Maximum number of requests per second to a single host, 0 for no limit.
+	 */
+	private final int maxRequestsPerSecondPerHost;
+
+	/**
+	 * Number of times a request is sent before giving up.
+	 */
+	private int maxAttempts = 4;
+
+	/**
+	 * First retry delay, doubled on each retry.
+	 */
+	private long retryBaseDelayMillis = 500;
+
+	/**
+	 * Longest retry delay.
+	 */
+	private long maxRetryDelayMillis = 30_000;
+
+	/**
+	 * Connect and read timeout of each request.
+	 */
+	private int timeoutMillis = 15_000;
+
+	/**
+	 * Sends the requests.
+	 */
+	private HttpTransport transport = HttpTransport.JSOUP;
+
+	/**
+	 * State by host name.
+	 */
+	private final ConcurrentMap<String, HostState> hosts = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates policy with 4 attempts per request, retries after 0.5 s up to 30 s, and a 15 s timeout.
+	 *
+	 * @param maxConnectionsPerHost			- maximum number of simultaneous requests to a single host
+	 * @param maxRequestsPerSecondPerHost	- maximum number of requests per second to a single host, 0 for no limit
+	 */
+	FetchPolicy(int maxConnectionsPerHost, int maxRequestsPerSecondPerHost) {
+		if (maxConnectionsPerHost < 1) {
+			throw new IllegalArgumentException("Connections per host must be positive: " + maxConnectionsPerHost);
+		}
+
+		if (maxRequestsPerSecondPerHost < 0) {
+			throw new IllegalArgumentException("Requests per second can't be negative: " + maxRequestsPerSecondPerHost);
+		}
+
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+		this.maxRequestsPerSecondPerHost = maxRequestsPerSecondPerHost;
+	}
+
+	/**
+	 * Sets number of times a request is sent before giving up.
+	 *
+	 * @param maxAttempts - number of attempts, 1 to never retry
+	 *
+	 * @return FetchPolicy - this policy
+	 */
+	FetchPolicy withMaxAttempts(int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("Attempts must be positive: " + maxAttempts);
+		}
+
+		this.maxAttempts = maxAttempts;
+
+		return this;
+	}
+
+	/**
+	 * Sets retry delays. The delay before each retry is random, up to the base delay doubled on each retry.
+	 *
+	 * @param retryBaseDelayMillis	- first retry delay
+	 * @param maxRetryDelayMillis	- longest retry delay
+	 *
+	 * @return FetchPolicy - this policy
+	 */
+	FetchPolicy withRetryDelay(long retryBaseDelayMillis, long maxRetryDelayMillis) {
+		this.retryBaseDelayMillis = retryBaseDelayMillis;
+		this.maxRetryDelayMillis = maxRetryDelayMillis;
+
+		return this;
+	}
+
+	/**
+	 * Sets connect and read timeout of each request.
+	 *
+	 * @param timeoutMillis - timeout
+	 *
+	 * @return FetchPolicy - this policy
+	 */
+	FetchPolicy withTimeout(int timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+
+		return this;
+	}
+
+	/**
+	 * Sets transport sending the requests, closed with this policy.
+	 *
+	 * @param transport - transport
+	 *
+	 * @return FetchPolicy - this policy
+	 */
+	FetchPolicy withTransport(HttpTransport transport) {
+		this.transport = transport;
+
+		return this;
+	}
+
+	/**
+	 * Executes request when its host allows it, retrying failures. Statuses other than 429 and 5xx are returned as they are if the
+	 * connection ignores HTTP errors, see {@link Connection#ignoreHttpErrors(boolean)}.
+	 *
+	 * @param connection - prepared connection
+	 *
+	 * @throws IOException - if the last attempt failed, or the response status is an error and the connection doesn't ignore them
+	 *
+	 * @return Connection.Response
+	 */
+	Connection.Response execute(Connection connection) throws IOException {
+		return execute(connection, null);
+	}
+
+	/**
+	 * Executes request when its host allows it, retrying failures, and reads the response body only if the filter accepts it, see
+	 * {@link HttpTransport#execute(Connection, HttpTransport.BodyFilter)}.
+	 *
+	 * @param connection	- prepared connection
+	 * @param bodyFilter	- decides from the status and headers whether the body is read, null to always read it
+	 *
+	 * @throws IOException - if the last attempt failed, or the response status is an error and the connection doesn't ignore them
+	 *
+	 * @return Connection.Response
+	 */
+	Connection.Response execute(Connection connection, HttpTransport.BodyFilter bodyFilter) throws IOException {
+		URL url = connection.request().url();
+
+		HostState host = hosts.computeIfAbsent(url.getHost(), HostState::new);
+
+		boolean ignoreHttpErrors = connection.request().ignoreHttpErrors();
+
+		// Errors are checked here to retry them.
+		connection.ignoreHttpErrors(true).timeout(timeoutMillis);
+
+		for (int attempt = 1;; attempt++) {
+			host.acquire();
+
+			long startNanos = System.nanoTime();
+
+			Connection.Response response = null;
+			IOException failure = null;
+			boolean retryable = true;
+
+			try (CrawlMetrics.Timer timer = CrawlMetrics.start(CrawlMetrics.Stage.FETCH, url.toString())) {
+				response = Objects.isNull(bodyFilter) ? transport.execute(connection) : transport.execute(connection, bodyFilter);
+
+				timer.addBytes(response.bodyAsBytes().length);
+
+				retryable = isRetryable(response.statusCode());
+			} catch (IOException e) {
+				failure = e;
+				retryable = isRetryable(e);
+			} finally {
+				host.release(!retryable, System.nanoTime() - startNanos, retryAfterNanos(response));
+			}
+
+			if (!retryable || attempt >= maxAttempts) {
+				if (retryable) {
+					CrawlMetrics.increment(CrawlMetrics.Counter.FETCH_FAILURE);
+				}
+
+				if (failure != null) {
+					throw failure;
+				}
+
+				int status = response.statusCode();
+
+				if (!ignoreHttpErrors && (status < 200 || status >= 400)) {
+					throw new HttpStatusException("HTTP error fetching URL", status, url.toString());
+				}
+
+				return response;
+			}
+
+			CrawlMetrics.increment(CrawlMetrics.Counter.FETCH_RETRY);
+
+			// Full jitter spreads the retries of requests that failed together.
+			long maxDelayMillis = Math.min(maxRetryDelayMillis, retryBaseDelayMillis << Math.min(attempt - 1, 20));
+
+			try {
+				TimeUnit.MILLISECONDS.sleep(ThreadLocalRandom.current().nextLong(maxDelayMillis + 1));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+
+				throw new InterruptedIOException("Interrupted while waiting to retry " + url);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		transport.close();
+	}
+
+	/**
+	 * @param status - response status
+	 *
+	 * @return boolean - true if the site is throttling or failing, so the request can succeed later
+	 */
+	private static boolean isRetryable(int status) {
+		return status == 429 || status >= 500;
+	}
+
+	/**
+	 * @param e - request failure
+	 *
+	 * @return boolean - true if the request can succeed later, i.e. after a timeout or a lost connection
+	 */
+	private static boolean isRetryable(IOException e) {
+		return !(e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException))
+				&& !(e instanceof HttpStatusException)
+				&& !(e instanceof UnsupportedMimeTypeException)
+				&& !(e instanceof MalformedURLException);
+	}
+
+	/**
+	 * Returns the time asked by the 'Retry-After' header of response, in seconds.
+	 *
+	 * @param response - response, null if the request failed
+	 *
+	 * @return long - time in nanoseconds, 0 if the response has no 'Retry-After' header in seconds
+	 */
+	private static long retryAfterNanos(Connection.Response response) {
+		if (response == null || !response.hasHeader("Retry-After")) {
+			return 0;
+		}
+
+		try {
+			return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(response.header("Retry-After").trim())));
+		} catch (NumberFormatException e) {
+			// HTTP dates are not worth parsing here, the backoff applies.
+			return 0;
+		}
+	}
+
+	/**
+	 * States of the circuit of a host.
+	 */
+	private enum CircuitState {
+
+		/**
+		 * Requests are sent.
+		 */
+		CLOSED,
+
+		/**
+		 * No request is sent until the open time is over.
+		 */
+		OPEN,
+
+		/**
+		 * A single probe request is sent.
+		 */
+		HALF_OPEN
+	}
+
+	/**
+	 * Limits, token bucket and circuit of a host. Waiting requests are woken up by {@link #release(boolean, long, long)}.
+	 *
+	 * State is guarded by a lock rather than a monitor, so virtual threads waiting for their turn don't pin their carrier thread.
+	 */
+	private final class HostState {
+
+		/**
+		 * Host name.
+		 */
+		private final String hostName;
+
+		/**
+		 * Guards the state.
+		 */
+		private final ReentrantLock lock = new ReentrantLock();
+
+		/**
+		 * Signalled when a request is released.
+		 */
+		private final Condition released = lock.newCondition();
+
+		/**
+		 * Current limit of simultaneous requests, its integer part is used.
+		 */
+		private double limit;
+
+		/**
+		 * Requests being sent.
+		 */
+		private int inFlight;
+
+		/**
+		 * Lowest latency seen, slowly raised towards the latest latencies so an old minimum doesn't keep the limit down.
+		 */
+		private long minLatencyNanos = Long.MAX_VALUE;
+
+		/**
+		 * Moving average of the latency.
+		 */
+		private double smoothedLatencyNanos;
+
+		/**
+		 * Time the limit was last lowered. It is lowered at most once per round trip, for the requests that failed together.
+		 */
+		private long lastDecreaseNanos;
+
+		/**
+		 * Requests that can be sent right away according to the token bucket.
+		 */
+		private double tokens;
+
+		/**
+		 * Time tokens were last added.
+		 */
+		private long lastRefillNanos = System.nanoTime();
+
+		/**
+		 * No request is sent before this time, as asked by 'Retry-After'.
+		 */
+		private long resumeNanos;
+
+		/**
+		 * Circuit state.
+		 */
+		private CircuitState circuitState = CircuitState.CLOSED;
+
+		/**
+		 * Consecutive failures.
+		 */
+		private int consecutiveFailures;
+
+		/**
+		 * Time the open circuit lets a probe request through.
+		 */
+		private long circuitOpenUntilNanos;
+
+		/**
+		 * Time the circuit stays open the next time it opens.
+		 */
+		private long circuitOpenNanos = CIRCUIT_OPEN_NANOS;
+
+		/**
+		 * True while the probe request of the half open circuit is being sent.
+		 */
+		private boolean probeInFlight;
+
+		HostState(String hostName) {
+			this.hostName = hostName;
+			this.limit = Math.max(1, maxConnectionsPerHost / 2);
+			this.tokens = Math.max(1, maxRequestsPerSecondPerHost);
+		}
+
+		/**
+		 * Waits until a request can be sent and counts it in flight.
+		 *
+		 * @throws InterruptedIOException - if interrupted while waiting
+		 */
+		void acquire() throws InterruptedIOException {
+			lock.lock();
+
+			try {
+				while (true) {
+					long now = System.nanoTime();
+					long waitNanos;
+
+					if (now < resumeNanos) {
+						waitNanos = resumeNanos - now;
+					} else if (circuitState == CircuitState.OPEN && now < circuitOpenUntilNanos) {
+						waitNanos = circuitOpenUntilNanos - now;
+					} else if (circuitState != CircuitState.CLOSED && (probeInFlight || inFlight > 0)) {
+						// Only the probe is sent, requests started before the circuit opened are waited for.
+						waitNanos = 0;
+					} else if (inFlight >= (int) limit) {
+						waitNanos = 0;
+					} else if (!takeToken(now)) {
+						waitNanos = (long) ((1 - tokens) * TimeUnit.SECONDS.toNanos(1) / maxRequestsPerSecondPerHost);
+					} else {
+						if (circuitState == CircuitState.OPEN) {
+							circuitState = CircuitState.HALF_OPEN;
+						}
+
+						probeInFlight = circuitState == CircuitState.HALF_OPEN;
+						inFlight++;
+
+						return;
+					}
+
+					// A wait without time lasts until a request is released.
+					if (waitNanos > 0) {
+						released.awaitNanos(waitNanos);
+					} else {
+						released.await();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+
+				throw new InterruptedIOException("Interrupted while waiting to request " + hostName);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Takes a token from the bucket, after adding the tokens earned since the last refill. The bucket holds one second of
+		 * requests, so a host that was idle gets a short burst.
+		 *
+		 * @param now - current time
+		 *
+		 * @return boolean - true if a token was taken or there is no rate limit
+		 */
+		private boolean takeToken(long now) {
+			if (maxRequestsPerSecondPerHost == 0) {
+				return true;
+			}
+
+			tokens = Math.min(maxRequestsPerSecondPerHost, tokens + (now - lastRefillNanos) * maxRequestsPerSecondPerHost / (double) TimeUnit.SECONDS.toNanos(1));
+			lastRefillNanos = now;
+
+			if (tokens < 1) {
+				return false;
+			}
+
+			tokens--;
+
+			return true;
+		}
+
+		/**
+		 * Records the outcome of a request sent after {@link #acquire()}, adjusts the limit and the circuit, and wakes up waiting requests.
+		 *
+		 * @param success			- true unless the request failed, timed out or was answered with 429 or 5xx
+		 * @param latencyNanos		- request duration
+		 * @param retryAfterNanos	- time asked by 'Retry-After', 0 if none
+		 */
+		void release(boolean success, long latencyNanos, long retryAfterNanos) {
+			long now = System.nanoTime();
+
+			lock.lock();
+
+			try {
+				inFlight--;
+				probeInFlight = false;
+
+				if (success) {
+					if (latencyNanos < minLatencyNanos) {
+						minLatencyNanos = latencyNanos;
+					} else {
+						minLatencyNanos += (latencyNanos - minLatencyNanos) / 256;
+					}
+
+					smoothedLatencyNanos = smoothedLatencyNanos == 0 ? latencyNanos : smoothedLatencyNanos * 0.9 + latencyNanos * 0.1;
+
+					if (smoothedLatencyNanos > minLatencyNanos * LATENCY_TOLERANCE) {
+						decreaseLimit(now);
+					} else {
+						limit = Math.min(maxConnectionsPerHost, limit + 1 / limit);
+					}
+
+					consecutiveFailures = 0;
+
+					if (circuitState != CircuitState.CLOSED) {
+						circuitState = CircuitState.CLOSED;
+						circuitOpenNanos = CIRCUIT_OPEN_NANOS;
+
+						System.out.println("Requests to " + hostName + " resumed");
+					}
+				} else {
+					decreaseLimit(now);
+
+					resumeNanos = Math.max(resumeNanos, now + retryAfterNanos);
+
+					consecutiveFailures++;
+
+					if (circuitState == CircuitState.HALF_OPEN || (circuitState == CircuitState.CLOSED && consecutiveFailures >= CIRCUIT_FAILURE_THRESHOLD)) {
+						circuitState = CircuitState.OPEN;
+						circuitOpenUntilNanos = now + circuitOpenNanos;
+
+						CrawlMetrics.increment(CrawlMetrics.Counter.CIRCUIT_OPEN);
+
+						System.out.println("Requests to " + hostName + " paused for " + TimeUnit.NANOSECONDS.toMillis(circuitOpenNanos) + " ms after " + consecutiveFailures + " consecutive failures");
+
+						circuitOpenNanos = Math.min(MAX_CIRCUIT_OPEN_NANOS, circuitOpenNanos * 2);
+					}
+				}
+
+				released.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Halves the limit, unless it was already lowered in the last round trip.
+		 *
+		 * @param now - current time
+		 */
+		private void decreaseLimit(long now) {
+			if (now - lastDecreaseNanos > smoothedLatencyNanos) {
+				limit = Math.max(1, limit / 2);
+				lastDecreaseNanos = now;
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.univocity.examples;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * Page as received from the server: the original response bytes and the charset declared in the response.
+ * Pages are stored from these bytes, so they never have to be serialized again from the parsed DOM.
+ */
+class FetchedPage {
+
+	/**
+	 * Absolute page URL.
+	 */
+	private final String url;
+
+	/**
+	 * Response body, as received.
+	 */
+	private final byte[] body;
+
+	/**
+	 * Charset from the Content-Type header, null to detect it from the page.
+	 */
+	private final String charset;
+
+	/**
+	 * Creates page.
+	 *
+	 * @param url		- absolute page URL
+	 * @param body		- response body, as received
+	 * @param charset	- charset from the Content-Type header, null to detect it from the page
+	 */
+	FetchedPage(String url, byte[] body, String charset) {
+		this.url = url;
+		this.body = body;
+		this.charset = charset;
+	}
+
+	/**
+	 * @return String - absolute page URL
+	 */
+	String getUrl() {
+		return url;
+	}
+
+	/**
+	 * @return byte[] - response body, as received
+	 */
+	byte[] getBody() {
+		return body;
+	}
+
+	/**
+	 * @return String - charset from the Content-Type header, null if there was none
+	 */
+	String getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Parses page. Without a declared charset it is detected from BOM or meta tags, defaulting to UTF-8.
+	 *
+	 * @throws IOException -
+	 *
+	 * @return Document
+	 */
+	Document parse() throws IOException {
+		try (CrawlMetrics.Timer timer = CrawlMetrics.start(CrawlMetrics.Stage.PARSE, url)) {
+			timer.addBytes(body.length);
+
+			return Jsoup.parse(new ByteArrayInputStream(body), charset, url);
+		}
+	}
+}
@@ -0,0 +1,862 @@
+package com.univocity.examples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.jsoup.nodes.Attributes;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.Tag;
+
+/**
+ * Tokenizes an HTML stream and builds elements only inside regions, the elements selected by a {@link RegionSelector}
+ * and their content. Everything outside regions is scanned and dropped, only tag names and 'id' and 'class' attributes
+ * are read to find the next region. Regions are returned one at a time, so callers can stop reading once they found
+ * what they need.
+ *
+ * Bytes are decoded in small chunks and names of common tags are shared, so a page costs a few kilobytes besides the
+ * region elements. Region elements keep only their 'id' and 'class' attributes. Script and style content, comments and doctype are
+ * skipped. Like browsers, and Jsoup:
+ * <ul>
+ * <li>an 'li', 'option', 'dt', 'dd', 'tr', 'td' or 'th' start tag closes an open element of the same kind</li>
+ * <li>a 'p' or block start tag, such as 'div', 'h1' to 'h6', 'ul', 'ol', 'table', 'section' or 'form', closes an open 'p', unless
+ * a table, table cell or button opened after the 'p' is still open</li>
+ * <li>an 'h1' to 'h6' start tag closes an open heading it is directly in</li>
+ * <li>end tags without a matching open element are ignored</li>
+ * </ul>
+ * The element starting a region is only closed by its end tag.
+ */
+class HtmlRegionReader {
+
+	/**
+	 * Selects region elements by their start tag.
+	 */
+	interface RegionSelector {
+
+		/**
+		 * Returns true if element starts a region.
+		 *
+		 * @param tagName	- lower case tag name
+		 * @param id		- 'id' attribute, null if none
+		 * @param classes	- 'class' attribute, null if none
+		 *
+		 * @return boolean
+		 */
+		boolean isRegion(String tagName, String id, String classes);
+	}
+
+	/**
+	 * Elements without content or end tag.
+	 */
+	private static final Set<String> VOID_TAGS = new HashSet<>(Arrays.asList(
+			"area", "base", "br", "col", "embed", "hr", "img", "input", "keygen", "link", "meta", "param", "source", "track", "wbr"));
+
+	/**
+	 * Elements closed by the start of another element with the same tag.
+	 */
+	private static final Set<String> SELF_CLOSING_SIBLING_TAGS = new HashSet<>(Arrays.asList("li", "option", "dt", "dd", "tr", "td", "th"));
+
+	/**
+	 * Start tags closing an open 'p' element, as the HTML5 tree builder does. 'table' only does in standards mode, which pages with
+	 * '&lt;!DOCTYPE html&gt;' are in.
+	 */
+	private static final Set<String> PARAGRAPH_CLOSING_TAGS = new HashSet<>(Arrays.asList("address", "article", "aside", "blockquote", "center",
+			"dd", "details", "dialog", "dir", "div", "dl", "dt", "fieldset", "figcaption", "figure", "footer", "form", "h1", "h2", "h3", "h4", "h5",
+			"h6", "header", "hgroup", "hr", "li", "listing", "main", "menu", "nav", "ol", "p", "plaintext", "pre", "section", "summary", "table",
+			"ul", "xmp"));
+
+	/**
+	 * Elements an open 'p' element is not closed from, the button scope of the HTML5 tree builder.
+	 */
+	private static final Set<String> BUTTON_SCOPE_TAGS = new HashSet<>(Arrays.asList("applet", "button", "caption", "html", "marquee", "object",
+			"table", "td", "template", "th"));
+
+	/**
+	 * Heading elements, closed by a heading start tag directly in them.
+	 */
+	private static final Set<String> HEADING_TAGS = new HashSet<>(Arrays.asList("h1", "h2", "h3", "h4", "h5", "h6"));
+
+	/**
+	 * Names of common tags, by {@link #nameSlot(CharSequence)}, so their names are not allocated for each tag.
+	 */
+	private static final String[] TAG_NAMES = new String[512];
+
+	static {
+		for (String tagName : new String[] {"a", "abbr", "address", "area", "article", "aside", "b", "base", "blockquote", "body", "br", "button",
+				"code", "col", "dd", "div", "dl", "dt", "em", "embed", "figcaption", "figure", "footer", "form", "g", "h1", "h2", "h3", "h4", "h5", "h6",
+				"head", "header", "hr", "html", "i", "iframe", "img", "input", "label", "li", "link", "main", "meta", "nav", "noscript", "ol", "option",
+				"p", "param", "path", "picture", "pre", "script", "section", "select", "small", "source", "span", "strong", "style", "sub", "sup", "svg",
+				"table", "tbody", "td", "textarea", "th", "thead", "time", "title", "tr", "track", "u", "ul", "wbr"}) {
+			int slot = nameSlot(tagName);
+
+			while (TAG_NAMES[slot] != null) {
+				slot = (slot + 1) & (TAG_NAMES.length - 1);
+			}
+
+			TAG_NAMES[slot] = tagName;
+		}
+	}
+
+	/**
+	 * Size of the byte and character buffers.
+	 */
+	private static final int BUFFER_SIZE = 2048;
+
+	/**
+	 * Text of whitespace only text nodes. Whitespace is collapsed when element text is read, so its exact content doesn't matter.
+	 */
+	private static final String WHITESPACE = " ";
+
+	/**
+	 * HTML stream.
+	 */
+	private final InputStream in;
+
+	/**
+	 * Decodes the stream, replacing malformed input.
+	 */
+	private final CharsetDecoder decoder;
+
+	/**
+	 * Bytes read from the stream and not decoded yet.
+	 */
+	private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+	/**
+	 * Decoded characters.
+	 */
+	private final CharBuffer characters = CharBuffer.allocate(BUFFER_SIZE);
+
+	/**
+	 * True once the end of the stream was read.
+	 */
+	private boolean endOfInput;
+
+	/**
+	 * True once the decoder was flushed, after the end of the stream.
+	 */
+	private boolean flushed;
+
+	/**
+	 * Number of characters read from the stream.
+	 */
+	private long charactersRead;
+
+	/**
+	 * Selects regions.
+	 */
+	private final RegionSelector regionSelector;
+
+	/**
+	 * Base URI of the region elements.
+	 */
+	private final String baseUri;
+
+	/**
+	 * Lower case name of the last tag.
+	 */
+	private String tagName;
+
+	/**
+	 * 'id' attribute of the last start tag, null if none.
+	 */
+	private String tagId;
+
+	/**
+	 * 'class' attribute of the last start tag, null if none.
+	 */
+	private String tagClasses;
+
+	/**
+	 * True if the last start tag ended with '/>'.
+	 */
+	private boolean tagSelfClosed;
+
+	/**
+	 * Reused buffer of names, attribute values and region text.
+	 */
+	private final StringBuilder token = new StringBuilder(64);
+
+	/**
+	 * Text of the current region not added to an element yet.
+	 */
+	private final StringBuilder text = new StringBuilder(256);
+
+	/**
+	 * Open elements of the current region, the region element last.
+	 */
+	private final Deque<Element> openElements = new ArrayDeque<>();
+
+	/**
+	 * Creates reader.
+	 *
+	 * @param in				- HTML stream, closed by the caller
+	 * @param charset			- charset of the stream, null to detect it from BOM or meta tag, defaulting to UTF-8
+	 * @param regionSelector	- selects regions
+	 * @param baseUri			- base URI of the region elements
+	 *
+	 * @throws IOException -
+	 */
+	HtmlRegionReader(InputStream in, String charset, RegionSelector regionSelector, String baseUri) throws IOException {
+		this.in = in;
+		this.regionSelector = regionSelector;
+		this.baseUri = baseUri;
+
+		// Nothing decoded yet.
+		bytes.limit(0);
+		characters.limit(0);
+
+		Charset streamCharset;
+
+		if (charset != null) {
+			streamCharset = Charset.forName(charset);
+		} else {
+			// Meta tags are searched in the first kilobyte, like browsers do.
+			while (!endOfInput && bytes.remaining() < BUFFER_SIZE / 2) {
+				readBytes();
+			}
+
+			streamCharset = detectCharset(bytes);
+		}
+
+		this.decoder = streamCharset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Reads up to the end of the next region.
+	 *
+	 * @throws IOException -
+	 *
+	 * @return Element - region element, with its content, null at the end of the stream
+	 */
+	Element nextRegion() throws IOException {
+		for (int c = read(); c != -1; c = read()) {
+			if (c != '<') {
+				if (!openElements.isEmpty()) {
+					text.append((char) c);
+				}
+
+				continue;
+			}
+
+			c = read();
+
+			if (c == '/') {
+				readEndTag();
+			} else if (isLetter(c)) {
+				readStartTag(c);
+			} else if (c == '!' || c == '?') {
+				skipDeclaration(c);
+
+				continue;
+			} else {
+				if (!openElements.isEmpty()) {
+					text.append('<');
+
+					if (c != -1) {
+						text.append((char) c);
+					}
+				}
+
+				continue;
+			}
+
+			Element region = tagName == null ? null : handleTag(c == '/');
+
+			if (region != null) {
+				return region;
+			}
+		}
+
+		// Region not closed before the end of the stream.
+		if (!openElements.isEmpty()) {
+			flushText();
+
+			Element region = openElements.peekLast();
+			openElements.clear();
+
+			return region;
+		}
+
+		return null;
+	}
+
+	/**
+	 * @return long - number of characters read so far, to measure how much of a page was needed
+	 */
+	long getCharactersRead() {
+		return charactersRead;
+	}
+
+	/**
+	 * Handles the last tag read.
+	 *
+	 * @param endTag - true if it was an end tag
+	 *
+	 * @throws IOException -
+	 *
+	 * @return Element - region element if the tag closed a region, otherwise null
+	 */
+	private Element handleTag(boolean endTag) throws IOException {
+		boolean rawText = !endTag && ("script".equals(tagName) || "style".equals(tagName));
+
+		if (openElements.isEmpty()) {
+			if (endTag) {
+				return null;
+			}
+
+			if (!rawText && regionSelector.isRegion(tagName, tagId, tagClasses)) {
+				Element region = newElement();
+
+				if (tagSelfClosed || VOID_TAGS.contains(tagName)) {
+					return region;
+				}
+
+				openElements.push(region);
+			} else if (rawText && !tagSelfClosed) {
+				skipRawText();
+			}
+
+			return null;
+		}
+
+		flushText();
+
+		if (endTag) {
+			return closeElement();
+		}
+
+		if (rawText) {
+			if (!tagSelfClosed) {
+				skipRawText();
+			}
+
+			return null;
+		}
+
+		if (PARAGRAPH_CLOSING_TAGS.contains(tagName)) {
+			closeParagraph();
+		}
+
+		if (HEADING_TAGS.contains(tagName) && HEADING_TAGS.contains(openElements.peek().tagName()) && openElements.size() > 1) {
+			openElements.pop();
+		}
+
+		if (SELF_CLOSING_SIBLING_TAGS.contains(tagName) && tagName.equals(openElements.peek().tagName()) && openElements.size() > 1) {
+			openElements.pop();
+		}
+
+		Element element = newElement();
+		openElements.peek().appendChild(element);
+
+		if (!tagSelfClosed && !VOID_TAGS.contains(tagName)) {
+			openElements.push(element);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Closes the innermost open element with the name of the last end tag, and the elements opened inside it.
+	 *
+	 * @return Element - region element if it was closed, otherwise null
+	 */
+	private Element closeElement() {
+		for (Element element : openElements) {
+			if (element.tagName().equals(tagName)) {
+				Element closed;
+
+				do {
+					closed = openElements.pop();
+				} while (closed != element);
+
+				return openElements.isEmpty() ? closed : null;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Closes the innermost open 'p' element in button scope, and the elements opened inside it, as the end tag implied by the last
+	 * start tag. The region element is never closed this way.
+	 */
+	private void closeParagraph() {
+		Element region = openElements.peekLast();
+
+		for (Element element : openElements) {
+			if (element == region || BUTTON_SCOPE_TAGS.contains(element.tagName())) {
+				return;
+			}
+
+			if ("p".equals(element.tagName())) {
+				Element closed;
+
+				do {
+					closed = openElements.pop();
+				} while (closed != element);
+
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Creates element of the last start tag.
+	 *
+	 * @return Element
+	 */
+	private Element newElement() {
+		Attributes attributes = new Attributes();
+
+		if (tagId != null) {
+			attributes.put("id", tagId);
+		}
+
+		if (tagClasses != null) {
+			attributes.put("class", tagClasses);
+		}
+
+		return new Element(Tag.valueOf(tagName), baseUri, attributes);
+	}
+
+	/**
+	 * Adds pending region text to the innermost open element.
+	 */
+	private void flushText() {
+		if (text.length() == 0) {
+			return;
+		}
+
+		String value = isBlank(text) ? WHITESPACE : text.toString();
+		text.setLength(0);
+
+		if (value.indexOf('&') >= 0) {
+			value = Parser.unescapeEntities(value, false);
+		}
+
+		openElements.peek().appendChild(new TextNode(value, baseUri));
+	}
+
+	/**
+	 * Reads start tag after '&lt;' and its first letter, keeping name, 'id' and 'class'.
+	 *
+	 * @param firstLetter - first letter of the tag name
+	 *
+	 * @throws IOException -
+	 */
+	private void readStartTag(int firstLetter) throws IOException {
+		tagId = null;
+		tagClasses = null;
+		tagSelfClosed = false;
+
+		int c = readName(firstLetter);
+		tagName = tokenName();
+
+		while (true) {
+			while (isWhitespace(c)) {
+				c = read();
+			}
+
+			if (c == -1 || c == '>') {
+				return;
+			}
+
+			if (c == '/') {
+				c = read();
+
+				if (c == '>') {
+					tagSelfClosed = true;
+
+					return;
+				}
+
+				continue;
+			}
+
+			c = readName(c);
+
+			boolean keep = token.length() == 2 && "id".contentEquals(token) || token.length() == 5 && "class".contentEquals(token);
+			boolean id = keep && token.length() == 2;
+
+			while (isWhitespace(c)) {
+				c = read();
+			}
+
+			if (c != '=') {
+				continue;
+			}
+
+			c = read();
+
+			while (isWhitespace(c)) {
+				c = read();
+			}
+
+			token.setLength(0);
+
+			if (c == '"' || c == '\'') {
+				int quote = c;
+
+				for (c = read(); c != quote && c != -1; c = read()) {
+					if (keep) {
+						token.append((char) c);
+					}
+				}
+
+				c = read();
+			} else {
+				for (; c != -1 && c != '>' && !isWhitespace(c); c = read()) {
+					if (keep) {
+						token.append((char) c);
+					}
+				}
+			}
+
+			if (keep) {
+				String value = token.indexOf("&") >= 0 ? Parser.unescapeEntities(token.toString(), true) : token.toString();
+
+				if (id) {
+					tagId = value;
+				} else {
+					tagClasses = value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads end tag after '&lt;/'.
+	 *
+	 * @throws IOException -
+	 */
+	private void readEndTag() throws IOException {
+		int c = read();
+
+		if (!isLetter(c)) {
+			tagName = null;
+
+			// Bogus comment, like '</ >'.
+			while (c != -1 && c != '>') {
+				c = read();
+			}
+
+			return;
+		}
+
+		c = readName(c);
+		tagName = tokenName();
+
+		while (c != -1 && c != '>') {
+			c = read();
+		}
+	}
+
+	/**
+	 * Reads lower case tag or attribute name into {@link #token}.
+	 *
+	 * @param firstCharacter - first character of the name
+	 *
+	 * @throws IOException -
+	 *
+	 * @return int - character after the name
+	 */
+	private int readName(int firstCharacter) throws IOException {
+		token.setLength(0);
+
+		int c = firstCharacter;
+
+		while (c != -1 && c != '>' && c != '/' && c != '=' && !isWhitespace(c)) {
+			token.append(Character.toLowerCase((char) c));
+
+			c = read();
+		}
+
+		return c;
+	}
+
+	/**
+	 * Skips comment, doctype, CDATA section or processing instruction after '&lt;!' or '&lt;?'.
+	 *
+	 * @param first - '!' or '?'
+	 *
+	 * @throws IOException -
+	 */
+	private void skipDeclaration(int first) throws IOException {
+		int c = read();
+
+		if (first == '!' && c == '-') {
+			c = read();
+
+			if (c == '-') {
+				// Comment, ends with '-->'.
+				int dashes = 0;
+
+				for (c = read(); c != -1; c = read()) {
+					if (c == '>' && dashes >= 2) {
+						return;
+					}
+
+					dashes = c == '-' ? dashes + 1 : 0;
+				}
+
+				return;
+			}
+		}
+
+		while (c != -1 && c != '>') {
+			c = read();
+		}
+	}
+
+	/**
+	 * Skips content of the script or style element of the last start tag, up to and including its end tag.
+	 *
+	 * @throws IOException -
+	 */
+	private void skipRawText() throws IOException {
+		String endTag = tagName;
+
+		for (int c = read(); c != -1; c = read()) {
+			if (c != '<' || (c = read()) != '/') {
+				continue;
+			}
+
+			int matched = 0;
+
+			for (c = read(); matched < endTag.length() && c != -1 && Character.toLowerCase((char) c) == endTag.charAt(matched); c = read()) {
+				matched++;
+			}
+
+			if (matched == endTag.length() && (c == '>' || isWhitespace(c) || c == '/')) {
+				while (c != -1 && c != '>') {
+					c = read();
+				}
+
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns next character.
+	 *
+	 * @throws IOException -
+	 *
+	 * @return int - character, -1 at the end of the stream
+	 */
+	private int read() throws IOException {
+		if (!characters.hasRemaining()) {
+			characters.clear();
+
+			int length = decode();
+
+			characters.flip();
+
+			if (length == 0) {
+				return -1;
+			}
+
+			charactersRead += length;
+		}
+
+		return characters.get();
+	}
+
+	/**
+	 * Decodes the next characters of the stream into the empty character buffer.
+	 *
+	 * @throws IOException -
+	 *
+	 * @return int - number of characters decoded, 0 at the end of the stream
+	 */
+	private int decode() throws IOException {
+		while (!flushed) {
+			CoderResult result = decoder.decode(bytes, characters, endOfInput);
+
+			if (endOfInput && result.isUnderflow()) {
+				decoder.flush(characters);
+				flushed = true;
+			} else if (characters.position() == 0) {
+				readBytes();
+
+				continue;
+			}
+
+			break;
+		}
+
+		return characters.position();
+	}
+
+	/**
+	 * Reads more bytes from the stream after the ones not decoded yet.
+	 *
+	 * @throws IOException -
+	 */
+	private void readBytes() throws IOException {
+		bytes.compact();
+
+		int length = in.read(bytes.array(), bytes.position(), bytes.remaining());
+
+		if (length == -1) {
+			endOfInput = true;
+		} else {
+			bytes.position(bytes.position() + length);
+		}
+
+		bytes.flip();
+	}
+
+	/**
+	 * Returns charset of page from its byte order mark or from a meta tag in its first bytes, UTF-8 if there is none. The byte order
+	 * mark is skipped.
+	 *
+	 * @param head - first bytes of the page
+	 *
+	 * @return Charset
+	 */
+	private static Charset detectCharset(ByteBuffer head) {
+		int length = head.remaining();
+
+		if (length >= 3 && (head.get(0) & 0xFF) == 0xEF && (head.get(1) & 0xFF) == 0xBB && (head.get(2) & 0xFF) == 0xBF) {
+			head.position(3);
+
+			return StandardCharsets.UTF_8;
+		}
+
+		if (length >= 2 && (head.get(0) & 0xFF) == 0xFE && (head.get(1) & 0xFF) == 0xFF) {
+			head.position(2);
+
+			return StandardCharsets.UTF_16BE;
+		}
+
+		if (length >= 2 && (head.get(0) & 0xFF) == 0xFF && (head.get(1) & 0xFF) == 0xFE) {
+			head.position(2);
+
+			return StandardCharsets.UTF_16LE;
+		}
+
+		for (int index = indexOfCharset(head, 0); index >= 0; index = indexOfCharset(head, index)) {
+			while (index < length && (head.get(index) == '"' || head.get(index) == '\'')) {
+				index++;
+			}
+
+			int end = index;
+
+			while (end < length && (Character.isLetterOrDigit(head.get(end)) || head.get(end) == '-' || head.get(end) == '_')) {
+				end++;
+			}
+
+			String name = new String(head.array(), index, end - index, StandardCharsets.ISO_8859_1);
+
+			if (!name.isEmpty() && Charset.isSupported(name)) {
+				return Charset.forName(name);
+			}
+		}
+
+		return StandardCharsets.UTF_8;
+	}
+
+	/**
+	 * Finds 'charset=', in any case.
+	 *
+	 * @param head	- first bytes of the page
+	 * @param from	- index to search from
+	 *
+	 * @return int - index after 'charset=', -1 if not found
+	 */
+	private static int indexOfCharset(ByteBuffer head, int from) {
+		String pattern = "charset=";
+
+		for (int i = from; i + pattern.length() <= head.remaining(); i++) {
+			int matched = 0;
+
+			while (matched < pattern.length() && Character.toLowerCase((char) head.get(i + matched)) == pattern.charAt(matched)) {
+				matched++;
+			}
+
+			if (matched == pattern.length()) {
+				return i + matched;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns name in {@link #token}, shared if it is a common tag name.
+	 *
+	 * @return String
+	 */
+	private String tokenName() {
+		for (int slot = nameSlot(token); TAG_NAMES[slot] != null; slot = (slot + 1) & (TAG_NAMES.length - 1)) {
+			if (TAG_NAMES[slot].contentEquals(token)) {
+				return TAG_NAMES[slot];
+			}
+		}
+
+		return token.toString();
+	}
+
+	/**
+	 * @param name - tag name
+	 *
+	 * @return int - first slot of name in {@link #TAG_NAMES}
+	 */
+	private static int nameSlot(CharSequence name) {
+		int hash = 0;
+
+		for (int i = 0; i < name.length(); i++) {
+			hash = hash * 31 + name.charAt(i);
+		}
+
+		return (hash ^ (hash >>> 7)) & (TAG_NAMES.length - 1);
+	}
+
+	/**
+	 * @param text - text
+	 *
+	 * @return boolean - true if text has only whitespace
+	 */
+	private static boolean isBlank(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (!isWhitespace(text.charAt(i))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param c - character, -1 at the end of the stream
+	 *
+	 * @return boolean - true if c is an ASCII letter, which starts a tag name
+	 */
+	private static boolean isLetter(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	/**
+	 * @param c - character, -1 at the end of the stream
+	 *
+	 * @return boolean - true if c is HTML whitespace
+	 */
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+	}
+}
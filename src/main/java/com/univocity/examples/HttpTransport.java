@@ -0,0 +1,98 @@
+package com.univocity.examples;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.jsoup.Connection;
+
+/**
+ * Sends the requests of {@link FetchPolicy}. Requests are described by Jsoup connections, so callers such as {@link PageCache} set
+ * URL, headers and timeout the same way whichever transport sends them.
+ */
+interface HttpTransport extends Closeable {
+
+	/**
+	 * Sends each request on its own Jsoup {@link java.net.HttpURLConnection}.
+	 */
+	HttpTransport JSOUP = Connection::execute;
+
+	/**
+	 * Class of the transport on the Java 11 {@code java.net.http.HttpClient}, compiled from 'src/main/java11' by the 'java11' build profile.
+	 */
+	String HTTP_CLIENT_TRANSPORT_CLASS = "com.univocity.examples.HttpClientTransport";
+
+	/**
+	 * Sends request.
+	 *
+	 * @param connection - prepared connection
+	 *
+	 * @throws IOException -
+	 *
+	 * @return Connection.Response
+	 */
+	Connection.Response execute(Connection connection) throws IOException;
+
+	/**
+	 * Sends request and reads the response body only if the filter accepts the status and headers, so an unwanted body is never
+	 * transferred. Jsoup connections always read the whole body, so by default the request is sent on a plain
+	 * {@link java.net.HttpURLConnection} instead.
+	 *
+	 * @param connection	- prepared GET connection
+	 * @param bodyFilter	- decides from the status and headers whether the body is read
+	 *
+	 * @throws IOException -
+	 *
+	 * @return Connection.Response - with an empty body if the filter rejected it
+	 */
+	default Connection.Response execute(Connection connection, BodyFilter bodyFilter) throws IOException {
+		return StreamedResponse.execute(connection.request(), bodyFilter);
+	}
+
+	/**
+	 * Releases pooled connections.
+	 */
+	@Override
+	default void close() {
+	}
+
+	/**
+	 * Returns transport by name.
+	 *
+	 * @param name - 'jsoup', or 'httpclient' for pooled keep-alive and HTTP/2 connections. The HTTP client transport needs Java 11,
+	 *               on older JVMs or builds without it the Jsoup transport is used
+	 *
+	 * @return HttpTransport
+	 */
+	static HttpTransport forName(String name) {
+		if ("jsoup".equals(name)) {
+			return JSOUP;
+		}
+
+		if (!"httpclient".equals(name)) {
+			throw new IllegalArgumentException("Unknown transport " + name + ", expected jsoup or httpclient");
+		}
+
+		try {
+			return (HttpTransport) Class.forName(HTTP_CLIENT_TRANSPORT_CLASS).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			System.out.println("HTTP client transport is not available on Java " + System.getProperty("java.specification.version") + ", using Jsoup connections (" + e + ")");
+
+			return JSOUP;
+		}
+	}
+
+	/**
+	 * Decides whether a response body is worth transferring, before it is read.
+	 */
+	interface BodyFilter {
+
+		/**
+		 * @param statusCode	- response status
+		 * @param contentType	- 'Content-Type' header, null if none
+		 * @param contentLength	- 'Content-Length' header, -1 if none
+		 *
+		 * @return boolean - true to read the body
+		 */
+		boolean acceptsBody(int statusCode, String contentType, long contentLength);
+	}
+}
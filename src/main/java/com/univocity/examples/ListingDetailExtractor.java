@@ -0,0 +1,494 @@
+package com.univocity.examples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+
+/**
+ * Extracts the fields of a listing detail page in a single walk over the DOM.
+ *
+ * Field paths use a subset of CSS selectors ('tag', 'tag#id', 'tag.class' joined by '>' or space) and are
+ * compiled once when the field is added, so nothing is re-parsed per page. Rules are indexed by the tag of
+ * the element they capture, and the walk stops as soon as every field has a value.
+ *
+ * Pages can also be extracted as a stream, see {@link #extractRecord(String, InputStream, String)}: the first step of each
+ * path, i.e. 'div#listingDetail', selects a region of the page, and only regions are built as elements.
+ *
+ * Instances are safe to share between threads once configured.
+ */
+class ListingDetailExtractor {
+
+	/**
+	 * Extractor of harcourts.co.za detail pages.
+	 */
+	static final ListingDetailExtractor HARCOURTS = new ListingDetailExtractor("propertyDetailsLink")
+			.addFollowingTextField("id", "div.listingInfo > span > strong", "Listing Number:")
+			.addTextField("address", "div#listingDetail > div#detailTitle > h2.detailAddress")
+			.addTextField("price", "div#listingDetail > div#detailTitle > div.propFeatures h3#listingViewDisplayPrice")
+			.addTextField("bedrooms", "div#listingDetail > div#detailTitle > div.propFeatures > ul#detailFeatures > li.bdrm > span")
+			.addTextField("bathrooms", "div#listingDetail > div#detailTitle > div.propFeatures > ul#detailFeatures > li.bthrm > span")
+			.addFollowingTextField("landSize", "div.property-information > ul > li > span", "Land Size:")
+			.addFollowingTextField("propertyType", "div.property-information > ul > li > span", "Property Type:");
+
+	/**
+	 * Name of the field holding the detail page link.
+	 */
+	private final String linkFieldName;
+
+	/**
+	 * Field rules, in declaration order.
+	 */
+	private final List<FieldRule> rules = new ArrayList<>();
+
+	/**
+	 * Field rules by tag name of the element they capture.
+	 */
+	private final Map<String, List<FieldRule>> rulesByTagName = new HashMap<>();
+
+	/**
+	 * All field names, link field first.
+	 */
+	private String[] fieldNames;
+
+	/**
+	 * Creates extractor without field rules.
+	 *
+	 * @param linkFieldName - name of the field holding the detail page link
+	 */
+	ListingDetailExtractor(String linkFieldName) {
+		this.linkFieldName = linkFieldName;
+		this.fieldNames = new String[] {linkFieldName};
+	}
+
+	/**
+	 * Adds field captured from the text of the first element matching path.
+	 *
+	 * @param fieldName	- field name
+	 * @param path		- element path
+	 *
+	 * @return ListingDetailExtractor
+	 */
+	ListingDetailExtractor addTextField(String fieldName, String path) {
+		return addRule(new FieldRule(rules.size(), fieldName, compile(path), null));
+	}
+
+	/**
+	 * Adds field captured from the first non blank text after the first element matching path that contains the label
+	 * (case insensitive), i.e. ' EST6886' in '&lt;span&gt;&lt;strong&gt;Listing Number:&lt;/strong&gt; EST6886&lt;/span&gt;'.
+	 *
+	 * @param fieldName	- field name
+	 * @param path		- label element path
+	 * @param label		- label text
+	 *
+	 * @return ListingDetailExtractor
+	 */
+	ListingDetailExtractor addFollowingTextField(String fieldName, String path, String label) {
+		return addRule(new FieldRule(rules.size(), fieldName, compile(path), label.toLowerCase(Locale.ROOT)));
+	}
+
+	/**
+	 * Returns all field names, link field first.
+	 *
+	 * @return String[]
+	 */
+	String[] getFieldNames() {
+		return fieldNames.clone();
+	}
+
+	/**
+	 * Captures all fields of the detail page. Fields not found on the page are null.
+	 *
+	 * @param detailPageLink	- detail page link
+	 * @param root				- detail page document or element to search
+	 *
+	 * @return Map<String, String> - values by field name, in {@link #getFieldNames()} order
+	 */
+	Map<String, String> extract(String detailPageLink, Element root) {
+		String[] values = extractValues(detailPageLink, root);
+
+		Map<String, String> record = new LinkedHashMap<>();
+		record.put(linkFieldName, detailPageLink);
+
+		for (FieldRule rule : rules) {
+			record.put(rule.fieldName, values[rule.index + 1]);
+		}
+
+		return record;
+	}
+
+	/**
+	 * Captures all fields of the detail page into a typed record, see {@link ListingRecord#fromValues(String[], String[])}.
+	 *
+	 * @param detailPageLink	- detail page link
+	 * @param root				- detail page document or element to search
+	 *
+	 * @return ListingRecord
+	 */
+	ListingRecord extractRecord(String detailPageLink, Element root) {
+		return ListingRecord.fromValues(fieldNames, extractValues(detailPageLink, root));
+	}
+
+	/**
+	 * Captures all fields of the detail page into a typed record, without parsing the whole page. The page is tokenized and only the
+	 * regions where fields are declared are built as elements, and reading stops as soon as every field has a value, usually long
+	 * before navigation, scripts and footer. Regions are the elements matched by the first step of a field path, so fields
+	 * whose path starts outside the element holding them are not found.
+	 *
+	 * @param detailPageLink	- detail page link
+	 * @param in				- detail page content, as downloaded or archived. Not closed
+	 * @param charset			- charset of the content, null to detect it from BOM or meta tag
+	 *
+	 * @throws IOException -
+	 *
+	 * @return ListingRecord
+	 */
+	ListingRecord extractRecord(String detailPageLink, InputStream in, String charset) throws IOException {
+		String[] values = new String[rules.size() + 1];
+		values[0] = detailPageLink;
+
+		HtmlRegionReader regionReader = new HtmlRegionReader(in, charset, this::isRegion, detailPageLink);
+
+		int remaining = rules.size();
+
+		for (Element region = regionReader.nextRegion(); remaining > 0 && region != null; region = remaining > 0 ? regionReader.nextRegion() : null) {
+			remaining = extractInto(values, remaining, region);
+		}
+
+		return ListingRecord.fromValues(fieldNames, values);
+	}
+
+	/**
+	 * Returns true if start tag matches the first step of a field path.
+	 *
+	 * @param tagName	- lower case tag name
+	 * @param id		- 'id' attribute, null if none
+	 * @param classes	- 'class' attribute, null if none
+	 *
+	 * @return boolean
+	 */
+	private boolean isRegion(String tagName, String id, String classes) {
+		for (FieldRule rule : rules) {
+			if (rule.path[0].matches(tagName, id, classes)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Captures all fields of the detail page. Fields not found on the page are null.
+	 *
+	 * @param detailPageLink	- detail page link
+	 * @param root				- detail page document or element to search
+	 *
+	 * @return String[] - values in {@link #getFieldNames()} order, link first
+	 */
+	private String[] extractValues(String detailPageLink, Element root) {
+		String[] values = new String[rules.size() + 1];
+		values[0] = detailPageLink;
+
+		extractInto(values, rules.size(), root);
+
+		return values;
+	}
+
+	/**
+	 * Captures the fields without value found under root.
+	 *
+	 * @param values	- values in {@link #getFieldNames()} order, link first. Null values are captured
+	 * @param remaining	- number of null values
+	 * @param root		- element to search
+	 *
+	 * @return int - number of values still null
+	 */
+	private int extractInto(String[] values, int remaining, Element root) {
+		Deque<Element> pending = new ArrayDeque<>();
+		pending.push(root);
+
+		while (remaining > 0 && !pending.isEmpty()) {
+			Element element = pending.pop();
+
+			List<FieldRule> candidates = rulesByTagName.get(element.tagName());
+
+			if (candidates != null) {
+				for (FieldRule rule : candidates) {
+					if (values[rule.index + 1] == null && rule.matches(element)) {
+						values[rule.index + 1] = rule.capture(element);
+
+						remaining--;
+					}
+				}
+			}
+
+			// Children are pushed in reverse so they are visited in document order.
+			for (int i = element.childNodeSize() - 1; i >= 0; i--) {
+				Node child = element.childNode(i);
+
+				if (child instanceof Element) {
+					pending.push((Element) child);
+				}
+			}
+		}
+
+		return remaining;
+	}
+
+	/**
+	 * Registers rule.
+	 *
+	 * @param rule - field rule
+	 *
+	 * @return ListingDetailExtractor
+	 */
+	private ListingDetailExtractor addRule(FieldRule rule) {
+		rules.add(rule);
+
+		fieldNames = Arrays.copyOf(fieldNames, fieldNames.length + 1);
+		fieldNames[fieldNames.length - 1] = rule.fieldName;
+
+		rulesByTagName.computeIfAbsent(rule.path[rule.path.length - 1].tagName, tagName -> new ArrayList<>()).add(rule);
+
+		return this;
+	}
+
+	/**
+	 * Compiles element path into steps, from the outermost element to the captured one.
+	 *
+	 * @param path - element path like 'div#detailTitle > div.propFeatures h3'
+	 *
+	 * @return PathStep[]
+	 */
+	private static PathStep[] compile(String path) {
+		List<PathStep> steps = new ArrayList<>();
+
+		boolean childOfPrevious = false;
+
+		for (String token : path.trim().split("\\s+")) {
+			if (">".equals(token)) {
+				childOfPrevious = true;
+
+				continue;
+			}
+
+			String tagName = token;
+			String id = null;
+			String className = null;
+
+			int idIndex = token.indexOf('#');
+			int classIndex = token.indexOf('.');
+
+			if (idIndex >= 0) {
+				tagName = token.substring(0, idIndex);
+				id = token.substring(idIndex + 1);
+			} else if (classIndex >= 0) {
+				tagName = token.substring(0, classIndex);
+				className = token.substring(classIndex + 1);
+			}
+
+			if (tagName.isEmpty()) {
+				throw new IllegalArgumentException("Tag name is required in every step of path '" + path + "'");
+			}
+
+			steps.add(new PathStep(tagName.toLowerCase(Locale.ROOT), id, className, childOfPrevious && !steps.isEmpty()));
+
+			childOfPrevious = false;
+		}
+
+		return steps.toArray(new PathStep[0]);
+	}
+
+	/**
+	 * Compiled step of element path.
+	 */
+	private static final class PathStep {
+
+		/**
+		 * Lower case tag name.
+		 */
+		private final String tagName;
+
+		/**
+		 * Required id, null if any.
+		 */
+		private final String id;
+
+		/**
+		 * Required class, null if any.
+		 */
+		private final String className;
+
+		/**
+		 * True if element must be a direct child of the element matched by the previous step, false if any descendant.
+		 */
+		private final boolean childOfPrevious;
+
+		PathStep(String tagName, String id, String className, boolean childOfPrevious) {
+			this.tagName = tagName;
+			this.id = id;
+			this.className = className;
+			this.childOfPrevious = childOfPrevious;
+		}
+
+		/**
+		 * Returns true if element matches tag, id and class of this step.
+		 *
+		 * @param element - element to test
+		 *
+		 * @return boolean
+		 */
+		boolean matches(Element element) {
+			return tagName.equals(element.tagName())
+					&& (id == null || id.equals(element.id()))
+					&& (className == null || element.hasClass(className));
+		}
+
+		/**
+		 * Returns true if start tag matches tag, id and class of this step.
+		 *
+		 * @param tagName	- lower case tag name
+		 * @param id		- 'id' attribute, null if none
+		 * @param classes	- 'class' attribute, null if none
+		 *
+		 * @return boolean
+		 */
+		boolean matches(String tagName, String id, String classes) {
+			if (!this.tagName.equals(tagName) || (this.id != null && !this.id.equals(id))) {
+				return false;
+			}
+
+			if (className == null) {
+				return true;
+			}
+
+			if (classes == null) {
+				return false;
+			}
+
+			for (int start = classes.indexOf(className); start >= 0; start = classes.indexOf(className, start + 1)) {
+				int end = start + className.length();
+
+				if ((start == 0 || Character.isWhitespace(classes.charAt(start - 1))) && (end == classes.length() || Character.isWhitespace(classes.charAt(end)))) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+
+	/**
+	 * Compiled field definition.
+	 */
+	private static final class FieldRule {
+
+		/**
+		 * Position of the field in declaration order.
+		 */
+		private final int index;
+
+		/**
+		 * Field name.
+		 */
+		private final String fieldName;
+
+		/**
+		 * Path of the matched element.
+		 */
+		private final PathStep[] path;
+
+		/**
+		 * Lower case label the matched element must contain, null to capture the element text.
+		 */
+		private final String label;
+
+		FieldRule(int index, String fieldName, PathStep[] path, String label) {
+			this.index = index;
+			this.fieldName = fieldName;
+			this.path = path;
+			this.label = label;
+		}
+
+		/**
+		 * Returns true if element is matched by the path of this rule, and contains the label if there is one.
+		 *
+		 * @param element - element to test
+		 *
+		 * @return boolean
+		 */
+		boolean matches(Element element) {
+			if (!matches(element, path.length - 1)) {
+				return false;
+			}
+
+			return label == null || element.text().toLowerCase(Locale.ROOT).contains(label);
+		}
+
+		/**
+		 * Returns field value of matched element.
+		 *
+		 * @param element - matched element
+		 *
+		 * @return String
+		 */
+		String capture(Element element) {
+			if (label == null) {
+				return element.text();
+			}
+
+			for (Node sibling = element.nextSibling(); sibling != null; sibling = sibling.nextSibling()) {
+				if (sibling instanceof TextNode && !((TextNode) sibling).isBlank()) {
+					return ((TextNode) sibling).text().trim();
+				}
+			}
+
+			return null;
+		}
+
+		/**
+		 * Matches element against the path up to step index, walking up the ancestors.
+		 *
+		 * @param element	- element to test
+		 * @param stepIndex	- index of the step the element must match
+		 *
+		 * @return boolean
+		 */
+		private boolean matches(Element element, int stepIndex) {
+			PathStep step = path[stepIndex];
+
+			if (!step.matches(element)) {
+				return false;
+			}
+
+			if (stepIndex == 0) {
+				return true;
+			}
+
+			Element ancestor = element.parent();
+
+			if (path[stepIndex].childOfPrevious) {
+				return ancestor != null && matches(ancestor, stepIndex - 1);
+			}
+
+			for (; ancestor != null; ancestor = ancestor.parent()) {
+				if (matches(ancestor, stepIndex - 1)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+	}
+}
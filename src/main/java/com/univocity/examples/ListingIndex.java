@@ -0,0 +1,325 @@
+package com.univocity.examples;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persistent index of the listings seen by previous runs, for incremental crawls.
+ *
+ * Each listing number is mapped to a content fingerprint and to the record captured the last time it changed.
+ * Listings whose fingerprint did not change can reuse that record instead of visiting their detail page again.
+ * Added and changed listings, and listings no longer found, are written to a delta CSV next to the full one,
+ * with an extra first 'change' column.
+ */
+class ListingIndex implements Closeable {
+
+	/**
+	 * Kind of change of a listing since the previous run.
+	 */
+	enum Change {
+		ADDED, CHANGED, UNCHANGED, REMOVED
+	}
+
+	/**
+	 * Index file.
+	 */
+	private final File indexFile;
+
+	/**
+	 * Record fields, in CSV column order.
+	 */
+	private final String[] headers;
+
+	/**
+	 * Fingerprint and field values by listing number. Values are stored after the fingerprint, in header order.
+	 */
+	private final Map<String, String[]> listings = new LinkedHashMap<>();
+
+	/**
+	 * Listing numbers found in this run.
+	 */
+	private final Set<String> seenListings = new HashSet<>();
+
+	/**
+	 * Number of listings of this run by kind of change.
+	 */
+	private final Map<Change, Integer> changeCounts = new EnumMap<>(Change.class);
+
+	/**
+	 * Receives added, changed and removed records.
+	 */
+	private final RecordSink delta;
+
+	/**
+	 * Row buffer of the delta sink.
+	 */
+	private final Map<String, String> deltaRecord = new LinkedHashMap<>();
+
+	/**
+	 * Loads index and opens the '{parserName}-delta' CSV. An index with different headers is ignored, so
+	 * every listing is reported as added.
+	 *
+	 * @param indexFile		- index file
+	 * @param parserName	- parser name, see {@link CsvResultHelper#openResults(String, String...)}
+	 * @param headers		- record fields, in CSV column order
+	 *
+	 * @throws IOException -
+	 */
+	ListingIndex(File indexFile, String parserName, String... headers) throws IOException {
+		this.indexFile = indexFile;
+		this.headers = headers.clone();
+
+		if (indexFile.exists()) {
+			try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+				String headerLine = reader.readLine();
+
+				if (String.join("\t", headers).equals(headerLine)) {
+					String line;
+
+					while ((line = reader.readLine()) != null) {
+						String[] columns = line.split("\t", -1);
+
+						if (columns.length == headers.length + 2) {
+							listings.put(columns[0], Arrays.copyOfRange(columns, 1, columns.length));
+						}
+					}
+				}
+			}
+		}
+
+		String[] deltaHeaders = new String[headers.length + 1];
+		deltaHeaders[0] = "change";
+		System.arraycopy(headers, 0, deltaHeaders, 1, headers.length);
+
+		delta = CsvResultHelper.openResults(parserName + "-delta", deltaHeaders);
+	}
+
+	/**
+	 * Opens the index of location under directory, as '{directory}/listings-{locationCode}.tsv', if incremental mode is
+	 * enabled with '-Dcrawl.incremental=true'.
+	 *
+	 * @param directory		- index directory
+	 * @param locationCode	- location code
+	 * @param parserName	- parser name
+	 * @param headers		- record fields, in CSV column order
+	 *
+	 * @throws IOException -
+	 *
+	 * @return ListingIndex - null if incremental mode is disabled
+	 */
+	static ListingIndex openIfEnabled(File directory, String locationCode, String parserName, String... headers) throws IOException {
+		if (!Boolean.getBoolean("crawl.incremental")) {
+			return null;
+		}
+
+		if (!directory.exists()) {
+			directory.mkdirs();
+		}
+
+		return new ListingIndex(new File(directory, "listings-" + locationCode + ".tsv"), parserName, headers);
+	}
+
+	/**
+	 * Returns the listing number of a detail page link, i.e. 'EST6886' for '/Property/307634/EST6886/Springfield'.
+	 *
+	 * @param detailPageLink - detail page link
+	 *
+	 * @return String
+	 */
+	static String listingNumberOf(String detailPageLink) {
+		int lastSlashIndex = detailPageLink.lastIndexOf('/');
+		int previousSlashIndex = detailPageLink.lastIndexOf('/', lastSlashIndex - 1);
+
+		return detailPageLink.substring(previousSlashIndex + 1, lastSlashIndex);
+	}
+
+	/**
+	 * Returns a 64 bit FNV-1a fingerprint of text, in hex.
+	 *
+	 * @param text - text to fingerprint, i.e. the listing summary on the page of results
+	 *
+	 * @return String
+	 */
+	static String fingerprintOf(CharSequence text) {
+		return Long.toHexString(fingerprintHash(text));
+	}
+
+	/**
+	 * Returns the 64 bit FNV-1a hash of text.
+	 *
+	 * @param text - text to hash
+	 *
+	 * @return long
+	 */
+	static long fingerprintHash(CharSequence text) {
+		long hash = 0xcbf29ce484222325L;
+
+		for (int i = 0; i < text.length(); i++) {
+			hash ^= text.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+
+		return hash;
+	}
+
+	/**
+	 * Returns the previous record of listing if its fingerprint did not change.
+	 *
+	 * @param listingNumber	- listing number
+	 * @param fingerprint	- current fingerprint
+	 *
+	 * @return Map<String, String> - previous record, null if the listing is new or changed
+	 */
+	synchronized Map<String, String> unchangedRecord(String listingNumber, String fingerprint) {
+		String[] stored = listings.get(listingNumber);
+
+		if (stored == null || !stored[0].equals(fingerprint)) {
+			return null;
+		}
+
+		Map<String, String> record = new LinkedHashMap<>();
+
+		for (int i = 0; i < headers.length; i++) {
+			record.put(headers[i], stored[i + 1].isEmpty() ? null : stored[i + 1]);
+		}
+
+		return record;
+	}
+
+	/**
+	 * Marks listing as found in this run without updating it, i.e. when it was already captured by another location of the
+	 * crawl, so it is not reported as removed.
+	 *
+	 * @param listingNumber - listing number
+	 */
+	synchronized void markSeen(String listingNumber) {
+		seenListings.add(listingNumber);
+	}
+
+	/**
+	 * Updates listing and writes it to the delta CSV if it was added or changed.
+	 *
+	 * @param listingNumber	- listing number
+	 * @param fingerprint	- current fingerprint
+	 * @param record		- current record
+	 *
+	 * @return Change
+	 */
+	synchronized Change update(String listingNumber, String fingerprint, Map<String, String> record) {
+		// A listing repeated on a later page of results is only counted once.
+		if (!seenListings.add(listingNumber)) {
+			return Change.UNCHANGED;
+		}
+
+		String[] stored = listings.get(listingNumber);
+
+		if (stored != null && stored[0].equals(fingerprint)) {
+			changeCounts.merge(Change.UNCHANGED, 1, Integer::sum);
+
+			return Change.UNCHANGED;
+		}
+
+		String[] columns = new String[headers.length + 1];
+		columns[0] = fingerprint;
+
+		for (int i = 0; i < headers.length; i++) {
+			String value = record.get(headers[i]);
+
+			columns[i + 1] = value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+		}
+
+		listings.put(listingNumber, columns);
+
+		Change change = stored == null ? Change.ADDED : Change.CHANGED;
+
+		writeDelta(change, record);
+
+		return change;
+	}
+
+	/**
+	 * Finishes the run and saves the index. If the crawl was complete, listings not found in this run are written to the
+	 * delta CSV as removed and dropped from the index. Otherwise they are kept, as they may be on pages not visited.
+	 *
+	 * @param complete - true if all pages of results were visited
+	 *
+	 * @throws IOException -
+	 */
+	synchronized void finish(boolean complete) throws IOException {
+		if (complete) {
+			listings.entrySet().removeIf(listing -> {
+				if (seenListings.contains(listing.getKey())) {
+					return false;
+				}
+
+				writeDelta(Change.REMOVED, unchangedRecord(listing.getKey(), listing.getValue()[0]));
+
+				return true;
+			});
+		}
+
+		File temporaryFile = new File(indexFile.getPath() + ".tmp");
+
+		try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile.toPath(), StandardCharsets.UTF_8)) {
+			writer.write(String.join("\t", headers));
+			writer.newLine();
+
+			for (Map.Entry<String, String[]> listing : listings.entrySet()) {
+				writer.write(listing.getKey() + '\t' + String.join("\t", listing.getValue()));
+				writer.newLine();
+			}
+		}
+
+		Files.move(temporaryFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		System.out.println("Listing index: " + countOf(Change.ADDED) + " added, " + countOf(Change.CHANGED) + " changed, " + countOf(Change.UNCHANGED) + " unchanged, "
+				+ (complete ? countOf(Change.REMOVED) + " removed" : "removed listings not checked, crawl was not complete") + ". Index saved to " + indexFile.getAbsolutePath());
+	}
+
+	/**
+	 * Closes the delta CSV. The index is only saved by {@link #finish(boolean)}, so a failed run leaves the previous one.
+	 */
+	@Override
+	public synchronized void close() {
+		delta.close();
+	}
+
+	/**
+	 * Writes record to the delta CSV.
+	 *
+	 * @param change	- kind of change
+	 * @param record	- record
+	 */
+	private void writeDelta(Change change, Map<String, String> record) {
+		changeCounts.merge(change, 1, Integer::sum);
+
+		deltaRecord.clear();
+		deltaRecord.put("change", change.name());
+		deltaRecord.putAll(record);
+
+		delta.write(deltaRecord);
+	}
+
+	/**
+	 * Returns number of listings of this run with the given kind of change.
+	 *
+	 * @param change - kind of change
+	 *
+	 * @return int
+	 */
+	private int countOf(Change change) {
+		return changeCounts.getOrDefault(change, 0);
+	}
+}
@@ -0,0 +1,495 @@
+package com.univocity.examples;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Captured listing with a fixed schema and normalized values: price in rand, bedrooms and bathrooms as small numbers,
+ * land size in square metres and property type as a code of a shared dictionary, so each distinct type name is kept once.
+ *
+ * Values are parsed from the text of the page without regular expressions or intermediate strings, i.e. 'R 1 250 000'
+ * becomes 1250000 and '2,5 ha' becomes 25000. Values missing or not understood are {@link #UNKNOWN}.
+ */
+final class ListingRecord {
+
+	/**
+	 * Value of numeric fields missing or not understood.
+	 */
+	static final int UNKNOWN = -1;
+
+	/**
+	 * Field names, in CSV column order. Same names as {@link ListingDetailExtractor#HARCOURTS} and the univocity entity.
+	 */
+	static final String[] FIELD_NAMES = {"propertyDetailsLink", "id", "address", "price", "bedrooms", "bathrooms", "landSize", "propertyType"};
+
+	/**
+	 * Property type codes by name.
+	 */
+	private static final ConcurrentMap<String, Short> PROPERTY_TYPE_CODES = new ConcurrentHashMap<>();
+
+	/**
+	 * Property type names by code.
+	 */
+	private static final List<String> PROPERTY_TYPE_NAMES = new ArrayList<>();
+
+	/**
+	 * Square metres in a hectare.
+	 */
+	private static final long SQUARE_METRES_PER_HECTARE = 10_000;
+
+	/**
+	 * Thousandths of a square metre in an acre.
+	 */
+	private static final long SQUARE_METRE_THOUSANDTHS_PER_ACRE = 4_046_856;
+
+	/**
+	 * Detail page link.
+	 */
+	private final String link;
+
+	/**
+	 * Listing number, i.e. 'EST6886'.
+	 */
+	private final String id;
+
+	/**
+	 * Address.
+	 */
+	private final String address;
+
+	/**
+	 * Price in rand.
+	 */
+	private final long price;
+
+	/**
+	 * Number of bedrooms.
+	 */
+	private final short bedrooms;
+
+	/**
+	 * Number of bathrooms.
+	 */
+	private final short bathrooms;
+
+	/**
+	 * Land size in square metres.
+	 */
+	private final int landSize;
+
+	/**
+	 * Property type code, see {@link #propertyTypeName(int)}.
+	 */
+	private final short propertyType;
+
+	private ListingRecord(String link, String id, String address, long price, short bedrooms, short bathrooms, int landSize, short propertyType) {
+		this.link = link;
+		this.id = id;
+		this.address = address;
+		this.price = price;
+		this.bedrooms = bedrooms;
+		this.bathrooms = bathrooms;
+		this.landSize = landSize;
+		this.propertyType = propertyType;
+	}
+
+	/**
+	 * Creates record from the text of each field.
+	 *
+	 * @param link			- detail page link
+	 * @param id			- listing number
+	 * @param address		- address
+	 * @param price			- price text, i.e. 'R 1 250 000'
+	 * @param bedrooms		- bedrooms text
+	 * @param bathrooms		- bathrooms text
+	 * @param landSize		- land size text, i.e. '500 m²', '1,5 ha' or '2 acres'
+	 * @param propertyType	- property type name
+	 *
+	 * @return ListingRecord
+	 */
+	static ListingRecord parse(String link, String id, String address, String price, String bedrooms, String bathrooms, String landSize, String propertyType) {
+		return new ListingRecord(link, id, address, parseAmount(price), (short) Math.min(parseAmount(bedrooms), Short.MAX_VALUE),
+				(short) Math.min(parseAmount(bathrooms), Short.MAX_VALUE), parseLandSize(landSize), propertyTypeCode(propertyType));
+	}
+
+	/**
+	 * Creates record from values in the order of field names. Fields missing from field names are unknown.
+	 *
+	 * @param fieldNames	- field names
+	 * @param values		- field values, in the same order
+	 *
+	 * @return ListingRecord
+	 */
+	static ListingRecord fromValues(String[] fieldNames, String[] values) {
+		String[] fields = new String[FIELD_NAMES.length];
+
+		for (int i = 0; i < fieldNames.length; i++) {
+			int fieldIndex = fieldIndexOf(fieldNames[i]);
+
+			if (fieldIndex >= 0) {
+				fields[fieldIndex] = values[i];
+			}
+		}
+
+		return parse(fields[0], fields[1], fields[2], fields[3], fields[4], fields[5], fields[6], fields[7]);
+	}
+
+	/**
+	 * Creates record from values by field name. Normalized values, as written by {@link #fillFieldMap(Map)}, are parsed
+	 * back to the same record.
+	 *
+	 * @param fieldMap - values by field name
+	 *
+	 * @return ListingRecord
+	 */
+	static ListingRecord fromFieldMap(Map<String, String> fieldMap) {
+		return parse(fieldMap.get(FIELD_NAMES[0]), fieldMap.get(FIELD_NAMES[1]), fieldMap.get(FIELD_NAMES[2]), fieldMap.get(FIELD_NAMES[3]),
+				fieldMap.get(FIELD_NAMES[4]), fieldMap.get(FIELD_NAMES[5]), fieldMap.get(FIELD_NAMES[6]), fieldMap.get(FIELD_NAMES[7]));
+	}
+
+	/**
+	 * Puts normalized values in map, by field name in {@link #FIELD_NAMES} order. Unknown values are null.
+	 *
+	 * @param fieldMap - map to fill, usually cleared and reused for every record
+	 *
+	 * @return Map<String, String> - fieldMap
+	 */
+	Map<String, String> fillFieldMap(Map<String, String> fieldMap) {
+		fieldMap.put(FIELD_NAMES[0], link);
+		fieldMap.put(FIELD_NAMES[1], id);
+		fieldMap.put(FIELD_NAMES[2], address);
+		fieldMap.put(FIELD_NAMES[3], price == UNKNOWN ? null : Long.toString(price));
+		fieldMap.put(FIELD_NAMES[4], bedrooms == UNKNOWN ? null : Integer.toString(bedrooms));
+		fieldMap.put(FIELD_NAMES[5], bathrooms == UNKNOWN ? null : Integer.toString(bathrooms));
+		fieldMap.put(FIELD_NAMES[6], landSize == UNKNOWN ? null : Integer.toString(landSize));
+		fieldMap.put(FIELD_NAMES[7], propertyTypeName(propertyType));
+
+		return fieldMap;
+	}
+
+	/**
+	 * Puts normalized values in row, in {@link #FIELD_NAMES} order. Unknown values are null.
+	 *
+	 * @param row - row to fill, with at least {@link #FIELD_NAMES} length, usually reused for every record
+	 *
+	 * @return String[] - row
+	 */
+	String[] fillRow(String[] row) {
+		row[0] = link;
+		row[1] = id;
+		row[2] = address;
+		row[3] = price == UNKNOWN ? null : Long.toString(price);
+		row[4] = bedrooms == UNKNOWN ? null : Integer.toString(bedrooms);
+		row[5] = bathrooms == UNKNOWN ? null : Integer.toString(bathrooms);
+		row[6] = landSize == UNKNOWN ? null : Integer.toString(landSize);
+		row[7] = propertyTypeName(propertyType);
+
+		return row;
+	}
+
+	/**
+	 * @return String - detail page link
+	 */
+	String getLink() {
+		return link;
+	}
+
+	/**
+	 * @return String - listing number
+	 */
+	String getId() {
+		return id;
+	}
+
+	/**
+	 * @return String - address
+	 */
+	String getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return long - price in rand, {@link #UNKNOWN} if not shown
+	 */
+	long getPrice() {
+		return price;
+	}
+
+	/**
+	 * @return int - number of bedrooms, {@link #UNKNOWN} if not shown
+	 */
+	int getBedrooms() {
+		return bedrooms;
+	}
+
+	/**
+	 * @return int - number of bathrooms, {@link #UNKNOWN} if not shown
+	 */
+	int getBathrooms() {
+		return bathrooms;
+	}
+
+	/**
+	 * @return int - land size in square metres, {@link #UNKNOWN} if not shown
+	 */
+	int getLandSize() {
+		return landSize;
+	}
+
+	/**
+	 * @return int - property type code, {@link #UNKNOWN} if not shown
+	 */
+	int getPropertyType() {
+		return propertyType;
+	}
+
+	/**
+	 * Returns the code of property type, adding it to the dictionary if needed.
+	 *
+	 * @param name - property type name
+	 *
+	 * @return short - code, {@link #UNKNOWN} for blank names
+	 */
+	static short propertyTypeCode(String name) {
+		if (name == null) {
+			return UNKNOWN;
+		}
+
+		name = name.trim();
+
+		if (name.isEmpty()) {
+			return UNKNOWN;
+		}
+
+		Short code = PROPERTY_TYPE_CODES.get(name);
+
+		if (code != null) {
+			return code;
+		}
+
+		synchronized (PROPERTY_TYPE_NAMES) {
+			code = PROPERTY_TYPE_CODES.get(name);
+
+			if (code == null) {
+				if (PROPERTY_TYPE_NAMES.size() >= Short.MAX_VALUE) {
+					throw new IllegalStateException("Too many property types: " + name);
+				}
+
+				code = (short) PROPERTY_TYPE_NAMES.size();
+
+				PROPERTY_TYPE_NAMES.add(name);
+				PROPERTY_TYPE_CODES.put(name, code);
+			}
+
+			return code;
+		}
+	}
+
+	/**
+	 * Returns the name of property type code.
+	 *
+	 * @param code - property type code
+	 *
+	 * @return String - name, null for {@link #UNKNOWN}
+	 */
+	static String propertyTypeName(int code) {
+		if (code == UNKNOWN) {
+			return null;
+		}
+
+		synchronized (PROPERTY_TYPE_NAMES) {
+			return PROPERTY_TYPE_NAMES.get(code);
+		}
+	}
+
+	/**
+	 * Parses the first whole number of text. Digit groups separated by a blank or a comma belong to the same number, as in
+	 * 'R 1 250 000' or '1,250,000', anything else ends it, i.e. the '- R 1 400 000' of a price range or the decimals.
+	 *
+	 * @param text - text, may be null
+	 *
+	 * @return long - number, {@link #UNKNOWN} if text has no digits or the number doesn't fit in a long
+	 */
+	static long parseAmount(CharSequence text) {
+		if (text == null) {
+			return UNKNOWN;
+		}
+
+		long value = 0;
+		boolean inNumber = false;
+
+		try {
+			for (int i = 0; i < text.length(); i++) {
+				char ch = text.charAt(i);
+
+				if (ch >= '0' && ch <= '9') {
+					value = Math.addExact(Math.multiplyExact(value, 10), ch - '0');
+					inNumber = true;
+				} else if (inNumber && !(isGroupSeparator(ch) && i + 1 < text.length() && isDigit(text.charAt(i + 1)))) {
+					break;
+				}
+			}
+		} catch (ArithmeticException e) {
+			return UNKNOWN;
+		}
+
+		return inNumber ? value : UNKNOWN;
+	}
+
+	/**
+	 * Parses land size to square metres. The number may have a decimal part after '.' or ',', a comma followed by exactly
+	 * three digits is a thousands separator. Units 'ha', 'acre' or 'ac' and 'km' are converted, anything else is square metres.
+	 *
+	 * @param text - land size text, may be null
+	 *
+	 * @return int - rounded square metres, {@link #UNKNOWN} if text has no digits or the size doesn't fit in a long
+	 */
+	static int parseLandSize(CharSequence text) {
+		if (text == null) {
+			return UNKNOWN;
+		}
+
+		int length = text.length();
+		int i = 0;
+
+		while (i < length && !isDigit(text.charAt(i))) {
+			i++;
+		}
+
+		if (i == length) {
+			return UNKNOWN;
+		}
+
+		// Value is kept as a whole number of thousandths, so decimals are exact up to three places.
+		long thousandths = 0;
+		int decimals = -1;
+
+		try {
+			for (; i < length; i++) {
+				char ch = text.charAt(i);
+
+				if (isDigit(ch)) {
+					if (decimals < 0) {
+						thousandths = Math.addExact(Math.multiplyExact(thousandths, 10), ch - '0');
+					} else if (decimals < 3) {
+						thousandths = Math.addExact(Math.multiplyExact(thousandths, 10), ch - '0');
+						decimals++;
+					}
+				} else if (decimals < 0 && (ch == ',' || ch == '.') && isThousandsSeparator(text, i)) {
+					continue;
+				} else if (decimals < 0 && (ch == ',' || ch == '.') && i + 1 < length && isDigit(text.charAt(i + 1))) {
+					decimals = 0;
+				} else if (decimals < 0 && isGroupSeparator(ch) && ch != ',' && isThousandsSeparator(text, i)) {
+					continue;
+				} else {
+					break;
+				}
+			}
+
+			for (int d = Math.max(decimals, 0); d < 3; d++) {
+				thousandths = Math.multiplyExact(thousandths, 10);
+			}
+
+			while (i < length && !Character.isLetter(text.charAt(i))) {
+				i++;
+			}
+
+			long squareMetreThousandths;
+
+			if (startsWithIgnoreCase(text, i, "ha")) {
+				squareMetreThousandths = Math.multiplyExact(thousandths, SQUARE_METRES_PER_HECTARE);
+			} else if (startsWithIgnoreCase(text, i, "ac")) {
+				squareMetreThousandths = Math.multiplyExact(thousandths, SQUARE_METRE_THOUSANDTHS_PER_ACRE) / 1000;
+			} else if (startsWithIgnoreCase(text, i, "km")) {
+				squareMetreThousandths = Math.multiplyExact(thousandths, 1_000_000);
+			} else {
+				squareMetreThousandths = thousandths;
+			}
+
+			return (int) Math.min(Math.addExact(squareMetreThousandths, 500) / 1000, Integer.MAX_VALUE);
+		} catch (ArithmeticException e) {
+			return UNKNOWN;
+		}
+	}
+
+	/**
+	 * Returns true if the separator at index is followed by exactly three digits, as in '1 012' or '1,012'.
+	 *
+	 * @param text	- text
+	 * @param index	- separator index
+	 *
+	 * @return boolean
+	 */
+	private static boolean isThousandsSeparator(CharSequence text, int index) {
+		int end = index + 4;
+
+		for (int i = index + 1; i < end; i++) {
+			if (i >= text.length() || !isDigit(text.charAt(i))) {
+				return false;
+			}
+		}
+
+		return end == text.length() || !isDigit(text.charAt(end));
+	}
+
+	/**
+	 * @param ch - character
+	 *
+	 * @return boolean - true if ch separates digit groups: comma, space, no-break space or thin spaces
+	 */
+	private static boolean isGroupSeparator(char ch) {
+		return ch == ',' || ch == ' ' || ch == '\u00A0' || ch == '\u2009' || ch == '\u202F';
+	}
+
+	/**
+	 * @param ch - character
+	 *
+	 * @return boolean - true if ch is an ASCII digit
+	 */
+	private static boolean isDigit(char ch) {
+		return ch >= '0' && ch <= '9';
+	}
+
+	/**
+	 * Returns true if text has prefix at index, ignoring ASCII case.
+	 *
+	 * @param text		- text
+	 * @param index		- start index
+	 * @param prefix	- lower case prefix
+	 *
+	 * @return boolean
+	 */
+	private static boolean startsWithIgnoreCase(CharSequence text, int index, String prefix) {
+		if (index + prefix.length() > text.length()) {
+			return false;
+		}
+
+		for (int i = 0; i < prefix.length(); i++) {
+			if (Character.toLowerCase(text.charAt(index + i)) != prefix.charAt(i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the index of field name in {@link #FIELD_NAMES}.
+	 *
+	 * @param fieldName - field name
+	 *
+	 * @return int - index, -1 if not a field of the record
+	 */
+	private static int fieldIndexOf(String fieldName) {
+		for (int i = 0; i < FIELD_NAMES.length; i++) {
+			if (FIELD_NAMES[i].equals(fieldName)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,208 @@
+package com.univocity.examples;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Crawls several locations in one process.
+ *
+ * Up to a fixed number of locations are crawled at the same time, the others wait for a free slot. The pages of all
+ * locations are fetched by a shared {@link ConcurrentPageFetcher}, so its per-host connection and rate limits apply
+ * to the whole run, and its workers take the pending detail pages of whichever location has some.
+ * A failed location is reported and doesn't stop the others.
+ */
+class LocationScheduler {
+
+	/**
+	 * Location code crawled when none is given.
+	 */
+	static final String DEFAULT_LOCATION_CODE = "22008";
+
+	/**
+	 * Crawls one location.
+	 */
+	interface LocationCrawler {
+
+		/**
+		 * Crawls location, writing its own output files.
+		 *
+		 * @param locationCode - location code
+		 *
+		 * @throws IOException -
+		 */
+		void crawl(String locationCode) throws IOException;
+	}
+
+	/**
+	 * Maximum number of locations crawled at the same time.
+	 */
+	private final int parallelLocations;
+
+	/**
+	 * Creates scheduler.
+	 *
+	 * @param parallelLocations - maximum number of locations crawled at the same time
+	 */
+	LocationScheduler(int parallelLocations) {
+		if (parallelLocations < 1) {
+			throw new IllegalArgumentException("Parallel locations must be positive: " + parallelLocations);
+		}
+
+		this.parallelLocations = parallelLocations;
+	}
+
+	/**
+	 * Returns the location codes to crawl, without duplicates. They are taken from the first of:
+	 * console arguments, where '@{file}' reads codes from a file; '-Dcrawl.locations=22008,22009';
+	 * '-Dcrawl.locationsFile={file}'; {@link #DEFAULT_LOCATION_CODE}.
+	 * Location files have one or more codes per line separated by commas or blanks, '#' starts a comment.
+	 *
+	 * @param args - console arguments
+	 *
+	 * @throws IOException -
+	 *
+	 * @return List<String>
+	 */
+	static List<String> readLocationCodes(String... args) throws IOException {
+		Set<String> locationCodes = new LinkedHashSet<>();
+
+		for (String arg : args) {
+			if (arg.startsWith("@")) {
+				locationCodes.addAll(readLocationFile(new File(arg.substring(1))));
+			} else {
+				locationCodes.addAll(splitCodes(arg));
+			}
+		}
+
+		if (locationCodes.isEmpty() && System.getProperty("crawl.locations") != null) {
+			locationCodes.addAll(splitCodes(System.getProperty("crawl.locations")));
+		}
+
+		if (locationCodes.isEmpty() && System.getProperty("crawl.locationsFile") != null) {
+			locationCodes.addAll(readLocationFile(new File(System.getProperty("crawl.locationsFile"))));
+		}
+
+		if (locationCodes.isEmpty()) {
+			locationCodes.add(DEFAULT_LOCATION_CODE);
+		}
+
+		return new ArrayList<>(locationCodes);
+	}
+
+	/**
+	 * Crawls all locations and waits for them, in up to {@link #parallelLocations} threads.
+	 *
+	 * @param locationCodes	- location codes, crawled in this order as slots free up
+	 * @param crawler		- crawls one location
+	 *
+	 * @throws IOException - if any location failed, after all locations were crawled
+	 */
+	void run(List<String> locationCodes, LocationCrawler crawler) throws IOException {
+		AtomicInteger threadIndex = new AtomicInteger();
+
+		ExecutorService executorService = Executors.newFixedThreadPool(Math.min(parallelLocations, locationCodes.size()), runnable -> {
+			Thread thread = new Thread(runnable, "location-crawler-" + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		Map<String, Future<?>> futures = new LinkedHashMap<>();
+
+		try {
+			for (String locationCode : locationCodes) {
+				futures.put(locationCode, executorService.submit(() -> {
+					long startTime = System.currentTimeMillis();
+
+					crawler.crawl(locationCode);
+
+					System.out.println("Location " + locationCode + " crawled in " + (System.currentTimeMillis() - startTime) + " ms");
+
+					return null;
+				}));
+			}
+
+			Map<String, Throwable> failures = new LinkedHashMap<>();
+
+			for (Map.Entry<String, Future<?>> future : futures.entrySet()) {
+				try {
+					future.getValue().get();
+				} catch (ExecutionException e) {
+					System.err.println("Location " + future.getKey() + " failed: " + e.getCause());
+
+					failures.put(future.getKey(), e.getCause());
+				}
+			}
+
+			if (!failures.isEmpty()) {
+				IOException failure = null;
+
+				for (Throwable cause : failures.values()) {
+					if (failure == null) {
+						failure = new IOException("Crawl failed for locations " + failures.keySet(), cause);
+					} else {
+						failure.addSuppressed(cause);
+					}
+				}
+
+				throw failure;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException("Interrupted while crawling locations");
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads location codes of file, skipping comments and blank lines.
+	 *
+	 * @param file - location file
+	 *
+	 * @throws IOException -
+	 *
+	 * @return List<String>
+	 */
+	private static List<String> readLocationFile(File file) throws IOException {
+		List<String> locationCodes = new ArrayList<>();
+
+		for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+			int commentIndex = line.indexOf('#');
+
+			locationCodes.addAll(splitCodes(commentIndex >= 0 ? line.substring(0, commentIndex) : line));
+		}
+
+		return locationCodes;
+	}
+
+	/**
+	 * Splits codes separated by commas or blanks.
+	 *
+	 * @param codes - codes
+	 *
+	 * @return List<String>
+	 */
+	private static List<String> splitCodes(String codes) {
+		List<String> locationCodes = new ArrayList<>(Arrays.asList(codes.trim().split("[,\\s]+")));
+		locationCodes.remove("");
+
+		return locationCodes;
+	}
+}
@@ -0,0 +1,544 @@
+package com.univocity.examples;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jsoup.nodes.Document;
+
+/**
+ * Append-only archive of downloaded pages, replacing one file per page.
+ *
+ * Each page is gzip-compressed and appended to the current segment file ('pages-00000.gz', ...), which is a regular
+ * multi-member gzip file. 'index.tsv' maps the key of each page (i.e. '2018-05-03/22008_0001/EST6886') to its
+ * segment, offset and length, and is appended to as pages are stored, so a later entry for the same key wins.
+ * Pages are read back through memory-mapped segments.
+ *
+ * Writes are not forced to disk, except by {@link #sync()} and when a segment is full, so pages imported from files are only deleted
+ * once they are on disk.
+ */
+class PageArchive implements Closeable {
+
+	/**
+	 * Name of the key index file.
+	 */
+	private static final String INDEX_FILE_NAME = "index.tsv";
+
+	/**
+	 * Size after which a new segment is started.
+	 */
+	private static final long MAX_SEGMENT_SIZE = 256L * 1024L * 1024L;
+
+	/**
+	 * Location of an archived page.
+	 */
+	private static final class Location {
+
+		/**
+		 * Segment number.
+		 */
+		private final int segment;
+
+		/**
+		 * Offset of the compressed page in the segment.
+		 */
+		private final long offset;
+
+		/**
+		 * Length of the compressed page.
+		 */
+		private final int length;
+
+		Location(int segment, long offset, int length) {
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	/**
+	 * Archive directory.
+	 */
+	private final File directory;
+
+	/**
+	 * Archived pages by key.
+	 */
+	private final Map<String, Location> index = new HashMap<>();
+
+	/**
+	 * Read-only mappings of the segments, by segment number. Remapped when a segment grew after being mapped.
+	 */
+	private final List<MappedByteBuffer> mappedSegments = new ArrayList<>();
+
+	/**
+	 * Channel of the key index, to force it to disk.
+	 */
+	private final FileChannel indexChannel;
+
+	/**
+	 * Appends to the key index.
+	 */
+	private final BufferedWriter indexWriter;
+
+	/**
+	 * Number of the segment pages are appended to.
+	 */
+	private int currentSegment;
+
+	/**
+	 * Channel appending to the current segment.
+	 */
+	private FileChannel segmentChannel;
+
+	/**
+	 * Opens archive, creating its directory if needed.
+	 *
+	 * @param directory - archive directory
+	 *
+	 * @throws IOException -
+	 */
+	PageArchive(File directory) throws IOException {
+		this.directory = directory;
+
+		if (!directory.exists()) {
+			directory.mkdirs();
+		}
+
+		File indexFile = new File(directory, INDEX_FILE_NAME);
+
+		if (indexFile.exists()) {
+			try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+				String line;
+
+				while ((line = reader.readLine()) != null) {
+					String[] columns = line.split("\t");
+
+					// A partial last line is left by a crash while writing, its page is fetched again.
+					if (columns.length == 4) {
+						Location location = new Location(Integer.parseInt(columns[1]), Long.parseLong(columns[2]), Integer.parseInt(columns[3]));
+
+						index.put(columns[0], location);
+
+						currentSegment = Math.max(currentSegment, location.segment);
+					}
+				}
+			}
+		}
+
+		indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		indexWriter = new BufferedWriter(Channels.newWriter(indexChannel, StandardCharsets.UTF_8.newEncoder(), -1));
+		segmentChannel = openSegment(currentSegment);
+	}
+
+	/**
+	 * Returns true if a page is archived under key.
+	 *
+	 * @param key - page key
+	 *
+	 * @return boolean
+	 */
+	synchronized boolean contains(String key) {
+		return index.containsKey(key);
+	}
+
+	/**
+	 * Returns the keys of all archived pages.
+	 *
+	 * @return List<String> - keys, in no particular order
+	 */
+	synchronized List<String> keys() {
+		return new ArrayList<>(index.keySet());
+	}
+
+	/**
+	 * Compresses page and appends it to the archive.
+	 *
+	 * @param key		- page key
+	 * @param content	- page content
+	 *
+	 * @throws IOException -
+	 */
+	void put(String key, byte[] content) throws IOException {
+		putAll(Collections.singletonList(key), Collections.singletonList(content));
+	}
+
+	/**
+	 * Compresses pages and appends them to the archive with a single gathering write per segment, and a single index flush.
+	 *
+	 * @param keys		- page keys
+	 * @param contents	- page contents, in the same order as keys
+	 *
+	 * @throws IOException -
+	 */
+	void putAll(List<String> keys, List<byte[]> contents) throws IOException {
+		ByteBuffer[] records = new ByteBuffer[keys.size()];
+
+		for (int i = 0; i < records.length; i++) {
+			String key = keys.get(i);
+
+			if (key.indexOf('\t') >= 0 || key.indexOf('\n') >= 0) {
+				throw new IllegalArgumentException("Page key can't contain tabs or line breaks: " + key);
+			}
+
+			byte[] content = contents.get(i);
+
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 4 + 64);
+
+			try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+				gzip.write(content);
+			}
+
+			records[i] = ByteBuffer.wrap(compressed.toByteArray());
+		}
+
+		synchronized (this) {
+			int first = 0;
+
+			while (first < records.length) {
+				if (segmentChannel.size() > 0 && segmentChannel.size() + records[first].limit() > MAX_SEGMENT_SIZE) {
+					// Full segments are never forced by sync().
+					segmentChannel.force(false);
+					segmentChannel.close();
+					segmentChannel = openSegment(++currentSegment);
+				}
+
+				long position = segmentChannel.size();
+
+				// Takes as many records as fit in the current segment, at least one.
+				int last = first;
+				long end = position + records[first].limit();
+
+				while (last + 1 < records.length && end + records[last + 1].limit() <= MAX_SEGMENT_SIZE) {
+					end += records[++last].limit();
+				}
+
+				// Records are written before their index lines, so the index never points past the end of a segment.
+				for (long remaining = end - position; remaining > 0; ) {
+					remaining -= segmentChannel.write(records, first, last - first + 1);
+				}
+
+				for (int i = first; i <= last; i++) {
+					Location location = new Location(currentSegment, position, records[i].limit());
+
+					indexWriter.write(keys.get(i) + '\t' + location.segment + '\t' + location.offset + '\t' + location.length);
+					indexWriter.newLine();
+
+					index.put(keys.get(i), location);
+
+					position += location.length;
+				}
+
+				first = last + 1;
+			}
+
+			indexWriter.flush();
+		}
+	}
+
+	/**
+	 * Forces the pages stored so far and their index lines to disk, so they survive a crash of the box.
+	 *
+	 * @throws IOException -
+	 */
+	synchronized void sync() throws IOException {
+		indexWriter.flush();
+
+		// Segment first, so the index never points past the end of a segment on disk.
+		segmentChannel.force(false);
+		indexChannel.force(false);
+	}
+
+	/**
+	 * Opens archived page for reading.
+	 *
+	 * @param key - page key
+	 *
+	 * @throws IOException -
+	 *
+	 * @return InputStream - uncompressed page content, null if the page is not archived
+	 */
+	InputStream open(String key) throws IOException {
+		ByteBuffer compressed;
+
+		synchronized (this) {
+			Location location = index.get(key);
+
+			if (location == null) {
+				return null;
+			}
+
+			compressed = mappedSegment(location);
+			compressed.position((int) location.offset);
+			compressed.limit((int) location.offset + location.length);
+		}
+
+		return new GZIPInputStream(new ByteBufferInputStream(compressed));
+	}
+
+	/**
+	 * Reads archived page.
+	 *
+	 * @param key		- page key
+	 * @param baseUri	- URL the page was downloaded from
+	 *
+	 * @throws IOException -
+	 *
+	 * @return FetchedPage - page as saved, without charset so it is detected from BOM or meta tags, null if the page is not archived
+	 */
+	FetchedPage read(String key, String baseUri) throws IOException {
+		InputStream in = open(key);
+
+		if (in == null) {
+			return null;
+		}
+
+		try (InputStream content = in) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream(32 * 1024);
+
+			byte[] buffer = new byte[8192];
+
+			for (int length = content.read(buffer); length != -1; length = content.read(buffer)) {
+				body.write(buffer, 0, length);
+			}
+
+			return new FetchedPage(baseUri, body.toByteArray(), null);
+		}
+	}
+
+	/**
+	 * Parses archived page.
+	 *
+	 * @param key		- page key
+	 * @param baseUri	- URL the page was downloaded from
+	 *
+	 * @throws IOException -
+	 *
+	 * @return Document - parsed page, null if the page is not archived
+	 */
+	Document parse(String key, String baseUri) throws IOException {
+		FetchedPage page = read(key, baseUri);
+
+		// Pages are stored as received, so the charset is detected from BOM or meta tags like for a downloaded page.
+		return page == null ? null : page.parse();
+	}
+
+	/**
+	 * Moves every page saved as a file in day directories ('yyyy-MM-dd') of root directory older than the given day into
+	 * the archive, and deletes the files. The key of each page is its path relative to the root directory.
+	 *
+	 * @param rootDirectory	- directory with one subdirectory per day
+	 * @param before		- first day not to import, usually today as its pages may still be in use
+	 *
+	 * @throws IOException -
+	 *
+	 * @return int - number of imported pages
+	 */
+	int importDayDirectories(File rootDirectory, LocalDate before) throws IOException {
+		File[] dayDirectories = rootDirectory.listFiles(File::isDirectory);
+
+		if (dayDirectories == null) {
+			return 0;
+		}
+
+		int importedCount = 0;
+
+		for (File dayDirectory : dayDirectories) {
+			LocalDate day = parseDay(dayDirectory.getName());
+
+			if (day != null && day.isBefore(before)) {
+				importedCount += importFiles(dayDirectory, dayDirectory.getName());
+			}
+		}
+
+		return importedCount;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			indexWriter.close();
+		} finally {
+			segmentChannel.close();
+			mappedSegments.clear();
+		}
+	}
+
+	/**
+	 * Archives files of directory recursively, deleting them and the emptied directories. Files of each directory are stored together
+	 * and only deleted once {@link #sync()} forced them to disk.
+	 *
+	 * @param directory	- directory to import
+	 * @param keyPrefix	- key of the directory
+	 *
+	 * @throws IOException -
+	 *
+	 * @return int - number of imported files
+	 */
+	private int importFiles(File directory, String keyPrefix) throws IOException {
+		File[] files = directory.listFiles();
+
+		int importedCount = 0;
+
+		if (files != null) {
+			List<File> pageFiles = new ArrayList<>();
+			List<String> keys = new ArrayList<>();
+			List<byte[]> contents = new ArrayList<>();
+
+			for (File file : files) {
+				String key = keyPrefix + '/' + file.getName();
+
+				if (file.isDirectory()) {
+					importedCount += importFiles(file, key);
+				} else {
+					pageFiles.add(file);
+					keys.add(key);
+					contents.add(Files.readAllBytes(file.toPath()));
+				}
+			}
+
+			if (!pageFiles.isEmpty()) {
+				putAll(keys, contents);
+				sync();
+
+				for (File file : pageFiles) {
+					file.delete();
+				}
+
+				importedCount += pageFiles.size();
+			}
+		}
+
+		directory.delete();
+
+		return importedCount;
+	}
+
+	/**
+	 * Returns a buffer over the mapped segment of location, mapping it if needed.
+	 *
+	 * @param location - page location
+	 *
+	 * @throws IOException -
+	 *
+	 * @return ByteBuffer
+	 */
+	private ByteBuffer mappedSegment(Location location) throws IOException {
+		while (mappedSegments.size() <= location.segment) {
+			mappedSegments.add(null);
+		}
+
+		MappedByteBuffer mapped = mappedSegments.get(location.segment);
+
+		if (mapped == null || mapped.capacity() < location.offset + location.length) {
+			try (FileChannel channel = FileChannel.open(segmentFile(location.segment).toPath(), StandardOpenOption.READ)) {
+				mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			}
+
+			mappedSegments.set(location.segment, mapped);
+		}
+
+		return mapped.duplicate();
+	}
+
+	/**
+	 * Opens segment for appending.
+	 *
+	 * @param segment - segment number
+	 *
+	 * @throws IOException -
+	 *
+	 * @return FileChannel
+	 */
+	private FileChannel openSegment(int segment) throws IOException {
+		return FileChannel.open(segmentFile(segment).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Returns segment file.
+	 *
+	 * @param segment - segment number
+	 *
+	 * @return File
+	 */
+	private File segmentFile(int segment) {
+		return new File(directory, String.format("pages-%05d.gz", segment));
+	}
+
+	/**
+	 * Parses day directory name. Accepts 'yyyy-MM-dd' and the unpadded 'yyyy-M-d' used by older runs.
+	 *
+	 * @param name - directory name
+	 *
+	 * @return LocalDate - null if name is not a date
+	 */
+	private static LocalDate parseDay(String name) {
+		String[] parts = name.split("-");
+
+		if (parts.length != 3) {
+			return null;
+		}
+
+		try {
+			return LocalDate.of(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+		} catch (RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Reads a byte buffer, without copying it.
+	 */
+	private static final class ByteBufferInputStream extends InputStream {
+
+		/**
+		 * Source buffer.
+		 */
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
@@ -0,0 +1,445 @@
+package com.univocity.examples;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+
+/**
+ * HTTP page cache of {@link RealEstateJSoupParserExample} and the crawls built on it, like {@link CrawlDaemon} and {@link ShardedCrawl},
+ * stored under '{user.home}/Downloads/realEstate/cache'. The univocity parser example doesn't use it.
+ *
+ * Pages are stored exactly as received. Pages fetched less than the time to live ago are served from disk without any request. Older pages are
+ * revalidated with a conditional GET (If-None-Match / If-Modified-Since), so unchanged pages are not transferred
+ * again. The URL index with ETag, Last-Modified and fetch time of each page is kept in 'index.tsv', in least
+ * recently used order, and least recently used pages are evicted when the cache grows over its maximum size.
+ *
+ * The index is saved while pages change, at most every {@link #INDEX_SAVE_INTERVAL_MILLIS}, and on close, so a crawl that died only
+ * loses the pages cached since the last save. Pages evicted by another thread while being read are downloaded again.
+ */
+class PageCache implements Closeable {
+
+	/**
+	 * Name of the URL index file.
+	 */
+	private static final String INDEX_FILE_NAME = "index.tsv";
+
+	/**
+	 * Shortest time between two saves of the URL index while pages change.
+	 */
+	private static final long INDEX_SAVE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+	/**
+	 * Executes HTTP requests for the cache, i.e. to apply connection limits.
+	 */
+	interface RequestExecutor {
+
+		/**
+		 * Executes request.
+		 *
+		 * @param connection - prepared connection
+		 *
+		 * @throws IOException -
+		 *
+		 * @return Connection.Response
+		 */
+		Connection.Response execute(Connection connection) throws IOException;
+	}
+
+	/**
+	 * Cached page.
+	 */
+	private static final class Entry {
+
+		/**
+		 * Name of the file holding the page, inside the cache directory.
+		 */
+		private final String fileName;
+
+		/**
+		 * ETag response header, empty if there was none.
+		 */
+		private final String eTag;
+
+		/**
+		 * Last-Modified response header, empty if there was none.
+		 */
+		private final String lastModified;
+
+		/**
+		 * Charset from the Content-Type response header, empty if there was none.
+		 */
+		private final String charset;
+
+		/**
+		 * Time the page was last downloaded or revalidated, in milliseconds.
+		 */
+		private final long fetchedAt;
+
+		/**
+		 * Page file size in bytes.
+		 */
+		private final long size;
+
+		Entry(String fileName, String eTag, String lastModified, String charset, long fetchedAt, long size) {
+			this.fileName = fileName;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.charset = charset;
+			this.fetchedAt = fetchedAt;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Cache directory.
+	 */
+	private final File directory;
+
+	/**
+	 * Time in milliseconds during which pages are served without revalidation.
+	 */
+	private final long timeToLiveMillis;
+
+	/**
+	 * Maximum total size of cached pages in bytes.
+	 */
+	private final long maxSizeBytes;
+
+	/**
+	 * Cached pages by URL, in access order.
+	 */
+	private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(256, 0.75f, true);
+
+	/**
+	 * Total size of cached pages in bytes.
+	 */
+	private long totalSize;
+
+	/**
+	 * Time the index was last saved, in milliseconds.
+	 */
+	private long indexSavedAt = System.currentTimeMillis();
+
+	/**
+	 * Number of pages served without request.
+	 */
+	private final AtomicInteger hitCount = new AtomicInteger();
+
+	/**
+	 * Number of pages served after a 304 Not Modified response.
+	 */
+	private final AtomicInteger revalidatedCount = new AtomicInteger();
+
+	/**
+	 * Number of pages downloaded.
+	 */
+	private final AtomicInteger downloadCount = new AtomicInteger();
+
+	/**
+	 * Opens cache, loading its URL index.
+	 *
+	 * @param directory			- cache directory
+	 * @param timeToLiveMillis	- time in milliseconds during which pages are served without revalidation
+	 * @param maxSizeBytes		- maximum total size of cached pages in bytes
+	 *
+	 * @throws IOException -
+	 */
+	PageCache(File directory, long timeToLiveMillis, long maxSizeBytes) throws IOException {
+		this.directory = directory;
+		this.timeToLiveMillis = timeToLiveMillis;
+		this.maxSizeBytes = maxSizeBytes;
+
+		if (!directory.exists()) {
+			directory.mkdirs();
+		}
+
+		loadIndex();
+	}
+
+	/**
+	 * Opens the cache of {@link RealEstateJSoupParserExample} and the crawls built on it. Time to live and maximum size can be changed with
+	 * '-Dcache.ttlHours=N' (default 20) and '-Dcache.maxSizeMb=N' (default 1024).
+	 *
+	 * @throws IOException -
+	 *
+	 * @return PageCache
+	 */
+	static PageCache openDefault() throws IOException {
+		File directory = new File(System.getProperty("user.home"), "Downloads/realEstate/cache");
+
+		return new PageCache(directory, TimeUnit.HOURS.toMillis(Integer.getInteger("cache.ttlHours", 20)), Integer.getInteger("cache.maxSizeMb", 1024) * 1024L * 1024L);
+	}
+
+	/**
+	 * Returns page from the cache, revalidating or downloading it if needed.
+	 *
+	 * @param url				- absolute page URL
+	 * @param requestExecutor	- executes the HTTP request if one is needed
+	 *
+	 * @throws IOException -
+	 *
+	 * @return FetchedPage
+	 */
+	FetchedPage get(String url, RequestExecutor requestExecutor) throws IOException {
+		Entry entry;
+
+		synchronized (this) {
+			entry = index.get(url);
+		}
+
+		if (entry != null && System.currentTimeMillis() - entry.fetchedAt < timeToLiveMillis) {
+			FetchedPage page = read(url, entry);
+
+			if (page != null) {
+				hitCount.incrementAndGet();
+				CrawlMetrics.increment(CrawlMetrics.Counter.CACHE_HIT);
+
+				return page;
+			}
+
+			// Evicted by another thread after the lookup.
+			entry = null;
+		}
+
+		Connection connection = Jsoup.connect(url).ignoreHttpErrors(true);
+
+		if (entry != null) {
+			if (!entry.eTag.isEmpty()) {
+				connection.header("If-None-Match", entry.eTag);
+			}
+
+			if (!entry.lastModified.isEmpty()) {
+				connection.header("If-Modified-Since", entry.lastModified);
+			}
+		}
+
+		Connection.Response response = requestExecutor.execute(connection);
+
+		if (entry != null && response.statusCode() == 304) {
+			FetchedPage page = read(url, entry);
+
+			if (page != null) {
+				revalidatedCount.incrementAndGet();
+				CrawlMetrics.increment(CrawlMetrics.Counter.CACHE_REVALIDATED);
+
+				synchronized (this) {
+					index.put(url, new Entry(entry.fileName, entry.eTag, entry.lastModified, entry.charset, System.currentTimeMillis(), entry.size));
+
+					saveIndexIfDue();
+				}
+
+				return page;
+			}
+
+			// Evicted by another thread while revalidating.
+			response = requestExecutor.execute(Jsoup.connect(url).ignoreHttpErrors(true));
+		}
+
+		if (response.statusCode() != 200) {
+			throw new HttpStatusException("HTTP error fetching URL", response.statusCode(), url);
+		}
+
+		downloadCount.incrementAndGet();
+		CrawlMetrics.increment(CrawlMetrics.Counter.CACHE_MISS);
+
+		FetchedPage page = new FetchedPage(url, response.bodyAsBytes(), response.charset());
+
+		store(page, response);
+
+		return page;
+	}
+
+	/**
+	 * Reads cached page.
+	 *
+	 * @param url	- absolute page URL
+	 * @param entry	- cache entry
+	 *
+	 * @throws IOException -
+	 *
+	 * @return FetchedPage - page, null if it was evicted
+	 */
+	private FetchedPage read(String url, Entry entry) throws IOException {
+		byte[] body;
+
+		try {
+			body = Files.readAllBytes(new File(directory, entry.fileName).toPath());
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+
+		return new FetchedPage(url, body, entry.charset.isEmpty() ? null : entry.charset);
+	}
+
+	/**
+	 * Writes downloaded page to the cache, as received, and evicts least recently used pages over the maximum size.
+	 * The page is written before the index is updated, so the index never points to a missing or partial page.
+	 *
+	 * @param page		- downloaded page
+	 * @param response	- successful response
+	 *
+	 * @throws IOException -
+	 */
+	private void store(FetchedPage page, Connection.Response response) throws IOException {
+		String url = page.getUrl();
+		String fileName = fileNameOf(url);
+
+		byte[] body = page.getBody();
+
+		File temporaryFile = File.createTempFile(fileName, ".tmp", directory);
+		Files.write(temporaryFile.toPath(), body);
+		Files.move(temporaryFile.toPath(), new File(directory, fileName).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		String charset = page.getCharset() == null ? "" : page.getCharset();
+
+		Entry entry = new Entry(fileName, headerOrEmpty(response, "ETag"), headerOrEmpty(response, "Last-Modified"), charset, System.currentTimeMillis(), body.length);
+
+		synchronized (this) {
+			Entry previous = index.put(url, entry);
+
+			totalSize += entry.size - (previous == null ? 0 : previous.size);
+
+			Iterator<Map.Entry<String, Entry>> eldest = index.entrySet().iterator();
+
+			while (totalSize > maxSizeBytes && index.size() > 1) {
+				Entry evicted = eldest.next().getValue();
+				eldest.remove();
+
+				totalSize -= evicted.size;
+
+				new File(directory, evicted.fileName).delete();
+			}
+
+			saveIndexIfDue();
+		}
+	}
+
+	/**
+	 * Saves the URL index after a change, if it was not saved for {@link #INDEX_SAVE_INTERVAL_MILLIS}. Must be called holding the lock of this cache.
+	 *
+	 * @throws IOException -
+	 */
+	private void saveIndexIfDue() throws IOException {
+		if (System.currentTimeMillis() - indexSavedAt >= INDEX_SAVE_INTERVAL_MILLIS) {
+			saveIndex();
+		}
+	}
+
+	/**
+	 * Saves the URL index, replacing the previous one atomically. Must be called holding the lock of this cache.
+	 *
+	 * @throws IOException -
+	 */
+	private void saveIndex() throws IOException {
+		File temporaryFile = new File(directory, INDEX_FILE_NAME + ".tmp");
+
+		try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile.toPath(), StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, Entry> indexEntry : index.entrySet()) {
+				Entry entry = indexEntry.getValue();
+
+				writer.write(indexEntry.getKey() + '\t' + entry.fileName + '\t' + entry.eTag + '\t' + entry.lastModified + '\t' + entry.charset + '\t' + entry.fetchedAt + '\t' + entry.size);
+				writer.newLine();
+			}
+		}
+
+		Files.move(temporaryFile.toPath(), new File(directory, INDEX_FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		indexSavedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Saves the URL index and prints cache statistics.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		// Also saves the order of pages only read since the last save.
+		saveIndex();
+
+		System.out.println("Page cache: " + hitCount + " hits, " + revalidatedCount + " revalidated, " + downloadCount + " downloaded, " + index.size() + " pages in " + directory.getAbsolutePath());
+	}
+
+	/**
+	 * Loads URL index, skipping entries whose page file is missing.
+	 *
+	 * @throws IOException -
+	 */
+	private void loadIndex() throws IOException {
+		File indexFile = new File(directory, INDEX_FILE_NAME);
+
+		if (!indexFile.exists()) {
+			return;
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				String[] columns = line.split("\t", -1);
+
+				if (columns.length != 7 || !new File(directory, columns[1]).exists()) {
+					continue;
+				}
+
+				Entry entry = new Entry(columns[1], columns[2], columns[3], columns[4], Long.parseLong(columns[5]), Long.parseLong(columns[6]));
+
+				index.put(columns[0], entry);
+
+				totalSize += entry.size;
+			}
+		}
+	}
+
+	/**
+	 * Name of the file caching URL: SHA-1 of the URL.
+	 *
+	 * @param url - absolute page URL
+	 *
+	 * @return String
+	 */
+	private static String fileNameOf(String url) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+
+			StringBuilder fileName = new StringBuilder(digest.length * 2 + 5);
+
+			for (byte b : digest) {
+				fileName.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+
+			return fileName.append(".html").toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns response header value, or empty string if the header is missing.
+	 *
+	 * @param response		- HTTP response
+	 * @param headerName	- header name
+	 *
+	 * @return String
+	 */
+	private static String headerOrEmpty(Connection.Response response, String headerName) {
+		String value = response.header(headerName);
+
+		return value == null ? "" : value.replace('\t', ' ');
+	}
+}
@@ -6,19 +6,18 @@
 
 package com.univocity.examples;
 
-import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.time.ZonedDateTime;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
-import org.jsoup.Connection;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
@@ -26,79 +25,233 @@ import org.jsoup.select.Elements;
 /**
  * DEMONSTRATES HOW TO PARSE SITE VIA JSOUP LIBRARY, STEP BY STEP.
  *
- * Runs against this Real Estate website: https://harcourts.co.za/
+ * Runs against this Real Estate website: https://harcourts.co.za/, or the site set with '-Dsite.baseUrl=URL', see {@link SyntheticSiteServer}.
  */
 public class RealEstateJSoupParserExample {
 
 	/**
-	 * Basic site URL.
+	 * Basic site URL. Can be changed with '-Dsite.baseUrl=URL', i.e. to crawl a local {@link SyntheticSiteServer}.
 	 */
-	private static final String HARCOURTS_CO_ZA_URL = "https://harcourts.co.za";
+	private static final String SITE_URL = System.getProperty("site.baseUrl", "https://harcourts.co.za");
 
 	/**
-	 * Contains results of parsing. To save data in CSV file.
+	 * Selects the links to the detail pages of the properties listed in a page of results.
 	 */
-	private static List<Map<String, String>> results = new ArrayList<>();
+	static final String LISTING_LINKS_SELECTOR = "div#galleryView > ul > li > div.listingContent > h2 > a";
+
+	/**
+	 * Number of pages of results to visit, 0 follows the pager until the last page. Can be changed with '-Dpagination.pageLimit=N'.
+	 */
+	static final int PAGE_LIMIT = Integer.getInteger("pagination.pageLimit", 3);
+
+	/**
+	 * Extracts detail pages from their content stream, building only the regions holding fields and stopping once all fields are found,
+	 * instead of parsing whole pages. Can be enabled with '-Dextract.streaming=true'. See {@link ListingDetailExtractor#extractRecord(String, InputStream, String)}.
+	 */
+	private static final boolean STREAMING_EXTRACTION = Boolean.getBoolean("extract.streaming");
+
+	/**
+	 * Directory of the pages and listing indexes saved by the crawl.
+	 */
+	private static final File REAL_ESTATE_JSOUP_DIRECTORY = new File(System.getProperty("user.home"), "Downloads/realEstate_Jsoup");
+
+	/**
+	 * Directory of the progress saved by the crawl of each location, so an interrupted crawl resumes where it stopped, see {@link CrawlCheckpoint}.
+	 */
+	private static final File CHECKPOINT_DIRECTORY = new File(REAL_ESTATE_JSOUP_DIRECTORY, "checkpoints");
+
+	/**
+	 * Archive of the pages saved by {@link #step4SavePagesLocally(String, String, String, CrawlFrontier)}, shared by all locations.
+	 */
+	private static PageArchive pageArchive;
+
+	/**
+	 * Writes pages to {@link #pageArchive} off the crawl threads.
+	 */
+	private static AsyncPageWriter pageWriter;
+
+	/**
+	 * Fields of each captured record, in CSV column order.
+	 */
+	private static final String[] RECORD_HEADERS = ListingRecord.FIELD_NAMES;
+
+	/**
+	 * Caches pages between runs, see {@link PageCache#openDefault()}.
+	 */
+	private static PageCache pageCache;
+
+	/**
+	 * Fetches detail pages of all locations concurrently through the page cache. Number of workers and connections per host can be changed
+	 * with '-Dfetch.workers=N' and '-Dfetch.connectionsPerHost=N', '-Dfetch.workers=1' fetches pages one after another.
+	 * Requests to a host can be limited with '-Dfetch.requestsPerSecondPerHost=N'. Failed requests are sent up to '-Dfetch.maxAttempts=N'
+	 * times (default 4), each with a '-Dfetch.timeoutMs=N' timeout (default 15000), see {@link FetchPolicy}.
+	 * On Java 11+ '-Dfetch.transport=httpclient' sends requests on pooled keep-alive and HTTP/2 connections, and on Java 21+
+	 * '-Dfetch.virtualThreads=true' visits each listing on its own virtual thread, with '-Dfetch.connectionsPerHost' as the only limit.
+	 */
+	private static ConcurrentPageFetcher pageFetcher;
+
+	/**
+	 * Runs every listing through fetch, on the workers of {@link #pageFetcher}, parse and extract, on '-Dpipeline.extractThreads=N' threads
+	 * (default one per processor), and persist, on the thread of its location. Each stage holds at most '-Dpipeline.capacity=N' listings
+	 * (default 64) and makes the previous one wait when full, so memory use doesn't grow with the size of the crawl. See {@link CrawlPipeline}.
+	 */
+	private static CrawlPipeline pipeline;
+
+	/**
+	 * Saves the stylesheets, scripts, fonts and icons of the saved pages to Downloads/realEstate_Jsoup/resources, and links the saved pages
+	 * to them, so they can be rendered offline. Listing photos are never requested and resources over 512 KB are dropped from their headers,
+	 * see {@link ResourceFetchPolicy#fromSystemProperties()}.
+	 */
+	private static ResourceFetcher resourceFetcher;
 
 	/**
 	 * Entry point to application.
 	 *
-	 * @param args			- console arguments
+	 * @param args			- console arguments: location codes to crawl, see {@link LocationScheduler#readLocationCodes(String...)}
 	 *
 	 * @throws IOException -
 	 */
 	public static void main(String... args) throws IOException {
-		String locationCode = "22008";
+		List<String> locationCodes = LocationScheduler.readLocationCodes(args);
+
+		String url = searchUrl(locationCodes.get(0));
 
-		String url = String.format(HARCOURTS_CO_ZA_URL + "/Property/Residential?search=&location=%s&proptype=&min=&max=&minbed=&maxbed=&formsearch=true&page=1", locationCode);
+		openCrawler();
 
-		Document mainHtmlDocument = Jsoup.connect(url).get();
+		try {
+			// Lists the links in the first page of results.
+			//step1GetSearchResultLinks(pageFetcher.fetch(url));
 
-		// Lists the links in the first page of results.
-		//step1GetSearchResultLinks(mainHtmlDocument);
+			// Lists the links on 3 pages of results.
+			//step2AddPagination(url);
 
-		// Lists the links on 3 pages of results.
-		//step2AddPagination(mainHtmlDocument);
+			// Visits each link of each page and lists the data collected from them.
+			//step3FollowTheLinks(url, locationCodes.get(0));
 
-		// Visits each link of each page and lists the data collected from them.
-		//step3FollowTheLinks(mainHtmlDocument);
+			// Listings visited by the crawl, shared by all pages and locations, so listings pushed to the next page of results by new ones,
+			// or found in two locations, are fetched and captured once. See CrawlFrontier for '-Dcrawl.frontier.expectedListings=N'.
+			CrawlFrontier frontier = new CrawlFrontier();
 
-		// Will download HTML and resources into a "realEstate" folder in your Downloads dir in the FIRST RUN only. Run it multiple times and it will NOT visit a second time.
-		step4SavePagesLocally(url, locationCode);
+			// Locations of a crawl that died continue from their last checkpoint, with the listings they captured before already visited.
+			for (String locationCode : locationCodes) {
+				restoreCheckpointedListings(resultsName(locationCode), frontier);
+			}
 
-		CsvResultHelper.saveResults("jsoup-houses", results);
+			// Will download HTML and resources into a "realEstate" folder in your Downloads dir in the FIRST RUN only. Run it multiple times and it will NOT visit a second time.
+			// Locations are crawled together, up to '-Dcrawl.parallelLocations=N' (default 4) at the same time, each to its own 'jsoup-houses-{locationCode}.csv'.
+			new LocationScheduler(Integer.getInteger("crawl.parallelLocations", 4)).run(locationCodes, locationCode -> step4SavePagesLocally(searchUrl(locationCode), locationCode, resultsName(locationCode), frontier));
+		} finally {
+			try {
+				closeCrawler();
+			} finally {
+				// Timings of every stage are saved to 'jsoup-houses-metrics.json' and 'jsoup-houses-metrics.prom', even if the crawl failed.
+				CrawlMetrics.export("jsoup-houses");
+			}
+		}
 	}
 
 	/**
-	 * Returns the links of all properties in the first page of results.
-	 *
-	 * @param htmlDocument - source JSoup HTML document
+	 * Opens the page cache, fetcher, pipeline, page archive and resource fetcher shared by all locations, and moves pages saved one
+	 * file per page by older runs to the archive. Also used by {@link CrawlDaemon}, which keeps them open between jobs.
 	 *
-	 * @return List<String>
+	 * @throws IOException -
 	 */
-	private static List<String> step1GetSearchResultLinks(Document htmlDocument) {
-		Elements linkElements = htmlDocument.select("div#galleryView > ul > li > div.listingContent > h2 > a");
+	static void openCrawler() throws IOException {
+		pageCache = PageCache.openDefault();
+		FetchPolicy fetchPolicy = new FetchPolicy(Integer.getInteger("fetch.connectionsPerHost", 4), Integer.getInteger("fetch.requestsPerSecondPerHost", 0))
+				.withMaxAttempts(Integer.getInteger("fetch.maxAttempts", 4))
+				.withTimeout(Integer.getInteger("fetch.timeoutMs", 15_000))
+				.withTransport(HttpTransport.forName(System.getProperty("fetch.transport", "jsoup")));
 
-		List<String> links = new ArrayList<>();
+		int workerCount = Boolean.getBoolean("fetch.virtualThreads") ? ConcurrentPageFetcher.VIRTUAL_THREAD_PER_TASK : Integer.getInteger("fetch.workers", 8);
 
-		for (Element linkElement : linkElements) {
-			links.add(linkElement.attr("href"));
+		pageFetcher = new ConcurrentPageFetcher(workerCount, fetchPolicy, pageCache);
+		pipeline = new CrawlPipeline(pageFetcher, Integer.getInteger("pipeline.extractThreads", Runtime.getRuntime().availableProcessors()), Integer.getInteger("pipeline.capacity", 64));
+
+		pageArchive = new PageArchive(new File(REAL_ESTATE_JSOUP_DIRECTORY, "archive"));
+		pageWriter = new AsyncPageWriter(pageArchive, 64, 32);
+		resourceFetcher = new ResourceFetcher(new File(REAL_ESTATE_JSOUP_DIRECTORY, "resources"), ResourceFetchPolicy.fromSystemProperties(), pageFetcher);
+
+		// Pages saved one file per page by older runs are moved to the archive.
+		pageArchive.importDayDirectories(REAL_ESTATE_JSOUP_DIRECTORY, LocalDate.now().plusDays(1));
+	}
+
+	/**
+	 * Waits for the pending resources and page writes, and closes everything opened by {@link #openCrawler()}.
+	 *
+	 * @throws IOException -
+	 */
+	static void closeCrawler() throws IOException {
+		try {
+			try {
+				resourceFetcher.close();
+			} finally {
+				pageWriter.close();
+			}
+		} finally {
+			pageArchive.close();
+			pipeline.close();
+			pageFetcher.close();
+			pageCache.close();
 		}
+	}
 
-		return links;
+	/**
+	 * Returns the URL of the first page of results of location.
+	 *
+	 * @param locationCode - location code
+	 *
+	 * @return String
+	 */
+	static String searchUrl(String locationCode) {
+		return searchUrl(locationCode, 1);
 	}
 
 	/**
-	 * Returns the links of all properties in 3 pages of results.
+	 * Returns the URL of a page of results of location.
 	 *
-	 * @param htmlDocument - source JSoup HTML document
+	 * @param locationCode	- location code
+	 * @param pageNumber	- page number, starting from 1
+	 *
+	 * @return String
+	 */
+	static String searchUrl(String locationCode, int pageNumber) {
+		return String.format(SITE_URL + "/Property/Residential?search=&location=%s&proptype=&min=&max=&minbed=&maxbed=&formsearch=true&page=%d", locationCode, pageNumber);
+	}
+
+	/**
+	 * Name of the results of location, i.e. 'jsoup-houses-22008' for '{user.home}/Downloads/jsoup-houses-22008.csv'.
+	 *
+	 * @param locationCode - location code
+	 *
+	 * @return String
+	 */
+	static String resultsName(String locationCode) {
+		return "jsoup-houses-" + locationCode;
+	}
+
+	/**
+	 * Adds the listings captured before the checkpoint of results, if there is one, to frontier. Must be called for all locations
+	 * sharing the frontier before they are crawled, see {@link CrawlCheckpoint#restoreFrontier(File, String, File, String, CrawlFrontier)}.
+	 *
+	 * @param resultsName	- name of the results, see {@link #resultsName(String)}
+	 * @param frontier		- listings visited by the crawl
 	 *
 	 * @throws IOException -
+	 */
+	static void restoreCheckpointedListings(String resultsName, CrawlFrontier frontier) throws IOException {
+		CrawlCheckpoint.restoreFrontier(CHECKPOINT_DIRECTORY, resultsName, CsvResultHelper.csvFile(resultsName), SITE_URL, frontier);
+	}
+
+	/**
+	 * Returns the links of all properties in the first page of results.
+	 *
+	 * @param htmlDocument - source JSoup HTML document
 	 *
 	 * @return List<String>
 	 */
-	private static void step2AddPagination(Document htmlDocument) throws IOException {
-		Elements linkElements = htmlDocument.select("div#galleryView > ul > li > div.listingContent > h2 > a");
+	static List<String> step1GetSearchResultLinks(Document htmlDocument) {
+		Elements linkElements = htmlDocument.select(LISTING_LINKS_SELECTOR);
 
 		List<String> links = new ArrayList<>();
 
@@ -106,297 +259,467 @@ public class RealEstateJSoupParserExample {
 			links.add(linkElement.attr("href"));
 		}
 
-		Elements pageLinkElements = htmlDocument.select("div#pager > ul > li.pagerCount > a");
-
-		// Just to get only results from first 3 pages.
-		for (int pageIndex = 0; pageIndex < 2; pageIndex++) {
-			String nextPageLink = pageLinkElements.get(pageIndex).attr("href");
-
-			Document nextPageDocument = Jsoup.connect("https://harcourts.co.za" + nextPageLink).get();
-
-			linkElements = nextPageDocument.select("div#galleryView > ul > li > div.listingContent > h2 > a");
-
-			for (Element linkElement : linkElements) {
-				links.add(linkElement.attr("href"));
-			}
-		}
+		return links;
 	}
 
 	/**
-	 * Follows the links of all properties and captures their data.
+	 * Returns the links of all properties in the first pages of results, see {@link #PAGE_LIMIT}.
 	 *
-	 * @param htmlDocument - source JSoup HTML document
+	 * @param url - first (start) URL
 	 *
 	 * @throws IOException -
 	 *
 	 * @return List<String>
 	 */
-	private static List<String> step3FollowTheLinks(Document htmlDocument) throws IOException {
-		Elements linkElements = htmlDocument.select("div#galleryView > ul > li > div.listingContent > h2 > a");
+	private static List<String> step2AddPagination(String url) throws IOException {
+		List<String> links = new ArrayList<>();
 
-		List<String> pagesInfos = new ArrayList<>();
+		try (ResultsPagePaginator paginator = new ResultsPagePaginator(url, PAGE_LIMIT, (pageUrl, pageNumber) -> pageFetcher.fetch(pageUrl))) {
+			while (paginator.hasNext()) {
+				Elements linkElements = paginator.next().getDocument().select(LISTING_LINKS_SELECTOR);
 
-		for (Element linkElement : linkElements) {
-			saveDetailPageInformation(linkElement);
+				for (Element linkElement : linkElements) {
+					links.add(linkElement.attr("href"));
+				}
+			}
 		}
 
-		Elements pageLinkElements = htmlDocument.select("div#pager > ul > li.pagerCount > a");
-
-		// Just to get only results from first 3 pages.
-		for (int pageIndex = 0; pageIndex < 2; pageIndex++) {
-			String nextPageLink = pageLinkElements.get(pageIndex).attr("href");
+		return links;
+	}
 
-			Document nextPageDocument = Jsoup.connect(HARCOURTS_CO_ZA_URL + nextPageLink).get();
+	/**
+	 * Follows the links of all properties and captures their data to 'jsoup-houses-{locationCode}.csv'.
+	 * The next page of results is downloaded while the properties of the current one are visited.
+	 *
+	 * @param url			- first (start) URL
+	 * @param locationCode 	- location code
+	 *
+	 * @throws IOException -
+	 */
+	private static void step3FollowTheLinks(String url, String locationCode) throws IOException {
+		try (RecordSink results = CsvResultHelper.openResults(resultsName(locationCode), RECORD_HEADERS);
+			 ListingIndex listingIndex = ListingIndex.openIfEnabled(REAL_ESTATE_JSOUP_DIRECTORY, locationCode, resultsName(locationCode), RECORD_HEADERS);
+			 ResultsPagePaginator paginator = new ResultsPagePaginator(url, PAGE_LIMIT, (pageUrl, pageNumber) -> pageFetcher.fetch(pageUrl))) {
+			LocationOutput output = new LocationOutput(results, listingIndex, new CrawlFrontier(), null);
+
+			while (paginator.hasNext()) {
+				saveDetailPagesInformation(null, paginator.next(), output);
+			}
 
-			linkElements = nextPageDocument.select("div#galleryView > ul > li > div.listingContent > h2 > a");
+			output.emitter.finish();
 
-			for (Element linkElement : linkElements) {
-				saveDetailPageInformation(linkElement);
+			if (Objects.nonNull(listingIndex)) {
+				listingIndex.finish(paginator.isLastPageReached() && output.skippedCount == 0);
 			}
 		}
-
-		return pagesInfos;
 	}
 
 	/**
-	 * Save all pages to files on local computer in Downloads/realEstate_Jsoup folder.
+	 * Save all pages on local computer in the Downloads/realEstate_Jsoup/archive page archive, see {@link PageArchive},
+	 * and captures the data of all properties to 'jsoup-houses-{locationCode}.csv'.
+	 * Pages are archived under '{date}/{locationCode}_{pageNumber}.html' and '{date}/{locationCode}_{pageNumber}/{listingNumber}'.
+	 * The next page of results is loaded while the properties of the current one are visited, and listings of consecutive pages
+	 * flow through the {@link #pipeline} without waiting for each other.
+	 * Progress is saved to {@link #CHECKPOINT_DIRECTORY} while the location is crawled, and a location that didn't complete continues from
+	 * its last checkpoint, with the pages archived before, see {@link CrawlCheckpoint}.
 	 *
 	 * @param url			- first (start) URL
 	 * @param locationCode 	- location code
+	 * @param resultsName	- name of the results, see {@link #resultsName(String)}
+	 * @param frontier		- listings visited by the crawl, see {@link #restoreCheckpointedListings(String, CrawlFrontier)}
 	 *
 	 * @throws IOException -
+	 *
+	 * @return int - number of records captured
 	 */
-	private static void step4SavePagesLocally(String url, String locationCode) throws IOException {
-		File downloadsDirectory = new File(System.getProperty("user.home"), "Downloads");
-		File realEstateJsoupDirectory = new File(downloadsDirectory, "realEstate_Jsoup");
+	static int step4SavePagesLocally(String url, String locationCode, String resultsName, CrawlFrontier frontier) throws IOException {
+		return step4SavePagesLocally(url, 1, PAGE_LIMIT, locationCode, resultsName, frontier);
+	}
 
-		if (!realEstateJsoupDirectory.exists()) {
-			realEstateJsoupDirectory.mkdirs();
-		}
+	/**
+	 * Save a range of pages of results on local computer, and captures the data of their properties, as {@link #step4SavePagesLocally(String, String, String, CrawlFrontier)}.
+	 * Used to split a location between the workers of a {@link ShardedCrawl}.
+	 *
+	 * @param url				- URL of the first page of the range, see {@link #searchUrl(String, int)}
+	 * @param firstPageNumber	- number of the first page of the range, starting from 1
+	 * @param lastPageNumber	- number of the last page of the range, 0 to follow the pager until the last page
+	 * @param locationCode 		- location code
+	 * @param resultsName		- name of the results of the range
+	 * @param frontier			- listings visited by the crawl, see {@link #restoreCheckpointedListings(String, CrawlFrontier)}
+	 *
+	 * @throws IOException -
+	 *
+	 * @return int - number of records captured
+	 */
+	static int step4SavePagesLocally(String url, int firstPageNumber, int lastPageNumber, String locationCode, String resultsName, CrawlFrontier frontier) throws IOException {
+		CrawlCheckpoint checkpoint = CrawlCheckpoint.openIfEnabled(CHECKPOINT_DIRECTORY, resultsName, CsvResultHelper.csvFile(resultsName), LocalDate.now().toString());
 
-		ZonedDateTime currentDateTime = ZonedDateTime.now();
+		boolean resumed = Objects.nonNull(checkpoint) && checkpoint.isResumed();
 
-		String currentDateStr = currentDateTime.getYear() + "-" + currentDateTime.getMonthValue() + "-" + currentDateTime.getDayOfMonth();
+		// A resumed crawl reads the pages archived under the date it started.
+		String currentDateStr = Objects.nonNull(checkpoint) ? checkpoint.getDate() : LocalDate.now().toString();
 
-		File currentDayDirectory = new File(realEstateJsoupDirectory, currentDateStr);
+		int recordCount;
 
-		if (!currentDayDirectory.exists()) {
-			currentDayDirectory.mkdirs();
-		}
+		try (CrawlCheckpoint locationCheckpoint = checkpoint;
+			 RecordSink results = resumed ? CsvResultHelper.resumeResults(resultsName, checkpoint.getOutputLength(), checkpoint.getRecordCount(), RECORD_HEADERS) : CsvResultHelper.openResults(resultsName, RECORD_HEADERS);
+			 ListingIndex listingIndex = ListingIndex.openIfEnabled(REAL_ESTATE_JSOUP_DIRECTORY, locationCode, resultsName, RECORD_HEADERS);
+			 ResultsPagePaginator paginator = new ResultsPagePaginator(resumed ? checkpoint.getPageUrl() : url, resumed ? checkpoint.getPageNumber() : firstPageNumber, lastPageNumber,
+					 (pageUrl, pageNumber) -> loadResultsPage(currentDateStr, locationCode, pageUrl, pageNumber))) {
+			if (resumed) {
+				System.out.println("Resuming " + resultsName + " of " + currentDateStr + " at page " + checkpoint.getPageNumber() + ", listing " + (checkpoint.firstLinkIndex(checkpoint.getPageNumber()) + 1)
+						+ ", after " + checkpoint.getRecordCount() + " records");
+			}
 
-		File firstPageFile = new File(currentDayDirectory, locationCode + "_0001.html");
+			LocationOutput output = new LocationOutput(results, listingIndex, frontier, locationCheckpoint);
 
-		Document htmlDocument;
+			while (paginator.hasNext()) {
+				ResultsPagePaginator.ResultsPage page = paginator.next();
 
-		if (firstPageFile.exists()) {
-			htmlDocument = Jsoup.parse(firstPageFile, "UTF-8", url);
-		} else {
-			Connection.Response response = Jsoup.connect(url).execute();
+				String pageResultsKey = currentDateStr + "/" + resultsPageName(locationCode, page.getPageNumber());
 
-			htmlDocument = response.parse();
+				saveDetailPagesInformation(pageResultsKey, page, output);
+			}
 
-			saveHtmlPageToFile(firstPageFile, htmlDocument);
-		}
+			output.emitter.finish();
 
-		File firstPageResultsDirectory = new File(currentDayDirectory, locationCode + "_0001");
+			// Listings skipped after failed requests were not seen, so they can't be reported as removed.
+			if (Objects.nonNull(listingIndex)) {
+				listingIndex.finish(paginator.isLastPageReached() && output.skippedCount == 0);
+			}
 
-		if (!firstPageResultsDirectory.exists()) {
-			firstPageResultsDirectory.mkdirs();
+			recordCount = output.recordCount;
 		}
 
-		Elements detailPagesLinkElements = htmlDocument.select("div#galleryView > ul > li > div.listingContent > h2 > a");
-
-		for (Element detailPageLinkElement : detailPagesLinkElements) {
-			saveDetailPageInformation(firstPageResultsDirectory, detailPageLinkElement);
+		// Only once the results are closed, a crash before leaves the last checkpoint to resume from.
+		if (Objects.nonNull(checkpoint)) {
+			checkpoint.delete();
 		}
 
-		Elements pageLinkElements = htmlDocument.select("div#pager > ul > li.pagerCount > a");
-
-		// Just to get only results from first 3 pages.
-		for (int pageIndex = 0; pageIndex < 2; pageIndex++) {
-			String nextPageLink = pageLinkElements.get(pageIndex).attr("href");
-
-			int directoryIndex = pageIndex + 2;
-
-			File pageResultsFile = new File(currentDayDirectory, locationCode + "_000" + directoryIndex + ".html");
-
-			String nextPageUrl = HARCOURTS_CO_ZA_URL + nextPageLink;
-
-			Document nextPageDocument;
-
-			if (pageResultsFile.exists()) {
-				nextPageDocument = Jsoup.parse(pageResultsFile, "UTF-8", nextPageUrl);
-			} else {
-				nextPageDocument = Jsoup.connect(nextPageUrl).get();
+		return recordCount;
+	}
 
-				saveHtmlPageToFile(pageResultsFile, nextPageDocument);
-			}
+	/**
+	 * Load page of results archived as '{currentDateStr}/{locationCode}_{pageNumber}.html', or download and archive it with its resources.
+	 *
+	 * @param currentDateStr	- key of the pages archived today
+	 * @param locationCode		- location code
+	 * @param pageUrl			- page URL
+	 * @param pageNumber		- page number, starting from 1
+	 *
+	 * @throws IOException -
+	 *
+	 * @return Document
+	 */
+	private static Document loadResultsPage(String currentDateStr, String locationCode, String pageUrl, int pageNumber) throws IOException {
+		String pageResultsKey = currentDateStr + "/" + resultsPageName(locationCode, pageNumber) + ".html";
 
-			File pageResultsDirectory = new File(currentDayDirectory, locationCode + "_000" + directoryIndex);
+		Document pageDocument = pageArchive.parse(pageResultsKey, pageUrl);
 
-			if (!pageResultsDirectory.exists()) {
-				pageResultsDirectory.mkdirs();
-			}
+		if (Objects.isNull(pageDocument)) {
+			FetchedPage page = pageFetcher.fetchPage(pageUrl);
 
-			detailPagesLinkElements = nextPageDocument.select("div#galleryView > ul > li > div.listingContent > h2 > a");
+			pageDocument = page.parse();
 
-			for (Element linkElement : detailPagesLinkElements) {
-				saveDetailPageInformation(pageResultsDirectory, linkElement);
-			}
+			// Archived linking its saved resources, which are downloaded once for all pages, so only the first page waits for them.
+			pageWriter.write(pageResultsKey, resourceFetcher.saveResources(pageDocument, page.getBody()));
 		}
+
+		return pageDocument;
 	}
 
 	/**
-	 * Parse HTML elements to Map.
+	 * Name of saved page of results, i.e. '22008_0001' for the first page of location 22008.
 	 *
-	 * @param linkElement			- details page link element
+	 * @param locationCode	- location code
+	 * @param pageNumber	- page number, starting from 1
 	 *
-	 * @throws IOException -
+	 * @return String
 	 */
-	private static void saveDetailPageInformation(Element linkElement) throws IOException {
-		saveDetailPageInformation(null, linkElement);
+	private static String resultsPageName(String locationCode, int pageNumber) {
+		return String.format("%s_%04d", locationCode, pageNumber);
 	}
 
 	/**
-	 * Parse HTML elements to Map.
+	 * Submit the detail pages of all links to the {@link #pipeline}, whose emitter writes their records to results in the order of the links.
+	 * Links to listings already visited by the crawl, on a previous page of results or in another location, are dropped before fetching.
+	 * In incremental mode the previous record of listings whose summary did not change is reused without visiting the detail page.
+	 * Listings whose detail page can't be fetched after all retries of {@link FetchPolicy} are skipped, so one failing page doesn't stop the crawl.
+	 * Links done before the checkpoint of a resumed crawl are skipped.
 	 *
-	 * @param pageResultsDirectory  - source page results directory
-	 * @param linkElement			- details page link element
+	 * @param pageResultsKey		- archive key of the page of results, null to not archive detail pages
+	 * @param page					- page of results
+	 * @param output				- receives the records of the location
 	 *
 	 * @throws IOException -
 	 */
-	private static void saveDetailPageInformation(File pageResultsDirectory, Element linkElement) throws IOException {
-		String detailPageLink = linkElement.attr("href");
+	private static void saveDetailPagesInformation(String pageResultsKey, ResultsPagePaginator.ResultsPage page, LocationOutput output) throws IOException {
+		ListingIndex listingIndex = output.listingIndex;
 
-		String detailPageListingNumberFromUrl = parserListingNumberFromUrl(detailPageLink);
+		Elements pageLinkElements = page.getDocument().select(LISTING_LINKS_SELECTOR);
 
-		File detailPageHtmlFile = new File(pageResultsDirectory, detailPageListingNumberFromUrl);
+		int pageNumber = page.getPageNumber();
+		String pageUrl = page.getUrl();
 
-		Document detailPageDocument;
+		for (int i = Objects.nonNull(output.checkpoint) ? output.checkpoint.firstLinkIndex(pageNumber) : 0; i < pageLinkElements.size(); i++) {
+			Element linkElement = pageLinkElements.get(i);
 
-		if (detailPageHtmlFile.exists()) {
-			detailPageDocument = Jsoup.parse(detailPageHtmlFile, "UTF-8", detailPageLink);
-		} else {
-			detailPageDocument = Jsoup.connect(HARCOURTS_CO_ZA_URL + detailPageLink).get();
-		}
-
-		Element listingNumberElement = detailPageDocument.select("div.listingInfo > span > strong:contains(Listing Number:)").first();
-		String listingNumber = listingNumberElement.parent().textNodes().get(1).text();
+			String detailPageLink = linkElement.attr("href");
 
-		Element addressElement = detailPageDocument.select("div#listingDetail > div#detailTitle > h2.detailAddress").first();
-		String address = addressElement.text();
+			int linkIndex = i;
 
-		Element priceElement = detailPageDocument.select("div#listingDetail > div#detailTitle > div.propFeatures h3#listingViewDisplayPrice").first();
-		String price = priceElement.text();
+			if (!output.frontier.add(SITE_URL, detailPageLink)) {
+				if (Objects.nonNull(listingIndex)) {
+					// Still on the site, even if captured elsewhere.
+					listingIndex.markSeen(parserListingNumberFromUrl(detailPageLink).substring(1));
+				}
 
-		Element bedroomsElement = detailPageDocument.select("div#listingDetail > div#detailTitle > div.propFeatures > ul#detailFeatures > li.bdrm > span").first();
-		String bedroomsNumber = "";
+				if (Objects.nonNull(output.checkpoint)) {
+					// Moves the checkpoint cursor past the link, after the records of the links before it.
+					output.emitter.emit(null, ignored -> output.advance(pageNumber, pageUrl, linkIndex, null));
+				}
 
-		if (Objects.nonNull(bedroomsElement)) {
-			bedroomsNumber = bedroomsElement.text();
-		}
+				continue;
+			}
 
-		Element bathroomsElement = detailPageDocument.select("div#listingDetail > div#detailTitle > div.propFeatures > ul#detailFeatures > li.bthrm > span").first();
-		String bathroomsNumber = "";
+			String listingNumber = Objects.nonNull(listingIndex) ? parserListingNumberFromUrl(detailPageLink).substring(1) : null;
+			String fingerprint = Objects.nonNull(listingIndex) ? ListingIndex.fingerprintOf(listingSummaryOf(linkElement).text()) : null;
 
-		if (Objects.nonNull(bathroomsElement)) {
-			bathroomsNumber = bathroomsElement.text();
-		}
+			CrawlPipeline.ResultConsumer<ListingRecord> recordWriter = record -> {
+				output.write(record, listingNumber, fingerprint);
+				output.advance(pageNumber, pageUrl, linkIndex, detailPageLink);
+			};
 
-		Element landSizeElement = detailPageDocument.select("div.property-information > ul > li > span:contains(Land Size:)").first();
-		String landSize = "";
+			Map<String, String> previousRecord = Objects.nonNull(listingIndex) ? listingIndex.unchangedRecord(listingNumber, fingerprint) : null;
 
-		if (Objects.nonNull(landSizeElement)) {
-			landSize = landSizeElement.parent().textNodes().get(1).text();
+			if (Objects.nonNull(previousRecord)) {
+				output.emitter.emit(ListingRecord.fromFieldMap(previousRecord), recordWriter);
+			} else {
+				output.emitter.submit(() -> loadDetailPageOrSkip(pageResultsKey, detailPageLink), detailPage -> extractDetailPageInformation(detailPageLink, detailPage), recordWriter);
+			}
 		}
+	}
 
-		Element propertyTypeElement = detailPageDocument.select("div.property-information > ul > li > span:contains(Property Type:)").first();
-		String propertyType = propertyTypeElement.parent().textNodes().get(1).text();
-
-		Map<String, String> record = null;
+	/**
+	 * Returns the listing summary on the page of results, i.e. the 'li' element holding address, price and features of the property.
+	 *
+	 * @param linkElement - details page link element
+	 *
+	 * @return Element - closest 'li' ancestor, or the link itself if there is none
+	 */
+	private static Element listingSummaryOf(Element linkElement) {
+		for (Element ancestor = linkElement.parent(); Objects.nonNull(ancestor); ancestor = ancestor.parent()) {
+			if ("li".equals(ancestor.tagName())) {
+				return ancestor;
+			}
+		}
 
-		record = addToRecord(record, "propertyDetailsLink", detailPageLink);
-		record = addToRecord(record, "id", listingNumber);
-		record = addToRecord(record, "address", address);
-		record = addToRecord(record, "price", price);
-		record = addToRecord(record, "bedrooms", bedroomsNumber);
-		record = addToRecord(record, "bathrooms", bathroomsNumber);
-		record = addToRecord(record, "landSize", landSize);
-		record = addToRecord(record, "propertyType", propertyType);
+		return linkElement;
+	}
 
-		if (!detailPageHtmlFile.exists()) {
-			saveHtmlPageToFile(pageResultsDirectory, detailPageListingNumberFromUrl, detailPageDocument);
+	/**
+	 * Load detail page, or skip the listing if it can't be fetched. Fetch stage of the {@link #pipeline}.
+	 *
+	 * @param pageResultsKey		- archive key of the page of results, null to not archive the detail page
+	 * @param detailPageLink		- details page link
+	 *
+	 * @throws InterruptedIOException - if the crawl is interrupted
+	 *
+	 * @return FetchedPage - page, null if the listing was skipped
+	 */
+	private static FetchedPage loadDetailPageOrSkip(String pageResultsKey, String detailPageLink) throws InterruptedIOException {
+		try {
+			return loadDetailPage(pageResultsKey, detailPageLink);
+		} catch (InterruptedIOException e) {
+			throw e;
+		} catch (IOException e) {
+			System.out.println("Skipped listing " + detailPageLink + ": " + e);
+
+			return null;
 		}
 	}
 
 	/**
-	 * Parser Listing number from URL string.
+	 * Load detail page archived as '{pageResultsKey}/{listingNumber}', or download and archive it.
 	 *
-	 * @param detailPageLink - source URL string
+	 * @param pageResultsKey		- archive key of the page of results, null to not archive the detail page
+	 * @param detailPageLink		- details page link
 	 *
-	 * @return String
+	 * @throws IOException -
+	 *
+	 * @return FetchedPage
 	 */
-	private static String parserListingNumberFromUrl(String detailPageLink) {
-		int lastSlashIndex = detailPageLink.lastIndexOf('/');
+	private static FetchedPage loadDetailPage(String pageResultsKey, String detailPageLink) throws IOException {
+		// Pages are archived only if there's a page of results key, otherwise they are just fetched through the page cache.
+		String detailPageKey = Objects.nonNull(pageResultsKey) ? pageResultsKey + parserListingNumberFromUrl(detailPageLink) : null;
+
+		FetchedPage detailPage = Objects.nonNull(detailPageKey) ? pageArchive.read(detailPageKey, detailPageLink) : null;
 
-		String detailPageListingNumber = detailPageLink.substring(0, lastSlashIndex);
+		if (Objects.isNull(detailPage)) {
+			detailPage = pageFetcher.fetchPage(CrawlFrontier.normalizeUrl(SITE_URL, detailPageLink));
 
-		lastSlashIndex = detailPageListingNumber.lastIndexOf('/');
+			if (Objects.nonNull(detailPageKey)) {
+				saveHtmlPage(detailPageKey, detailPage);
+			}
+		}
 
-		return detailPageLink.substring(lastSlashIndex, detailPageListingNumber.length());
+		return detailPage;
 	}
 
 	/**
-	 * If record parameter is null or empty method will crate it and put new parameter to map.
+	 * Parse detail page fields to a listing record, see {@link ListingDetailExtractor#HARCOURTS}. Parse and extract stage of the {@link #pipeline}.
+	 * With {@link #STREAMING_EXTRACTION} only the regions holding fields are built, instead of the whole page.
+	 *
+	 * @param detailPageLink	- details page link
+	 * @param detailPage		- loaded detail page
 	 *
-	 * @param record    -   source map with values
-	 * @param key       -   key name
-	 * @param value     -   value object
+	 * @throws IOException -
 	 *
-	 * @return Map<String, String>
+	 * @return ListingRecord
 	 */
-	private static Map<String, String> addToRecord(Map<String, String> record, String key, String value) {
-		if (Objects.isNull(record) || record.containsKey(key)) {
-			record = new LinkedHashMap<>();
+	private static ListingRecord extractDetailPageInformation(String detailPageLink, FetchedPage detailPage) throws IOException {
+		// Parsed outside of the extraction, it is timed as its own stage.
+		Document detailPageDocument = STREAMING_EXTRACTION ? null : detailPage.parse();
 
-			results.add(record);
-		}
+		try (CrawlMetrics.Timer timer = CrawlMetrics.start(CrawlMetrics.Stage.EXTRACT, detailPageLink)) {
+			timer.addBytes(detailPage.getBody().length);
 
-		record.put(key, value);
+			if (STREAMING_EXTRACTION) {
+				return ListingDetailExtractor.HARCOURTS.extractRecord(detailPageLink, new ByteArrayInputStream(detailPage.getBody()), detailPage.getCharset());
+			}
 
-		return record;
+			return ListingDetailExtractor.HARCOURTS.extractRecord(detailPageLink, detailPageDocument);
+		}
 	}
 
 	/**
-	 * Save {@link Document} object (HTML content) to file.
+	 * Parser Listing number from URL string, with a leading slash to append it to an archive key, i.e. '/EST6886'.
 	 *
-	 * @param resultFile 		- result file to save
-	 * @param htmlDocument		- source HTML document
+	 * @param detailPageLink - source URL string
 	 *
-	 * @throws IOException -
+	 * @return String
 	 */
-	private static void saveHtmlPageToFile(File resultFile, Document htmlDocument) throws IOException {
-		BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(resultFile));
-		bufferedWriter.write(htmlDocument.outerHtml());
-
-		bufferedWriter.close();
+	private static String parserListingNumberFromUrl(String detailPageLink) {
+		return "/" + ListingIndex.listingNumberOf(detailPageLink);
 	}
 
 	/**
-	 * Save {@link Document} object (HTML content) to file.
+	 * Save page (HTML content as received from the server, with its links to the saved resources rewritten) to the page archive, in background.
 	 *
-	 * @param parentDirectory	- parent directory
-	 * @param fileName			- file name
-	 * @param htmlDocument		- source HTML document
+	 * @param key 			- archive key
+	 * @param page			- downloaded page
 	 *
 	 * @throws IOException -
 	 */
-	private static void saveHtmlPageToFile(File parentDirectory, String fileName, Document htmlDocument) throws IOException {
-		final File firstPageFile = new File(parentDirectory, fileName);
+	private static void saveHtmlPage(String key, FetchedPage page) throws IOException {
+		pageWriter.write(key, resourceFetcher.linkSavedResources(page.getUrl(), page.getBody()));
+	}
+
+	/**
+	 * Records of the location being crawled and where they go, used by its thread only.
+	 */
+	private static final class LocationOutput {
+
+		/**
+		 * Receives the records of the location.
+		 */
+		private final RecordSink results;
+
+		/**
+		 * Listing index of the location, null unless incremental mode is enabled.
+		 */
+		private final ListingIndex listingIndex;
+
+		/**
+		 * Listings visited by the crawl.
+		 */
+		private final CrawlFrontier frontier;
+
+		/**
+		 * Emits the records of the location in the order of the links.
+		 */
+		private final CrawlPipeline.Emitter<ListingRecord> emitter = pipeline.newEmitter();
+
+		/**
+		 * Reused row, records are written one at a time.
+		 */
+		private final String[] row = new String[RECORD_HEADERS.length];
+
+		/**
+		 * Reused field map of the listing index.
+		 */
+		private final Map<String, String> fieldMap = new LinkedHashMap<>();
+
+		/**
+		 * Progress of the location, null if checkpoints are disabled.
+		 */
+		private final CrawlCheckpoint checkpoint;
+
+		/**
+		 * Number of records written.
+		 */
+		private int recordCount;
+
+		/**
+		 * Number of listings skipped after failed requests.
+		 */
+		private int skippedCount;
+
+		LocationOutput(RecordSink results, ListingIndex listingIndex, CrawlFrontier frontier, CrawlCheckpoint checkpoint) {
+			this.results = results;
+			this.listingIndex = listingIndex;
+			this.frontier = frontier;
+			this.checkpoint = checkpoint;
+
+			// Counts of a resumed crawl include the records written before its checkpoint.
+			if (Objects.nonNull(checkpoint)) {
+				this.recordCount = checkpoint.getRecordCount();
+				this.skippedCount = checkpoint.getSkippedCount();
+			}
+		}
+
+		/**
+		 * Writes record and updates the listing index.
+		 *
+		 * @param record			- record, null if the listing was skipped
+		 * @param listingNumber		- listing number, null without listing index
+		 * @param fingerprint		- fingerprint of the listing summary, null without listing index
+		 *
+		 * @throws IOException -
+		 */
+		void write(ListingRecord record, String listingNumber, String fingerprint) throws IOException {
+			if (Objects.isNull(record)) {
+				skippedCount++;
+
+				return;
+			}
+
+			results.writeRow(record.fillRow(row));
+			recordCount++;
 
-		BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(firstPageFile));
-		bufferedWriter.write(htmlDocument.outerHtml());
+			CrawlMetrics.increment(CrawlMetrics.Counter.RECORD);
 
-		bufferedWriter.close();
+			if (Objects.nonNull(listingIndex)) {
+				fieldMap.clear();
+
+				listingIndex.update(listingNumber, fingerprint, record.fillFieldMap(fieldMap));
+			}
+		}
+
+		/**
+		 * Moves the checkpoint past a link once its record is written, and saves a checkpoint when one is due.
+		 *
+		 * @param pageNumber	- page number of the link
+		 * @param pageUrl		- URL of the page of the link
+		 * @param linkIndex		- index of the link on its page
+		 * @param capturedLink	- the link, null if its listing was captured before
+		 *
+		 * @throws IOException -
+		 */
+		void advance(int pageNumber, String pageUrl, int linkIndex, String capturedLink) throws IOException {
+			if (Objects.nonNull(checkpoint) && checkpoint.advance(pageNumber, pageUrl, linkIndex, capturedLink)) {
+				checkpoint.save(results.checkpoint(), recordCount, skippedCount);
+			}
+		}
 	}
 }
@@ -11,51 +11,108 @@ import com.univocity.api.entity.html.builders.*;
 import com.univocity.api.net.*;
 import com.univocity.parsers.common.*;
 
+import java.io.File;
 import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * DEMONSTRATES HOW YOU CAN CONFIGURE THE PARSER, STEP BY STEP.
  *
- * Runs against this Real Estate website: https://harcourts.co.za/
+ * Runs against this Real Estate website: https://harcourts.co.za/, or the site set with '-Dsite.baseUrl=URL', see {@link SyntheticSiteServer}.
  */
 public class RealEstateUnivocityParserExample {
 
 	/**
 	 * Entry point to application.
 	 *
-	 * @param args			- console arguments
+	 * @param args			- console arguments: location codes to crawl, see {@link LocationScheduler#readLocationCodes(String...)}
 	 *
 	 * @throws IOException -
 	 */
-	public static void main(String... args) {
-		String locationCode = "22008";
+	public static void main(String... args) throws IOException {
+		List<String> locationCodes = LocationScheduler.readLocationCodes(args);
 
 		/* UNCOMMENT ONE LINE AFTER THE OTHER AND RUN THE PARSER AGAIN **/
 		/* EACH STEP EXPLORES ADDITIONAL CONFIGURATIONS **/
 
 		com.univocity.parsers.html.Main.runLicenseManager();
 
+		// Each location is parsed with its own entity list, created by one of the steps below.
+
 		// Lists the links in the first page of results.
-		//HtmlEntityList entityList = step1GetSearchResultLinks();
+		//Supplier<HtmlEntityList> entityListFactory = RealEstateUnivocityParserExample::step1GetSearchResultLinks;
 
 		// Lists the links on 3 pages of results.
-		//HtmlEntityList entityList = step2AddPagination();
+		//Supplier<HtmlEntityList> entityListFactory = RealEstateUnivocityParserExample::step2AddPagination;
 
 		// Visits each link of each page and lists the data collected from them.
-		//HtmlEntityList entityList = step3FollowTheLinks();
+		//Supplier<HtmlEntityList> entityListFactory = RealEstateUnivocityParserExample::step3FollowTheLinks;
 
 		// Will download HTML and resources into a "realEstate" folder in your Downloads dir in the FIRST RUN only. Run it multiple times and it will NOT visit a second time.
-		HtmlEntityList entityList = step4SavePagesLocally();
+		Supplier<HtmlEntityList> entityListFactory = RealEstateUnivocityParserExample::step4SavePagesLocally;
+
+		// Pages the parser saved one file per page on previous days are moved to the page archive. Today's files are kept, the parser reads them instead of downloading again.
+		File realEstateDirectory = new File(System.getProperty("user.home"), "Downloads/realEstate");
+
+		try (PageArchive pageArchive = new PageArchive(new File(realEstateDirectory, "archive"))) {
+			pageArchive.importDayDirectories(realEstateDirectory, LocalDate.now());
+		}
+
+		// The parser downloads pages itself, so the number of locations parsed at the same time is the only limit of the load on the site.
+		// It can be changed with '-Dcrawl.parallelLocations=N' (default 2). Results of each location are saved to 'univocity-houses-{locationCode}.csv'.
+		// The parser visits every link it finds, so listings repeated on the next page of results or in another location are only dropped
+		// from the results, see CrawlFrontier.
+		CrawlFrontier frontier = new CrawlFrontier();
+
+		try {
+			new LocationScheduler(Integer.getInteger("crawl.parallelLocations", 2)).run(locationCodes, locationCode -> parseLocation(entityListFactory.get(), locationCode, "univocity-houses-" + locationCode, realEstateDirectory, frontier));
+		} finally {
+			// Timings are saved to 'univocity-houses-metrics.json' and 'univocity-houses-metrics.prom'.
+			CrawlMetrics.export("univocity-houses");
+		}
+	}
 
-		String url = "https://harcourts.co.za/Property/Residential?search=&location={LOCATION_CODE}&proptype=&min=&max=&minbed=&maxbed=&formsearch=true&page=1";
+	/**
+	 * Parses the pages of results of location and saves the houses to '{parserName}.csv', i.e. 'univocity-houses-{locationCode}.csv'.
+	 *
+	 * @param entityList			- entities to parse
+	 * @param locationCode			- location code
+	 * @param parserName			- name of the results and listing index
+	 * @param realEstateDirectory	- directory of the listing index
+	 * @param frontier				- listings captured by all locations
+	 *
+	 * @throws IOException -
+	 *
+	 * @return int - number of records saved
+	 */
+	static int parseLocation(HtmlEntityList entityList, String locationCode, String parserName, File realEstateDirectory, CrawlFrontier frontier) throws IOException {
+		String url = System.getProperty("site.baseUrl", "https://harcourts.co.za") + "/Property/Residential?search=&location={LOCATION_CODE}&proptype=&min=&max=&minbed=&maxbed=&formsearch=true&page=1";
 
 		UrlReaderProvider urlReaderProvider = new UrlReaderProvider(url);
 		HtmlParser htmlParser = new HtmlParser(entityList);
 
 		urlReaderProvider.getRequest().setUrlParameter("LOCATION_CODE", locationCode);
 
-		HtmlParserResult htmlParserResult = htmlParser.parse(urlReaderProvider).get("houses");
-		CsvResultHelper.saveResults(htmlParserResult);
+		HtmlParserResult htmlParserResult;
+
+		// The parser fetches, parses and extracts internally, so it is timed as one stage.
+		try (CrawlMetrics.Timer timer = CrawlMetrics.start(CrawlMetrics.Stage.HTML_PARSER, locationCode)) {
+			htmlParserResult = htmlParser.parse(urlReaderProvider).get("houses");
+		}
+
+		// With '-Dcrawl.incremental=true' added, changed and removed listings are also saved to 'univocity-houses-{locationCode}-delta.csv'.
+		// The link follower still visits every detail page. Removed listings are not reported as the paginator stops at its follow count.
+		try (ListingIndex listingIndex = ListingIndex.openIfEnabled(realEstateDirectory, locationCode, parserName, ListingRecord.FIELD_NAMES)) {
+			int recordCount = CsvResultHelper.saveListings(parserName, htmlParserResult, listingIndex, frontier);
+
+			if (listingIndex != null) {
+				listingIndex.finish(false);
+			}
+
+			return recordCount;
+		}
 	}
 
 	/**
@@ -63,7 +120,7 @@ public class RealEstateUnivocityParserExample {
 	 *
 	 * @return HtmlEntityList
 	 */
-	private static HtmlEntityList step1GetSearchResultLinks() {
+	static HtmlEntityList step1GetSearchResultLinks() {
 		// The first step is to create a list of entities.
 		HtmlEntityList entityList = new HtmlEntityList();
 
@@ -167,14 +224,16 @@ public class RealEstateUnivocityParserExample {
 	 *
 	 * @return HtmlEntityList
 	 */
-	private static HtmlEntityList step4SavePagesLocally() {
+	static HtmlEntityList step4SavePagesLocally() {
 		/* THIS IS NEW - CONFIGURE PARSER TO FETCH PAGE RESOURCES **/
 		// Configure parser to fetch CSS and javascript files to make downloaded pages look nice
 		FetchOptions options = new FetchOptions();
 		options.setSharedResourceDir("{user.home}/cache");
-		// Skip images otherwise it will download a lot of photos of each house.
+		// Skip images otherwise it will download a lot of photos of each house. The parser only tells the extension of each resource,
+		// so it is checked against the content types allowed by the policy, see ResourceFetchPolicy.
+		ResourceFetchPolicy resourcePolicy = ResourceFetchPolicy.fromSystemProperties();
 		options.setDownloadHandler(context -> {
-			if ("jpg".equals(context.targetFileExtension())) {
+			if (!resourcePolicy.allowsExtension(context.targetFileExtension())) {
 				context.skipDownload();
 			}
 		});
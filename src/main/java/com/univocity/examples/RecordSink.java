@@ -0,0 +1,60 @@
+package com.univocity.examples;
+
+import java.io.Closeable;
+import java.util.Map;
+
+/**
+ * Destination of parsed records. Records are written one by one as soon as they are extracted, so the
+ * whole result set never has to be kept in memory.
+ *
+ * Lifecycle is {@link #open(String...)}, any number of {@link #write(Map)} or {@link #writeRow(String[])} calls and
+ * {@link #close()}.
+ */
+interface RecordSink extends Closeable {
+
+	/**
+	 * Opens sink for records with fixed schema.
+	 *
+	 * @param headers - field names, in output order
+	 */
+	void open(String... headers);
+
+	/**
+	 * Writes one record. Fields missing from record or null are written as missing values: 'N/A' by {@link CsvResultSink}, which writes
+	 * empty values as 'N/A' too, nulls by {@link ColumnarResultSink}. Fields not declared in {@link #open(String...)} are ignored.
+	 *
+	 * @param record - field values by field name
+	 */
+	void write(Map<String, String> record);
+
+	/**
+	 * Writes one record from its values, in the order of the field names declared in {@link #open(String...)}. Null values are written as
+	 * missing values, see {@link #write(Map)}. Missing trailing values are left out of the row by {@link CsvResultSink}, and
+	 * read back as nulls. The array is not kept, so callers can reuse it for the next record.
+	 *
+	 * @param values - field values, in field order
+	 */
+	void writeRow(String[] values);
+
+	/**
+	 * Flushes the records written so far to the file, so a crawl can be resumed after them, see {@link CrawlCheckpoint}.
+	 *
+	 * @return long - length of the file, -1 if the sink can't be resumed
+	 */
+	default long checkpoint() {
+		return -1;
+	}
+
+	/**
+	 * Returns number of records written so far.
+	 *
+	 * @return int
+	 */
+	int getRecordCount();
+
+	/**
+	 * Flushes and closes sink.
+	 */
+	@Override
+	void close();
+}
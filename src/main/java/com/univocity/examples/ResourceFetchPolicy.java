@@ -0,0 +1,222 @@
+package com.univocity.examples;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which resources of a saved page, stylesheets, scripts, fonts and images, are downloaded with it, so saved pages still render
+ * offline without the bandwidth spent on listing photos.
+ *
+ * Resources are checked in two steps: the URL first, before any request, against a skip pattern and the content type its extension stands
+ * for, then the 'Content-Type' and 'Content-Length' headers of the response. Content types are allowed by prefix, i.e. 'font/' allows all
+ * fonts. Both are checked before the body is read, so a rejected resource is never transferred, and resources larger than the maximum
+ * size are dropped.
+ */
+class ResourceFetchPolicy {
+
+	/**
+	 * Content types allowed by default: what a page needs to render, and small icons.
+	 */
+	static final String DEFAULT_ALLOWED_CONTENT_TYPES = "text/css,text/javascript,application/javascript,application/x-javascript,font/,application/font-woff,image/svg+xml,image/x-icon,image/vnd.microsoft.icon";
+
+	/**
+	 * Content types of the usual resource file extensions.
+	 */
+	private static final Map<String, String> EXTENSION_CONTENT_TYPES = new HashMap<>();
+
+	static {
+		EXTENSION_CONTENT_TYPES.put("css", "text/css");
+		EXTENSION_CONTENT_TYPES.put("js", "application/javascript");
+		EXTENSION_CONTENT_TYPES.put("mjs", "application/javascript");
+		EXTENSION_CONTENT_TYPES.put("woff", "font/woff");
+		EXTENSION_CONTENT_TYPES.put("woff2", "font/woff2");
+		EXTENSION_CONTENT_TYPES.put("ttf", "font/ttf");
+		EXTENSION_CONTENT_TYPES.put("otf", "font/otf");
+		EXTENSION_CONTENT_TYPES.put("svg", "image/svg+xml");
+		EXTENSION_CONTENT_TYPES.put("ico", "image/x-icon");
+		EXTENSION_CONTENT_TYPES.put("jpg", "image/jpeg");
+		EXTENSION_CONTENT_TYPES.put("jpeg", "image/jpeg");
+		EXTENSION_CONTENT_TYPES.put("png", "image/png");
+		EXTENSION_CONTENT_TYPES.put("gif", "image/gif");
+		EXTENSION_CONTENT_TYPES.put("webp", "image/webp");
+		EXTENSION_CONTENT_TYPES.put("avif", "image/avif");
+		EXTENSION_CONTENT_TYPES.put("bmp", "image/bmp");
+		EXTENSION_CONTENT_TYPES.put("mp4", "video/mp4");
+		EXTENSION_CONTENT_TYPES.put("webm", "video/webm");
+	}
+
+	/**
+	 * Allowed content type prefixes, in lower case.
+	 */
+	private List<String> allowedContentTypes = Arrays.asList(DEFAULT_ALLOWED_CONTENT_TYPES.split(","));
+
+	/**
+	 * Largest resource downloaded, in bytes.
+	 */
+	private long maxBytes = 512 * 1024;
+
+	/**
+	 * URLs never downloaded, null if none.
+	 */
+	private Pattern skipPattern;
+
+	/**
+	 * Creates policy allowing {@link #DEFAULT_ALLOWED_CONTENT_TYPES} up to 512 KB, or the content types, size and skip pattern set with
+	 * '-Dresources.allowedContentTypes=type,type/', '-Dresources.maxBytes=N' and '-Dresources.skipPattern=REGEX'.
+	 *
+	 * @return ResourceFetchPolicy
+	 */
+	static ResourceFetchPolicy fromSystemProperties() {
+		ResourceFetchPolicy policy = new ResourceFetchPolicy()
+				.withAllowedContentTypes(System.getProperty("resources.allowedContentTypes", DEFAULT_ALLOWED_CONTENT_TYPES).split(","))
+				.withMaxBytes(Long.getLong("resources.maxBytes", 512 * 1024));
+
+		String skipPattern = System.getProperty("resources.skipPattern");
+
+		return Objects.nonNull(skipPattern) ? policy.withSkipPattern(Pattern.compile(skipPattern)) : policy;
+	}
+
+	/**
+	 * Sets allowed content types.
+	 *
+	 * @param contentTypePrefixes - content types, or prefixes of content types like 'font/'
+	 *
+	 * @return ResourceFetchPolicy - this policy
+	 */
+	ResourceFetchPolicy withAllowedContentTypes(String... contentTypePrefixes) {
+		String[] prefixes = new String[contentTypePrefixes.length];
+
+		for (int i = 0; i < prefixes.length; i++) {
+			prefixes[i] = contentTypePrefixes[i].trim().toLowerCase(Locale.ROOT);
+		}
+
+		this.allowedContentTypes = Arrays.asList(prefixes);
+
+		return this;
+	}
+
+	/**
+	 * Sets largest resource downloaded.
+	 *
+	 * @param maxBytes - size in bytes
+	 *
+	 * @return ResourceFetchPolicy - this policy
+	 */
+	ResourceFetchPolicy withMaxBytes(long maxBytes) {
+		if (maxBytes < 1) {
+			throw new IllegalArgumentException("Maximum size must be positive: " + maxBytes);
+		}
+
+		this.maxBytes = maxBytes;
+
+		return this;
+	}
+
+	/**
+	 * Sets URLs never downloaded.
+	 *
+	 * @param skipPattern - pattern found in the URLs to skip, i.e. '/photos/'
+	 *
+	 * @return ResourceFetchPolicy - this policy
+	 */
+	ResourceFetchPolicy withSkipPattern(Pattern skipPattern) {
+		this.skipPattern = skipPattern;
+
+		return this;
+	}
+
+	/**
+	 * @return long - largest resource downloaded, in bytes
+	 */
+	long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Returns whether a resource should be requested, judging by its URL only.
+	 *
+	 * @param url - absolute resource URL
+	 *
+	 * @return boolean - false if the URL matches the skip pattern or its extension stands for a content type not allowed
+	 */
+	boolean allowsUrl(String url) {
+		if (Objects.nonNull(skipPattern) && skipPattern.matcher(url).find()) {
+			return false;
+		}
+
+		return allowsExtension(extensionOf(url));
+	}
+
+	/**
+	 * Returns whether a resource with a file extension should be requested.
+	 *
+	 * @param extension - file extension, without dot
+	 *
+	 * @return boolean - false if the extension stands for a content type not allowed, true for unknown extensions
+	 */
+	boolean allowsExtension(String extension) {
+		String contentType = EXTENSION_CONTENT_TYPES.get(extension.toLowerCase(Locale.ROOT));
+
+		return Objects.isNull(contentType) || allowsContentType(contentType);
+	}
+
+	/**
+	 * Returns whether the body of a response should be downloaded, judging by its headers.
+	 *
+	 * @param contentType		- 'Content-Type' header, null if none
+	 * @param declaredLength	- 'Content-Length' header, -1 if none
+	 *
+	 * @return boolean
+	 */
+	boolean allowsResponse(String contentType, long declaredLength) {
+		return Objects.nonNull(contentType) && allowsContentType(contentType) && declaredLength <= maxBytes;
+	}
+
+	/**
+	 * Returns whether content type is allowed, ignoring its parameters.
+	 *
+	 * @param contentType - content type, i.e. 'text/css; charset=utf-8'
+	 *
+	 * @return boolean
+	 */
+	private boolean allowsContentType(String contentType) {
+		String type = contentType.toLowerCase(Locale.ROOT).trim();
+
+		for (String prefix : allowedContentTypes) {
+			if (!prefix.isEmpty() && type.startsWith(prefix)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns extension of the file name of URL.
+	 *
+	 * @param url - URL
+	 *
+	 * @return String - extension in lower case without dot, empty if none
+	 */
+	static String extensionOf(String url) {
+		int end = url.length();
+
+		for (int i = 0; i < url.length(); i++) {
+			if (url.charAt(i) == '?' || url.charAt(i) == '#') {
+				end = i;
+
+				break;
+			}
+		}
+
+		int slashIndex = url.lastIndexOf('/', end - 1);
+		int dotIndex = url.lastIndexOf('.', end - 1);
+
+		return dotIndex > slashIndex ? url.substring(dotIndex + 1, end).toLowerCase(Locale.ROOT) : "";
+	}
+}
@@ -0,0 +1,382 @@
+package com.univocity.examples;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+
+/**
+ * Downloads the resources of saved pages, stylesheets, scripts, fonts and icons, to a shared directory, and rewrites the links of saved
+ * pages to the saved files, so the pages can be rendered offline. Which resources are downloaded is decided by a {@link ResourceFetchPolicy},
+ * from the URL and then from the response headers. Requests go through the {@link FetchPolicy} and transport of the page fetcher, and
+ * responses are checked before their body is read, so rejected resources are dropped without being transferred. Bodies without a
+ * declared length are read at most one byte past the maximum size.
+ *
+ * Every resource URL is requested at most once per crawl, and saved resources are not requested again by later crawls: the URL of each
+ * saved resource and its file are kept in 'resources.tsv'. Files are named after a hash of their content, so the same resource served
+ * from different URLs is saved once. Downloads run in parallel on the workers of a {@link ConcurrentPageFetcher}.
+ */
+class ResourceFetcher implements Closeable {
+
+	/**
+	 * Selects the elements linking the resources a page needs to render.
+	 */
+	private static final String RESOURCE_SELECTOR = "link[rel~=(?i)stylesheet|icon][href], script[src], img[src]";
+
+	/**
+	 * Name of the file mapping resource URLs to saved files.
+	 */
+	private static final String MANIFEST_FILE_NAME = "resources.tsv";
+
+	/**
+	 * Matches the 'href' and 'src' attributes of a page: the attribute name with its '=', then the value, quoted or not.
+	 */
+	private static final Pattern LINK_ATTRIBUTE_PATTERN = Pattern.compile("(?i)(\\s(?:href|src)\\s*=\\s*)(\"[^\"]*\"|'[^']*'|[^\\s\"'>]+)");
+
+	/**
+	 * Directory of the saved resources.
+	 */
+	private final File directory;
+
+	/**
+	 * Decides which resources are downloaded.
+	 */
+	private final ResourceFetchPolicy policy;
+
+	/**
+	 * Runs the downloads on its workers.
+	 */
+	private final ConcurrentPageFetcher pageFetcher;
+
+	/**
+	 * Saved file name by resource URL, null if the resource was skipped or failed.
+	 */
+	private final ConcurrentMap<String, CompletableFuture<String>> files = new ConcurrentHashMap<>();
+
+	/**
+	 * Saved file name by content hash.
+	 */
+	private final ConcurrentMap<String, String> contentFiles = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates fetcher and loads the resources saved by previous crawls.
+	 *
+	 * @param directory		- directory of the saved resources, created if needed
+	 * @param policy		- decides which resources are downloaded
+	 * @param pageFetcher	- sends the requests and runs the downloads on its workers, not closed with this fetcher
+	 *
+	 * @throws IOException -
+	 */
+	ResourceFetcher(File directory, ResourceFetchPolicy policy, ConcurrentPageFetcher pageFetcher) throws IOException {
+		this.directory = directory;
+		this.policy = policy;
+		this.pageFetcher = pageFetcher;
+
+		Files.createDirectories(directory.toPath());
+
+		File manifestFile = new File(directory, MANIFEST_FILE_NAME);
+
+		if (manifestFile.isFile()) {
+			try (BufferedReader reader = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+				for (String line = reader.readLine(); Objects.nonNull(line); line = reader.readLine()) {
+					int tabIndex = line.indexOf('\t');
+
+					if (tabIndex > 0) {
+						String fileName = line.substring(tabIndex + 1);
+
+						files.put(line.substring(0, tabIndex), CompletableFuture.completedFuture(fileName));
+						contentFiles.put(hashOf(fileName), fileName);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Downloads the resources of page not requested yet, waits for all its resources, usually saved already for a previous page, and
+	 * returns the page with its links to them rewritten, see {@link #linkSavedResources(String, byte[])}.
+	 *
+	 * @param page		- page, parsed with its URL as base URI
+	 * @param content	- page content as received
+	 *
+	 * @throws IOException -
+	 *
+	 * @return byte[] - page content linking the saved resources
+	 */
+	byte[] saveResources(Document page, byte[] content) throws IOException {
+		List<CompletableFuture<String>> pageFiles = new ArrayList<>();
+
+		for (Element element : page.select(RESOURCE_SELECTOR)) {
+			String url = CrawlFrontier.normalizeUrl(page.location(), element.attr(element.hasAttr("href") ? "href" : "src"));
+
+			if (url.startsWith("http://") || url.startsWith("https://")) {
+				pageFiles.add(fetchResource(url));
+			}
+		}
+
+		try {
+			CompletableFuture.allOf(pageFiles.toArray(new CompletableFuture<?>[pageFiles.size()])).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException("Interrupted while waiting for the resources of " + page.location());
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+
+		return linkSavedResources(page.location(), content);
+	}
+
+	/**
+	 * Rewrites the 'href' and 'src' attributes of page pointing to saved resources to the URIs of their files, so the page renders
+	 * offline. Everything else is kept byte for byte, the page is never serialized again from a DOM. Links to resources not saved, or
+	 * not downloaded yet, are kept.
+	 *
+	 * @param pageUrl	- page URL, base of its relative links
+	 * @param content	- page content
+	 *
+	 * @return byte[] - rewritten content, the same array if no link was rewritten
+	 */
+	byte[] linkSavedResources(String pageUrl, byte[] content) {
+		// One char per byte: attributes are matched in any ASCII compatible charset and the other bytes are kept as they are.
+		String html = new String(content, StandardCharsets.ISO_8859_1);
+
+		Matcher matcher = LINK_ATTRIBUTE_PATTERN.matcher(html);
+		StringBuffer rewritten = null;
+
+		while (matcher.find()) {
+			String value = matcher.group(2);
+
+			if (value.charAt(0) == '"' || value.charAt(0) == '\'') {
+				value = value.substring(1, value.length() - 1);
+			}
+
+			CompletableFuture<String> file = files.get(CrawlFrontier.normalizeUrl(pageUrl, Parser.unescapeEntities(value, true)));
+			String fileName = Objects.nonNull(file) ? file.getNow(null) : null;
+
+			if (Objects.nonNull(fileName)) {
+				if (Objects.isNull(rewritten)) {
+					rewritten = new StringBuffer(html.length() + 256);
+				}
+
+				String fileUri = new File(directory, fileName).toURI().toString().replace("&", "&amp;").replace("\"", "&quot;");
+
+				matcher.appendReplacement(rewritten, Matcher.quoteReplacement(matcher.group(1) + '"' + fileUri + '"'));
+			}
+		}
+
+		if (Objects.isNull(rewritten)) {
+			return content;
+		}
+
+		matcher.appendTail(rewritten);
+
+		return rewritten.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Returns saved file of resource, starting its download on the workers unless it was requested already.
+	 *
+	 * @param url - absolute resource URL
+	 *
+	 * @return CompletableFuture<String> - saved file name, null if the resource was skipped or failed
+	 */
+	private CompletableFuture<String> fetchResource(String url) {
+		CompletableFuture<String> file = new CompletableFuture<>();
+		CompletableFuture<String> requestedFile = files.putIfAbsent(url, file);
+
+		if (Objects.nonNull(requestedFile)) {
+			return requestedFile;
+		}
+
+		if (!policy.allowsUrl(url)) {
+			CrawlMetrics.increment(CrawlMetrics.Counter.RESOURCE_SKIPPED);
+
+			file.complete(null);
+
+			return file;
+		}
+
+		pageFetcher.execute(() -> {
+			try {
+				file.complete(download(url));
+			} catch (InterruptedIOException e) {
+				// Crawl stopping, the resource is requested again by the next crawl.
+			} catch (IOException e) {
+				System.out.println("Unable to download resource " + url + ": " + e);
+			} finally {
+				// Whatever failed, so pages waiting for the resource are never left hanging.
+				file.complete(null);
+			}
+		});
+
+		return file;
+	}
+
+	/**
+	 * Downloads resource, and saves it if its response headers and size are allowed, unless the same content is already saved.
+	 *
+	 * @param url - absolute resource URL
+	 *
+	 * @throws IOException -
+	 *
+	 * @return String - saved file name, null if the resource was skipped
+	 */
+	private String download(String url) throws IOException {
+		// One byte over the maximum size tells a resource too large from one of exactly the maximum size, when its length isn't declared.
+		Connection.Response response = pageFetcher.send(Jsoup.connect(url)
+				.ignoreContentType(true)
+				.maxBodySize((int) Math.min(Integer.MAX_VALUE, policy.getMaxBytes() + 1)),
+				(statusCode, contentType, contentLength) -> statusCode != 200 || policy.allowsResponse(contentType, contentLength));
+
+		if (response.statusCode() != 200) {
+			throw new IOException("HTTP status " + response.statusCode());
+		}
+
+		byte[] content = response.bodyAsBytes();
+
+		if (!policy.allowsResponse(response.contentType(), contentLengthOf(response)) || content.length > policy.getMaxBytes()) {
+			CrawlMetrics.increment(CrawlMetrics.Counter.RESOURCE_SKIPPED);
+
+			return null;
+		}
+
+		String hash = contentHash(content);
+		String extension = ResourceFetchPolicy.extensionOf(url);
+		String fileName = extension.isEmpty() || extension.length() > 8 ? hash : hash + "." + extension;
+
+		String savedFileName = contentFiles.putIfAbsent(hash, fileName);
+
+		if (Objects.nonNull(savedFileName)) {
+			CrawlMetrics.increment(CrawlMetrics.Counter.RESOURCE_DUPLICATE);
+
+			return savedFileName;
+		}
+
+		Files.write(new File(directory, fileName).toPath(), content);
+
+		return fileName;
+	}
+
+	/**
+	 * Returns 'Content-Length' header of response.
+	 *
+	 * @param response - response
+	 *
+	 * @return long - declared length, -1 if none or not a number
+	 */
+	private static long contentLengthOf(Connection.Response response) {
+		String contentLength = response.header("Content-Length");
+
+		try {
+			return Objects.nonNull(contentLength) ? Long.parseLong(contentLength.trim()) : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns hash of content: the first 16 hex digits of its SHA-256.
+	 *
+	 * @param content - content
+	 *
+	 * @return String
+	 */
+	private static String contentHash(byte[] content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+
+			StringBuilder hash = new StringBuilder(16);
+
+			for (int i = 0; i < 8; i++) {
+				hash.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+			}
+
+			return hash.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	/**
+	 * Returns content hash of a saved file name.
+	 *
+	 * @param fileName - saved file name, hash and optional extension
+	 *
+	 * @return String
+	 */
+	private static String hashOf(String fileName) {
+		int dotIndex = fileName.indexOf('.');
+
+		return dotIndex == -1 ? fileName : fileName.substring(0, dotIndex);
+	}
+
+	/**
+	 * Waits for the downloads started and saves 'resources.tsv'.
+	 *
+	 * @throws IOException -
+	 */
+	@Override
+	public void close() throws IOException {
+		Map<String, String> manifest = new TreeMap<>();
+
+		int skippedCount = 0;
+
+		try {
+			for (Map.Entry<String, CompletableFuture<String>> file : files.entrySet()) {
+				String fileName = file.getValue().get();
+
+				if (Objects.nonNull(fileName)) {
+					manifest.put(file.getKey(), fileName);
+				} else {
+					skippedCount++;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException("Interrupted while waiting for resources");
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+
+		File temporaryFile = new File(directory, MANIFEST_FILE_NAME + ".tmp");
+
+		try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile.toPath(), StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, String> entry : manifest.entrySet()) {
+				writer.write(entry.getKey());
+				writer.write('\t');
+				writer.write(entry.getValue());
+				writer.newLine();
+			}
+		}
+
+		Files.move(temporaryFile.toPath(), new File(directory, MANIFEST_FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		System.out.println("Resources: " + manifest.size() + " saved, " + skippedCount + " skipped, in " + directory.getAbsolutePath());
+	}
+}
@@ -0,0 +1,252 @@
+package com.univocity.examples;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+/**
+ * Follows the 'next page' link of the results pager until there are no more pages or the page limit is reached.
+ *
+ * As soon as a page is returned by {@link #next()} loading of the following page starts in background, so it
+ * is downloaded while the listings of the current page are processed.
+ */
+class ResultsPagePaginator implements Closeable {
+
+	/**
+	 * Selects the link to the next page of results.
+	 */
+	private static final String NEXT_PAGE_LINK_SELECTOR = "div#pager > ul > li.pagerNext > a";
+
+	/**
+	 * Loads a page of results.
+	 */
+	interface PageLoader {
+
+		/**
+		 * Loads page of results.
+		 *
+		 * @param url			- absolute page URL
+		 * @param pageNumber	- page number, starting from 1
+		 *
+		 * @throws IOException -
+		 *
+		 * @return Document
+		 */
+		Document load(String url, int pageNumber) throws IOException;
+	}
+
+	/**
+	 * Page of results with its position in the pagination.
+	 */
+	static class ResultsPage {
+
+		/**
+		 * Page number, starting from 1.
+		 */
+		private final int pageNumber;
+
+		/**
+		 * Absolute page URL.
+		 */
+		private final String url;
+
+		/**
+		 * Parsed page.
+		 */
+		private final Document document;
+
+		ResultsPage(int pageNumber, String url, Document document) {
+			this.pageNumber = pageNumber;
+			this.url = url;
+			this.document = document;
+		}
+
+		/**
+		 * @return int - page number, starting from 1
+		 */
+		int getPageNumber() {
+			return pageNumber;
+		}
+
+		/**
+		 * @return String - absolute page URL
+		 */
+		String getUrl() {
+			return url;
+		}
+
+		/**
+		 * @return Document - parsed page
+		 */
+		Document getDocument() {
+			return document;
+		}
+	}
+
+	/**
+	 * Loads pages in background.
+	 */
+	private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "results-page-prefetch");
+		thread.setDaemon(true);
+
+		return thread;
+	});
+
+	/**
+	 * Page loader.
+	 */
+	private final PageLoader pageLoader;
+
+	/**
+	 * Maximum number of pages to visit, 0 means all pages.
+	 */
+	private final int pageLimit;
+
+	/**
+	 * URLs of pages already requested, protects against pagers pointing back to a visited page.
+	 */
+	private final Set<String> visitedUrls = new HashSet<>();
+
+	/**
+	 * Page being loaded in background, null if there are no more pages.
+	 */
+	private Future<ResultsPage> nextPage;
+
+	/**
+	 * True once a page without next page was returned, as opposed to stopping at the page limit.
+	 */
+	private boolean lastPageReached;
+
+	/**
+	 * Creates paginator and starts loading the first page.
+	 *
+	 * @param firstPageUrl	- URL of the first page of results
+	 * @param pageLimit		- maximum number of pages to visit, 0 to follow the pager until the last page
+	 * @param pageLoader	- page loader
+	 */
+	ResultsPagePaginator(String firstPageUrl, int pageLimit, PageLoader pageLoader) {
+		this(firstPageUrl, 1, pageLimit, pageLoader);
+	}
+
+	/**
+	 * Creates paginator starting from a later page, i.e. to resume a crawl, and starts loading that page.
+	 *
+	 * @param startPageUrl		- URL of the page to start from
+	 * @param startPageNumber	- its page number, starting from 1
+	 * @param pageLimit			- maximum number of pages to visit, counting from the first page, 0 to follow the pager until the last page
+	 * @param pageLoader		- page loader
+	 */
+	ResultsPagePaginator(String startPageUrl, int startPageNumber, int pageLimit, PageLoader pageLoader) {
+		if (pageLimit < 0) {
+			throw new IllegalArgumentException("Page limit can't be negative: " + pageLimit);
+		}
+
+		if (startPageNumber < 1) {
+			throw new IllegalArgumentException("Page number must be positive: " + startPageNumber);
+		}
+
+		this.pageLimit = pageLimit;
+		this.pageLoader = pageLoader;
+
+		prefetch(startPageUrl, startPageNumber);
+	}
+
+	/**
+	 * Returns true if there is another page of results.
+	 *
+	 * @return boolean
+	 */
+	boolean hasNext() {
+		return nextPage != null;
+	}
+
+	/**
+	 * Returns true if the last page of results was returned, i.e. every page was visited and not only the first
+	 * pages up to the page limit.
+	 *
+	 * @return boolean
+	 */
+	boolean isLastPageReached() {
+		return lastPageReached;
+	}
+
+	/**
+	 * Returns the next page of results and starts loading the page after it.
+	 *
+	 * @throws IOException -
+	 *
+	 * @return ResultsPage
+	 */
+	ResultsPage next() throws IOException {
+		if (nextPage == null) {
+			throw new NoSuchElementException("No more pages of results");
+		}
+
+		ResultsPage page;
+
+		try {
+			page = nextPage.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException("Interrupted while loading page of results");
+		} catch (ExecutionException e) {
+			nextPage = null;
+
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+
+			throw new IOException(e.getCause());
+		}
+
+		nextPage = null;
+
+		if (pageLimit == 0 || page.getPageNumber() < pageLimit) {
+			Element nextPageLinkElement = page.getDocument().select(NEXT_PAGE_LINK_SELECTOR).first();
+
+			if (nextPageLinkElement != null) {
+				prefetch(nextPageLinkElement.absUrl("href"), page.getPageNumber() + 1);
+			}
+
+			lastPageReached = nextPage == null;
+		}
+
+		return page;
+	}
+
+	/**
+	 * Starts loading page in background, unless it was already visited.
+	 *
+	 * @param url			- absolute page URL
+	 * @param pageNumber	- page number
+	 */
+	private void prefetch(String url, int pageNumber) {
+		if (url.isEmpty() || !visitedUrls.add(url)) {
+			return;
+		}
+
+		nextPage = prefetchExecutor.submit(() -> new ResultsPage(pageNumber, url, pageLoader.load(url, pageNumber)));
+	}
+
+	@Override
+	public void close() {
+		if (nextPage != null) {
+			nextPage.cancel(true);
+			nextPage = null;
+		}
+
+		prefetchExecutor.shutdownNow();
+	}
+}
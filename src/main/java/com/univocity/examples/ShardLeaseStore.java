@@ -0,0 +1,382 @@
+package com.univocity.examples;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Leases on the work units of a sharded crawl, kept as files in a directory shared by its workers, so workers on the same box, or on
+ * boxes sharing storage, never crawl the same unit at the same time, and the units of a dead worker are taken over by the others.
+ *
+ * A unit is claimed by creating '{unit}.lease' holding the worker id, which fails if another worker created it first. The holder renews
+ * its leases by touching their files every third of the lease time. A lease not renewed for the lease time belongs to a dead worker and
+ * is reclaimed: renamed to a name unique to the reclaiming worker, then claimed again. Two workers may both find the same lease expired,
+ * and the second rename may then take the lease the first one just claimed, so the renamed file is checked to still hold the expired owner
+ * and renewal time, and is put back otherwise. A worker restarted with the same id reclaims its own leases at once.
+ *
+ * A worker whose lease was reclaimed anyway, i.e. after a pause longer than the lease time, finds out at its next renewal and its thread
+ * holding the unit is interrupted, or at the latest when it completes the unit, which is then refused. A lease file missing at one renewal
+ * is only taken as lost at the next one, as it may just be renamed away by a worker about to put it back. Completed units get a
+ * '{unit}.done' file holding their result.
+ */
+class ShardLeaseStore implements Closeable {
+
+	/**
+	 * Claim of a unit by this worker.
+	 */
+	final class Lease {
+
+		/**
+		 * Unit name.
+		 */
+		private final String unit;
+
+		/**
+		 * Lease file.
+		 */
+		private final Path file;
+
+		/**
+		 * Thread working on the unit, interrupted if the lease is lost.
+		 */
+		private final Thread holder;
+
+		/**
+		 * True once the lease was reclaimed by another worker.
+		 */
+		private volatile boolean lost;
+
+		/**
+		 * True if the lease file was missing at the last renewal.
+		 */
+		private boolean missing;
+
+		private Lease(String unit, Path file) {
+			this.unit = unit;
+			this.file = file;
+			this.holder = Thread.currentThread();
+		}
+
+		/**
+		 * @return boolean - true if the lease was reclaimed by another worker, which crawls the unit again
+		 */
+		boolean isLost() {
+			return lost;
+		}
+	}
+
+	/**
+	 * Lease directory.
+	 */
+	private final File directory;
+
+	/**
+	 * Id of this worker, written in its lease files.
+	 */
+	private final String workerId;
+
+	/**
+	 * Time after which a lease not renewed can be reclaimed.
+	 */
+	private final long leaseMillis;
+
+	/**
+	 * Leases held by this worker by unit.
+	 */
+	private final Map<String, Lease> heldLeases = new ConcurrentHashMap<>();
+
+	/**
+	 * Renews the leases held.
+	 */
+	private final ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "shard-lease-renewer");
+		thread.setDaemon(true);
+
+		return thread;
+	});
+
+	/**
+	 * Creates store and starts renewing the leases it will hold.
+	 *
+	 * @param directory		- lease directory shared by the workers, created if needed
+	 * @param workerId		- id of this worker, unique among the running workers
+	 * @param leaseMillis	- time after which a lease not renewed can be reclaimed
+	 *
+	 * @throws IOException -
+	 */
+	ShardLeaseStore(File directory, String workerId, long leaseMillis) throws IOException {
+		if (leaseMillis < 3) {
+			throw new IllegalArgumentException("Lease time is too short: " + leaseMillis + " ms");
+		}
+
+		this.directory = directory;
+		this.workerId = workerId;
+		this.leaseMillis = leaseMillis;
+
+		Files.createDirectories(directory.toPath());
+
+		renewer.scheduleWithFixedDelay(this::renew, leaseMillis / 3, leaseMillis / 3, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return long - interval between renewals, also a sensible interval to look for expired leases
+	 */
+	long getRenewalMillis() {
+		return leaseMillis / 3;
+	}
+
+	/**
+	 * Claims unit for the current thread, unless it is done or leased by another live worker. Claims of the threads of this worker are
+	 * serialized, so they never take a lease of this worker from each other.
+	 *
+	 * @param unit - unit name, usable as file name
+	 *
+	 * @throws IOException -
+	 *
+	 * @return Lease - lease, null if the unit is not available
+	 */
+	synchronized Lease tryAcquire(String unit) throws IOException {
+		if (isDone(unit) || heldLeases.containsKey(unit)) {
+			return null;
+		}
+
+		Path leaseFile = new File(directory, unit + ".lease").toPath();
+
+		// Second attempt after reclaiming the lease of a dead worker.
+		for (int attempt = 0; attempt < 2; attempt++) {
+			try {
+				Files.write(leaseFile, workerId.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			} catch (FileAlreadyExistsException e) {
+				if (!reclaimIfExpired(unit, leaseFile)) {
+					return null;
+				}
+
+				continue;
+			}
+
+			Lease lease = new Lease(unit, leaseFile);
+			heldLeases.put(unit, lease);
+
+			// Completed by the previous holder after the check above.
+			if (isDone(unit)) {
+				release(lease);
+
+				return null;
+			}
+
+			return lease;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns whether unit is done.
+	 *
+	 * @param unit - unit name
+	 *
+	 * @return boolean
+	 */
+	boolean isDone(String unit) {
+		return new File(directory, unit + ".done").isFile();
+	}
+
+	/**
+	 * Returns result of unit, as saved by {@link #complete(Lease, String)}.
+	 *
+	 * @param unit - unit name
+	 *
+	 * @throws IOException -
+	 *
+	 * @return String - result, null if the unit is not done
+	 */
+	String readResult(String unit) throws IOException {
+		try {
+			return new String(Files.readAllBytes(new File(directory, unit + ".done").toPath()), StandardCharsets.UTF_8);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Marks unit of lease done with its result and releases the lease, unless the lease was reclaimed by another worker.
+	 *
+	 * @param lease		- lease held
+	 * @param result	- result of the unit, i.e. where its output was saved
+	 *
+	 * @throws IOException -
+	 *
+	 * @return boolean - false if the lease was lost, the unit is then left to the worker that reclaimed it
+	 */
+	boolean complete(Lease lease, String result) throws IOException {
+		if (lease.lost || !isOwned(lease)) {
+			lease.lost = true;
+
+			heldLeases.remove(lease.unit, lease);
+
+			return false;
+		}
+
+		Path temporaryFile = new File(directory, lease.unit + ".done." + workerId + ".tmp").toPath();
+
+		Files.write(temporaryFile, result.getBytes(StandardCharsets.UTF_8));
+		Files.move(temporaryFile, new File(directory, lease.unit + ".done").toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		release(lease);
+
+		return true;
+	}
+
+	/**
+	 * Releases lease without completing its unit, so any worker can claim it at once.
+	 *
+	 * @param lease - lease held
+	 *
+	 * @throws IOException -
+	 */
+	void release(Lease lease) throws IOException {
+		heldLeases.remove(lease.unit, lease);
+
+		// A lease file holding another worker is the lease of that worker now.
+		if (!lease.lost && isOwned(lease)) {
+			Files.deleteIfExists(lease.file);
+		}
+	}
+
+	/**
+	 * Returns whether the file of lease still holds the id of this worker.
+	 *
+	 * @param lease - lease held
+	 *
+	 * @throws IOException -
+	 *
+	 * @return boolean - false if the file is gone or holds another worker
+	 */
+	private boolean isOwned(Lease lease) throws IOException {
+		try {
+			return workerId.equals(new String(Files.readAllBytes(lease.file), StandardCharsets.UTF_8));
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Reclaims lease of a dead worker, or of a previous run of this worker: a lease of this worker not held by this process.
+	 *
+	 * @param unit		- unit name
+	 * @param leaseFile	- lease file
+	 *
+	 * @throws IOException -
+	 *
+	 * @return boolean - true if the lease file is gone, false if its holder is alive
+	 */
+	private boolean reclaimIfExpired(String unit, Path leaseFile) throws IOException {
+		String owner;
+		FileTime renewalTime;
+
+		try {
+			owner = new String(Files.readAllBytes(leaseFile), StandardCharsets.UTF_8);
+			renewalTime = Files.getLastModifiedTime(leaseFile);
+		} catch (NoSuchFileException e) {
+			return true;
+		}
+
+		if (!workerId.equals(owner) && System.currentTimeMillis() - renewalTime.toMillis() <= leaseMillis) {
+			return false;
+		}
+
+		// Unique, so two workers reclaiming the same lease never rename it to the same file.
+		Path reclaimedFile = leaseFile.resolveSibling(unit + ".lease." + workerId + "." + System.nanoTime() + ".reclaimed");
+
+		try {
+			Files.move(leaseFile, reclaimedFile, StandardCopyOption.ATOMIC_MOVE);
+		} catch (NoSuchFileException e) {
+			// Reclaimed by another worker.
+			return true;
+		}
+
+		// Another worker reclaimed the expired lease first, and the lease it claimed since was renamed instead.
+		if (!owner.equals(new String(Files.readAllBytes(reclaimedFile), StandardCharsets.UTF_8)) || !renewalTime.equals(Files.getLastModifiedTime(reclaimedFile))) {
+			try {
+				// Without replacing: if yet another lease was created meanwhile, the holder of this one finds it lost at its next renewal.
+				Files.move(reclaimedFile, leaseFile);
+			} catch (FileAlreadyExistsException e) {
+				Files.deleteIfExists(reclaimedFile);
+			}
+
+			return false;
+		}
+
+		Files.deleteIfExists(reclaimedFile);
+
+		CrawlMetrics.increment(CrawlMetrics.Counter.LEASE_RECLAIMED);
+
+		System.out.println("Reclaimed lease of unit " + unit + " from worker " + (owner.isEmpty() ? "?" : owner));
+
+		return true;
+	}
+
+	/**
+	 * Renews the leases held, and interrupts the holders of leases reclaimed by other workers.
+	 */
+	private void renew() {
+		for (Lease lease : heldLeases.values()) {
+			try {
+				String owner;
+
+				try {
+					owner = new String(Files.readAllBytes(lease.file), StandardCharsets.UTF_8);
+				} catch (NoSuchFileException e) {
+					// Maybe renamed away for a moment by a worker checking whether it expired, lost if still missing at the next renewal.
+					if (!lease.missing) {
+						lease.missing = true;
+
+						continue;
+					}
+
+					owner = null;
+				}
+
+				if (workerId.equals(owner)) {
+					Files.setLastModifiedTime(lease.file, FileTime.fromMillis(System.currentTimeMillis()));
+
+					lease.missing = false;
+
+					continue;
+				}
+
+				lease.lost = true;
+
+				heldLeases.remove(lease.unit, lease);
+
+				System.out.println("Lost lease of unit " + lease.unit + ", it was reclaimed by another worker");
+
+				lease.holder.interrupt();
+			} catch (IOException e) {
+				// Retried at the next renewal, the lease only expires after three failures.
+				System.err.println("Unable to renew lease of unit " + lease.unit + ": " + e);
+			}
+		}
+	}
+
+	/**
+	 * Stops renewing leases. Leases still held expire.
+	 */
+	@Override
+	public void close() {
+		renewer.shutdownNow();
+	}
+}
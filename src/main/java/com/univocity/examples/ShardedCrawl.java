@@ -0,0 +1,535 @@
+package com.univocity.examples;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.univocity.parsers.csv.Csv;
+import com.univocity.parsers.csv.CsvParser;
+
+/**
+ * Splits a crawl between several worker processes, on the same box or on boxes sharing storage, so parsing is not limited by the
+ * processors of one JVM. Every worker is started with the same location codes and '-Dshard.directory=DIR', and they share the work
+ * through leases on its units, see {@link ShardLeaseStore}. No other service is needed.
+ *
+ * Work units are locations, or with '-Dshard.pagesPerUnit=N' ranges of N pages of results of a location, up to '-Dpagination.pageLimit=N'.
+ * Each worker claims units in order, crawls them with '-Dshard.engine=jsoup' (default) or 'univocity', see
+ * {@link RealEstateJSoupParserExample#step4SavePagesLocally(String, int, int, String, String, CrawlFrontier)} and
+ * {@link RealEstateUnivocityParserExample#parseLocation}, up to '-Dshard.parallelUnits=N'
+ * (default 2) at the same time, and marks them done. Units of workers that died are reclaimed once their lease, '-Dshard.leaseSeconds=N'
+ * (default 30), expires, and crawled again. A worker restarted with the same '-Dshard.workerId=ID' reclaims its units at once and resumes
+ * them from their checkpoints, see {@link CrawlCheckpoint}.
+ *
+ * Each worker keeps its pages, caches and results under '{shard.directory}/workers/{workerId}', set as its 'user.home' before the crawl
+ * classes load, so workers never write the same archive. Once all units are done, one worker merges their results to
+ * '{shard.directory}/{engine}-houses.csv' in unit order, dropping listings captured by more than one unit. A shard directory holds one
+ * crawl: delete it, or use another one, to crawl again.
+ */
+public class ShardedCrawl {
+
+	/**
+	 * Name of the merge, leased and completed as a unit.
+	 */
+	private static final String MERGE_UNIT = "merge";
+
+	/**
+	 * Work unit: a location, or a range of its pages of results.
+	 */
+	private static final class WorkUnit {
+
+		/**
+		 * Location code.
+		 */
+		private final String locationCode;
+
+		/**
+		 * First page of the range, starting from 1.
+		 */
+		private final int firstPageNumber;
+
+		/**
+		 * Last page of the range, 0 for the whole location.
+		 */
+		private final int lastPageNumber;
+
+		WorkUnit(String locationCode, int firstPageNumber, int lastPageNumber) {
+			this.locationCode = locationCode;
+			this.firstPageNumber = firstPageNumber;
+			this.lastPageNumber = lastPageNumber;
+		}
+
+		/**
+		 * Returns the unit name, i.e. '22008' for a location or '22008_p0004-0006' for pages 4 to 6 of a location.
+		 *
+		 * @return String
+		 */
+		String name() {
+			return lastPageNumber == 0 ? locationCode : String.format("%s_p%04d-%04d", locationCode, firstPageNumber, lastPageNumber);
+		}
+
+		@Override
+		public String toString() {
+			return name();
+		}
+	}
+
+	/**
+	 * Shared directory of the crawl.
+	 */
+	private final File shardDirectory;
+
+	/**
+	 * Id of this worker.
+	 */
+	private final String workerId;
+
+	/**
+	 * Crawl engine, 'jsoup' or 'univocity'.
+	 */
+	private final String engine;
+
+	/**
+	 * Work units of the crawl, in merge order.
+	 */
+	private final List<WorkUnit> units;
+
+	/**
+	 * Leases on the units.
+	 */
+	private final ShardLeaseStore leases;
+
+	/**
+	 * Listings captured by this worker.
+	 */
+	private final CrawlFrontier frontier = new CrawlFrontier();
+
+	/**
+	 * Units that failed in this worker, left to the other workers.
+	 */
+	private final Set<String> failedUnits = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Entry point to application.
+	 *
+	 * @param args - console arguments: location codes to crawl, see {@link LocationScheduler#readLocationCodes(String...)}
+	 *
+	 * @throws IOException -
+	 */
+	public static void main(String... args) throws IOException {
+		File shardDirectory = new File(System.getProperty("shard.directory", new File(System.getProperty("user.home"), "Downloads/realEstate_shards").getPath())).getAbsoluteFile();
+
+		// 'pid@host' by default, unique among the workers running.
+		String workerId = System.getProperty("shard.workerId", ManagementFactory.getRuntimeMXBean().getName()).replaceAll("[^A-Za-z0-9@._-]", "_");
+
+		// Before any crawl class reads it: pages, caches, checkpoints and results of this worker go under its own directory.
+		System.setProperty("user.home", new File(shardDirectory, "workers/" + workerId).getPath());
+
+		String engine = System.getProperty("shard.engine", "jsoup");
+
+		if (!"jsoup".equals(engine) && !"univocity".equals(engine)) {
+			throw new IllegalArgumentException("Unknown shard.engine " + engine + ", expected jsoup or univocity");
+		}
+
+		List<WorkUnit> units = workUnits(LocationScheduler.readLocationCodes(args), "jsoup".equals(engine) ? Integer.getInteger("shard.pagesPerUnit", 0) : 0);
+
+		try (ShardLeaseStore leases = new ShardLeaseStore(new File(shardDirectory, "leases"), workerId, Long.getLong("shard.leaseSeconds", 30) * 1000)) {
+			ShardedCrawl crawl = new ShardedCrawl(shardDirectory, workerId, engine, units, leases);
+
+			try {
+				crawl.crawlUnits(Integer.getInteger("shard.parallelUnits", 2));
+			} finally {
+				// Timings of this worker are saved to '{workerHome}/Downloads/shard-{engine}-metrics.json' and '.prom'.
+				CrawlMetrics.export("shard-" + engine);
+			}
+
+			crawl.merge();
+		}
+	}
+
+	/**
+	 * Returns the work units of locations.
+	 *
+	 * @param locationCodes	- location codes
+	 * @param pagesPerUnit	- pages of results per unit, 0 for one unit per location
+	 *
+	 * @return List<WorkUnit>
+	 */
+	private static List<WorkUnit> workUnits(List<String> locationCodes, int pagesPerUnit) {
+		List<WorkUnit> units = new ArrayList<>();
+
+		if (pagesPerUnit > 0 && RealEstateJSoupParserExample.PAGE_LIMIT == 0) {
+			throw new IllegalArgumentException("Page ranges need a page limit, set '-Dpagination.pageLimit=N'");
+		}
+
+		if (pagesPerUnit > 0 && Boolean.getBoolean("crawl.incremental")) {
+			throw new IllegalArgumentException("Page ranges of a location can't share its listing index, disable '-Dcrawl.incremental' or '-Dshard.pagesPerUnit'");
+		}
+
+		for (String locationCode : locationCodes) {
+			if (pagesPerUnit <= 0) {
+				units.add(new WorkUnit(locationCode, 1, 0));
+
+				continue;
+			}
+
+			for (int firstPageNumber = 1; firstPageNumber <= RealEstateJSoupParserExample.PAGE_LIMIT; firstPageNumber += pagesPerUnit) {
+				units.add(new WorkUnit(locationCode, firstPageNumber, Math.min(firstPageNumber + pagesPerUnit - 1, RealEstateJSoupParserExample.PAGE_LIMIT)));
+			}
+		}
+
+		return units;
+	}
+
+	/**
+	 * Creates worker.
+	 *
+	 * @param shardDirectory	- shared directory of the crawl
+	 * @param workerId			- id of this worker
+	 * @param engine			- crawl engine, 'jsoup' or 'univocity'
+	 * @param units				- work units of the crawl, in merge order
+	 * @param leases			- leases on the units
+	 */
+	ShardedCrawl(File shardDirectory, String workerId, String engine, List<WorkUnit> units, ShardLeaseStore leases) {
+		this.shardDirectory = shardDirectory;
+		this.workerId = workerId;
+		this.engine = engine;
+		this.units = Collections.unmodifiableList(new ArrayList<>(units));
+		this.leases = leases;
+	}
+
+	/**
+	 * Crawls units until all are done, claiming free and expired ones, in up to parallelUnits threads.
+	 *
+	 * @param parallelUnits - maximum number of units crawled at the same time
+	 *
+	 * @throws IOException - if a unit failed in this worker
+	 */
+	void crawlUnits(int parallelUnits) throws IOException {
+		if (parallelUnits < 1) {
+			throw new IllegalArgumentException("Parallel units must be positive: " + parallelUnits);
+		}
+
+		long startTime = System.currentTimeMillis();
+
+		if ("jsoup".equals(engine)) {
+			RealEstateJSoupParserExample.openCrawler();
+
+			// Units this worker checkpointed before it was restarted are resumed without capturing their listings again.
+			for (WorkUnit unit : units) {
+				RealEstateJSoupParserExample.restoreCheckpointedListings(resultsName(unit), frontier);
+			}
+		} else {
+			com.univocity.parsers.html.Main.runLicenseManager();
+
+			File realEstateDirectory = new File(System.getProperty("user.home"), "Downloads/realEstate");
+
+			try (PageArchive pageArchive = new PageArchive(new File(realEstateDirectory, "archive"))) {
+				pageArchive.importDayDirectories(realEstateDirectory, LocalDate.now());
+			}
+		}
+
+		AtomicInteger threadIndex = new AtomicInteger();
+
+		ExecutorService executorService = Executors.newFixedThreadPool(parallelUnits, runnable -> {
+			Thread thread = new Thread(runnable, "shard-unit-" + threadIndex.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+
+			for (int i = 0; i < parallelUnits; i++) {
+				futures.add(executorService.submit(() -> {
+					claimUnits();
+
+					return null;
+				}));
+			}
+
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException("Interrupted while crawling units");
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+		} finally {
+			executorService.shutdownNow();
+
+			if ("jsoup".equals(engine)) {
+				RealEstateJSoupParserExample.closeCrawler();
+			}
+		}
+
+		System.out.println("Worker " + workerId + " finished in " + (System.currentTimeMillis() - startTime) + " ms");
+
+		if (!failedUnits.isEmpty()) {
+			throw new IOException("Units " + failedUnits + " failed in worker " + workerId + ", they are left to the other workers");
+		}
+	}
+
+	/**
+	 * Claims and crawls units until all are done or failed in this worker, waiting for the units leased by other workers.
+	 *
+	 * @throws IOException -
+	 * @throws InterruptedException - if interrupted while waiting
+	 */
+	private void claimUnits() throws IOException, InterruptedException {
+		while (true) {
+			boolean pending = false;
+			boolean claimed = false;
+
+			for (WorkUnit unit : units) {
+				if (failedUnits.contains(unit.name()) || leases.isDone(unit.name())) {
+					continue;
+				}
+
+				pending = true;
+
+				ShardLeaseStore.Lease lease = leases.tryAcquire(unit.name());
+
+				if (Objects.nonNull(lease)) {
+					claimed = true;
+
+					crawlUnit(unit, lease);
+				}
+			}
+
+			if (!pending) {
+				return;
+			}
+
+			// The units left are leased by other workers, they are done or reclaimed once their leases expire.
+			if (!claimed) {
+				Thread.sleep(leases.getRenewalMillis());
+			}
+		}
+	}
+
+	/**
+	 * Crawls unit and marks it done with its results file. A unit whose lease was reclaimed is dropped with its results file, as the
+	 * worker that reclaimed it crawls it again, and a failed unit is released.
+	 *
+	 * @param unit	- work unit
+	 * @param lease	- lease on the unit
+	 *
+	 * @throws IOException - if the unit can't be marked done
+	 */
+	private void crawlUnit(WorkUnit unit, ShardLeaseStore.Lease lease) throws IOException {
+		long startTime = System.currentTimeMillis();
+
+		String resultsName = resultsName(unit);
+
+		int recordCount;
+
+		try {
+			if ("jsoup".equals(engine)) {
+				int firstPageNumber = unit.firstPageNumber;
+
+				recordCount = unit.lastPageNumber == 0
+						? RealEstateJSoupParserExample.step4SavePagesLocally(RealEstateJSoupParserExample.searchUrl(unit.locationCode), unit.locationCode, resultsName, frontier)
+						: RealEstateJSoupParserExample.step4SavePagesLocally(RealEstateJSoupParserExample.searchUrl(unit.locationCode, firstPageNumber), firstPageNumber, unit.lastPageNumber,
+								unit.locationCode, resultsName, frontier);
+			} else {
+				recordCount = RealEstateUnivocityParserExample.parseLocation(RealEstateUnivocityParserExample.step4SavePagesLocally(), unit.locationCode, resultsName,
+						new File(System.getProperty("user.home"), "Downloads/realEstate"), frontier);
+			}
+		} catch (IOException | RuntimeException e) {
+			if (lease.isLost()) {
+				// Cleared, the unit was interrupted because the other worker crawls it.
+				Thread.interrupted();
+
+				System.out.println("Dropped unit " + unit + ", its lease was reclaimed");
+			} else {
+				System.err.println("Unit " + unit + " failed: " + e);
+
+				failedUnits.add(unit.name());
+
+				leases.release(lease);
+			}
+
+			return;
+		}
+
+		// Cleared, the lease may have been lost after the crawl finished.
+		Thread.interrupted();
+
+		File resultsFile = CsvResultHelper.csvFile(resultsName);
+
+		if (!leases.complete(lease, resultsFile.getAbsolutePath() + "\t" + recordCount)) {
+			Files.deleteIfExists(resultsFile.toPath());
+
+			System.out.println("Dropped unit " + unit + " and its results, its lease was reclaimed");
+
+			return;
+		}
+
+		System.out.println("Unit " + unit + " crawled by " + workerId + " in " + (System.currentTimeMillis() - startTime) + " ms, " + recordCount + " records");
+	}
+
+	/**
+	 * Merges the results of all units to '{shard.directory}/{engine}-houses.csv', unless another worker does or did, dropping listings
+	 * captured by more than one unit. Rows are copied as they are in the results of the units, only parsed to find their listing link,
+	 * so the merged file holds the values the units wrote.
+	 *
+	 * @throws IOException -
+	 */
+	void merge() throws IOException {
+		ShardLeaseStore.Lease lease = leases.tryAcquire(MERGE_UNIT);
+
+		if (Objects.isNull(lease)) {
+			return;
+		}
+
+		File mergedFile = new File(shardDirectory, engine + "-houses.csv");
+		File temporaryFile = new File(shardDirectory, engine + "-houses." + workerId + ".tmp");
+
+		CrawlFrontier mergedListings = new CrawlFrontier();
+		CsvParser rowParser = new CsvParser(Csv.parseExcel());
+
+		String header = null;
+		int linkIndex = -1;
+		int duplicateCount = 0;
+
+		// One char per byte, so rows are copied byte for byte whatever the charset of the results.
+		try (Writer merged = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryFile), StandardCharsets.ISO_8859_1))) {
+			StringBuilder row = new StringBuilder(1024);
+
+			for (WorkUnit unit : units) {
+				String result = leases.readResult(unit.name());
+
+				if (Objects.isNull(result)) {
+					throw new IOException("Unit " + unit + " is not done");
+				}
+
+				try (Reader in = Files.newBufferedReader(Paths.get(result.substring(0, result.indexOf('\t'))), StandardCharsets.ISO_8859_1)) {
+					// Results without any row, not even the header.
+					if (!readRow(in, row)) {
+						continue;
+					}
+
+					if (Objects.isNull(header)) {
+						header = row.toString();
+						linkIndex = Arrays.asList(rowParser.parseLine(header)).indexOf("propertyDetailsLink");
+
+						writeRow(merged, row);
+					} else if (!header.equals(row.toString())) {
+						throw new IOException("Results of unit " + unit + " have other columns than the previous units: " + row.toString().trim());
+					}
+
+					while (readRow(in, row)) {
+						String[] values = rowParser.parseLine(row.toString());
+
+						if (Objects.isNull(values)) {
+							continue;
+						}
+
+						if (linkIndex >= 0 && linkIndex < values.length && Objects.nonNull(values[linkIndex]) && !mergedListings.add("/", values[linkIndex])) {
+							duplicateCount++;
+
+							continue;
+						}
+
+						writeRow(merged, row);
+					}
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			leases.release(lease);
+
+			throw e;
+		}
+
+		Files.move(temporaryFile.toPath(), mergedFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		// Lost, another worker merged the same results again.
+		if (!leases.complete(lease, mergedFile.getAbsolutePath())) {
+			return;
+		}
+
+		System.out.println("Merged " + units.size() + " units to " + mergedFile.getAbsolutePath() + ", " + duplicateCount + " listings captured by more than one unit dropped");
+	}
+
+	/**
+	 * Reads the next row of a CSV file as it is in the file: with the line breaks of its quoted values and its line ending.
+	 *
+	 * @param in	- CSV file
+	 * @param row	- cleared, then receives the row
+	 *
+	 * @throws IOException -
+	 *
+	 * @return boolean - false at the end of the file
+	 */
+	private static boolean readRow(Reader in, StringBuilder row) throws IOException {
+		row.setLength(0);
+
+		boolean quoted = false;
+
+		for (int ch = in.read(); ch != -1; ch = in.read()) {
+			row.append((char) ch);
+
+			// Escaped quotes, '""', toggle twice.
+			if (ch == '"') {
+				quoted = !quoted;
+			} else if (ch == '\n' && !quoted) {
+				break;
+			}
+		}
+
+		return row.length() > 0;
+	}
+
+	/**
+	 * Writes row read by {@link #readRow(Reader, StringBuilder)}, ending the last row of a file with a line break.
+	 *
+	 * @param out	- merged file
+	 * @param row	- row
+	 *
+	 * @throws IOException -
+	 */
+	private static void writeRow(Writer out, CharSequence row) throws IOException {
+		out.append(row);
+
+		if (row.charAt(row.length() - 1) != '\n') {
+			out.write("\r\n");
+		}
+	}
+
+	/**
+	 * Returns the results name of unit, i.e. 'jsoup-houses-22008' or 'jsoup-houses-22008_p0004-0006'.
+	 *
+	 * @param unit - work unit
+	 *
+	 * @return String
+	 */
+	private String resultsName(WorkUnit unit) {
+		return engine + "-houses-" + unit.name();
+	}
+}
@@ -0,0 +1,444 @@
+package com.univocity.examples;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.jsoup.Connection;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.UnsupportedMimeTypeException;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+
+/**
+ * Jsoup response whose status and headers are known before its body is read, so the body can be left unread, see
+ * {@link HttpTransport#execute(Connection, HttpTransport.BodyFilter)}. Values of a repeated header are joined with ', ', and 'Set-Cookie'
+ * headers are parsed to cookies, as Jsoup connections do. Headers and cookies can be changed, like those of any Jsoup response.
+ */
+final class StreamedResponse implements Connection.Response {
+
+	/**
+	 * Request answered.
+	 */
+	private final Connection.Request request;
+
+	/**
+	 * Final URL, after redirects.
+	 */
+	private URL url;
+
+	/**
+	 * Request method.
+	 */
+	private Connection.Method method;
+
+	/**
+	 * Status code.
+	 */
+	private final int statusCode;
+
+	/**
+	 * Status message, empty if none.
+	 */
+	private final String statusMessage;
+
+	/**
+	 * Headers, values of a repeated header joined with ', '.
+	 */
+	private final Map<String, String> headers = new LinkedHashMap<>();
+
+	/**
+	 * Cookies set by the response.
+	 */
+	private final Map<String, String> cookies = new LinkedHashMap<>();
+
+	/**
+	 * Decoded body, empty until read.
+	 */
+	private byte[] body = new byte[0];
+
+	/**
+	 * Charset of the 'Content-Type' header, null if none.
+	 */
+	private final String charset;
+
+	/**
+	 * Creates response from its status and headers, without body.
+	 *
+	 * @param request		- request answered
+	 * @param url			- final URL, after redirects
+	 * @param statusCode	- status code
+	 * @param statusMessage	- status message, null if none
+	 * @param headerFields	- header values by name, entries with a null name are ignored
+	 */
+	StreamedResponse(Connection.Request request, URL url, int statusCode, String statusMessage, Map<String, List<String>> headerFields) {
+		this.request = request;
+		this.url = url;
+		this.method = request.method();
+		this.statusCode = statusCode;
+		this.statusMessage = Objects.nonNull(statusMessage) ? statusMessage : "";
+
+		for (Map.Entry<String, List<String>> header : headerFields.entrySet()) {
+			// The status line of HttpURLConnection.
+			if (Objects.isNull(header.getKey())) {
+				continue;
+			}
+
+			if (header.getKey().equalsIgnoreCase("Set-Cookie")) {
+				for (String value : header.getValue()) {
+					addCookie(value);
+				}
+			} else if (!header.getValue().isEmpty()) {
+				headers.put(header.getKey(), String.join(", ", header.getValue()));
+			}
+		}
+
+		this.charset = charsetOf(header("Content-Type"));
+	}
+
+	/**
+	 * Sends request on its own {@link HttpURLConnection}, the default of {@link HttpTransport#execute(Connection, HttpTransport.BodyFilter)}:
+	 * Jsoup connections always read the whole body.
+	 *
+	 * @param request		- GET request
+	 * @param bodyFilter	- decides from the status and headers whether the body is read, null to always read it
+	 *
+	 * @throws IOException -
+	 *
+	 * @return StreamedResponse
+	 */
+	static StreamedResponse execute(Connection.Request request, HttpTransport.BodyFilter bodyFilter) throws IOException {
+		if (request.method() != Connection.Method.GET) {
+			throw new IOException("Only GET requests are supported, not " + request.method() + " " + request.url());
+		}
+
+		HttpURLConnection connection = (HttpURLConnection) request.url().openConnection();
+
+		connection.setInstanceFollowRedirects(request.followRedirects());
+		connection.setConnectTimeout(request.timeout());
+		connection.setReadTimeout(request.timeout());
+
+		for (Map.Entry<String, String> header : request.headers().entrySet()) {
+			connection.setRequestProperty(header.getKey(), header.getValue());
+		}
+
+		if (!request.cookies().isEmpty()) {
+			StringBuilder cookies = new StringBuilder();
+
+			for (Map.Entry<String, String> cookie : request.cookies().entrySet()) {
+				cookies.append(cookies.length() == 0 ? "" : "; ").append(cookie.getKey()).append('=').append(cookie.getValue());
+			}
+
+			connection.setRequestProperty("Cookie", cookies.toString());
+		}
+
+		boolean bodyRead = false;
+
+		try {
+			int status = connection.getResponseCode();
+
+			StreamedResponse response = new StreamedResponse(request, connection.getURL(), status, connection.getResponseMessage(), connection.getHeaderFields());
+
+			InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+
+			bodyRead = response.receive(Objects.nonNull(body) ? body : new ByteArrayInputStream(new byte[0]), bodyFilter);
+
+			return response;
+		} finally {
+			// A body left unread is dropped with its connection, instead of being drained to reuse it.
+			if (!bodyRead) {
+				connection.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Checks status and content type as Jsoup connections do, then reads the body unless the filter rejects the response.
+	 *
+	 * @param body			- body stream, closed if read
+	 * @param bodyFilter	- decides from the status and headers whether the body is read, null to always read it
+	 *
+	 * @throws IOException - if the status is an error or the content type is not HTML or XML, and the request doesn't ignore them
+	 *
+	 * @return boolean - false if the body was left unread
+	 */
+	boolean receive(InputStream body, HttpTransport.BodyFilter bodyFilter) throws IOException {
+		if (!request.ignoreHttpErrors() && (statusCode < 200 || statusCode >= 400)) {
+			throw new HttpStatusException("HTTP error fetching URL", statusCode, url.toString());
+		}
+
+		String contentType = contentType();
+
+		// Same content types as Jsoup accepts.
+		if (!request.ignoreContentType() && contentType != null && !contentType.startsWith("text/") && !contentType.startsWith("application/xml")
+				&& !contentType.matches("application/\\w+\\+xml.*")) {
+			throw new UnsupportedMimeTypeException("Unhandled content type", contentType, url.toString());
+		}
+
+		if (Objects.nonNull(bodyFilter) && !bodyFilter.acceptsBody(statusCode, contentType, contentLength())) {
+			return false;
+		}
+
+		this.body = readBody(body, header("Content-Encoding"), request.maxBodySize());
+
+		return true;
+	}
+
+	/**
+	 * @return long - 'Content-Length' header, -1 if none or not a number
+	 */
+	private long contentLength() {
+		String contentLength = header("Content-Length");
+
+		try {
+			return Objects.nonNull(contentLength) ? Long.parseLong(contentLength.trim()) : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Reads response body, decoding the 'Content-Encoding' Jsoup asks for, and stops at the maximum body size of the request: the rest
+	 * of a larger body is never transferred.
+	 *
+	 * @param body				- body stream, closed
+	 * @param contentEncoding	- 'Content-Encoding' header, null if none
+	 * @param maxBodySize		- maximum body size, 0 for no limit
+	 *
+	 * @throws IOException -
+	 *
+	 * @return byte[]
+	 */
+	private static byte[] readBody(InputStream body, String contentEncoding, int maxBodySize) throws IOException {
+		InputStream in = body;
+
+		try {
+			if (contentEncoding != null && contentEncoding.equalsIgnoreCase("gzip")) {
+				in = new GZIPInputStream(body);
+			} else if (contentEncoding != null && contentEncoding.equalsIgnoreCase("deflate")) {
+				in = new InflaterInputStream(body);
+			}
+
+			ByteArrayOutputStream content = new ByteArrayOutputStream(8192);
+
+			byte[] buffer = new byte[8192];
+
+			while (maxBodySize == 0 || content.size() < maxBodySize) {
+				int length = in.read(buffer, 0, maxBodySize == 0 ? buffer.length : Math.min(buffer.length, maxBodySize - content.size()));
+
+				if (length == -1) {
+					break;
+				}
+
+				content.write(buffer, 0, length);
+			}
+
+			return content.toByteArray();
+		} finally {
+			// Closing the stream before its end drops the rest of the body.
+			in.close();
+		}
+	}
+
+	/**
+	 * Adds the cookie of a 'Set-Cookie' header, ignoring its attributes.
+	 *
+	 * @param setCookie - header value, i.e. 'session=abc; Path=/; HttpOnly'
+	 */
+	private void addCookie(String setCookie) {
+		int equalsIndex = setCookie.indexOf('=');
+
+		if (equalsIndex <= 0) {
+			return;
+		}
+
+		int endIndex = setCookie.indexOf(';', equalsIndex);
+
+		String name = setCookie.substring(0, equalsIndex).trim();
+
+		if (!name.isEmpty()) {
+			cookies.put(name, setCookie.substring(equalsIndex + 1, endIndex < 0 ? setCookie.length() : endIndex).trim());
+		}
+	}
+
+	/**
+	 * Returns the charset parameter of a content type.
+	 *
+	 * @param contentType - content type, null if none
+	 *
+	 * @return String - charset, null if none
+	 */
+	private static String charsetOf(String contentType) {
+		if (contentType == null) {
+			return null;
+		}
+
+		for (String parameter : contentType.split(";")) {
+			String trimmed = parameter.trim();
+
+			if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+				return trimmed.substring(8).replace("\"", "").trim();
+			}
+		}
+
+		return null;
+	}
+
+	@Override
+	public int statusCode() {
+		return statusCode;
+	}
+
+	@Override
+	public String statusMessage() {
+		return statusMessage;
+	}
+
+	@Override
+	public String charset() {
+		return charset;
+	}
+
+	@Override
+	public String contentType() {
+		return header("Content-Type");
+	}
+
+	@Override
+	public Document parse() throws IOException {
+		return Jsoup.parse(new ByteArrayInputStream(body), charset, url.toExternalForm(), request.parser());
+	}
+
+	@Override
+	public String body() {
+		return new String(body, charset == null || !Charset.isSupported(charset) ? StandardCharsets.UTF_8 : Charset.forName(charset));
+	}
+
+	@Override
+	public byte[] bodyAsBytes() {
+		return body;
+	}
+
+	@Override
+	public URL url() {
+		return url;
+	}
+
+	@Override
+	public Connection.Response url(URL url) {
+		this.url = url;
+
+		return this;
+	}
+
+	@Override
+	public Connection.Method method() {
+		return method;
+	}
+
+	@Override
+	public Connection.Response method(Connection.Method method) {
+		this.method = method;
+
+		return this;
+	}
+
+	@Override
+	public String header(String name) {
+		String key = headerKey(name);
+
+		return key == null ? null : headers.get(key);
+	}
+
+	@Override
+	public Connection.Response header(String name, String value) {
+		removeHeader(name);
+		headers.put(name, value);
+
+		return this;
+	}
+
+	@Override
+	public boolean hasHeader(String name) {
+		return header(name) != null;
+	}
+
+	@Override
+	public boolean hasHeaderWithValue(String name, String value) {
+		return value.equalsIgnoreCase(header(name));
+	}
+
+	@Override
+	public Connection.Response removeHeader(String name) {
+		String key = headerKey(name);
+
+		if (key != null) {
+			headers.remove(key);
+		}
+
+		return this;
+	}
+
+	/**
+	 * Returns the key of header in {@link #headers}, whose names are case insensitive.
+	 *
+	 * @param name - header name
+	 *
+	 * @return String - key, null if the header is missing
+	 */
+	private String headerKey(String name) {
+		for (String key : headers.keySet()) {
+			if (key.equalsIgnoreCase(name)) {
+				return key;
+			}
+		}
+
+		return null;
+	}
+
+	@Override
+	public Map<String, String> headers() {
+		return headers;
+	}
+
+	@Override
+	public String cookie(String name) {
+		return cookies.get(name);
+	}
+
+	@Override
+	public Connection.Response cookie(String name, String value) {
+		cookies.put(name, value);
+
+		return this;
+	}
+
+	@Override
+	public boolean hasCookie(String name) {
+		return cookies.containsKey(name);
+	}
+
+	@Override
+	public Connection.Response removeCookie(String name) {
+		cookies.remove(name);
+
+		return this;
+	}
+
+	@Override
+	public Map<String, String> cookies() {
+		return cookies;
+	}
+}
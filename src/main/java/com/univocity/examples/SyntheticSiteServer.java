@@ -0,0 +1,723 @@
+package com.univocity.examples;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for https://harcourts.co.za, to load test the crawlers without hitting the live site.
+ *
+ * Pages of results and detail pages are generated on request with the same markup as the real site, so the selectors of both
+ * examples find the same fields. Listings are spread over location codes counting up from {@link LocationScheduler#DEFAULT_LOCATION_CODE},
+ * and the values of each listing are derived from its number, so the same listing always renders the same page and nothing is kept in
+ * memory, whatever the number of listings.
+ *
+ * Responses can be slowed down with a latency and a bandwidth limit, a share of them can fail with '503 Service Unavailable', and every
+ * page has an ETag, answered with '304 Not Modified' when it matches 'If-None-Match'.
+ *
+ * Run {@link #main(String...)}, then run an example with '-Dsite.baseUrl=http://localhost:{port}'.
+ */
+public class SyntheticSiteServer implements Closeable {
+
+	/**
+	 * Listings on each page of results, as on the real site.
+	 */
+	private static final int LISTINGS_PER_PAGE = 20;
+
+	/**
+	 * Number added to listing numbers to build property ids, i.e. '/Property/300042/EST1042/Berea'.
+	 */
+	private static final int PROPERTY_ID_OFFSET = 300_000;
+
+	/**
+	 * Number added to listing numbers to build listing numbers shown on the pages, i.e. 'EST1042'.
+	 */
+	private static final int LISTING_NUMBER_OFFSET = 1_000;
+
+	/**
+	 * Suburbs listings are in.
+	 */
+	private static final String[] SUBURBS = {"Springfield", "Durban North", "Umhlanga", "Morningside", "Berea", "Westville", "Glenwood", "Musgrave", "Pinetown",
+			"Hillcrest", "Kloof", "Ballito", "Amanzimtoti", "Bluff", "Queensburgh", "Sherwood"};
+
+	/**
+	 * Street names of listing addresses.
+	 */
+	private static final String[] STREETS = {"Oak Avenue", "Marine Drive", "Ridge Road", "Church Street", "Essenwood Road", "Windermere Road", "Florida Road",
+			"Innes Road", "Old Main Road", "Jan Smuts Avenue"};
+
+	/**
+	 * Property types, the first ones are more frequent.
+	 */
+	private static final String[] PROPERTY_TYPES = {"House", "House", "House", "Apartment", "Apartment", "Townhouse", "Townhouse", "Vacant Land", "Farm", "Commercial"};
+
+	/**
+	 * Style sheet referenced by every page, fetched by the univocity parser with the page resources.
+	 */
+	private static final byte[] SITE_CSS = "body { font-family: sans-serif; }\n#galleryView li { list-style: none; }\n".getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * Script referenced by every page.
+	 */
+	private static final byte[] SITE_JS = "var site = {};\n".getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * Number of listings of all locations.
+	 */
+	private final int listingCount;
+
+	/**
+	 * Number of location codes listings are spread over.
+	 */
+	private final int locationCount;
+
+	/**
+	 * First location code.
+	 */
+	private final int firstLocationCode;
+
+	/**
+	 * Revision of the listings. About one listing in 20 has a different price in each revision, to test incremental crawls.
+	 */
+	private int revision;
+
+	/**
+	 * Minimum time before each response.
+	 */
+	private long latencyMillis;
+
+	/**
+	 * Random time added to {@link #latencyMillis}, up to this value.
+	 */
+	private long latencyJitterMillis;
+
+	/**
+	 * Response bytes sent per second, 0 for no limit.
+	 */
+	private long bytesPerSecond;
+
+	/**
+	 * Share of requests answered with '503 Service Unavailable', from 0 to 1.
+	 */
+	private double errorRate;
+
+	/**
+	 * HTTP server, null until started.
+	 */
+	private HttpServer server;
+
+	/**
+	 * Threads answering requests.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * Number of pages sent.
+	 */
+	private final LongAdder pageCount = new LongAdder();
+
+	/**
+	 * Number of '304 Not Modified' responses.
+	 */
+	private final LongAdder notModifiedCount = new LongAdder();
+
+	/**
+	 * Number of injected errors.
+	 */
+	private final LongAdder errorCount = new LongAdder();
+
+	/**
+	 * Creates site, call {@link #start(int, int)} to serve it.
+	 *
+	 * @param listingCount	- number of listings of all locations
+	 * @param locationCount	- number of location codes, counting up from {@link LocationScheduler#DEFAULT_LOCATION_CODE}
+	 */
+	SyntheticSiteServer(int listingCount, int locationCount) {
+		if (listingCount < 0 || locationCount < 1) {
+			throw new IllegalArgumentException("Invalid site size: " + listingCount + " listings, " + locationCount + " locations");
+		}
+
+		this.listingCount = listingCount;
+		this.locationCount = locationCount;
+		this.firstLocationCode = Integer.parseInt(LocationScheduler.DEFAULT_LOCATION_CODE);
+	}
+
+	/**
+	 * Entry point to application. The site is configured with system properties:
+	 * <ul>
+	 * <li>'-Dsite.port=N', default 8080</li>
+	 * <li>'-Dsite.listings=N', default 1000, up to millions</li>
+	 * <li>'-Dsite.locations=N', default 10</li>
+	 * <li>'-Dsite.revision=N', default 0, changes the price of about one listing in 20</li>
+	 * <li>'-Dsite.latencyMs=N' and '-Dsite.latencyJitterMs=N', default 0</li>
+	 * <li>'-Dsite.bandwidthKbps=N', kilobytes per second of each response, default 0 for no limit</li>
+	 * <li>'-Dsite.errorPercent=N', share of requests failing with '503 Service Unavailable', default 0</li>
+	 * <li>'-Dsite.threads=N', threads answering requests, default 64</li>
+	 * </ul>
+	 *
+	 * @param args - not used
+	 *
+	 * @throws IOException -
+	 */
+	public static void main(String... args) throws IOException {
+		SyntheticSiteServer site = new SyntheticSiteServer(Integer.getInteger("site.listings", 1000), Integer.getInteger("site.locations", 10))
+				.withRevision(Integer.getInteger("site.revision", 0))
+				.withLatency(Integer.getInteger("site.latencyMs", 0), Integer.getInteger("site.latencyJitterMs", 0))
+				.withBandwidth(Integer.getInteger("site.bandwidthKbps", 0) * 1024L)
+				.withErrorRate(Integer.getInteger("site.errorPercent", 0) / 100.0);
+
+		site.start(Integer.getInteger("site.port", 8080), Integer.getInteger("site.threads", 64));
+
+		Runtime.getRuntime().addShutdownHook(new Thread(site::close, "synthetic-site-shutdown"));
+
+		System.out.println("Synthetic site with " + site.listingCount + " listings in locations " + site.locationCode(0) + " to " + site.locationCode(site.locationCount - 1)
+				+ " serving at " + site.getBaseUrl() + ". Run the examples with '-Dsite.baseUrl=" + site.getBaseUrl() + "'.");
+	}
+
+	/**
+	 * Sets revision of the listings.
+	 *
+	 * @param revision - revision, about one listing in 20 has a different price in each revision
+	 *
+	 * @return SyntheticSiteServer - this site
+	 */
+	SyntheticSiteServer withRevision(int revision) {
+		this.revision = revision;
+
+		return this;
+	}
+
+	/**
+	 * Sets time before each response.
+	 *
+	 * @param latencyMillis			- minimum time before each response
+	 * @param latencyJitterMillis	- random time added, up to this value
+	 *
+	 * @return SyntheticSiteServer - this site
+	 */
+	SyntheticSiteServer withLatency(long latencyMillis, long latencyJitterMillis) {
+		this.latencyMillis = latencyMillis;
+		this.latencyJitterMillis = latencyJitterMillis;
+
+		return this;
+	}
+
+	/**
+	 * Limits the speed of each response.
+	 *
+	 * @param bytesPerSecond - response bytes sent per second, 0 for no limit
+	 *
+	 * @return SyntheticSiteServer - this site
+	 */
+	SyntheticSiteServer withBandwidth(long bytesPerSecond) {
+		this.bytesPerSecond = bytesPerSecond;
+
+		return this;
+	}
+
+	/**
+	 * Sets share of requests answered with '503 Service Unavailable'.
+	 *
+	 * @param errorRate - share of failing requests, from 0 to 1
+	 *
+	 * @return SyntheticSiteServer - this site
+	 */
+	SyntheticSiteServer withErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+
+		return this;
+	}
+
+	/**
+	 * Starts serving the site.
+	 *
+	 * @param port			- port, 0 for any free port
+	 * @param threadCount	- number of threads answering requests
+	 *
+	 * @throws IOException -
+	 */
+	void start(int port, int threadCount) throws IOException {
+		if (server != null) {
+			throw new IllegalStateException("Site is already started: " + getBaseUrl());
+		}
+
+		AtomicInteger threadNumber = new AtomicInteger();
+
+		executor = Executors.newFixedThreadPool(threadCount, runnable -> new Thread(runnable, "synthetic-site-" + threadNumber.incrementAndGet()));
+
+		server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+		server.start();
+	}
+
+	/**
+	 * @return String - base URL of the running site, i.e. 'http://localhost:8080'
+	 */
+	String getBaseUrl() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * Returns location code of location index.
+	 *
+	 * @param locationIndex - location index, from 0 to the number of locations
+	 *
+	 * @return String
+	 */
+	String locationCode(int locationIndex) {
+		return Integer.toString(firstLocationCode + locationIndex);
+	}
+
+	/**
+	 * Stops the site and prints the number of responses.
+	 */
+	@Override
+	public void close() {
+		if (server == null) {
+			return;
+		}
+
+		server.stop(0);
+		server = null;
+
+		executor.shutdownNow();
+
+		System.out.println("Synthetic site sent " + pageCount.sum() + " pages, " + notModifiedCount.sum() + " not modified responses and " + errorCount.sum() + " errors");
+	}
+
+	/**
+	 * Answers one request.
+	 *
+	 * @param exchange - request and response
+	 *
+	 * @throws IOException -
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			long delayMillis = latencyMillis + (latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1) : 0);
+
+			if (delayMillis > 0) {
+				TimeUnit.MILLISECONDS.sleep(delayMillis);
+			}
+
+			if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+				errorCount.increment();
+
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				exchange.sendResponseHeaders(503, -1);
+
+				return;
+			}
+
+			String path = exchange.getRequestURI().getPath();
+
+			if ("/Property/Residential".equals(path)) {
+				String query = exchange.getRequestURI().getRawQuery();
+
+				String locationCode = queryParameter(query, "location");
+				String page = queryParameter(query, "page");
+
+				send(exchange, "text/html; charset=utf-8", resultsPage(locationCode, page == null || page.isEmpty() ? 1 : Integer.parseInt(page)));
+			} else if (path.startsWith("/Property/")) {
+				int listing = listingOfPath(path);
+
+				if (listing < 0) {
+					exchange.sendResponseHeaders(404, -1);
+				} else {
+					send(exchange, "text/html; charset=utf-8", detailPage(listing));
+				}
+			} else if ("/css/site.css".equals(path)) {
+				send(exchange, "text/css", SITE_CSS);
+			} else if ("/js/site.js".equals(path)) {
+				send(exchange, "application/javascript", SITE_JS);
+			} else {
+				exchange.sendResponseHeaders(404, -1);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (NumberFormatException e) {
+			exchange.sendResponseHeaders(400, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Sends page, or '304 Not Modified' if the request has its ETag. Page is sent in slices with pauses in between if the bandwidth is limited.
+	 *
+	 * @param exchange		- request and response
+	 * @param contentType	- content type
+	 * @param content		- page content
+	 *
+	 * @throws IOException -
+	 * @throws InterruptedException -
+	 */
+	private void send(HttpExchange exchange, String contentType, byte[] content) throws IOException, InterruptedException {
+		String etag = '"' + ListingIndex.fingerprintOf(new String(content, StandardCharsets.ISO_8859_1)) + '"';
+
+		exchange.getResponseHeaders().set("ETag", etag);
+
+		if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			notModifiedCount.increment();
+
+			exchange.sendResponseHeaders(304, -1);
+
+			return;
+		}
+
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(200, content.length);
+
+		try (OutputStream out = exchange.getResponseBody()) {
+			if (bytesPerSecond <= 0) {
+				out.write(content);
+			} else {
+				// Slices of a tenth of a second keep the speed even on large pages.
+				int sliceLength = (int) Math.max(1, Math.min(content.length, bytesPerSecond / 10));
+
+				for (int offset = 0; offset < content.length; offset += sliceLength) {
+					int length = Math.min(sliceLength, content.length - offset);
+
+					out.write(content, offset, length);
+					out.flush();
+
+					TimeUnit.MILLISECONDS.sleep(length * 1000L / bytesPerSecond);
+				}
+			}
+		}
+
+		pageCount.increment();
+	}
+
+	/**
+	 * Generates page of results of location.
+	 *
+	 * @param locationCode	- location code, locations not on the site have no results
+	 * @param pageNumber	- page number, starting from 1
+	 *
+	 * @return byte[] - page content
+	 */
+	private byte[] resultsPage(String locationCode, int pageNumber) {
+		int locationIndex = locationIndexOf(locationCode);
+		int locationListingCount = locationIndex < 0 ? 0 : (listingCount - locationIndex + locationCount - 1) / locationCount;
+		int pageCount = (locationListingCount + LISTINGS_PER_PAGE - 1) / LISTINGS_PER_PAGE;
+
+		StringBuilder html = new StringBuilder(16 * 1024);
+
+		appendHeader(html, "Residential property for sale - Harcourts");
+
+		html.append("\t<div id=\"content\">\n\t\t<div id=\"galleryView\">\n\t\t<ul>\n");
+
+		for (int k = (pageNumber - 1) * LISTINGS_PER_PAGE; pageNumber > 0 && k < Math.min(locationListingCount, pageNumber * LISTINGS_PER_PAGE); k++) {
+			int listing = locationIndex + k * locationCount;
+
+			String link = detailPageLink(listing);
+			String suburb = suburbOf(listing);
+
+			html.append("\t\t\t<li>\n");
+			html.append("\t\t\t\t<div class=\"listingImage\"><a href=\"").append(link).append("\"><img src=\"/images/listings/").append(PROPERTY_ID_OFFSET + listing)
+					.append(".jpg\" alt=\"").append(suburb).append("\"></a></div>\n");
+			html.append("\t\t\t\t<div class=\"listingContent\">\n");
+			html.append("\t\t\t\t\t<h2><a href=\"").append(link).append("\">").append(addressOf(listing)).append("</a></h2>\n");
+			html.append("\t\t\t\t\t<h3 class=\"listingPrice\">").append(priceOf(listing)).append("</h3>\n");
+			html.append("\t\t\t\t\t<ul class=\"listingFeatures\"><li class=\"bdrm\">").append(bedroomsOf(listing)).append("</li><li class=\"bthrm\">").append(bathroomsOf(listing))
+					.append("</li></ul>\n");
+			html.append("\t\t\t\t</div>\n");
+			html.append("\t\t\t</li>\n");
+		}
+
+		html.append("\t\t</ul>\n\t\t</div>\n");
+		html.append("\t\t<div id=\"pager\">\n\t\t<ul>\n");
+
+		for (int page = Math.max(1, pageNumber - 2); page <= Math.min(pageCount, pageNumber + 2); page++) {
+			if (page == pageNumber) {
+				html.append("\t\t\t<li class=\"pagerCurrent\"><span>").append(page).append("</span></li>\n");
+			} else {
+				html.append("\t\t\t<li class=\"pagerCount\"><a href=\"").append(resultsPageLink(locationCode, page)).append("\">").append(page).append("</a></li>\n");
+			}
+		}
+
+		if (pageNumber < pageCount) {
+			html.append("\t\t\t<li class=\"pagerNext\"><a href=\"").append(resultsPageLink(locationCode, pageNumber + 1)).append("\">Next</a></li>\n");
+		}
+
+		html.append("\t\t</ul>\n\t\t</div>\n\t</div>\n");
+
+		appendFooter(html);
+
+		return html.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Generates detail page of listing.
+	 *
+	 * @param listing - listing, from 0 to the number of listings
+	 *
+	 * @return byte[] - page content
+	 */
+	byte[] detailPage(int listing) {
+		String propertyType = propertyTypeOf(listing);
+
+		StringBuilder html = new StringBuilder(4 * 1024);
+
+		appendHeader(html, bedroomsOf(listing) + " Bedroom " + propertyType + " for sale in " + suburbOf(listing) + " - Harcourts");
+
+		html.append("\t<div id=\"content\">\n");
+		html.append("\t\t<div id=\"listingDetail\">\n");
+		html.append("\t\t\t<div id=\"detailTitle\">\n");
+		html.append("\t\t\t\t<h2 class=\"detailAddress\">").append(addressOf(listing)).append("</h2>\n");
+		html.append("\t\t\t\t<div class=\"propFeatures\">\n");
+		html.append("\t\t\t\t\t<div class=\"priceWrap\"><h3 id=\"listingViewDisplayPrice\">").append(priceOf(listing)).append("</h3></div>\n");
+		html.append("\t\t\t\t\t<ul id=\"detailFeatures\">\n");
+		html.append("\t\t\t\t\t\t<li class=\"bdrm\"><span>").append(bedroomsOf(listing)).append("</span></li>\n");
+		html.append("\t\t\t\t\t\t<li class=\"bthrm\"><span>").append(bathroomsOf(listing)).append("</span></li>\n");
+		html.append("\t\t\t\t\t</ul>\n");
+		html.append("\t\t\t\t</div>\n");
+		html.append("\t\t\t</div>\n");
+		html.append("\t\t\t<div class=\"listingInfo\">\n");
+		html.append("\t\t\t\t<span>\n\t\t\t\t\t<strong>Listing Number:</strong> ").append(listingNumberOf(listing)).append("</span>\n");
+		html.append("\t\t\t</div>\n");
+		html.append("\t\t\t<div class=\"description\"><p>").append(propertyType).append(" in ").append(suburbOf(listing)).append(", close to schools and shops.</p></div>\n");
+		html.append("\t\t</div>\n");
+		html.append("\t\t<div class=\"property-information\">\n");
+		html.append("\t\t\t<ul>\n");
+		html.append("\t\t\t\t<li>\n\t\t\t\t\t<span class=\"heading\">Property Type:</span> ").append(propertyType).append("</li>\n");
+		html.append("\t\t\t\t<li>\n\t\t\t\t\t<span class=\"heading\">Land Size:</span> ").append(landSizeOf(listing)).append("</li>\n");
+		html.append("\t\t\t</ul>\n");
+		html.append("\t\t</div>\n");
+		html.append("\t</div>\n");
+
+		appendFooter(html);
+
+		return html.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Appends document start and site header.
+	 *
+	 * @param html	- page being generated
+	 * @param title	- page title
+	 */
+	private static void appendHeader(StringBuilder html, String title) {
+		html.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n\t<meta charset=\"utf-8\">\n\t<title>").append(title).append("</title>\n");
+		html.append("\t<link rel=\"stylesheet\" href=\"/css/site.css\">\n\t<script src=\"/js/site.js\"></script>\n</head>\n<body>\n");
+		html.append("\t<div id=\"header\">\n\t\t<ul class=\"nav\">\n");
+		html.append("\t\t\t<li><a href=\"/Property/Residential\">Buy</a></li>\n\t\t\t<li><a href=\"/Property/Rentals\">Rent</a></li>\n\t\t\t<li><a href=\"/Offices\">Offices</a></li>\n");
+		html.append("\t\t</ul>\n\t</div>\n");
+	}
+
+	/**
+	 * Appends site footer and document end.
+	 *
+	 * @param html - page being generated
+	 */
+	private static void appendFooter(StringBuilder html) {
+		html.append("\t<div id=\"footer\"><p>&copy; Harcourts</p></div>\n</body>\n</html>\n");
+	}
+
+	/**
+	 * Returns link of page of results, with the query parameters of the real site.
+	 *
+	 * @param locationCode	- location code
+	 * @param pageNumber	- page number
+	 *
+	 * @return String
+	 */
+	private static String resultsPageLink(String locationCode, int pageNumber) {
+		return "/Property/Residential?search=&amp;location=" + locationCode + "&amp;proptype=&amp;min=&amp;max=&amp;minbed=&amp;maxbed=&amp;formsearch=true&amp;page=" + pageNumber;
+	}
+
+	/**
+	 * Returns detail page link of listing, i.e. '/Property/300042/EST1042/Durban-North'.
+	 *
+	 * @param listing - listing
+	 *
+	 * @return String
+	 */
+	private static String detailPageLink(int listing) {
+		return "/Property/" + (PROPERTY_ID_OFFSET + listing) + "/" + listingNumberOf(listing) + "/" + suburbOf(listing).replace(' ', '-');
+	}
+
+	/**
+	 * Returns listing of detail page path.
+	 *
+	 * @param path - path, i.e. '/Property/300042/EST1042/Durban-North'
+	 *
+	 * @return int - listing, -1 if the path is not the link of a listing of the site
+	 */
+	private int listingOfPath(String path) {
+		String[] segments = path.split("/");
+
+		if (segments.length != 5 || !segments[3].startsWith("EST")) {
+			return -1;
+		}
+
+		int listing = Integer.parseInt(segments[3].substring(3)) - LISTING_NUMBER_OFFSET;
+
+		return listing >= 0 && listing < listingCount && detailPageLink(listing).equals(path) ? listing : -1;
+	}
+
+	/**
+	 * Returns location index of location code.
+	 *
+	 * @param locationCode - location code
+	 *
+	 * @return int - location index, -1 if the location is not on the site
+	 */
+	private int locationIndexOf(String locationCode) {
+		try {
+			int locationIndex = Integer.parseInt(locationCode) - firstLocationCode;
+
+			return locationIndex >= 0 && locationIndex < locationCount ? locationIndex : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns value of query parameter.
+	 *
+	 * @param query	- raw query string, can be null
+	 * @param name	- parameter name
+	 *
+	 * @throws UnsupportedEncodingException -
+	 *
+	 * @return String - decoded value, null if the query has no such parameter
+	 */
+	private static String queryParameter(String query, String name) throws UnsupportedEncodingException {
+		if (query == null) {
+			return null;
+		}
+
+		for (String parameter : query.split("&")) {
+			int equalsIndex = parameter.indexOf('=');
+
+			if (equalsIndex == name.length() && parameter.startsWith(name)) {
+				return URLDecoder.decode(parameter.substring(equalsIndex + 1), "UTF-8");
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * @param listing - listing
+	 *
+	 * @return String - listing number shown on the pages, i.e. 'EST1042'
+	 */
+	private static String listingNumberOf(int listing) {
+		return "EST" + (LISTING_NUMBER_OFFSET + listing);
+	}
+
+	/**
+	 * @param listing - listing
+	 *
+	 * @return String - suburb
+	 */
+	private static String suburbOf(int listing) {
+		return SUBURBS[(int) (attributeOf(listing, 1) % SUBURBS.length)];
+	}
+
+	/**
+	 * @param listing - listing
+	 *
+	 * @return String - street address and suburb
+	 */
+	private static String addressOf(int listing) {
+		return (1 + attributeOf(listing, 2) % 150) + " " + STREETS[(int) (attributeOf(listing, 3) % STREETS.length)] + ", " + suburbOf(listing);
+	}
+
+	/**
+	 * @param listing - listing
+	 *
+	 * @return String - property type
+	 */
+	private static String propertyTypeOf(int listing) {
+		return PROPERTY_TYPES[(int) (attributeOf(listing, 4) % PROPERTY_TYPES.length)];
+	}
+
+	/**
+	 * @param listing - listing
+	 *
+	 * @return long - number of bedrooms
+	 */
+	private static long bedroomsOf(int listing) {
+		return 1 + attributeOf(listing, 5) % 5;
+	}
+
+	/**
+	 * @param listing - listing
+	 *
+	 * @return long - number of bathrooms
+	 */
+	private static long bathroomsOf(int listing) {
+		return 1 + attributeOf(listing, 6) % 3;
+	}
+
+	/**
+	 * Returns land size as shown on the pages, in hectares for farms, i.e. '850 m&sup2;' or '12 ha'.
+	 *
+	 * @param listing - listing
+	 *
+	 * @return String
+	 */
+	private static String landSizeOf(int listing) {
+		if ("Farm".equals(propertyTypeOf(listing))) {
+			return (5 + attributeOf(listing, 7) % 200) + " ha";
+		}
+
+		return (200 + attributeOf(listing, 7) % 1800) + " m&sup2;";
+	}
+
+	/**
+	 * Returns price as shown on the pages, i.e. 'R 1 250 000'. About one listing in 20 has a different price in each revision.
+	 *
+	 * @param listing - listing
+	 *
+	 * @return String
+	 */
+	private String priceOf(int listing) {
+		long thousands = 300 + attributeOf(listing, 8) % 4000;
+
+		if (revision != 0 && attributeOf(listing, 9 + revision) % 20 == 0) {
+			thousands += 5 + attributeOf(listing, 9 + revision) % 50;
+		}
+
+		long millions = thousands / 1000;
+
+		return millions > 0 ? String.format("R %d %03d 000", millions, thousands % 1000) : String.format("R %d 000", thousands);
+	}
+
+	/**
+	 * Returns a pseudo random attribute of listing, always the same for the same listing and attribute number.
+	 *
+	 * @param listing	- listing
+	 * @param attribute	- attribute number
+	 *
+	 * @return long - non negative value
+	 */
+	private static long attributeOf(int listing, int attribute) {
+		// SplitMix64 finalizer of listing and attribute.
+		long z = (listing * 0x9E3779B97F4A7C15L) ^ (attribute * 0xC2B2AE3D27D4EB4FL);
+
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		z = z ^ (z >>> 31);
+
+		return z >>> 1;
+	}
+}
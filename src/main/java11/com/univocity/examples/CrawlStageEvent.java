@@ -0,0 +1,42 @@
+package com.univocity.examples;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of one crawl stage, see {@link CrawlMetrics.Stage}. Recorded with '-XX:StartFlightRecording' next to the
+ * GC and allocation events of the same run.
+ *
+ * Compiled from 'src/main/java11' by the 'java11' build profile, and only used through {@link JfrStageEventRecorder}.
+ */
+@Name("com.univocity.examples.CrawlStage")
+@Label("Crawl Stage")
+@Category("Real Estate Crawler")
+@Description("Time spent in one stage of the crawl: fetch, parse, extract, save page or CSV write")
+@StackTrace(false)
+class CrawlStageEvent extends Event {
+
+	/**
+	 * Stage name.
+	 */
+	@Label("Stage")
+	String stage;
+
+	/**
+	 * URL or archive key of the page, empty if the stage is not about a single page.
+	 */
+	@Label("Target")
+	String target;
+
+	/**
+	 * Bytes read or written by the stage.
+	 */
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+}
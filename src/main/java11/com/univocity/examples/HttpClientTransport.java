@@ -0,0 +1,131 @@
+package com.univocity.examples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.jsoup.Connection;
+
+/**
+ * Sends requests on a shared {@link HttpClient}, which keeps connections alive between requests and multiplexes requests to the same
+ * host over one HTTP/2 connection when the server supports it, so listing fetches don't pay connection and TLS setup each time.
+ *
+ * Response bytes are kept as received and handed to Jsoup as they are, through {@link Connection.Response#bodyAsBytes()} and
+ * {@link FetchedPage}. Requests are blocking, which costs nothing on the virtual threads of
+ * {@link ConcurrentPageFetcher#VIRTUAL_THREAD_PER_TASK}: the client waits for responses asynchronously underneath.
+ *
+ * Compiled from 'src/main/java11' by the 'java11' build profile and loaded by name, see {@link HttpTransport#forName(String)}.
+ */
+class HttpClientTransport implements HttpTransport {
+
+	/**
+	 * Headers set by the client itself, which requests can't set.
+	 */
+	private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+	/**
+	 * Shared client.
+	 */
+	private final HttpClient client;
+
+	/**
+	 * Creates transport with a 10 s connect timeout.
+	 */
+	HttpClientTransport() {
+		this.client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.connectTimeout(Duration.ofSeconds(10))
+				.build();
+	}
+
+	@Override
+	public Connection.Response execute(Connection connection) throws IOException {
+		return execute(connection, null);
+	}
+
+	@Override
+	public Connection.Response execute(Connection connection, BodyFilter bodyFilter) throws IOException {
+		Connection.Request request = connection.request();
+
+		if (request.method() != Connection.Method.GET) {
+			throw new IOException("Only GET requests are supported, not " + request.method() + " " + request.url());
+		}
+
+		HttpRequest.Builder httpRequest;
+
+		try {
+			httpRequest = HttpRequest.newBuilder(request.url().toURI()).GET();
+		} catch (URISyntaxException e) {
+			throw new MalformedURLException("Invalid URL " + request.url() + ": " + e.getMessage());
+		}
+
+		if (request.timeout() > 0) {
+			httpRequest.timeout(Duration.ofMillis(request.timeout()));
+		}
+
+		for (Map.Entry<String, String> header : request.headers().entrySet()) {
+			if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ROOT))) {
+				httpRequest.header(header.getKey(), header.getValue());
+			}
+		}
+
+		if (!request.cookies().isEmpty()) {
+			StringBuilder cookies = new StringBuilder();
+
+			for (Map.Entry<String, String> cookie : request.cookies().entrySet()) {
+				cookies.append(cookies.length() == 0 ? "" : "; ").append(cookie.getKey()).append('=').append(cookie.getValue());
+			}
+
+			httpRequest.header("Cookie", cookies.toString());
+		}
+
+		HttpResponse<InputStream> httpResponse;
+
+		try {
+			httpResponse = client.send(httpRequest.build(), HttpResponse.BodyHandlers.ofInputStream());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException("Interrupted while requesting " + request.url());
+		}
+
+		StreamedResponse response = new StreamedResponse(request, httpResponse.uri().toURL(), httpResponse.statusCode(), null, httpResponse.headers().map());
+
+		InputStream body = httpResponse.body();
+
+		try {
+			if (!response.receive(body, bodyFilter)) {
+				// Closing the stream unread drops the body.
+				body.close();
+			}
+		} catch (IOException | RuntimeException e) {
+			body.close();
+
+			throw e;
+		}
+
+		return response;
+	}
+
+	@Override
+	public void close() {
+		// HttpClient can only be closed since Java 21.
+		if (client instanceof AutoCloseable) {
+			try {
+				((AutoCloseable) client).close();
+			} catch (Exception e) {
+				throw new IllegalStateException("Unable to close HTTP client", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.univocity.examples;
+
+/**
+ * Emits the timed stages of {@link CrawlMetrics} as {@link CrawlStageEvent}s.
+ *
+ * Compiled from 'src/main/java11' by the 'java11' build profile and loaded by name, so JVMs and builds without JFR never see the
+ * JFR event API.
+ */
+class JfrStageEventRecorder implements CrawlMetrics.StageEventRecorder {
+
+	@Override
+	public Object begin() {
+		CrawlStageEvent event = new CrawlStageEvent();
+
+		if (!event.isEnabled()) {
+			return null;
+		}
+
+		event.begin();
+
+		return event;
+	}
+
+	@Override
+	public void commit(Object event, CrawlMetrics.Stage stage, String target, long bytes) {
+		CrawlStageEvent stageEvent = (CrawlStageEvent) event;
+
+		stageEvent.end();
+
+		if (stageEvent.shouldCommit()) {
+			stageEvent.stage = stage.name();
+			stageEvent.target = target == null ? "" : target;
+			stageEvent.bytes = bytes;
+
+			stageEvent.commit();
+		}
+	}
+}
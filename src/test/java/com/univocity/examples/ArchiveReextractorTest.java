@@ -0,0 +1,159 @@
+package com.univocity.examples;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.univocity.parsers.csv.Csv;
+import com.univocity.parsers.csv.CsvParser;
+import com.univocity.parsers.csv.CsvParserSettings;
+
+/**
+ * Extracts again the listings of pages of a {@link SyntheticSiteServer} saved in day directories.
+ */
+public class ArchiveReextractorTest {
+
+	/**
+	 * Day of the saved pages.
+	 */
+	private static final String DAY = "2026-10-18";
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Site the pages are taken from.
+	 */
+	private SyntheticSiteServer site;
+
+	/**
+	 * 'user.home' before the test, results are saved under the temporary folder instead.
+	 */
+	private String userHome;
+
+	@Before
+	public void setUp() throws IOException {
+		// Listings 0 and 2 in the first location, 1 and 3 in the second one.
+		site = new SyntheticSiteServer(4, 2);
+		site.start(0, 4);
+
+		userHome = System.getProperty("user.home");
+		System.setProperty("user.home", folder.getRoot().getPath());
+	}
+
+	@After
+	public void tearDown() {
+		System.setProperty("user.home", userHome);
+
+		site.close();
+	}
+
+	@Test
+	public void keepsListingsFoundInTwoLocationsWhereTheirDetailPageWasSaved() throws IOException {
+		List<String> firstLocationLinks = listingLinksOf(site.locationCode(0));
+		List<String> secondLocationLinks = listingLinksOf(site.locationCode(1));
+
+		String sharedLink = secondLocationLinks.get(0);
+
+		File dayDirectory = new File(folder.newFolder("pages"), DAY);
+
+		// The first location lists a listing of the second one too, but the crawl saved its detail page under the second location.
+		saveResultsPage(dayDirectory, site.locationCode(0), firstLocationLinks.get(0), sharedLink, firstLocationLinks.get(1));
+		saveResultsPage(dayDirectory, site.locationCode(1), secondLocationLinks.toArray(new String[0]));
+
+		int recordCount;
+
+		try (ArchiveReextractor.PageSource pageSource = ArchiveReextractor.openPageSource(dayDirectory.getParentFile())) {
+			recordCount = new ArchiveReextractor(pageSource, site.getBaseUrl(), 2).run(LocalDate.MIN, LocalDate.MAX);
+		}
+
+		assertEquals(4, recordCount);
+		assertEquals(firstLocationLinks, reextractedLinksOf(site.locationCode(0)));
+		assertEquals(secondLocationLinks, reextractedLinksOf(site.locationCode(1)));
+	}
+
+	/**
+	 * Returns the detail page links of the first page of results of a location.
+	 *
+	 * @param locationCode - location code
+	 *
+	 * @throws IOException -
+	 *
+	 * @return List<String> - links, in page order
+	 */
+	private List<String> listingLinksOf(String locationCode) throws IOException {
+		List<String> links = new ArrayList<>();
+
+		for (Element link : Jsoup.connect(site.getBaseUrl() + "/Property/Residential?location=" + locationCode).get().select(RealEstateJSoupParserExample.LISTING_LINKS_SELECTOR)) {
+			links.add(link.attr("href"));
+		}
+
+		return links;
+	}
+
+	/**
+	 * Saves page of results linking to listings, and the detail pages of the listings of its location, like the crawl does.
+	 *
+	 * @param dayDirectory	- directory of the day
+	 * @param locationCode	- location code
+	 * @param links			- detail page links, in page order
+	 *
+	 * @throws IOException -
+	 */
+	private void saveResultsPage(File dayDirectory, String locationCode, String... links) throws IOException {
+		StringBuilder html = new StringBuilder("<html><body><div id=\"galleryView\"><ul>");
+
+		List<String> locationLinks = listingLinksOf(locationCode);
+
+		File detailDirectory = new File(dayDirectory, locationCode + "_1");
+		Files.createDirectories(detailDirectory.toPath());
+
+		for (String link : links) {
+			html.append("<li><div class=\"listingContent\"><h2><a href=\"").append(link).append("\">").append(link).append("</a></h2></div></li>");
+
+			if (locationLinks.contains(link)) {
+				byte[] detailPage = Jsoup.connect(site.getBaseUrl() + link).execute().bodyAsBytes();
+
+				Files.write(new File(detailDirectory, ListingIndex.listingNumberOf(link) + ".html").toPath(), detailPage);
+			}
+		}
+
+		html.append("</ul></div></body></html>");
+
+		Files.write(new File(dayDirectory, locationCode + "_1.html").toPath(), html.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Returns the detail page links of the records re-extracted for a location.
+	 *
+	 * @param locationCode - location code
+	 *
+	 * @return List<String> - links, in record order
+	 */
+	private List<String> reextractedLinksOf(String locationCode) {
+		CsvParserSettings parserSettings = Csv.parseExcel();
+		parserSettings.setHeaderExtractionEnabled(true);
+
+		List<String> links = new ArrayList<>();
+
+		for (String[] row : new CsvParser(parserSettings).parseAll(CsvResultHelper.csvFile("reextracted-houses-" + DAY + "-" + locationCode), "windows-1252")) {
+			links.add(row[0]);
+		}
+
+		return links;
+	}
+}
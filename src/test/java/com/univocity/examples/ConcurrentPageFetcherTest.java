@@ -0,0 +1,195 @@
+package com.univocity.examples;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jsoup.HttpStatusException;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Fetches pages of a {@link SyntheticSiteServer} on several workers.
+ */
+public class ConcurrentPageFetcherTest {
+
+	/**
+	 * Site fetched.
+	 */
+	private SyntheticSiteServer site;
+
+	/**
+	 * Fetcher tested.
+	 */
+	private ConcurrentPageFetcher pageFetcher;
+
+	@Before
+	public void setUp() throws IOException {
+		site = new SyntheticSiteServer(100, 2);
+		site.start(0, 8);
+	}
+
+	@After
+	public void tearDown() {
+		if (pageFetcher != null) {
+			pageFetcher.close();
+		}
+
+		site.close();
+	}
+
+	@Test
+	public void fetchesPagesOfResultsAndTheirDetailPagesInParallel() throws Exception {
+		pageFetcher = new ConcurrentPageFetcher(4, new FetchPolicy(4, 0), null);
+
+		Document resultsPage = pageFetcher.fetch(site.getBaseUrl() + "/Property/Residential?location=" + site.locationCode(0));
+
+		List<String> links = new ArrayList<>();
+
+		for (Element link : resultsPage.select("div.listingContent h2 a")) {
+			links.add(link.absUrl("href"));
+		}
+
+		assertEquals(20, links.size());
+
+		ConcurrentHashMap<String, String> addresses = new ConcurrentHashMap<>();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		CountDownLatch done = new CountDownLatch(links.size());
+
+		for (String link : links) {
+			pageFetcher.execute(() -> {
+				try {
+					addresses.put(link, pageFetcher.fetchPage(link).parse().select("h2.detailAddress").text());
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		assertNull(failure.get());
+
+		for (Element link : resultsPage.select("div.listingContent h2 a")) {
+			assertEquals(link.text(), addresses.get(link.absUrl("href")));
+		}
+	}
+
+	@Test
+	public void retriesUnavailableResponses() throws IOException {
+		site.withErrorRate(0.5);
+
+		pageFetcher = new ConcurrentPageFetcher(2, new FetchPolicy(2, 0).withMaxAttempts(20).withRetryDelay(1, 10), null);
+
+		String url = site.getBaseUrl() + "/css/site.css";
+
+		for (int k = 0; k < 5; k++) {
+			FetchedPage page = pageFetcher.fetchPage(url);
+
+			assertNotNull(page);
+			assertArrayEquals("body { font-family: sans-serif; }\n#galleryView li { list-style: none; }\n".getBytes("UTF-8"), page.getBody());
+		}
+	}
+
+	@Test
+	public void keepsRequestsInFlightToAHostUnderTheConnectionLimit() throws Exception {
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger peakInFlight = new AtomicInteger();
+
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		ExecutorService serverExecutor = Executors.newFixedThreadPool(16);
+
+		// Slow pages, so requests pile up if the fetcher lets them. Requests are counted until the response is sent, which is
+		// before the fetcher counts them done.
+		server.createContext("/", exchange -> {
+			peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				inFlight.decrementAndGet();
+			}
+
+			byte[] body = "<html><body>page</body></html>".getBytes(StandardCharsets.UTF_8);
+
+			exchange.getResponseHeaders().set("Content-Type", "text/html; charset=UTF-8");
+			exchange.sendResponseHeaders(200, body.length);
+
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		try {
+			pageFetcher = new ConcurrentPageFetcher(16, new FetchPolicy(4, 0), null);
+
+			String baseUrl = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			CountDownLatch done = new CountDownLatch(40);
+
+			for (int i = 0; i < 40; i++) {
+				String url = baseUrl + "/page" + i;
+
+				pageFetcher.execute(() -> {
+					try {
+						pageFetcher.fetchPage(url);
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					} finally {
+						done.countDown();
+					}
+				});
+			}
+
+			assertTrue(done.await(60, TimeUnit.SECONDS));
+			assertNull(failure.get());
+		} finally {
+			server.stop(0);
+			serverExecutor.shutdownNow();
+		}
+
+		assertTrue("Peak of " + peakInFlight.get() + " requests in flight", peakInFlight.get() >= 1 && peakInFlight.get() <= 4);
+	}
+
+	@Test
+	public void failsOnMissingPages() throws IOException {
+		pageFetcher = new ConcurrentPageFetcher(1, new FetchPolicy(1, 0), null);
+
+		try {
+			pageFetcher.fetchPage(site.getBaseUrl() + "/missing");
+
+			fail("Missing page was fetched");
+		} catch (HttpStatusException e) {
+			assertEquals(404, e.getStatusCode());
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.univocity.examples;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jsoup.Jsoup;
+import org.junit.Test;
+
+/**
+ * Extracts detail pages, well formed and malformed, both from the Jsoup DOM and as a stream through {@link HtmlRegionReader},
+ * and checks both ways find the same fields.
+ */
+public class ListingDetailExtractorTest {
+
+	/**
+	 * Link of the detail pages.
+	 */
+	private static final String LINK = "http://localhost/Property/300007/EST1007/Umhlanga";
+
+	/**
+	 * Detail page of the synthetic site.
+	 */
+	private static final String PAGE = new String(new SyntheticSiteServer(10, 1).detailPage(7), StandardCharsets.UTF_8);
+
+	@Test
+	public void wellFormedPage() throws IOException {
+		Map<String, String> fields = assertSameFields(PAGE);
+
+		assertNotNull(fields.get("address"));
+		assertNotNull(fields.get("price"));
+		assertNotNull(fields.get("bedrooms"));
+		assertNotNull(fields.get("bathrooms"));
+		assertNotNull(fields.get("landSize"));
+	}
+
+	@Test
+	public void paragraphClosedByHeading() throws IOException {
+		Map<String, String> fields = assertSameFields(PAGE.replace("<div id=\"detailTitle\">", "<div id=\"detailTitle\"><p>intro"));
+
+		assertNotNull(fields.get("address"));
+		assertNotNull(fields.get("price"));
+		assertNotNull(fields.get("bedrooms"));
+		assertNotNull(fields.get("bathrooms"));
+	}
+
+	@Test
+	public void paragraphClosedByDiv() throws IOException {
+		assertNotNull(assertSameFields(PAGE.replace("<div class=\"propFeatures\">", "<p>Features<div class=\"propFeatures\">")).get("price"));
+	}
+
+	@Test
+	public void paragraphClosedByListItem() throws IOException {
+		assertNotNull(assertSameFields(PAGE.replace("<ul id=\"detailFeatures\">", "<ul id=\"detailFeatures\"><p>Rooms")).get("bedrooms"));
+	}
+
+	@Test
+	public void paragraphInsideInlineElementClosedByList() throws IOException {
+		assertNotNull(assertSameFields(PAGE.replace("<ul id=\"detailFeatures\">", "<p><span>Rooms<ul id=\"detailFeatures\">")).get("bathrooms"));
+	}
+
+	@Test
+	public void uppercaseParagraphClosedByHeading() throws IOException {
+		assertNotNull(assertSameFields(PAGE.replace("<div id=\"detailTitle\">", "<DIV id=\"detailTitle\"><P>intro")).get("address"));
+	}
+
+	@Test
+	public void paragraphInButtonNotClosed() throws IOException {
+		assertSameFields(PAGE.replace("<div class=\"propFeatures\">", "<p><button><div>Share</div></button></p><div class=\"propFeatures\">"));
+	}
+
+	@Test
+	public void unclosedListItems() throws IOException {
+		assertNotNull(assertSameFields(PAGE.replace("</span></li>", "</span>")).get("bathrooms"));
+	}
+
+	@Test
+	public void strayEndTags() throws IOException {
+		assertNotNull(assertSameFields(PAGE.replace("<div class=\"priceWrap\">", "</span></p><div class=\"priceWrap\">")).get("price"));
+	}
+
+	@Test
+	public void headingClosedByHeading() throws IOException {
+		assertSameFields(PAGE.replace("<div class=\"priceWrap\">", "<h4>Price<h5>incl. VAT</h5><div class=\"priceWrap\">"));
+	}
+
+	/**
+	 * Extracts page both ways and checks they found the same fields.
+	 *
+	 * @param html - detail page
+	 *
+	 * @throws IOException -
+	 *
+	 * @return Map<String, String> - fields found
+	 */
+	private static Map<String, String> assertSameFields(String html) throws IOException {
+		ListingRecord fromDom = ListingDetailExtractor.HARCOURTS.extractRecord(LINK, Jsoup.parse(html, LINK));
+		ListingRecord fromStream = ListingDetailExtractor.HARCOURTS.extractRecord(LINK, new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)), "UTF-8");
+
+		Map<String, String> fields = fromDom.fillFieldMap(new LinkedHashMap<>());
+
+		assertEquals(fields, fromStream.fillFieldMap(new LinkedHashMap<>()));
+
+		return fields;
+	}
+}
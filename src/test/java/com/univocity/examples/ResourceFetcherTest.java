@@ -0,0 +1,177 @@
+package com.univocity.examples;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Saves the resources of pages of a {@link SyntheticSiteServer} and links the pages to them.
+ */
+public class ResourceFetcherTest {
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Site fetched.
+	 */
+	private SyntheticSiteServer site;
+
+	/**
+	 * Fetcher sending the requests.
+	 */
+	private ConcurrentPageFetcher pageFetcher;
+
+	@Before
+	public void setUp() throws IOException {
+		site = new SyntheticSiteServer(40, 1);
+		site.start(0, 4);
+
+		pageFetcher = new ConcurrentPageFetcher(2, new FetchPolicy(2, 0), null);
+	}
+
+	@After
+	public void tearDown() {
+		pageFetcher.close();
+		site.close();
+	}
+
+	@Test
+	public void linksSavedPagesToTheirResources() throws IOException {
+		File directory = folder.newFolder("resources");
+
+		String html;
+
+		try (ResourceFetcher resourceFetcher = new ResourceFetcher(directory, new ResourceFetchPolicy(), pageFetcher)) {
+			saveResources(resourceFetcher, "/Property/Residential?location=" + site.locationCode(0));
+
+			// Resources saved for the previous page.
+			html = saveResources(resourceFetcher, "/Property/Residential?location=" + site.locationCode(0) + "&page=2");
+		}
+
+		Document page = Jsoup.parse(html);
+
+		File stylesheet = new File(URI.create(page.select("link[rel=stylesheet]").attr("href")));
+		File script = new File(URI.create(page.select("script[src]").attr("src")));
+
+		assertEquals(directory.getCanonicalFile(), stylesheet.getParentFile().getCanonicalFile());
+		assertEquals(directory.getCanonicalFile(), script.getParentFile().getCanonicalFile());
+		assertArrayEquals(pageFetcher.send(Jsoup.connect(site.getBaseUrl() + "/css/site.css"), null).bodyAsBytes(), Files.readAllBytes(stylesheet.toPath()));
+		assertArrayEquals(pageFetcher.send(Jsoup.connect(site.getBaseUrl() + "/js/site.js").ignoreContentType(true), null).bodyAsBytes(), Files.readAllBytes(script.toPath()));
+
+		// Listing photos are not requested, and everything but the links of saved resources is kept as received.
+		assertTrue(page.select("img[src]").first().attr("src").startsWith("/images/listings/"));
+		assertEquals(new String(pageFetcher.fetchPage(site.getBaseUrl() + "/Property/Residential?location=" + site.locationCode(0) + "&page=2").getBody(), StandardCharsets.UTF_8)
+				.replace("\"/css/site.css\"", "\"" + stylesheet.toURI() + "\"")
+				.replace("\"/js/site.js\"", "\"" + script.toURI() + "\""), html);
+
+		assertTrue(new String(Files.readAllBytes(Paths.get(directory.getPath(), "resources.tsv")), StandardCharsets.UTF_8).contains(site.getBaseUrl() + "/css/site.css\t" + stylesheet.getName()));
+	}
+
+	@Test
+	public void dropsResourcesOverTheMaximumSize() throws IOException {
+		File directory = folder.newFolder("resources");
+
+		String html;
+
+		try (ResourceFetcher resourceFetcher = new ResourceFetcher(directory, new ResourceFetchPolicy().withMaxBytes(16), pageFetcher)) {
+			html = saveResources(resourceFetcher, "/Property/Residential?location=" + site.locationCode(0));
+		}
+
+		// The stylesheet is 70 bytes, the script 15.
+		assertTrue(html.contains("<link rel=\"stylesheet\" href=\"/css/site.css\">"));
+		assertFalse(html.contains("<script src=\"/js/site.js\">"));
+		assertEquals(1, Files.readAllLines(new File(directory, "resources.tsv").toPath()).size());
+	}
+
+	@Test
+	public void dropsRejectedResourcesBeforeTheirBodyIsTransferred() throws Exception {
+		AtomicLong bytesWritten = new AtomicLong();
+		CountDownLatch bodyDone = new CountDownLatch(1);
+
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+
+		// 4 MB stylesheet, sent once the client had time to drop it after reading its headers.
+		server.createContext("/css/big.css", exchange -> {
+			try {
+				exchange.getResponseHeaders().set("Content-Type", "text/css");
+				exchange.sendResponseHeaders(200, 4 << 20);
+
+				Thread.sleep(500);
+
+				byte[] chunk = new byte[8192];
+
+				try (OutputStream body = exchange.getResponseBody()) {
+					while (bytesWritten.get() < 4 << 20) {
+						body.write(chunk);
+						body.flush();
+
+						bytesWritten.addAndGet(chunk.length);
+					}
+				}
+			} catch (IOException | InterruptedException e) {
+				// Client gone.
+			} finally {
+				bodyDone.countDown();
+			}
+		});
+		server.start();
+
+		String baseUrl = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+		String html = "<html><head><link rel=\"stylesheet\" href=\"/css/big.css\"></head><body></body></html>";
+
+		File directory = folder.newFolder("resources");
+
+		try (ResourceFetcher resourceFetcher = new ResourceFetcher(directory, new ResourceFetchPolicy(), pageFetcher)) {
+			assertEquals(html, new String(resourceFetcher.saveResources(Jsoup.parse(html, baseUrl + "/"), html.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8));
+
+			assertTrue(bodyDone.await(30, TimeUnit.SECONDS));
+		} finally {
+			server.stop(0);
+		}
+
+		// Whatever the socket buffers took before the client was gone, far from the 512 KB maximum.
+		assertTrue(bytesWritten.get() + " bytes written", bytesWritten.get() < 512 * 1024);
+		assertEquals(0, directory.list((dir, name) -> !name.equals("resources.tsv")).length);
+	}
+
+	/**
+	 * Fetches page of the site and saves its resources.
+	 *
+	 * @param resourceFetcher	- fetcher saving the resources
+	 * @param path				- page path
+	 *
+	 * @throws IOException -
+	 *
+	 * @return String - page linking its saved resources
+	 */
+	private String saveResources(ResourceFetcher resourceFetcher, String path) throws IOException {
+		FetchedPage page = pageFetcher.fetchPage(site.getBaseUrl() + path);
+
+		return new String(resourceFetcher.saveResources(page.parse(), page.getBody()), StandardCharsets.UTF_8);
+	}
+}
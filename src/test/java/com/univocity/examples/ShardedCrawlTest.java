@@ -0,0 +1,181 @@
+package com.univocity.examples;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.univocity.parsers.csv.Csv;
+import com.univocity.parsers.csv.CsvParser;
+import com.univocity.parsers.csv.CsvParserSettings;
+
+/**
+ * Crawls a {@link SyntheticSiteServer} with several {@link ShardedCrawl} worker processes sharing a shard directory.
+ */
+public class ShardedCrawlTest {
+
+	/**
+	 * Pages of results of each location, one unit each.
+	 */
+	private static final int PAGE_COUNT = 3;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Site crawled.
+	 */
+	private SyntheticSiteServer site;
+
+	@Before
+	public void setUp() throws IOException {
+		// 50 listings per location, on 3 pages of results.
+		site = new SyntheticSiteServer(150, 3);
+		site.start(0, 16);
+	}
+
+	@After
+	public void tearDown() {
+		site.close();
+	}
+
+	@Test
+	public void workersShareUnitsAndMergeTheirRowsAsWritten() throws Exception {
+		File shardDirectory = folder.newFolder("shards");
+
+		List<Process> workers = new ArrayList<>();
+
+		for (int i = 1; i <= 3; i++) {
+			workers.add(startWorker(shardDirectory, "worker" + i, 1, site.locationCode(0), site.locationCode(1), site.locationCode(2)));
+		}
+
+		for (int i = 0; i < workers.size(); i++) {
+			assertTrue("Worker " + (i + 1) + " is still running", workers.get(i).waitFor(120, TimeUnit.SECONDS));
+			assertEquals("Worker " + (i + 1) + " failed, see its log in " + shardDirectory, 0, workers.get(i).exitValue());
+		}
+
+		// Rows of the units in unit order, as they wrote them, under the header of the first unit.
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+
+		for (int locationIndex = 0; locationIndex < 3; locationIndex++) {
+			for (int pageNumber = 1; pageNumber <= PAGE_COUNT; pageNumber++) {
+				String unit = String.format("%s_p%04d-%04d", site.locationCode(locationIndex), pageNumber, pageNumber);
+				String result = new String(Files.readAllBytes(new File(shardDirectory, "leases/" + unit + ".done").toPath()), StandardCharsets.UTF_8);
+
+				byte[] results = Files.readAllBytes(new File(result.substring(0, result.indexOf('\t'))).toPath());
+
+				int headerLength = new String(results, StandardCharsets.ISO_8859_1).indexOf('\n') + 1;
+
+				if (expected.size() == 0) {
+					expected.write(results, 0, headerLength);
+				}
+
+				expected.write(results, headerLength, results.length - headerLength);
+			}
+		}
+
+		File mergedFile = new File(shardDirectory, "jsoup-houses.csv");
+
+		assertArrayEquals(expected.toByteArray(), Files.readAllBytes(mergedFile.toPath()));
+
+		CsvParserSettings parserSettings = Csv.parseExcel();
+		parserSettings.setHeaderExtractionEnabled(true);
+
+		List<String[]> rows = new CsvParser(parserSettings).parseAll(mergedFile, "windows-1252");
+
+		Set<String> links = new HashSet<>();
+
+		for (String[] row : rows) {
+			links.add(row[0]);
+		}
+
+		assertEquals(150, rows.size());
+		assertEquals(150, links.size());
+	}
+
+	@Test
+	public void mergeKeepsValuesAsWrittenAndDropsDuplicateListings() throws Exception {
+		File shardDirectory = folder.newFolder("shards");
+		File leaseDirectory = new File(shardDirectory, "leases");
+
+		String header = "propertyDetailsLink,id,address,price,bedrooms,bathrooms,landSize,propertyType\r\n";
+		String firstRow = "/Property/300001/EST1001/Berea,EST1001,\"1 Oak Avenue,\r\nBerea\",,3,N/A,,House\r\n";
+		String secondRow = "/Property/300002/EST1002/Kloof,EST1002,\"2 \"\"Marine\"\" Drive, Kloof\",1500000,,2,800,\r\n";
+
+		// Units done already, the second one capturing a listing of the first one again.
+		writeResults(leaseDirectory, site.locationCode(0), header + firstRow);
+		writeResults(leaseDirectory, site.locationCode(1), header + firstRow + secondRow);
+
+		Process worker = startWorker(shardDirectory, "worker1", 0, site.locationCode(0), site.locationCode(1));
+
+		assertTrue(worker.waitFor(120, TimeUnit.SECONDS));
+		assertEquals("Worker failed, see its log in " + shardDirectory, 0, worker.exitValue());
+
+		assertEquals(header + firstRow + secondRow, new String(Files.readAllBytes(new File(shardDirectory, "jsoup-houses.csv").toPath()), StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * Marks unit done with its results.
+	 *
+	 * @param leaseDirectory	- lease directory of the crawl
+	 * @param unit				- unit name
+	 * @param results			- results of the unit
+	 *
+	 * @throws IOException -
+	 */
+	private static void writeResults(File leaseDirectory, String unit, String results) throws IOException {
+		File resultsFile = new File(leaseDirectory.getParentFile(), unit + ".csv");
+
+		Files.createDirectories(leaseDirectory.toPath());
+		Files.write(resultsFile.toPath(), results.getBytes(StandardCharsets.ISO_8859_1));
+		Files.write(new File(leaseDirectory, unit + ".done").toPath(), (resultsFile.getAbsolutePath() + "\t0").getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Starts worker process crawling locations of the site.
+	 *
+	 * @param shardDirectory	- shared directory of the crawl
+	 * @param workerId			- id of the worker, its output goes to '{shardDirectory}/{workerId}.log'
+	 * @param pagesPerUnit		- pages of results per unit, 0 for one unit per location
+	 * @param locationCodes		- location codes
+	 *
+	 * @throws IOException -
+	 *
+	 * @return Process
+	 */
+	private Process startWorker(File shardDirectory, String workerId, int pagesPerUnit, String... locationCodes) throws IOException {
+		List<String> command = new ArrayList<>();
+
+		command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add("-Dsite.baseUrl=" + site.getBaseUrl());
+		command.add("-Dshard.directory=" + shardDirectory.getPath());
+		command.add("-Dshard.workerId=" + workerId);
+		command.add("-Dshard.pagesPerUnit=" + pagesPerUnit);
+		command.add("-Dshard.leaseSeconds=10");
+		command.add("-Dpagination.pageLimit=" + PAGE_COUNT);
+		command.add(ShardedCrawl.class.getName());
+
+		command.addAll(Arrays.asList(locationCodes));
+
+		return new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(new File(shardDirectory, workerId + ".log")).start();
+	}
+}